@@ -0,0 +1,51 @@
+package org.dnd.service;
+
+import org.dnd.configuration.JwtConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token checks on the request path: every stream request validates a stream token, every
+ * API request resolves the user from its access token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+  private static final long USER_ID = 7L;
+  private static final long BOARD_ID = 42L;
+
+  private JwtService jwtService;
+  private String streamToken;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    jwtService = new JwtService(new JwtConfiguration() {
+      @Override
+      public String getSecret() {
+        return "dGhpc2lzYXRlc3RzZWNyZXRrZXl0aGF0aXN2ZXJ5bG9uZ2FuZHNlY3VyZQ==";
+      }
+
+      @Override
+      public Long getExpiration() {
+        return 3_600_000L;
+      }
+    });
+    streamToken = jwtService.generateStreamToken(USER_ID, BOARD_ID);
+  }
+
+  @Benchmark
+  public boolean validateStreamToken() {
+    return jwtService.validateStreamToken(streamToken, BOARD_ID);
+  }
+
+  @Benchmark
+  public String getUserIdFromToken() {
+    return jwtService.getUserIdFromToken(streamToken);
+  }
+}
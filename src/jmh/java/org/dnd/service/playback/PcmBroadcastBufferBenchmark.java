@@ -0,0 +1,67 @@
+package org.dnd.service.playback;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer cost of publishing one 20ms PCM frame while listeners drain the ring concurrently,
+ * the way the encoder feeds do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PcmBroadcastBufferBenchmark {
+
+  @Param({"1", "4", "32"})
+  int listeners;
+
+  private PcmBroadcastBuffer buffer;
+  private byte[] frame;
+  private final List<Thread> readers = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    buffer = new PcmBroadcastBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    ThreadLocalRandom.current().nextBytes(frame);
+
+    for (int i = 0; i < listeners; i++) {
+      SlabRing.Cursor cursor = buffer.registerListener();
+      readers.add(Thread.ofVirtual().start(() -> drain(cursor)));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    buffer.markComplete();
+    for (Thread reader : readers) {
+      reader.join(1_000);
+    }
+    readers.clear();
+  }
+
+  @Benchmark
+  public void append() {
+    buffer.append(frame, 0, frame.length);
+  }
+
+  private void drain(SlabRing.Cursor cursor) {
+    byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    try {
+      while (cursor.poll(target, 100, TimeUnit.MILLISECONDS) != SlabRing.END_OF_STREAM) {
+        // keep reading until the trial ends
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      buffer.unregisterListener(cursor);
+    }
+  }
+}
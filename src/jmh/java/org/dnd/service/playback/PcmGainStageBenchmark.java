@@ -0,0 +1,41 @@
+package org.dnd.service.playback;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scaling one 20ms PCM frame, vectorized and scalar. Every playing board pays this
+ * once per frame on its decode thread, 50 times a second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PcmGainStageBenchmark {
+
+  private static final int FRAME_BYTES = 20 * 192;
+
+  private byte[] frame;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    frame = new byte[FRAME_BYTES];
+    ThreadLocalRandom.current().nextBytes(frame);
+  }
+
+  @Benchmark
+  public byte[] vector() {
+    PcmGainStage.scale(frame, frame.length, 0.7f);
+    return frame;
+  }
+
+  @Benchmark
+  public byte[] scalar() {
+    PcmGainStage.scaleScalar(frame, 0, frame.length, 0.7f);
+    return frame;
+  }
+}
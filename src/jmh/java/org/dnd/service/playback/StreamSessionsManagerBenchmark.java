@@ -0,0 +1,69 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.api.model.StreamFormat;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Board session churn: starting a session replaces the previous one for the board, then the
+ * board is stopped. The player manager has no source managers, so loading resolves to "no
+ * matches" without network access and the benchmark measures session setup and teardown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamSessionsManagerBenchmark {
+
+  private static final int BOARDS = 64;
+
+  private AudioPlayerManager playerManager;
+  private OpusPlayerManager opusPlayerManager;
+  private StreamSessionsManager manager;
+  private long nextBoard;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    playerManager = new DefaultAudioPlayerManager();
+    opusPlayerManager = new OpusPlayerManager(new DefaultAudioPlayerManager());
+
+    PcmDiskCache pcmCache = new PcmDiskCache(false, Path.of("unused"), 0L, 0L);
+    PlaybackMetrics metrics = new PlaybackMetrics(new SimpleMeterRegistry());
+    PlaybackAdmission admission = new PlaybackAdmission(BOARDS, BOARDS, BOARDS, 0, 0L, 1L, metrics);
+    // no listener attaches, so no encoder is ever claimed
+    FfmpegEncoderPool encoderPool = new FfmpegEncoderPool(0, null, metrics);
+
+    // stream tokens and stored waveforms are never touched by board sessions without listeners
+    manager = new StreamSessionsManager(playerManager, opusPlayerManager, pcmCache, metrics, admission, encoderPool, null, null, null,
+            new PlaybackConfiguration());
+    manager.init();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    manager.shutdown();
+    playerManager.shutdown();
+    opusPlayerManager.manager().shutdown();
+  }
+
+  @Benchmark
+  public StreamSession startAndReplace() {
+    long boardId = nextBoard++ % BOARDS;
+    return manager.startBoardSession(1L, boardId, boardId, "bench:" + boardId, 180, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+  }
+
+  @Benchmark
+  public void startAndStop() {
+    long boardId = nextBoard++ % BOARDS;
+    manager.startBoardSession(1L, boardId, boardId, "bench:" + boardId, 180, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+    manager.stopBoardSession(boardId);
+  }
+}
@@ -0,0 +1,87 @@
+package org.dnd.service.playback;
+
+import org.dnd.api.model.WaveformPeaksEncoding;
+import org.dnd.api.model.WaveformResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope extraction over full 20ms s16be frames of noise-like audio, building the response
+ * the waveform endpoint returns and summarising a zoomed range from the pyramid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaveformAccumulatorBenchmark {
+
+  private static final int BUCKETS = 512;
+  private static final long TRACK_MS = 4 * 60 * 1000;
+  private static final int FRAME_MS = 20;
+
+  private WaveformAccumulator accumulator;
+  private WaveformAccumulator filled;
+  private byte[][] frames;
+  private int nextFrame;
+  private long positionMs;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+    frames = new byte[64][];
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = syntheticFrame(random);
+    }
+
+    accumulator = new WaveformAccumulator(BUCKETS);
+    accumulator.setDurationMs(TRACK_MS);
+
+    filled = new WaveformAccumulator(BUCKETS);
+    filled.setDurationMs(TRACK_MS);
+    for (long ms = 0; ms < TRACK_MS; ms += FRAME_MS) {
+      filled.accept(frames[(int) (ms / FRAME_MS) % frames.length], ms);
+    }
+  }
+
+  @Benchmark
+  public void accept() {
+    accumulator.accept(frames[nextFrame], PcmBroadcastBuffer.MAX_FRAME_BYTES, positionMs);
+
+    nextFrame = (nextFrame + 1) % frames.length;
+    positionMs = (positionMs + FRAME_MS) % TRACK_MS;
+  }
+
+  @Benchmark
+  public WaveformResponse toResponse() {
+    return filled.toResponse(1L, true);
+  }
+
+  @Benchmark
+  public WaveformResponse toResponseU8() {
+    return filled.toResponse(1L, true, WaveformPeaksEncoding.U8);
+  }
+
+  @Benchmark
+  public WaveformAccumulator.Envelope zoomedRange() {
+    return filled.envelope(60_000L, 90_000L, 1024);
+  }
+
+  /**
+   * Stereo samples around a slowly varying envelope, so peaks differ between frames.
+   */
+  private static byte[] syntheticFrame(Random random) {
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    double envelope = 0.2 + random.nextDouble() * 0.8;
+
+    for (int i = 0; i + 1 < frame.length; i += 2) {
+      short sample = (short) (random.nextGaussian() * envelope * 8000);
+      frame[i] = (byte) (sample >> 8);
+      frame[i + 1] = (byte) sample;
+    }
+    return frame;
+  }
+}
@@ -0,0 +1,262 @@
+package org.dnd.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a running server started with the {@code loadtest} profile: creates N boards playing
+ * synthetic tracks, attaches M concurrent {@code /stream} listeners, and samples the server's
+ * Prometheus endpoint while they run. Prints decode CPU, heap, GC pauses, ffmpeg count and the
+ * client-side stream stall rate.
+ *
+ * <p>Options (all {@code --name=value}): {@code base-url}, {@code metrics-url}, {@code boards},
+ * {@code listeners}, {@code duration-s}, {@code track-link}, {@code stall-ms}.
+ */
+public final class PlaybackLoadTest {
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+  private static final long SAMPLE_INTERVAL_S = 5;
+
+  private final String baseUrl;
+  private final String metricsUrl;
+  private final int boards;
+  private final int listeners;
+  private final long durationS;
+  private final String trackLink;
+  private final long stallMs;
+
+  private final HttpClient http = HttpClient.newBuilder()
+          .connectTimeout(Duration.ofSeconds(10))
+          .executor(Executors.newVirtualThreadPerTaskExecutor())
+          .build();
+
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong stalls = new AtomicLong();
+  private final AtomicLong streamsEndedEarly = new AtomicLong();
+  private final AtomicLong streamsFailed = new AtomicLong();
+  private final ConcurrentLinkedQueue<Long> firstByteMs = new ConcurrentLinkedQueue<>();
+  private final Map<String, List<Double>> samples = new ConcurrentHashMap<>();
+
+  private String token;
+
+  private PlaybackLoadTest(Map<String, String> options) {
+    this.baseUrl = options.getOrDefault("base-url", "http://localhost:8080/api/v1");
+    this.metricsUrl = options.getOrDefault("metrics-url", "http://localhost:8081/actuator/prometheus");
+    this.boards = Integer.parseInt(options.getOrDefault("boards", "10"));
+    this.listeners = Integer.parseInt(options.getOrDefault("listeners", "10"));
+    this.durationS = Long.parseLong(options.getOrDefault("duration-s", "120"));
+    this.trackLink = options.getOrDefault("track-link", "synthetic:noise?seconds=3600");
+    this.stallMs = Long.parseLong(options.getOrDefault("stall-ms", "1000"));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        int eq = arg.indexOf('=');
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      }
+    }
+
+    new PlaybackLoadTest(options).run();
+  }
+
+  private void run() throws Exception {
+    login();
+
+    List<Long> boardIds = new ArrayList<>();
+    for (int i = 0; i < boards; i++) {
+      long trackId = createTrack(i);
+      long boardId = post("/boards", Map.of("name", "loadtest-" + i, "selectedTrackId", trackId)).get("id").asLong();
+      boardIds.add(boardId);
+    }
+
+    List<String> streamUrls = new ArrayList<>();
+    for (long boardId : boardIds) {
+      JsonNode state = post("/boards/" + boardId + "/playback/play", Map.of());
+      streamUrls.add(state.get("streamUrl").asText());
+    }
+
+    System.out.printf("started %d boards, attaching %d listeners for %ds%n", boards, listeners, durationS);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationS);
+    ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+    sampler.scheduleAtFixedRate(this::sampleServerMetrics, 0, SAMPLE_INTERVAL_S, TimeUnit.SECONDS);
+
+    try (ExecutorService streams = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < listeners; i++) {
+        String streamUrl = streamUrls.get(i % streamUrls.size());
+        streams.submit(() -> listen(streamUrl, deadline));
+      }
+    } finally {
+      sampler.shutdownNow();
+      for (long boardId : boardIds) {
+        post("/boards/" + boardId + "/playback/stop", Map.of());
+      }
+    }
+
+    report();
+  }
+
+  private void listen(String streamUrl, long deadline) {
+    long requestedAt = System.nanoTime();
+    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + streamUrl)).GET().build();
+
+    try {
+      HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+      if (response.statusCode() != 200) {
+        streamsFailed.incrementAndGet();
+        return;
+      }
+
+      try (InputStream body = response.body()) {
+        byte[] chunk = new byte[16 * 1024];
+        long lastReadAt = 0;
+        int read;
+
+        while (System.nanoTime() < deadline && (read = body.read(chunk)) >= 0) {
+          long now = System.nanoTime();
+          if (lastReadAt == 0) {
+            firstByteMs.add(TimeUnit.NANOSECONDS.toMillis(now - requestedAt));
+          } else if (TimeUnit.NANOSECONDS.toMillis(now - lastReadAt) > stallMs) {
+            stalls.incrementAndGet();
+          }
+          lastReadAt = now;
+          bytesReceived.addAndGet(read);
+        }
+
+        if (System.nanoTime() < deadline) {
+          streamsEndedEarly.incrementAndGet();
+        }
+      }
+    } catch (IOException e) {
+      streamsFailed.incrementAndGet();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sampleServerMetrics() {
+    try {
+      HttpRequest request = HttpRequest.newBuilder(URI.create(metricsUrl)).GET().build();
+      String body = http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+
+      Map<String, Double> current = new HashMap<>();
+      for (String line : body.split("\n")) {
+        if (line.startsWith("#") || line.isBlank()) {
+          continue;
+        }
+
+        String name = line.substring(0, indexOfAny(line, "{ "));
+        double value = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+
+        switch (name) {
+          case "process_cpu_usage", "playback_encoder_processes", "jvm_gc_pause_seconds_max" ->
+                  current.merge(name, value, Math::max);
+          case "jvm_memory_used_bytes" -> {
+            if (line.contains("area=\"heap\"")) {
+              current.merge("heap_used_bytes", value, Double::sum);
+            }
+          }
+          case "jvm_gc_pause_seconds_sum", "playback_frames_decoded_total" -> current.merge(name, value, Double::sum);
+          default -> {
+          }
+        }
+      }
+
+      current.forEach((name, value) -> samples.computeIfAbsent(name, ignored -> new CopyOnWriteArrayList<>()).add(value));
+    } catch (Exception e) {
+      System.err.println("metrics sample failed: " + e.getMessage());
+    }
+  }
+
+  private void report() {
+    System.out.println();
+    System.out.printf("boards=%d listeners=%d duration=%ds%n", boards, listeners, durationS);
+    printRange("decode CPU (process)", "process_cpu_usage", 100.0, "%");
+    printRange("heap used", "heap_used_bytes", 1.0 / (1024 * 1024), "MiB");
+    printRange("max GC pause", "jvm_gc_pause_seconds_max", 1000.0, "ms");
+    printRange("ffmpeg processes", "playback_encoder_processes", 1.0, "");
+    printDelta("GC pause total", "jvm_gc_pause_seconds_sum", 1000.0, "ms");
+    printDelta("frames decoded", "playback_frames_decoded_total", 1.0, "");
+
+    double listenerMinutes = listeners * durationS / 60.0;
+    List<Long> ttfb = firstByteMs.stream().sorted().toList();
+    System.out.printf("stream bytes: %d (%.1f kbit/s per listener)%n",
+            bytesReceived.get(), bytesReceived.get() * 8 / 1000.0 / Math.max(1, listeners) / durationS);
+    System.out.printf("stalls > %dms: %d (%.2f per listener-minute)%n", stallMs, stalls.get(), stalls.get() / listenerMinutes);
+    System.out.printf("streams failed: %d, ended early: %d%n", streamsFailed.get(), streamsEndedEarly.get());
+    if (!ttfb.isEmpty()) {
+      System.out.printf("time to first byte: p50=%dms p99=%dms%n",
+              ttfb.get(ttfb.size() / 2), ttfb.get(Math.min(ttfb.size() - 1, ttfb.size() * 99 / 100)));
+    }
+  }
+
+  private void printRange(String label, String metric, double scale, String unit) {
+    List<Double> values = samples.getOrDefault(metric, List.of());
+    if (values.isEmpty()) {
+      return;
+    }
+
+    DoubleSummaryStatistics stats = values.stream().mapToDouble(value -> value * scale).summaryStatistics();
+    System.out.printf("%s: avg=%.1f%s max=%.1f%s%n", label, stats.getAverage(), unit, stats.getMax(), unit);
+  }
+
+  private void printDelta(String label, String metric, double scale, String unit) {
+    List<Double> values = samples.getOrDefault(metric, List.of());
+    if (values.size() < 2) {
+      return;
+    }
+
+    System.out.printf("%s: %.1f%s%n", label, (values.getLast() - values.getFirst()) * scale, unit);
+  }
+
+  private void login() throws IOException, InterruptedException {
+    String name = "loadtest-" + UUID.randomUUID().toString().substring(0, 8);
+    Map<String, String> credentials = Map.of("name", name, "password", UUID.randomUUID().toString());
+
+    post("/auth/register", credentials);
+    token = post("/auth/login", credentials).get("token").asText();
+  }
+
+  private long createTrack(int index) throws IOException, InterruptedException {
+    // a distinct seed per board keeps every session decoding its own audio
+    String link = trackLink.contains("seed=") ? trackLink : trackLink + (trackLink.contains("?") ? "&" : "?") + "seed=" + index;
+    return post("/tracks", Map.of("trackName", "loadtest-" + index, "trackLink", link)).get("id").asLong();
+  }
+
+  private JsonNode post(String path, Object payload) throws IOException, InterruptedException {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(payload)));
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+
+    HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() / 100 != 2) {
+      throw new IOException("POST " + path + " failed with " + response.statusCode() + ": " + response.body());
+    }
+    return response.body().isBlank() ? JSON.nullNode() : JSON.readTree(response.body());
+  }
+
+  private static int indexOfAny(String line, String characters) {
+    for (int i = 0; i < line.length(); i++) {
+      if (characters.indexOf(line.charAt(i)) >= 0) {
+        return i;
+      }
+    }
+    return line.length();
+  }
+}
@@ -3,19 +3,72 @@ package org.dnd.configuration;
 import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.local.LocalAudioSourceManager;
 import dev.lavalink.youtube.YoutubeAudioSourceManager;
+import org.dnd.service.playback.OpusPlayerManager;
+import org.dnd.service.playback.source.SyntheticAudioSourceManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
 public class AudioPlayerConfiguration {
+    public static final String LOAD_TEST_PROFILE = "loadtest";
+
     @Bean
+    @Profile("!" + LOAD_TEST_PROFILE)
     public AudioPlayerManager audioPlayerManager() {
-        AudioPlayerManager mgr = new DefaultAudioPlayerManager();
-        mgr.getConfiguration().setOutputFormat(StandardAudioDataFormats.COMMON_PCM_S16_LE);
+        AudioPlayerManager mgr = newPlayerManager();
 
         mgr.registerSourceManager(new YoutubeAudioSourceManager());
 
         return mgr;
     }
+
+    /**
+     * Same sources as {@link #audioPlayerManager()}, producing Opus packets for passthrough streams.
+     */
+    @Bean
+    @Profile("!" + LOAD_TEST_PROFILE)
+    public OpusPlayerManager opusPlayerManager() {
+        AudioPlayerManager mgr = newPlayerManager();
+        mgr.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_OPUS);
+
+        mgr.registerSourceManager(new YoutubeAudioSourceManager());
+
+        return new OpusPlayerManager(mgr);
+    }
+
+    /**
+     * Offline sources for load and capacity testing: generated {@code synthetic:} tracks and
+     * files on the server's disk. No network source is registered.
+     */
+    @Bean
+    @Profile(LOAD_TEST_PROFILE)
+    public AudioPlayerManager syntheticAudioPlayerManager() {
+        AudioPlayerManager mgr = newPlayerManager();
+
+        mgr.registerSourceManager(new SyntheticAudioSourceManager());
+        mgr.registerSourceManager(new LocalAudioSourceManager());
+
+        return mgr;
+    }
+
+    @Bean
+    @Profile(LOAD_TEST_PROFILE)
+    public OpusPlayerManager syntheticOpusPlayerManager() {
+        AudioPlayerManager mgr = newPlayerManager();
+        mgr.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_OPUS);
+
+        mgr.registerSourceManager(new SyntheticAudioSourceManager());
+        mgr.registerSourceManager(new LocalAudioSourceManager());
+
+        return new OpusPlayerManager(mgr);
+    }
+
+    private static AudioPlayerManager newPlayerManager() {
+        AudioPlayerManager mgr = new DefaultAudioPlayerManager();
+        mgr.getConfiguration().setOutputFormat(StandardAudioDataFormats.COMMON_PCM_S16_LE);
+        return mgr;
+    }
 }
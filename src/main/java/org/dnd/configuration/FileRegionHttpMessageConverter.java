@@ -0,0 +1,119 @@
+package org.dnd.configuration;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.lang.NonNull;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes files, whole or as the single byte range Spring resolved from a Range header, without
+ * copying them through the heap: Tomcat's sendfile hands the file to the socket with
+ * {@link FileChannel#transferTo} once the handler returns, and where the connector cannot do
+ * that the file channel is transferred into the response stream directly.
+ */
+public class FileRegionHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+  static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  public FileRegionHttpMessageConverter() {
+    super(MediaType.ALL);
+  }
+
+  @Override
+  protected boolean supports(@NonNull Class<?> clazz) {
+    return FileSystemResource.class.isAssignableFrom(clazz) || ResourceRegion.class == clazz;
+  }
+
+  @Override
+  public boolean canRead(@NonNull Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  @NonNull
+  protected Object readInternal(@NonNull Class<?> clazz, @NonNull HttpInputMessage inputMessage) {
+    throw new UnsupportedOperationException("Write-only converter");
+  }
+
+  @Override
+  protected Long getContentLength(@NonNull Object body, MediaType contentType) throws IOException {
+    if (body instanceof ResourceRegion region) {
+      return region.getCount();
+    }
+    return ((Resource) body).contentLength();
+  }
+
+  @Override
+  protected void writeInternal(@NonNull Object body, @NonNull HttpOutputMessage outputMessage) throws IOException {
+    Resource resource = body instanceof ResourceRegion region ? region.getResource() : (Resource) body;
+    long position = body instanceof ResourceRegion region ? region.getPosition() : 0L;
+    long count = body instanceof ResourceRegion region ? region.getCount() : resource.contentLength();
+
+    if (!resource.isFile()) {
+      try (InputStream in = resource.getInputStream()) {
+        StreamUtils.copyRange(in, outputMessage.getBody(), position, position + count - 1);
+      }
+      return;
+    }
+
+    File file = resource.getFile();
+    if (sendfile(file, position, count)) {
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      WritableByteChannel target = Channels.newChannel(outputMessage.getBody());
+      while (count > 0) {
+        long sent = channel.transferTo(position, count, target);
+        if (sent <= 0) {
+          throw new EOFException("File ended before the requested range: " + file);
+        }
+        position += sent;
+        count -= sent;
+      }
+    }
+  }
+
+  /**
+   * Leaves the body to Tomcat; the attributes must be set before the response is committed,
+   * which happens when the converter flushes after this method.
+   */
+  private static boolean sendfile(File file, long position, long count) throws IOException {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+      return false;
+    }
+
+    HttpServletRequest request = servletAttributes.getRequest();
+    // Tomcat would send the file even though a HEAD response has no body
+    if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) || "HEAD".equals(request.getMethod())) {
+      return false;
+    }
+
+    request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+    request.setAttribute(SENDFILE_START, position);
+    request.setAttribute(SENDFILE_END, position + count);
+    return true;
+  }
+}
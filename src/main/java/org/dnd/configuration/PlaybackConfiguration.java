@@ -0,0 +1,82 @@
+package org.dnd.configuration;
+
+import lombok.Getter;
+import org.dnd.service.playback.SlowConsumerPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Getter
+@Configuration
+public class PlaybackConfiguration {
+    @Value("${playback.buffer.slow-consumer-policy:SKIP_TO_LIVE}")
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.SKIP_TO_LIVE;
+
+    @Value("${playback.idle-suspend.grace-ms:30000}")
+    private long idleSuspendGraceMs = 30_000L;
+
+    @Value("${playback.idle-suspend.expire-ms:600000}")
+    private long idleSuspendExpireMs = 600_000L;
+
+    @Value("${playback.limits.max-sessions:256}")
+    private int maxSessions = 256;
+
+    @Value("${playback.limits.max-sessions-per-user:8}")
+    private int maxSessionsPerUser = 8;
+
+    @Value("${playback.limits.max-listeners-per-board:8}")
+    private int maxListenersPerBoard = 8;
+
+    @Value("${playback.limits.max-encoders:256}")
+    private int maxEncoders = 256;
+
+    @Value("${playback.limits.max-queued:32}")
+    private int maxQueuedAdmissions = 32;
+
+    @Value("${playback.limits.queue-timeout-ms:2000}")
+    private long admissionQueueTimeoutMs = 2000L;
+
+    @Value("${playback.limits.retry-after-s:5}")
+    private long admissionRetryAfterS = 5L;
+
+    @Value("${playback.encoder-pool.size:2}")
+    private int encoderPoolSize = 2;
+
+    @Value("${playback.normalization.enabled:true}")
+    private boolean normalizationEnabled = true;
+
+    @Value("${playback.normalization.target-lufs:-14}")
+    private double normalizationTargetLufs = -14d;
+
+    @Value("${playback.normalization.max-boost-db:6}")
+    private double normalizationMaxBoostDb = 6d;
+
+    @Value("${playback.opus-passthrough.enabled:true}")
+    private boolean opusPassthroughEnabled = true;
+
+    @Value("${playback.window.fade-ms:2000}")
+    private long windowFadeMs = 2000L;
+
+    @Value("${playback.track-switch.crossfade-ms:1000}")
+    private long trackSwitchCrossfadeMs = 1000L;
+
+    @Value("${playback.pcm-cache.enabled:true}")
+    private boolean pcmCacheEnabled = true;
+
+    @Value("${playback.pcm-cache.dir:${java.io.tmpdir}/musicplayer/pcm-cache}")
+    private String pcmCacheDir = System.getProperty("java.io.tmpdir") + "/musicplayer/pcm-cache";
+
+    @Value("${playback.pcm-cache.max-bytes:4294967296}")
+    private long pcmCacheMaxBytes = 4L * 1024 * 1024 * 1024;
+
+    @Value("${playback.pcm-cache.max-entry-bytes:1073741824}")
+    private long pcmCacheMaxEntryBytes = 1024L * 1024 * 1024;
+
+    @Value("${playback.renditions.enabled:true}")
+    private boolean renditionsEnabled = true;
+
+    @Value("${playback.renditions.dir:${java.io.tmpdir}/musicplayer/renditions}")
+    private String renditionsDir = System.getProperty("java.io.tmpdir") + "/musicplayer/renditions";
+
+    @Value("${playback.renditions.max-bytes:2147483648}")
+    private long renditionsMaxBytes = 2L * 1024 * 1024 * 1024;
+}
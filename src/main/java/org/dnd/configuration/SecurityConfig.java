@@ -33,8 +33,8 @@ public class SecurityConfig {
     config.setAllowedOriginPatterns(List.of("*"));
 
     config.setAllowedMethods(List.of("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-    config.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept"));
-    config.setExposedHeaders(List.of("Authorization"));
+    config.setAllowedHeaders(List.of("Authorization", "Content-Type", "Accept", "Range", "If-None-Match"));
+    config.setExposedHeaders(List.of("Authorization", "Accept-Ranges", "Content-Range", "Content-Length", "ETag"));
 
     config.setAllowCredentials(false);
 
@@ -56,6 +56,8 @@ public class SecurityConfig {
                     .requestMatchers(org.springframework.http.HttpMethod.OPTIONS, "/**").permitAll()
                     .requestMatchers("/api/v1/boards/*/stream").permitAll()
                     .requestMatchers("/api/v1/tracks/*/stream").permitAll()
+                    // served only on the management port, which is not published
+                    .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                     .anyRequest().authenticated()
             )
             .exceptionHandling(exc -> exc
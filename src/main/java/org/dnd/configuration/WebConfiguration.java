@@ -0,0 +1,17 @@
+package org.dnd.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // ahead of Spring's resource converters, which copy files through a heap buffer
+        converters.addFirst(new FileRegionHttpMessageConverter());
+    }
+}
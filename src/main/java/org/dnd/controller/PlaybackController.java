@@ -96,10 +96,10 @@ public class PlaybackController implements PlaybackApi {
           cacheKey = "@rateLimitKeyResolver.streamKey(#streamToken)",
           ratePerMethod = true
   )
-  public ResponseEntity<Resource> streamBoardAudio(Long boardId, String streamToken) {
+  public ResponseEntity<Resource> streamBoardAudio(Long boardId, String streamToken, String format) {
     jwtService.validateStreamTokenOrThrow(streamToken, boardId);
     long userId = Long.parseLong(jwtService.getUserIdFromToken(streamToken));
-    return playbackService.streamMp3ForUser(boardId, userId);
+    return playbackService.streamForUser(boardId, userId, format);
   }
 
   @Override
@@ -118,10 +118,10 @@ public class PlaybackController implements PlaybackApi {
           cacheKey = "@rateLimitKeyResolver.streamKey(#streamToken)",
           ratePerMethod = true
   )
-  public ResponseEntity<Resource> streamTrackAudio(Long trackId, String streamToken) {
+  public ResponseEntity<Resource> streamTrackAudio(Long trackId, String streamToken, String format) {
     jwtService.validateTrackStreamTokenOrThrow(streamToken, trackId);
     long userId = Long.parseLong(jwtService.getUserIdFromToken(streamToken));
-    return playbackService.streamMp3ForTrack(trackId, userId);
+    return playbackService.streamForTrack(trackId, userId, format);
   }
 
   @Override
@@ -5,8 +5,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.AllArgsConstructor;
 import org.dnd.api.MusicTracksApi;
 import org.dnd.api.model.Track;
+import org.dnd.api.model.TrackAnalysisResponse;
 import org.dnd.api.model.TrackRequest;
 import org.dnd.api.model.TrackWindowRequest;
+import org.dnd.api.model.WaveformRangeResponse;
 import org.dnd.api.model.WaveformResponse;
 import org.dnd.service.ShareService;
 import org.dnd.service.TrackService;
@@ -16,6 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -132,8 +135,41 @@ public class TrackController implements MusicTracksApi {
           cacheKey = "@rateLimitKeyResolver.currentUserKey()",
           ratePerMethod = true
   )
-  public ResponseEntity<WaveformResponse> getTrackWaveform(Long trackId) {
-    return ResponseEntity.ok(playbackService.getTrackWaveform(trackId));
+  public ResponseEntity<WaveformResponse> getTrackWaveform(Long trackId, String encoding) {
+    return ResponseEntity.ok(playbackService.getTrackWaveform(trackId, encoding));
+  }
+
+  @Override
+  @RateLimiting(
+          name = "default-api",
+          cacheKey = "@rateLimitKeyResolver.currentUserKey()",
+          ratePerMethod = true
+  )
+  public ResponseEntity<TrackAnalysisResponse> getTrackAnalysis(Long trackId) {
+    return ResponseEntity.ok(playbackService.getTrackAnalysis(trackId));
+  }
+
+  @Override
+  @RateLimiting(
+          name = "default-api",
+          cacheKey = "@rateLimitKeyResolver.currentUserKey()",
+          ratePerMethod = true
+  )
+  public ResponseEntity<SseEmitter> streamTrackWaveform(Long trackId, String encoding) {
+    return ResponseEntity.ok(playbackService.streamTrackWaveform(trackId, encoding));
+  }
+
+  @Override
+  @RateLimiting(
+          name = "default-api",
+          cacheKey = "@rateLimitKeyResolver.currentUserKey()",
+          ratePerMethod = true
+  )
+  public ResponseEntity<WaveformRangeResponse> getTrackWaveformRange(Long trackId,
+                                                                     Long fromMs,
+                                                                     Long toMs,
+                                                                     Integer buckets) {
+    return ResponseEntity.ok(playbackService.getTrackWaveformRange(trackId, fromMs, toMs, buckets));
   }
 }
 
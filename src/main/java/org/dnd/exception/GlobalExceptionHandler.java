@@ -46,5 +46,12 @@ public class GlobalExceptionHandler {
             .body(e.getMessage());
   }
 
+  @ExceptionHandler(PlaybackCapacityException.class)
+  public ResponseEntity<String> handlePlaybackCapacity(PlaybackCapacityException e) {
+    return ResponseEntity.status(e.getStatus())
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(e.getMessage());
+  }
+
 }
 
@@ -0,0 +1,21 @@
+package org.dnd.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Playback was refused to protect the node: 429 when the caller holds too many sessions,
+ * 503 when the node itself is saturated.
+ */
+@Getter
+public class PlaybackCapacityException extends RuntimeException {
+  private final HttpStatus status;
+  private final long retryAfterSeconds;
+
+  public PlaybackCapacityException(HttpStatus status, String message, long retryAfterSeconds) {
+    super(message);
+    this.status = status;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+}
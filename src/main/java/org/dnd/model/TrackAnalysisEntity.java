@@ -0,0 +1,34 @@
+package org.dnd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Loudness and silence boundaries of one audio source, measured in the same decode pass as its
+ * {@link TrackWaveformEntity waveform}.
+ */
+@Entity
+@Table(name = "track_analyses")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackAnalysisEntity {
+    @Id
+    @Column(length = 2048)
+    private String sourceKey;
+
+    private Double integratedLufs;
+
+    private Double samplePeakDbfs;
+
+    @Column(nullable = false)
+    private Long clippedSamples;
+
+    private Long audioStartMs;
+
+    private Long audioEndMs;
+}
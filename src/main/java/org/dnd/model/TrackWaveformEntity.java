@@ -0,0 +1,32 @@
+package org.dnd.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Analysed envelope of one audio source, shared by every track that points at it. The envelope
+ * holds the finest waveform level: per bucket of {@code bucketMs}, quantised min, max and RMS.
+ */
+@Entity
+@Table(name = "track_waveforms")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackWaveformEntity {
+    @Id
+    @Column(length = 2048)
+    private String sourceKey;
+
+    @Column(nullable = false)
+    private Long durationMs;
+
+    @Column(nullable = false)
+    private Long bucketMs;
+
+    @Column(nullable = false)
+    private byte[] envelope;
+}
@@ -0,0 +1,7 @@
+package org.dnd.repository;
+
+import org.dnd.model.TrackAnalysisEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TrackAnalysisRepository extends JpaRepository<TrackAnalysisEntity, String> {
+}
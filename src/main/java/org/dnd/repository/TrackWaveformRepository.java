@@ -0,0 +1,7 @@
+package org.dnd.repository;
+
+import org.dnd.model.TrackWaveformEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TrackWaveformRepository extends JpaRepository<TrackWaveformEntity, String> {
+}
@@ -18,9 +18,12 @@ import org.dnd.repository.BoardRepository;
 import org.dnd.repository.GroupRepository;
 import org.dnd.repository.TrackRepository;
 import org.dnd.repository.UserRepository;
+import org.dnd.service.playback.StreamSessionsManager;
 import org.dnd.utils.SecurityUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 
@@ -34,6 +37,7 @@ public class BoardService {
   private final GroupRepository groupRepository;
   private final BoardMapper boardMapper;
   private final TrackMapper trackMapper;
+  private final StreamSessionsManager sessionsManager;
 
   @Transactional(readOnly = true)
   public List<Board> getUserBoards() {
@@ -94,9 +98,31 @@ public class BoardService {
 
     Board boardDto = boardMapper.toDto(boardRepository.save(board));
     boardDto.setAvailableTracks(getTracksForBoard(boardId));
+
+    if (request.getVolume() != null) {
+      applyVolumeAfterCommit(boardId, board.getVolume());
+    }
     return boardDto;
   }
 
+  /**
+   * The running session only hears the new volume once it is stored, so a rolled back update
+   * never reaches the listeners.
+   */
+  private void applyVolumeAfterCommit(Long boardId, int volume) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      sessionsManager.setBoardVolume(boardId, volume);
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        sessionsManager.setBoardVolume(boardId, volume);
+      }
+    });
+  }
+
   private void setTrackIfExist(Long selectedTrackId, BoardEntity board) {
     if (selectedTrackId == null) {
       board.setSelectedTrack(null);
@@ -8,12 +8,15 @@ import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import io.micrometer.core.instrument.Counter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.ByteBuffer;
+import java.util.Optional;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -21,26 +24,38 @@ import static org.springframework.http.HttpStatus.*;
 abstract class AbstractAudioDecodeSession {
 
   protected static final long TRACK_LOAD_TIMEOUT_S = 10;
-  protected static final long PCM_PROVIDE_TIMEOUT_MS = 50;
-  protected static final long PCM_FALLBACK_IDLE_SLEEP_MS = 15;
+  protected static final long UNKNOWN_POSITION = -1L;
+  protected static final long PAUSE_KEEPALIVE_MS = 1000;
 
   protected final long sessionId;
   protected final AudioPlayerManager playerManager;
+  protected final PcmDiskCache pcmCache;
+  protected final PlaybackMetrics metrics;
   protected final ExecutorService decodeWorkers;
   protected final ScheduledExecutorService scheduler;
 
-  protected volatile AudioPlayer player;
+  private final ReentrantLock pauseLock = new ReentrantLock();
+  private final Condition resumed = pauseLock.newCondition();
+
+  protected volatile PcmSource source;
+  protected volatile boolean paused;
   protected volatile long durationMs;
   protected volatile long streamVersion;
-  protected volatile boolean trackFinished;
   protected volatile ScheduledFuture<?> cleanupFuture;
 
+  private volatile PlaybackAdmission.Permit admissionPermit;
+  private volatile Future<?> decodeLoop;
+
   protected AbstractAudioDecodeSession(long sessionId,
                                        AudioPlayerManager playerManager,
+                                       PcmDiskCache pcmCache,
+                                       PlaybackMetrics metrics,
                                        ExecutorService decodeWorkers,
                                        ScheduledExecutorService scheduler) {
     this.sessionId = sessionId;
     this.playerManager = playerManager;
+    this.pcmCache = pcmCache;
+    this.metrics = metrics;
     this.decodeWorkers = decodeWorkers;
     this.scheduler = scheduler;
   }
@@ -49,26 +64,87 @@ abstract class AbstractAudioDecodeSession {
     return durationMs;
   }
 
-  protected final void beginPlayback(String trackLink, int trackDurationS, Long windowStartS) {
-    AudioPlayer newPlayer = playerManager.createPlayer();
-    long playbackVersion = streamVersion + 1;
+  /**
+   * Hands the session its admission slot, which is given back when the session is removed.
+   */
+  void holdPermit(PlaybackAdmission.Permit permit) {
+    this.admissionPermit = permit;
+  }
 
-    this.player = newPlayer;
+  /**
+   * Starts playback without blocking the caller. The returned future completes once the track
+   * is resolved (from the PCM cache or by lavaplayer) and its decode loop is submitted, before
+   * any frame has necessarily been produced; or exceptionally with a {@link ResponseStatusException} after
+   * {@link #onLoadFailure(ResponseStatusException)} ran, or with a
+   * {@link CancellationException} if the playback was superseded while loading.
+   */
+  protected final CompletableFuture<Void> beginPlayback(String trackLink, int trackDurationS, long startMs) {
+    long startedAt = System.nanoTime();
+    long playbackVersion = streamVersion + 1;
     this.streamVersion = playbackVersion;
-    this.trackFinished = false;
     cancelCleanup();
 
+    TrackSourceKey sourceKey = TrackSourceKey.of(trackLink);
+    if (!decodesToPcm()) {
+      return beginDecodedPlayback(playbackVersion, sourceKey, trackLink, trackDurationS, startMs, startedAt);
+    }
+
+    Optional<ByteBuffer> cachedPcm = pcmCache.lookup(sourceKey);
+
+    if (cachedPcm.isPresent()) {
+      beginCachedPlayback(playbackVersion, sourceKey, cachedPcm.get(), trackDurationS, startMs);
+      metrics.recordTrackLoad(PlaybackMetrics.CACHE, true, System.nanoTime() - startedAt);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return beginDecodedPlayback(playbackVersion, sourceKey, trackLink, trackDurationS, startMs, startedAt);
+  }
+
+  private void beginCachedPlayback(long playbackVersion,
+                                   TrackSourceKey sourceKey,
+                                   ByteBuffer pcm,
+                                   int trackDurationS,
+                                   long startMs) {
+    CachedPcmSource cachedSource = new CachedPcmSource(pcm);
+    cachedSource.seek(clampStartMs(cachedSource.durationMs(), trackDurationS, startMs));
+
+    PcmSource active = decorate(cachedSource);
+    this.source = active;
+    durationMs = Math.max(1L, cachedSource.durationMs());
+    onSourcePrepared();
+
+    log.debug("[{}={}] playing {} from pcm cache", sessionLogLabel(), sessionId, sourceKey.value());
+    startDecodeLoop(playbackVersion, active);
+  }
+
+  private CompletableFuture<Void> beginDecodedPlayback(long playbackVersion,
+                                                       TrackSourceKey sourceKey,
+                                                       String trackLink,
+                                                       int trackDurationS,
+                                                       long startMs,
+                                                       long startedAt) {
+    AudioPlayerManager manager = playerManagerForPlayback();
+    boolean pcm = decodesToPcm();
+    AudioPlayer newPlayer = manager.createPlayer();
+    LavaplayerPcmSource newSource = new LavaplayerPcmSource(newPlayer);
+    TeeingPcmSource tee = new TeeingPcmSource(newSource);
+    // encoded frames are neither cached nor shaped
+    PcmSource active = pcm ? decorate(tee) : newSource;
+    this.source = active;
+
     String label = sessionLogLabel();
+    boolean readingWhileLoading = pcm && playsWhileLoading(active);
 
     newPlayer.addListener(new AudioEventAdapter() {
       @Override
       public void onTrackStart(AudioPlayer p, AudioTrack t) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
+        if (!isCurrentPlayback(active, playbackVersion)) {
           return;
         }
 
         durationMs = Math.max(1L, t.getDuration());
-        onTrackStarted(t);
+        newSource.setDurationMs(durationMs);
+        onSourcePrepared();
 
         log.debug("[{}={}] track start: {} ({}ms)",
                 label, sessionId, t.getInfo().title, t.getDuration());
@@ -76,7 +152,7 @@ abstract class AbstractAudioDecodeSession {
 
       @Override
       public void onTrackEnd(AudioPlayer p, AudioTrack t, AudioTrackEndReason reason) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
+        if (!isCurrentPlayback(active, playbackVersion)) {
           return;
         }
 
@@ -86,12 +162,12 @@ abstract class AbstractAudioDecodeSession {
           return;
         }
 
-        trackFinished = true;
+        newSource.markFinished();
       }
 
       @Override
       public void onTrackStuck(AudioPlayer p, AudioTrack t, long thresholdMs) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
+        if (!isCurrentPlayback(active, playbackVersion)) {
           return;
         }
 
@@ -101,7 +177,7 @@ abstract class AbstractAudioDecodeSession {
 
       @Override
       public void onTrackException(AudioPlayer p, AudioTrack t, FriendlyException ex) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
+        if (!isCurrentPlayback(active, playbackVersion)) {
           return;
         }
 
@@ -110,206 +186,364 @@ abstract class AbstractAudioDecodeSession {
       }
     });
 
-    CountDownLatch latch = new CountDownLatch(1);
-    AtomicReference<ResponseStatusException> loadFailure = new AtomicReference<>();
+    if (readingWhileLoading) {
+      startDecodeLoop(playbackVersion, active);
+    }
+
+    CompletableFuture<Void> loaded = new CompletableFuture<>();
 
-    playerManager.loadItem(trackLink, new AudioLoadResultHandler() {
+    manager.loadItem(trackLink, new AudioLoadResultHandler() {
       @Override
       public void trackLoaded(AudioTrack track) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
-          latch.countDown();
-          return;
+        if (isCurrentPlayback(active, playbackVersion)) {
+          play(track);
         }
-
-        applyWindowStart(track, trackDurationS, windowStartS);
-        durationMs = Math.max(1L, track.getDuration());
-        onTrackPrepared(track);
-        newPlayer.playTrack(track);
-        latch.countDown();
+        loaded.complete(null);
       }
 
       @Override
       public void playlistLoaded(AudioPlaylist playlist) {
-        if (!isCurrentPlayback(newPlayer, playbackVersion)) {
-          latch.countDown();
-          return;
-        }
-
         AudioTrack first = playlist.getTracks().isEmpty() ? null : playlist.getTracks().getFirst();
         if (first == null) {
-          loadFailure.set(new ResponseStatusException(NOT_FOUND, "Playlist was empty"));
-          latch.countDown();
+          loaded.completeExceptionally(new ResponseStatusException(NOT_FOUND, "Playlist was empty"));
           return;
         }
 
-        applyWindowStart(first, trackDurationS, windowStartS);
-        durationMs = Math.max(1L, first.getDuration());
-        onTrackPrepared(first);
-        newPlayer.playTrack(first);
-        latch.countDown();
+        if (isCurrentPlayback(active, playbackVersion)) {
+          play(first);
+        }
+        loaded.complete(null);
       }
 
       @Override
       public void noMatches() {
-        loadFailure.set(new ResponseStatusException(NOT_FOUND, "Track could not be loaded"));
-        latch.countDown();
+        loaded.completeExceptionally(new ResponseStatusException(NOT_FOUND, "Track could not be loaded"));
       }
 
       @Override
       public void loadFailed(FriendlyException e) {
-        loadFailure.set(new ResponseStatusException(BAD_GATEWAY, "Track loading failed"));
-        latch.countDown();
+        loaded.completeExceptionally(new ResponseStatusException(BAD_GATEWAY, "Track loading failed"));
       }
-    });
 
-    try {
-      if (!latch.await(TRACK_LOAD_TIMEOUT_S, TimeUnit.SECONDS)) {
-        throw new ResponseStatusException(GATEWAY_TIMEOUT, "Timeout loading track");
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Interrupted loading track");
-    }
+      private void play(AudioTrack track) {
+        long positionMs = clampStartMs(track.getDuration(), trackDurationS, startMs);
+        if (positionMs > 0) {
+          track.setPosition(positionMs);
+        }
 
-    ResponseStatusException failure = loadFailure.get();
-    if (failure != null) {
-      destroyQuietly(newPlayer);
-      throw failure;
-    }
+        // only a decode of the whole, finite track is worth keeping on disk; the writer is
+        // attached before the first frame, as the decode loop may already be reading
+        if (pcm && positionMs == 0 && !track.getInfo().isStream) {
+          tee.attach(pcmCache.openWriter(sourceKey));
+        }
 
-    if (!isCurrentPlayback(newPlayer, playbackVersion) || newPlayer.getPlayingTrack() == null) {
-      destroyQuietly(newPlayer);
-      throw new ResponseStatusException(NOT_FOUND, "Track could not be loaded");
-    }
+        durationMs = Math.max(1L, track.getDuration());
+        newSource.setTrack(track);
+        onSourcePrepared();
+        newPlayer.playTrack(track);
+      }
+    });
 
-    startDecodeLoop(playbackVersion, newPlayer);
+    // continues on the lavaplayer loader thread (or the timeout timer); nothing here blocks
+    return loaded
+            .orTimeout(TRACK_LOAD_TIMEOUT_S, TimeUnit.SECONDS)
+            .handle((ignored, error) -> {
+              boolean current = isCurrentPlayback(active, playbackVersion);
+
+              if (error == null && current && newPlayer.getPlayingTrack() != null) {
+                metrics.recordTrackLoad(PlaybackMetrics.DECODER, true, System.nanoTime() - startedAt);
+                if (!readingWhileLoading) {
+                  startDecodeLoop(playbackVersion, active);
+                }
+                return null;
+              }
+
+              releaseSource(active, playbackVersion);
+
+              if (!current) {
+                throw new CancellationException("Playback was replaced while loading");
+              }
+
+              metrics.recordTrackLoad(PlaybackMetrics.DECODER, false, System.nanoTime() - startedAt);
+
+              ResponseStatusException failure = toLoadFailure(error);
+              log.warn("[{}={}] track load failed: {}", label, sessionId, failure.getReason());
+              onLoadFailure(failure);
+              throw failure;
+            });
   }
 
-  protected final void startDecodeLoop(long playbackVersion, AudioPlayer playbackPlayer) {
-    decodeWorkers.submit(() -> {
-      boolean drainedToNaturalEnd = false;
+  /**
+   * Starts the decode loop of a playback. It only begins reading once the loop of the previous
+   * playback has stopped, so a source handed over by {@link #detachSource()} is never read by
+   * two loops at a time.
+   */
+  protected final void startDecodeLoop(long playbackVersion, PcmSource playbackSource) {
+    Counter framesDecoded = metrics.framesDecodedCounter(sessionLogLabel());
+    Future<?> previousLoop = decodeLoop;
+
+    decodeLoop = decodeWorkers.submit(() -> {
+      boolean reachedNaturalEnd = false;
+      byte[] pcm = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
 
       try {
+        awaitStopped(previousLoop);
+
         while (!Thread.currentThread().isInterrupted()) {
-          if (!isCurrentPlayback(playbackPlayer, playbackVersion)) {
+          if (!isCurrentPlayback(playbackSource, playbackVersion)) {
             break;
           }
 
-          AudioFrame frame = provideFrame(playbackPlayer);
-          if (frame != null) {
-            if (!isCurrentPlayback(playbackPlayer, playbackVersion)) {
+          if (paused) {
+            playbackSource.keepAlive();
+            awaitResume();
+            continue;
+          }
+
+          int length = playbackSource.read(pcm);
+
+          if (length > 0) {
+            if (!isCurrentPlayback(playbackSource, playbackVersion)) {
               break;
             }
 
-            AudioTrack currentTrack = playbackPlayer.getPlayingTrack();
-            Long positionMs = currentTrack != null ? Math.max(0L, currentTrack.getPosition()) : null;
-            onPcmFrame(frame.getData(), positionMs);
+            onPcmFrame(pcm, length, playbackSource.frameStartMs());
+            framesDecoded.increment();
             continue;
           }
 
-          if (trackFinished && isCurrentPlayback(playbackPlayer, playbackVersion)) {
-            drainAvailableFrames(playbackPlayer, playbackVersion);
-            drainedToNaturalEnd = true;
+          if (length == PcmSource.END_OF_TRACK) {
+            reachedNaturalEnd = true;
             break;
           }
         }
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
-      } finally {
-        if (!isCurrentPlayback(playbackPlayer, playbackVersion)) {
-          return;
+      } catch (RuntimeException e) {
+        log.error("[{}={}] decode loop failed: {}", sessionLogLabel(), sessionId, e.getMessage(), e);
+        if (isCurrentPlayback(playbackSource, playbackVersion)) {
+          onPlaybackFailure();
         }
-
-        if (drainedToNaturalEnd) {
-          onPlaybackCompleted(playbackPlayer, playbackVersion);
+      } finally {
+        if (reachedNaturalEnd && isCurrentPlayback(playbackSource, playbackVersion)) {
+          onPlaybackCompleted(playbackSource, playbackVersion);
         }
       }
     });
   }
 
-  private AudioFrame provideFrame(AudioPlayer playbackPlayer) {
-    try {
-      return playbackPlayer.provide(PCM_PROVIDE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-    } catch (TimeoutException e) {
-      return null;
-    } catch (UnsupportedOperationException e) {
-      AudioFrame frame = playbackPlayer.provide();
-      if (frame == null) {
-        sleepQuiet(PCM_FALLBACK_IDLE_SLEEP_MS);
-      }
-      return frame;
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+  /**
+   * Stops pulling frames without releasing the source, so listeners and the encoder stay
+   * attached and playback continues from the same position on resume.
+   */
+  protected final boolean pausePlayback() {
+    PcmSource currentSource = source;
+    if (currentSource == null) {
+      return false;
+    }
+
+    paused = true;
+    currentSource.setPaused(true);
+    return true;
+  }
+
+  protected final boolean resumePlayback() {
+    PcmSource currentSource = source;
+    if (currentSource == null) {
+      return false;
+    }
+
+    currentSource.setPaused(false);
+    signalResume();
+    return true;
+  }
+
+  protected final boolean seekPlayback(long positionMs) {
+    PcmSource currentSource = source;
+    if (currentSource == null) {
+      return false;
+    }
+
+    long target = Math.max(0L, positionMs);
+    long duration = durationMs;
+    if (duration > 0) {
+      target = Math.min(target, duration);
+    }
+
+    return currentSource.seek(target);
+  }
+
+  /**
+   * Ends the running playback and releases its source, including the lavaplayer player and
+   * its track executor, without clearing session state. The decode loop exits on its next
+   * frame; playback can later continue with {@link #beginPlayback} from the returned position.
+   *
+   * @return position the source had reached, or {@link #UNKNOWN_POSITION} if nothing was playing
+   */
+  protected final long suspendPlayback() {
+    PcmSource currentSource = source;
+    if (currentSource == null) {
+      return UNKNOWN_POSITION;
+    }
+
+    long positionMs = Math.max(0L, currentSource.positionMs());
+    releaseSource(currentSource, streamVersion);
+    signalResume();
+    return positionMs;
+  }
+
+  /**
+   * Takes the playing source away from its decode loop without closing it, so the next
+   * playback can keep reading it, e.g. to crossfade out of it. The loop stops on its next
+   * frame without waiting here; the next playback's loop reads the source once it has.
+   *
+   * @return the source, or null if nothing was playing
+   */
+  protected final PcmSource detachSource() {
+    PcmSource currentSource = source;
+    if (currentSource == null) {
       return null;
     }
+
+    source = null;
+    signalResume();
+    return currentSource;
   }
 
-  private void drainAvailableFrames(AudioPlayer playbackPlayer, long playbackVersion) throws InterruptedException {
-    AudioFrame leftover;
-    while ((leftover = playbackPlayer.provide()) != null) {
-      if (!isCurrentPlayback(playbackPlayer, playbackVersion)) {
-        break;
+  private void awaitStopped(Future<?> loop) throws InterruptedException {
+    if (loop == null) {
+      return;
+    }
+
+    try {
+      loop.get();
+    } catch (ExecutionException | CancellationException e) {
+      log.debug("[{}={}] previous decode loop ended with {}", sessionLogLabel(), sessionId, e.toString());
+    }
+  }
+
+  private void awaitResume() throws InterruptedException {
+    pauseLock.lock();
+    try {
+      if (paused) {
+        resumed.await(PAUSE_KEEPALIVE_MS, TimeUnit.MILLISECONDS);
       }
-      onPcmFrame(leftover.getData(), null);
+    } finally {
+      pauseLock.unlock();
+    }
+  }
+
+  private void signalResume() {
+    pauseLock.lock();
+    try {
+      paused = false;
+      resumed.signalAll();
+    } finally {
+      pauseLock.unlock();
     }
   }
 
   protected final void scheduleCleanup(long ttlSeconds) {
+    scheduleCleanup(ttlSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Removes the session after {@code delay} unless {@link #cancelCleanup()} or a new
+   * playback cancels it first.
+   */
+  protected final void scheduleCleanup(long delay, TimeUnit unit) {
     cancelCleanup();
-    cleanupFuture = scheduler.schedule(this::removeThisSession, ttlSeconds, TimeUnit.SECONDS);
+    cleanupFuture = scheduler.schedule(this::removeThisSession, delay, unit);
   }
 
-  protected final void cancelCleanup() {
+  /**
+   * @return false if the scheduled cleanup has already started and the session is going away
+   */
+  protected final boolean cancelCleanup() {
     ScheduledFuture<?> future = cleanupFuture;
-    if (future != null) {
-      future.cancel(false);
-      cleanupFuture = null;
+    if (future == null) {
+      return true;
     }
-  }
 
-  protected final void destroyPlayerOnly(AudioPlayer candidate, long playbackVersion) {
-    if (!isCurrentPlayback(candidate, playbackVersion)) {
-      destroyQuietly(candidate);
-      return;
-    }
+    cleanupFuture = null;
+    return future.cancel(false);
+  }
 
-    destroyQuietly(candidate);
+  protected final void releaseSource(PcmSource candidate, long playbackVersion) {
+    candidate.close();
 
-    if (player == candidate) {
-      player = null;
+    if (isCurrentPlayback(candidate, playbackVersion)) {
+      source = null;
     }
-
-    trackFinished = false;
   }
 
   protected final void stopInternal() {
     cancelCleanup();
 
-    AudioPlayer currentPlayer = player;
-    if (currentPlayer != null) {
-      destroyQuietly(currentPlayer);
-      player = null;
+    PcmSource currentSource = source;
+    if (currentSource != null) {
+      currentSource.close();
+      source = null;
     }
 
+    signalResume();
     durationMs = 0L;
-    trackFinished = false;
     clearSubclassState();
   }
 
   protected final void removeThisSession() {
     stopInternal();
+
+    PlaybackAdmission.Permit permit = admissionPermit;
+    if (permit != null) {
+      permit.release();
+    }
+
     removeFromManager();
   }
 
-  protected final boolean isCurrentPlayback(AudioPlayer candidate, long playbackVersion) {
-    return player == candidate && streamVersion == playbackVersion;
+  protected final boolean isCurrentPlayback(PcmSource candidate, long playbackVersion) {
+    return source == candidate && streamVersion == playbackVersion;
   }
 
-  protected void onTrackPrepared(AudioTrack track) {
-    // optional hook
+  /**
+   * Lets a session wrap the raw source, e.g. to shape the PCM, before the decode loop reads
+   * from it. The raw source has already been positioned at the start position.
+   */
+  protected PcmSource decorate(PcmSource rawSource) {
+    return rawSource;
+  }
+
+  /**
+   * Whether {@code active}, as returned by {@link #decorate}, has audio before its track is
+   * loaded, e.g. the tail of the track it replaces. Its decode loop then starts right away
+   * instead of once the track is resolved.
+   */
+  protected boolean playsWhileLoading(PcmSource active) {
+    return false;
   }
 
-  protected void onTrackStarted(AudioTrack track) {
+  /**
+   * Whether the next playback decodes to PCM. Sessions that return false get the frames of
+   * {@link #playerManagerForPlayback()} unchanged, e.g. Opus packets, in
+   * {@link #onPcmFrame}; the PCM cache and {@link #decorate} are skipped for them.
+   */
+  protected boolean decodesToPcm() {
+    return true;
+  }
+
+  /**
+   * Player manager the next playback loads its track with; its output format decides what
+   * the decode loop receives.
+   */
+  protected AudioPlayerManager playerManagerForPlayback() {
+    return playerManager;
+  }
+
+  /**
+   * Called once the duration of the new source is known.
+   */
+  protected void onSourcePrepared() {
     // optional hook
   }
 
@@ -317,48 +551,56 @@ abstract class AbstractAudioDecodeSession {
     removeThisSession();
   }
 
+  /**
+   * Called when resolving the track failed or timed out; the source is already closed.
+   */
+  protected void onLoadFailure(ResponseStatusException failure) {
+    removeThisSession();
+  }
+
   protected abstract String sessionLogLabel();
 
-  protected abstract void onPcmFrame(byte[] pcm, Long positionMs) throws InterruptedException;
+  /**
+   * Called on the decode thread for every PCM frame, or every encoded frame when the playback
+   * does not {@link #decodesToPcm() decode to PCM}. {@code pcm} is a reused scratch buffer
+   * that is only valid for the duration of the call; implementations must copy what they keep.
+   *
+   * @param positionMs track position of the frame start, or {@link #UNKNOWN_POSITION}
+   */
+  protected abstract void onPcmFrame(byte[] pcm, int length, long positionMs) throws InterruptedException;
 
-  protected abstract void onPlaybackCompleted(AudioPlayer playbackPlayer, long playbackVersion);
+  protected abstract void onPlaybackCompleted(PcmSource playbackSource, long playbackVersion);
 
   protected abstract void clearSubclassState();
 
   protected abstract void removeFromManager();
 
-  private static void applyWindowStart(AudioTrack track, int trackDurationS, Long windowStartS) {
-    if (windowStartS == null || windowStartS <= 0) {
-      return;
-    }
+  private static ResponseStatusException toLoadFailure(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
 
-    long startMs = windowStartS * 1000L;
-    long duration = track.getDuration() > 0 ? track.getDuration() : (long) trackDurationS * 1000L;
-
-    if (duration > 0) {
-      startMs = Math.min(startMs, Math.max(0L, duration - 1000L));
+    if (cause instanceof ResponseStatusException statusException) {
+      return statusException;
     }
-
-    track.setPosition(startMs);
-  }
-
-  protected static void sleepQuiet(long ms) {
-    try {
-      Thread.sleep(ms);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+    if (cause instanceof TimeoutException) {
+      return new ResponseStatusException(GATEWAY_TIMEOUT, "Timeout loading track");
+    }
+    if (cause == null) {
+      return new ResponseStatusException(NOT_FOUND, "Track could not be loaded");
     }
+    return new ResponseStatusException(BAD_GATEWAY, "Track loading failed");
   }
 
-  protected static void destroyQuietly(AudioPlayer audioPlayer) {
-    try {
-      audioPlayer.stopTrack();
-    } catch (Exception ignored) {
+  private static long clampStartMs(long sourceDurationMs, int trackDurationS, long startMs) {
+    if (startMs <= 0) {
+      return 0L;
     }
 
-    try {
-      audioPlayer.destroy();
-    } catch (Exception ignored) {
+    long duration = sourceDurationMs > 0 ? sourceDurationMs : (long) trackDurationS * 1000L;
+
+    if (duration > 0) {
+      return Math.min(startMs, Math.max(0L, duration - 1000L));
     }
+
+    return startMs;
   }
-}
\ No newline at end of file
+}
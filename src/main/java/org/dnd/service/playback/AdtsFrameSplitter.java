@@ -0,0 +1,48 @@
+package org.dnd.service.playback;
+
+/**
+ * Re-frames the encoder's ADTS byte stream into whole AAC frames; every ADTS header carries
+ * the length of its frame.
+ */
+final class AdtsFrameSplitter extends EncodedFrameSplitter {
+
+  private static final int HEADER_BYTES = 7;
+  private static final int MAX_SAMPLE_RATE_INDEX = 12;
+
+  AdtsFrameSplitter(FrameSink sink) {
+    super(sink, HEADER_BYTES);
+  }
+
+  @Override
+  protected int frameLength(byte[] buffer, int offset, int available) {
+    return frameLengthAt(buffer, offset);
+  }
+
+  /**
+   * @return length of the ADTS frame starting at {@code offset} including its header, or -1
+   * when the bytes at {@code offset} are not a valid ADTS header
+   */
+  static int frameLengthAt(byte[] buffer, int offset) {
+    int b0 = buffer[offset] & 0xFF;
+    int b1 = buffer[offset + 1] & 0xFF;
+    int b2 = buffer[offset + 2] & 0xFF;
+
+    // 12-bit sync word, then layer bits that are always 0
+    if (b0 != 0xFF || (b1 & 0xF6) != 0xF0) {
+      return -1;
+    }
+
+    int sampleRateIndex = (b2 >> 2) & 0x0F;
+    if (sampleRateIndex > MAX_SAMPLE_RATE_INDEX) {
+      return -1;
+    }
+
+    int length = ((buffer[offset + 3] & 0x03) << 11)
+            | ((buffer[offset + 4] & 0xFF) << 3)
+            | ((buffer[offset + 5] & 0xE0) >> 5);
+    boolean crcPresent = (b1 & 0x01) == 0;
+    int headerLength = crcPresent ? HEADER_BYTES + 2 : HEADER_BYTES;
+
+    return length > headerLength ? length : -1;
+  }
+}
@@ -0,0 +1,87 @@
+package org.dnd.service.playback;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PCM replayed from a {@link PcmDiskCache} entry. Frames are copied straight out of the
+ * mapped file, so a cached track never touches lavaplayer or the network and seeks are
+ * immediate.
+ */
+final class CachedPcmSource implements PcmSource {
+
+  static final int BYTES_PER_MS = 48 * 2 * 2;
+  private static final int BYTES_PER_SAMPLE_FRAME = 4;
+  private static final int NO_PENDING_SEEK = -1;
+
+  private final ByteBuffer pcm;
+  private final int length;
+  private final AtomicInteger pendingSeekOffset = new AtomicInteger(NO_PENDING_SEEK);
+
+  private volatile int offset;
+  private volatile long frameStartMs;
+
+  CachedPcmSource(ByteBuffer pcm) {
+    this.pcm = pcm;
+    this.length = pcm.limit();
+  }
+
+  @Override
+  public boolean seek(long positionMs) {
+    long target = Math.max(0L, positionMs) * BYTES_PER_MS;
+    target -= target % BYTES_PER_SAMPLE_FRAME;
+    pendingSeekOffset.set((int) Math.min(target, length));
+    return true;
+  }
+
+  @Override
+  public int read(byte[] target) {
+    int start = pendingSeekOffset.getAndSet(NO_PENDING_SEEK);
+    if (start == NO_PENDING_SEEK) {
+      start = offset;
+    }
+
+    if (start >= length) {
+      offset = start;
+      return END_OF_TRACK;
+    }
+
+    int frameLength = Math.min(PcmBroadcastBuffer.MAX_FRAME_BYTES, length - start);
+    pcm.get(start, target, 0, frameLength);
+
+    frameStartMs = start / BYTES_PER_MS;
+    offset = start + frameLength;
+    return frameLength;
+  }
+
+  @Override
+  public long frameStartMs() {
+    return frameStartMs;
+  }
+
+  @Override
+  public long positionMs() {
+    int pending = pendingSeekOffset.get();
+    return (pending != NO_PENDING_SEEK ? pending : offset) / BYTES_PER_MS;
+  }
+
+  @Override
+  public long durationMs() {
+    return length / BYTES_PER_MS;
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    // nothing decodes ahead, so there is nothing to hold back
+  }
+
+  @Override
+  public void keepAlive() {
+    // no external resource to keep alive
+  }
+
+  @Override
+  public void close() {
+    // the mapping is released with the buffer
+  }
+}
@@ -0,0 +1,218 @@
+package org.dnd.service.playback;
+
+/**
+ * Splices the next track of a board onto the one it replaces: over the first samples of the
+ * incoming track, it fades in while the rest of the outgoing track fades out underneath it.
+ * Position, duration and seeking are those of the incoming track; the outgoing track is
+ * closed once it has faded out, or as soon as the incoming track is seeked or ends.
+ * <p>
+ * Until the incoming track has its first frame, e.g. while it is still loading, the outgoing
+ * track plays on alone, so a slow load holds the old track instead of a gap; the fade starts
+ * with that first frame.
+ * <p>
+ * Each track is scaled by its own normalization gain before the two are mixed, so the tail of
+ * the outgoing track keeps the loudness it was playing at. Frames mixed here only need the
+ * board volume applied afterwards, see {@link #lastFrameMixed()}.
+ */
+final class CrossfadePcmSource implements PcmSource {
+
+  private static final int SAMPLES_PER_MS = 48;
+  private static final int BYTES_PER_SAMPLE_FRAME = 4;
+  private static final long INCOMING_POLL_MS = 10;
+
+  private final PcmSource incoming;
+  private final float outgoingGain;
+  private final float incomingGain;
+  private final long fadeSamples;
+  private final byte[] fading = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+  private final byte[] carry = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+  private volatile PcmSource outgoing;
+  private long fadedSamples;
+  private int carryOffset;
+  private int carryLength;
+  private boolean lastFrameMixed;
+  private boolean incomingStarted;
+
+  CrossfadePcmSource(PcmSource outgoing, float outgoingGain, PcmSource incoming, float incomingGain, long fadeMs) {
+    this.outgoing = outgoing;
+    this.outgoingGain = outgoingGain;
+    this.incoming = incoming;
+    this.incomingGain = incomingGain;
+    this.fadeSamples = Math.max(1L, fadeMs * SAMPLES_PER_MS);
+  }
+
+  @Override
+  public int read(byte[] target) throws InterruptedException {
+    int length = incoming.read(target);
+    lastFrameMixed = false;
+    if (length == END_OF_TRACK) {
+      finishFade();
+      return length;
+    }
+
+    if (length <= 0) {
+      return incomingStarted ? length : playOutgoingAlone(target);
+    }
+
+    incomingStarted = true;
+    if (fadedSamples >= fadeSamples) {
+      return length;
+    }
+
+    // the incoming track keeps fading in even when the outgoing one runs out early
+    PcmSource fadingOut = outgoing;
+    int outgoingBytes = fadingOut != null ? readOutgoing(fadingOut, length) : 0;
+    mix(target, length, outgoingBytes);
+    lastFrameMixed = true;
+
+    fadedSamples += length / BYTES_PER_SAMPLE_FRAME;
+    if (fadedSamples >= fadeSamples) {
+      finishFade();
+    }
+    return length;
+  }
+
+  /**
+   * Whether the frame returned by the last {@link #read} went through the mix and so already
+   * carries the track gains; later frames are the incoming track untouched.
+   */
+  boolean lastFrameMixed() {
+    return lastFrameMixed;
+  }
+
+  @Override
+  public long frameStartMs() {
+    return incoming.frameStartMs();
+  }
+
+  @Override
+  public long positionMs() {
+    return incoming.positionMs();
+  }
+
+  @Override
+  public long durationMs() {
+    return incoming.durationMs();
+  }
+
+  @Override
+  public boolean seek(long positionMs) {
+    finishFade();
+    return incoming.seek(positionMs);
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    PcmSource fadingOut = outgoing;
+    if (fadingOut != null) {
+      fadingOut.setPaused(paused);
+    }
+    incoming.setPaused(paused);
+  }
+
+  @Override
+  public void keepAlive() {
+    PcmSource fadingOut = outgoing;
+    if (fadingOut != null) {
+      fadingOut.keepAlive();
+    }
+    incoming.keepAlive();
+  }
+
+  @Override
+  public void close() {
+    finishFade();
+    incoming.close();
+  }
+
+  /**
+   * Plays the next frame of the outgoing track at its own gain while the incoming one has
+   * nothing yet. Once the outgoing track has ended too there is nothing to play until the
+   * incoming one starts, so this waits a little instead of spinning the decode loop.
+   */
+  private int playOutgoingAlone(byte[] target) throws InterruptedException {
+    PcmSource fadingOut = outgoing;
+    int length = fadingOut != null ? readOutgoing(fadingOut, fading.length) : 0;
+    if (length == 0) {
+      if (outgoing == null) {
+        Thread.sleep(INCOMING_POLL_MS);
+      }
+      return NO_FRAME;
+    }
+
+    System.arraycopy(fading, 0, target, 0, length);
+    if (outgoingGain != 1f) {
+      PcmGainStage.scale(target, length, outgoingGain);
+    }
+    lastFrameMixed = true;
+    return length;
+  }
+
+  /**
+   * Collects up to {@code length} bytes of the outgoing track into {@link #fading}. Frames of
+   * the two tracks need not line up, so what is left of an outgoing frame carries over.
+   *
+   * @return bytes collected; fewer than asked when the outgoing track has nothing ready or ended
+   */
+  private int readOutgoing(PcmSource fadingOut, int length) throws InterruptedException {
+    int wanted = Math.min(length, fading.length);
+    int collected = 0;
+
+    while (collected < wanted) {
+      if (carryOffset == carryLength) {
+        int read = fadingOut.read(carry);
+        if (read == END_OF_TRACK) {
+          finishFade();
+          break;
+        }
+        if (read <= 0) {
+          break;
+        }
+        carryOffset = 0;
+        carryLength = read;
+      }
+
+      int count = Math.min(wanted - collected, carryLength - carryOffset);
+      System.arraycopy(carry, carryOffset, fading, collected, count);
+      collected += count;
+      carryOffset += count;
+    }
+    return collected;
+  }
+
+  private void mix(byte[] pcm, int length, int outgoingBytes) {
+    int samples = length / BYTES_PER_SAMPLE_FRAME;
+
+    // the whole frame takes the incoming gain, including what follows the end of the fade
+    for (int i = 0; i < samples; i++) {
+      long position = fadedSamples + i;
+      float fade = position < fadeSamples ? (float) position / fadeSamples : 1f;
+      float inScale = incomingGain * fade;
+      float outScale = outgoingGain * (1f - fade);
+      int offset = i * BYTES_PER_SAMPLE_FRAME;
+      boolean overlap = offset + BYTES_PER_SAMPLE_FRAME <= outgoingBytes;
+
+      for (int channel = 0; channel < BYTES_PER_SAMPLE_FRAME; channel += 2) {
+        int in = sample(pcm, offset + channel);
+        int out = overlap ? sample(fading, offset + channel) : 0;
+        int mixed = Math.round(in * inScale + out * outScale);
+        mixed = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mixed));
+        pcm[offset + channel] = (byte) (mixed >> 8);
+        pcm[offset + channel + 1] = (byte) mixed;
+      }
+    }
+  }
+
+  private void finishFade() {
+    PcmSource fadingOut = outgoing;
+    outgoing = null;
+    if (fadingOut != null) {
+      fadingOut.close();
+    }
+  }
+
+  private static int sample(byte[] pcm, int offset) {
+    return (short) ((pcm[offset] << 8) | (pcm[offset + 1] & 0xFF));
+  }
+}
@@ -0,0 +1,69 @@
+package org.dnd.service.playback;
+
+/**
+ * Fan-out of whole encoded frames from the session encoder to its listeners.
+ * Because only complete frames are stored, a late joiner always starts on a frame boundary.
+ */
+final class EncodedFrameBuffer {
+
+  /**
+   * Rolling history replayed to newly attached listeners.
+   */
+  private static final int HISTORY_MAX_FRAMES = 420;          // ~10s of 1152-sample frames at 48kHz
+
+  private static final int RING_FRAMES = 1024;
+
+  /**
+   * Largest Layer III frame (320 kbps at 32 kHz, padded) rounded up.
+   */
+  static final int MAX_FRAME_BYTES = 1536;
+
+  private final SlabRing ring;
+
+  EncodedFrameBuffer(SlowConsumerPolicy slowConsumerPolicy) {
+    this(slowConsumerPolicy, MAX_FRAME_BYTES);
+  }
+
+  /**
+   * @param maxFrameBytes largest frame the buffer accepts, for formats other than MP3
+   */
+  EncodedFrameBuffer(SlowConsumerPolicy slowConsumerPolicy, int maxFrameBytes) {
+    this.ring = new SlabRing(RING_FRAMES, maxFrameBytes, HISTORY_MAX_FRAMES, slowConsumerPolicy);
+  }
+
+  int maxFrameBytes() {
+    return ring.slabBytes();
+  }
+
+  void append(byte[] buffer, int offset, int length) {
+    ring.publish(buffer, offset, length);
+  }
+
+  /**
+   * Registers a listener positioned at the start of the encoded history; history and live
+   * frames come from the same cursor, so nothing is lost or duplicated between the two.
+   */
+  SlabRing.Cursor subscribe() {
+    return ring.openCursor();
+  }
+
+  void unsubscribe(SlabRing.Cursor cursor) {
+    ring.closeCursor(cursor);
+  }
+
+  int listenerCount() {
+    return ring.cursorCount();
+  }
+
+  boolean isComplete() {
+    return ring.isComplete();
+  }
+
+  void clear() {
+    ring.clear();
+  }
+
+  void markComplete() {
+    ring.markComplete();
+  }
+}
@@ -0,0 +1,80 @@
+package org.dnd.service.playback;
+
+import java.util.Arrays;
+
+/**
+ * Re-frames the raw byte stream produced by an encoder into whole frames of its container, so
+ * the {@link EncodedFrameBuffer} only ever holds complete frames. Bytes that do not belong to a
+ * valid frame (tags, garbage after a restart) are skipped until the next frame header.
+ */
+abstract class EncodedFrameSplitter {
+
+  /**
+   * Returned by {@link #frameLength} when the header continues past the bytes available.
+   */
+  protected static final int NEED_MORE_BYTES = 0;
+
+  private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
+
+  @FunctionalInterface
+  interface FrameSink {
+    void onFrame(byte[] buffer, int offset, int length) throws InterruptedException;
+  }
+
+  protected final FrameSink sink;
+  private final int minHeaderBytes;
+
+  private byte[] pending = new byte[INITIAL_BUFFER_BYTES];
+  private int pendingLength;
+
+  protected EncodedFrameSplitter(FrameSink sink, int minHeaderBytes) {
+    this.sink = sink;
+    this.minHeaderBytes = minHeaderBytes;
+  }
+
+  final void feed(byte[] chunk, int offset, int length) throws InterruptedException {
+    ensureCapacity(pendingLength + length);
+    System.arraycopy(chunk, offset, pending, pendingLength, length);
+    pendingLength += length;
+
+    int position = 0;
+    while (pendingLength - position >= minHeaderBytes) {
+      int frameLength = frameLength(pending, position, pendingLength - position);
+      if (frameLength < 0) {
+        position++;
+        continue;
+      }
+
+      if (frameLength == NEED_MORE_BYTES || position + frameLength > pendingLength) {
+        break;
+      }
+
+      emit(pending, position, frameLength);
+      position += frameLength;
+    }
+
+    if (position > 0) {
+      System.arraycopy(pending, position, pending, 0, pendingLength - position);
+      pendingLength -= position;
+    }
+  }
+
+  /**
+   * @return length of the frame starting at {@code offset} including its header, -1 when the
+   * bytes there are not a frame header, or {@link #NEED_MORE_BYTES}
+   */
+  protected abstract int frameLength(byte[] buffer, int offset, int available);
+
+  /**
+   * Hands a whole frame on; containers whose frames are not the unit listeners need override it.
+   */
+  protected void emit(byte[] buffer, int offset, int length) throws InterruptedException {
+    sink.onFrame(buffer, offset, length);
+  }
+
+  private void ensureCapacity(int required) {
+    if (required > pending.length) {
+      pending = Arrays.copyOf(pending, Math.max(required, pending.length * 2));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.dnd.service.playback;
+
+import org.dnd.api.model.StreamFormat;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Output codec, bitrate and container of one session encoder. A session runs at most one
+ * encoder per profile, shared by every listener that asked for it.
+ */
+enum EncoderProfile {
+
+  MP3(192, "audio/mpeg", 2, EncodedFrameBuffer.MAX_FRAME_BYTES, Mp3FrameSplitter::new,
+          List.of("-codec:a", "libmp3lame", "-b:a", "192k",
+                  "-write_xing", "0", "-id3v2_version", "0", "-f", "mp3")),
+
+  /**
+   * LAME V5, around 130 kbps on typical material and less on quiet ambience.
+   */
+  MP3_VBR(130, "audio/mpeg", 2, EncodedFrameBuffer.MAX_FRAME_BYTES, Mp3FrameSplitter::new,
+          List.of("-codec:a", "libmp3lame", "-q:a", "5",
+                  "-write_xing", "0", "-id3v2_version", "0", "-f", "mp3")),
+
+  AAC(96, "audio/aac", 2, 8192, AdtsFrameSplitter::new,
+          List.of("-codec:a", "aac", "-b:a", "96k", "-f", "adts")),
+
+  OPUS_96(96, "audio/ogg", 2, PcmBroadcastBuffer.MAX_FRAME_BYTES, OggPacketSplitter::new,
+          opusArguments("96k")),
+
+  OPUS_64(64, "audio/ogg", 2, PcmBroadcastBuffer.MAX_FRAME_BYTES, OggPacketSplitter::new,
+          opusArguments("64k")),
+
+  /**
+   * Mono Opus for background boards: rain, taverns and crowds lose little without stereo.
+   */
+  AMBIENCE(24, "audio/ogg", 1, PcmBroadcastBuffer.MAX_FRAME_BYTES, OggPacketSplitter::new,
+          withMono(opusArguments("24k")));
+
+  private final int bitrateKbps;
+  private final MediaType mediaType;
+  private final int channels;
+  private final int maxFrameBytes;
+  private final Function<EncodedFrameSplitter.FrameSink, EncodedFrameSplitter> splitterFactory;
+  private final List<String> outputArguments;
+
+  EncoderProfile(int bitrateKbps,
+                 String mediaType,
+                 int channels,
+                 int maxFrameBytes,
+                 Function<EncodedFrameSplitter.FrameSink, EncodedFrameSplitter> splitterFactory,
+                 List<String> outputArguments) {
+    this.bitrateKbps = bitrateKbps;
+    this.mediaType = MediaType.parseMediaType(mediaType);
+    this.channels = channels;
+    this.maxFrameBytes = maxFrameBytes;
+    this.splitterFactory = splitterFactory;
+    this.outputArguments = outputArguments;
+  }
+
+  /**
+   * Encoded profile for {@code format}; {@link StreamFormat#OPUS} maps to 96 kbps Opus for
+   * sessions that cannot pass the source through.
+   */
+  static EncoderProfile of(StreamFormat format) {
+    if (format == null) {
+      return MP3;
+    }
+
+    return switch (format) {
+      case MP3 -> MP3;
+      case MP3_VBR -> MP3_VBR;
+      case AAC -> AAC;
+      case OPUS -> OPUS_96;
+      case OPUS_64 -> OPUS_64;
+      case AMBIENCE -> AMBIENCE;
+    };
+  }
+
+  int bitrateKbps() {
+    return bitrateKbps;
+  }
+
+  MediaType mediaType() {
+    return mediaType;
+  }
+
+  int maxFrameBytes() {
+    return maxFrameBytes;
+  }
+
+  /**
+   * Whether the encoded frames are bare Opus packets that listeners wrap into Ogg.
+   */
+  boolean muxesOgg() {
+    return mediaType.getSubtype().equals("ogg");
+  }
+
+  int channels() {
+    return channels;
+  }
+
+  EncodedFrameSplitter newSplitter(EncodedFrameSplitter.FrameSink sink) {
+    return splitterFactory.apply(sink);
+  }
+
+  /**
+   * ffmpeg arguments after {@code -i pipe:0}, up to but excluding the output.
+   */
+  List<String> outputArguments() {
+    return outputArguments;
+  }
+
+  private static List<String> opusArguments(String bitrate) {
+    // one page per 20 ms packet; ffmpeg would otherwise hold packets back for a second
+    return List.of("-codec:a", "libopus", "-b:a", bitrate, "-frame_duration", "20",
+            "-page_duration", "20000", "-f", "ogg");
+  }
+
+  private static List<String> withMono(List<String> arguments) {
+    return Stream.concat(Stream.of("-ac", "1"), arguments.stream()).toList();
+  }
+}
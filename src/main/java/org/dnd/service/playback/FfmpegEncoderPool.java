@@ -0,0 +1,170 @@
+package org.dnd.service.playback;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a few ffmpeg encoders of the default {@link EncoderProfile#MP3} profile spawned and idle,
+ * blocked on their empty stdin, so a new stream claims a ready process instead of paying
+ * fork/exec and codec setup before its first byte. Claimed processes are replaced in the
+ * background; when the pool is empty or disabled ({@code playback.encoder-pool.size=0}), and
+ * for every other profile, the caller spawns one itself.
+ */
+@Slf4j
+@Component
+public class FfmpegEncoderPool {
+
+  private static final int PCM_SAMPLE_RATE = 48000;
+  private static final int PCM_CHANNELS = 2;
+  private static final EncoderProfile POOLED_PROFILE = EncoderProfile.MP3;
+
+  private final int size;
+  private final Launcher launcher;
+  private final PlaybackMetrics metrics;
+
+  private final ConcurrentLinkedQueue<Process> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+  private ExecutorService refiller;
+  private volatile boolean closed;
+
+  @Autowired
+  public FfmpegEncoderPool(PlaybackConfiguration playbackConfiguration, PlaybackMetrics metrics) {
+    this(playbackConfiguration.getEncoderPoolSize(), FfmpegEncoderPool::startFfmpeg, metrics);
+  }
+
+  FfmpegEncoderPool(int size, Launcher launcher, PlaybackMetrics metrics) {
+    this.size = Math.max(0, size);
+    this.launcher = launcher;
+    this.metrics = metrics;
+  }
+
+  @PostConstruct
+  void init() {
+    refiller = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("playback-encoder-pool")
+            .daemon(true)
+            .factory());
+    metrics.gaugeEncoderPool(idle);
+    refill();
+  }
+
+  @PreDestroy
+  void shutdown() {
+    closed = true;
+    if (refiller != null) {
+      refiller.shutdownNow();
+    }
+    destroyIdle();
+  }
+
+  /**
+   * Hands out a running encoder for {@code profile} that has not consumed any input yet. The
+   * caller owns the process from here on.
+   */
+  Process claim(EncoderProfile profile) throws IOException {
+    if (profile != POOLED_PROFILE) {
+      metrics.recordEncoderClaim(false);
+      return launcher.start(profile);
+    }
+
+    Process process;
+    while ((process = idle.poll()) != null) {
+      if (process.isAlive()) {
+        metrics.recordEncoderClaim(true);
+        refill();
+        return process;
+      }
+      log.debug("Discarding pooled ffmpeg encoder that exited with {}", process.exitValue());
+    }
+
+    metrics.recordEncoderClaim(false);
+    refill();
+    return launcher.start(profile);
+  }
+
+  /**
+   * Starts an encoder for {@code profile} outside the pool, for offline work that should not
+   * take a warm process away from a live stream.
+   */
+  Process spawn(EncoderProfile profile) throws IOException {
+    return launcher.start(profile);
+  }
+
+  int idleCount() {
+    return idle.size();
+  }
+
+  private void refill() {
+    if (size == 0 || closed || refiller == null || !refilling.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refiller.execute(this::spawnMissing);
+    } catch (RejectedExecutionException e) {
+      refilling.set(false);
+    }
+  }
+
+  private void spawnMissing() {
+    try {
+      while (!closed && idle.size() < size) {
+        idle.add(launcher.start(POOLED_PROFILE));
+      }
+    } catch (IOException e) {
+      log.warn("Could not pre-spawn ffmpeg encoder: {}", e.getMessage());
+      return;
+    } finally {
+      refilling.set(false);
+    }
+
+    if (closed) {
+      // shutdown() may have drained the queue before the last spawn landed in it
+      destroyIdle();
+    } else if (idle.size() < size) {
+      // a claim raced the end of this round
+      refill();
+    }
+  }
+
+  private void destroyIdle() {
+    Process process;
+    while ((process = idle.poll()) != null) {
+      process.destroyForcibly();
+    }
+  }
+
+  private static Process startFfmpeg(EncoderProfile profile) throws IOException {
+    List<String> command = new ArrayList<>(List.of(
+            "ffmpeg", "-hide_banner", "-loglevel", "error",
+            "-f", "s16be", "-ar", String.valueOf(PCM_SAMPLE_RATE), "-ac", String.valueOf(PCM_CHANNELS),
+            "-i", "pipe:0",
+            "-vn", "-map_metadata", "-1"
+    ));
+    command.addAll(profile.outputArguments());
+    command.add("pipe:1");
+
+    ProcessBuilder processBuilder = new ProcessBuilder(command);
+    processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    return processBuilder.start();
+  }
+
+  @FunctionalInterface
+  interface Launcher {
+    Process start(EncoderProfile profile) throws IOException;
+  }
+}
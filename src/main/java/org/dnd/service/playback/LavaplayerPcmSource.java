@@ -0,0 +1,168 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * PCM pulled from a lavaplayer {@link AudioPlayer}. lavaplayer writes each frame into
+ * {@link #buffer} through the {@link MutableAudioFrame}, and it is copied once into the
+ * caller's array, so steady-state decoding does not allocate.
+ */
+final class LavaplayerPcmSource implements PcmSource {
+
+  private static final long PCM_PROVIDE_TIMEOUT_MS = 50;
+  private static final long PCM_FALLBACK_IDLE_SLEEP_MS = 15;
+
+  private final AudioPlayer player;
+  private final ByteBuffer buffer = ByteBuffer.allocate(PcmBroadcastBuffer.MAX_FRAME_BYTES);
+  private final MutableAudioFrame frame = new MutableAudioFrame();
+
+  private volatile AudioTrack track;
+  private volatile boolean trackFinished;
+  private volatile long durationMs;
+  private volatile long frameStartMs;
+
+  LavaplayerPcmSource(AudioPlayer player) {
+    this.player = player;
+    this.frame.setBuffer(buffer);
+  }
+
+  AudioPlayer player() {
+    return player;
+  }
+
+  void markFinished() {
+    trackFinished = true;
+  }
+
+  void setTrack(AudioTrack track) {
+    this.track = track;
+    this.durationMs = Math.max(1L, track.getDuration());
+  }
+
+  void setDurationMs(long durationMs) {
+    this.durationMs = durationMs;
+  }
+
+  @Override
+  public int read(byte[] target) throws InterruptedException {
+    if (provideFrame()) {
+      return copyOut(target);
+    }
+
+    if (!trackFinished) {
+      return NO_FRAME;
+    }
+
+    // the track ended; hand out whatever lavaplayer still buffered, then report the end
+    buffer.clear();
+    if (player.provide(frame)) {
+      return copyOut(target);
+    }
+
+    return END_OF_TRACK;
+  }
+
+  @Override
+  public long frameStartMs() {
+    return frameStartMs;
+  }
+
+  @Override
+  public long positionMs() {
+    AudioTrack track = player.getPlayingTrack();
+    return track != null ? track.getPosition() : frameStartMs;
+  }
+
+  @Override
+  public long durationMs() {
+    return durationMs;
+  }
+
+  /**
+   * Seeks the playing track, or replays a clone of it once it has ended so a window can loop.
+   */
+  @Override
+  public boolean seek(long positionMs) {
+    AudioTrack playing = player.getPlayingTrack();
+    if (playing != null) {
+      if (!playing.isSeekable()) {
+        return false;
+      }
+      playing.setPosition(positionMs);
+      return true;
+    }
+
+    AudioTrack ended = track;
+    if (ended == null || !ended.isSeekable()) {
+      return false;
+    }
+
+    AudioTrack replay = ended.makeClone();
+    replay.setPosition(positionMs);
+    track = replay;
+    trackFinished = false;
+    player.playTrack(replay);
+    return true;
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    player.setPaused(paused);
+  }
+
+  /**
+   * lavaplayer stops tracks whose player has not been polled for a while. A non-blocking
+   * provide on a paused player never returns audio but still counts as a poll.
+   */
+  @Override
+  public void keepAlive() {
+    if (!player.isPaused()) {
+      return;
+    }
+
+    buffer.clear();
+    player.provide(frame);
+  }
+
+  @Override
+  public void close() {
+    try {
+      player.stopTrack();
+    } catch (Exception ignored) {
+    }
+
+    try {
+      player.destroy();
+    } catch (Exception ignored) {
+    }
+  }
+
+  private boolean provideFrame() throws InterruptedException {
+    buffer.clear();
+
+    try {
+      return player.provide(frame, PCM_PROVIDE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      return false;
+    } catch (UnsupportedOperationException e) {
+      boolean provided = player.provide(frame);
+      if (!provided) {
+        Thread.sleep(PCM_FALLBACK_IDLE_SLEEP_MS);
+      }
+      return provided;
+    }
+  }
+
+  private int copyOut(byte[] target) {
+    int length = frame.getDataLength();
+    frame.getData(target, 0);
+    frameStartMs = frame.getTimecode();
+    return length;
+  }
+}
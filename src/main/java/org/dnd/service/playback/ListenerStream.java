@@ -0,0 +1,197 @@
+package org.dnd.service.playback;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The response body of one listener, read straight off its cursor on the thread that writes
+ * the response. Spring copies resource bodies with {@link InputStream#transferTo}, which here
+ * writes every frame (or Ogg page) from the cursor into the servlet stream as it arrives, so no
+ * pump thread and no pipe sit between the frame buffer and the socket.
+ */
+final class ListenerStream extends InputStream {
+
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  private final SlabRing.Cursor cursor;
+  private final OggOpusMuxer muxer;
+  private final PlaybackMetrics metrics;
+  private final BooleanSupplier failed;
+  private final Runnable onClose;
+  private final long requestedAt;
+  private final byte[] frame;
+  private final byte[] page;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  private byte[] chunk;
+  private int chunkOffset;
+  private int chunkLength;
+  private boolean headersSent;
+  private boolean ended;
+  private boolean audio;
+  private boolean firstByteSent;
+  private long lag;
+
+  /**
+   * @param muxer wraps every frame into an Ogg page when not null
+   * @param failed whether the session broke down and the stream should end early
+   * @param onClose runs once, when the response is done with the stream
+   */
+  ListenerStream(SlabRing.Cursor cursor,
+                 int maxFrameBytes,
+                 OggOpusMuxer muxer,
+                 PlaybackMetrics metrics,
+                 BooleanSupplier failed,
+                 Runnable onClose,
+                 long requestedAt) {
+    this.cursor = cursor;
+    this.muxer = muxer;
+    this.metrics = metrics;
+    this.failed = failed;
+    this.onClose = onClose;
+    this.requestedAt = requestedAt;
+    this.frame = new byte[maxFrameBytes];
+    this.page = muxer != null ? new byte[OggOpusMuxer.maxPageBytes(maxFrameBytes)] : null;
+  }
+
+  @Override
+  public long transferTo(OutputStream out) throws IOException {
+    long transferred = 0;
+    metrics.listenerWriterStarted();
+    try {
+      if (chunkOffset < chunkLength) {
+        out.write(chunk, chunkOffset, chunkLength - chunkOffset);
+        transferred += chunkLength - chunkOffset;
+        chunkOffset = chunkLength;
+      }
+
+      while (next()) {
+        out.write(chunk, 0, chunkLength);
+        transferred += chunkLength;
+        chunkOffset = chunkLength;
+
+        // flush only once caught up, so a listener that is behind gets its backlog in large writes
+        if (lag == 0 || !firstByteSent || ended) {
+          out.flush();
+        }
+        delivered();
+      }
+      out.flush();
+      return transferred;
+    } finally {
+      metrics.listenerWriterStopped();
+      metrics.recordListenerOutput(transferred);
+    }
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+
+    if (chunkOffset == chunkLength) {
+      if (!next()) {
+        return -1;
+      }
+      delivered();
+    }
+
+    int count = Math.min(length, chunkLength - chunkOffset);
+    System.arraycopy(chunk, chunkOffset, target, offset, count);
+    chunkOffset += count;
+    metrics.recordListenerOutput(count);
+    return count;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int available() {
+    return chunkLength - chunkOffset;
+  }
+
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      onClose.run();
+    }
+  }
+
+  /**
+   * Blocks until the next frame, Ogg page or closing page is ready in {@link #chunk}.
+   *
+   * @return false once the stream is over, closed or the session failed
+   */
+  private boolean next() throws IOException {
+    chunkOffset = 0;
+    chunkLength = 0;
+    audio = false;
+
+    if (!headersSent) {
+      headersSent = true;
+      if (muxer != null) {
+        setChunk(muxer.headerPages());
+        return true;
+      }
+    }
+
+    try {
+      while (!ended && !closed.get()) {
+        int length = cursor.poll(frame, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        if (length > 0) {
+          if (muxer != null) {
+            chunk = page;
+            chunkLength = muxer.writePage(frame, length, page);
+          } else {
+            chunk = frame;
+            chunkLength = length;
+          }
+          audio = true;
+          lag = cursor.lag();
+          metrics.recordListenerLag(lag);
+          return true;
+        }
+
+        if (length == SlabRing.END_OF_STREAM) {
+          ended = true;
+          if (muxer != null) {
+            setChunk(muxer.endOfStreamPage());
+            return true;
+          }
+          return false;
+        }
+
+        if (failed.getAsBoolean()) {
+          return false;
+        }
+      }
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Listener stream interrupted");
+    }
+  }
+
+  private void setChunk(byte[] data) {
+    chunk = data;
+    chunkLength = data.length;
+  }
+
+  private void delivered() {
+    if (audio && !firstByteSent) {
+      firstByteSent = true;
+      metrics.recordTimeToFirstByte(System.nanoTime() - requestedAt);
+    }
+  }
+}
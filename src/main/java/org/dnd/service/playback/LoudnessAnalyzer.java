@@ -0,0 +1,168 @@
+package org.dnd.service.playback;
+
+import java.util.Arrays;
+
+/**
+ * Integrated loudness after ITU-R BS.1770-4 / EBU R128, plus sample peak and clipping. Both
+ * channels are K-weighted, mean squares are kept per 100 ms segment and every 400 ms block
+ * (75% overlap) is gated at -70 LUFS and then 10 LU below the mean of the blocks that pass.
+ */
+final class LoudnessAnalyzer implements TrackAnalyzer {
+
+  static final double ABSOLUTE_GATE_LUFS = -70d;
+  static final double RELATIVE_GATE_LU = -10d;
+
+  private static final int CHANNELS = 2;
+  private static final int SEGMENT_SAMPLES = 4800;        // 100 ms at 48 kHz, per channel
+  private static final int SEGMENTS_PER_BLOCK = 4;
+  private static final int FULL_SCALE = 32767;
+
+  // K-weighting at 48 kHz: high shelf, then the RLB high-pass
+  private static final double SHELF_B0 = 1.53512485958697;
+  private static final double SHELF_B1 = -2.69169618940638;
+  private static final double SHELF_B2 = 1.19839281085285;
+  private static final double SHELF_A1 = -1.69065929318241;
+  private static final double SHELF_A2 = 0.73248077421585;
+  private static final double HIGHPASS_A1 = -1.99004745483398;
+  private static final double HIGHPASS_A2 = 0.99007225036621;
+
+  private final double[][] state = new double[CHANNELS][8];
+  private final double[] segmentSquares = new double[CHANNELS];
+
+  private double[] segments = new double[256];
+  private int segmentCount;
+  private int segmentFill;
+  private int channel;
+  private int peak;
+  private long clippedSamples;
+
+  @Override
+  public void setDurationMs(long durationMs) {
+    int expected = (int) Math.min(Integer.MAX_VALUE - 8, durationMs / 100L + 1L);
+    synchronized (this) {
+      if (segmentCount == 0 && expected > segments.length) {
+        segments = new double[expected];
+      }
+    }
+  }
+
+  @Override
+  public synchronized void accept(byte[] pcmFrame, int length, long trackPositionMs) {
+    if (pcmFrame == null) {
+      return;
+    }
+
+    for (int i = 0; i + 1 < length; i += 2) {
+      int sample = (short) (((pcmFrame[i] & 0xFF) << 8) | (pcmFrame[i + 1] & 0xFF));
+      int magnitude = Math.abs(sample);
+      if (magnitude > peak) {
+        peak = magnitude;
+      }
+      if (magnitude >= FULL_SCALE) {
+        clippedSamples++;
+      }
+
+      double weighted = kWeight(state[channel], sample / 32768d);
+      segmentSquares[channel] += weighted * weighted;
+
+      if (++channel == CHANNELS) {
+        channel = 0;
+        if (++segmentFill == SEGMENT_SAMPLES) {
+          closeSegment();
+        }
+      }
+    }
+  }
+
+  /**
+   * Integrated loudness of everything accepted so far, or {@code null} while no block is above
+   * the absolute gate.
+   */
+  synchronized Double integratedLufs() {
+    int blocks = segmentCount - SEGMENTS_PER_BLOCK + 1;
+    if (blocks <= 0) {
+      return null;
+    }
+
+    double[] blockPower = new double[blocks];
+    double absoluteSum = 0d;
+    int absoluteCount = 0;
+    double absoluteGate = power(ABSOLUTE_GATE_LUFS);
+
+    for (int b = 0; b < blocks; b++) {
+      double sum = 0d;
+      for (int s = b; s < b + SEGMENTS_PER_BLOCK; s++) {
+        sum += segments[s];
+      }
+      blockPower[b] = sum / SEGMENTS_PER_BLOCK;
+      if (blockPower[b] > absoluteGate) {
+        absoluteSum += blockPower[b];
+        absoluteCount++;
+      }
+    }
+
+    if (absoluteCount == 0) {
+      return null;
+    }
+
+    double relativeGate = absoluteSum / absoluteCount * Math.pow(10d, RELATIVE_GATE_LU / 10d);
+    double gatedSum = 0d;
+    int gatedCount = 0;
+    for (double value : blockPower) {
+      if (value > absoluteGate && value > relativeGate) {
+        gatedSum += value;
+        gatedCount++;
+      }
+    }
+
+    return gatedCount == 0 ? null : lufs(gatedSum / gatedCount);
+  }
+
+  /**
+   * Highest absolute sample in dBFS, or {@code null} for digital silence.
+   */
+  synchronized Double samplePeakDbfs() {
+    return peak == 0 ? null : 20d * Math.log10(peak / 32768d);
+  }
+
+  synchronized long clippedSamples() {
+    return clippedSamples;
+  }
+
+  private void closeSegment() {
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, segments.length * 2);
+    }
+    // channel weights are 1.0 for left and right
+    segments[segmentCount++] = (segmentSquares[0] + segmentSquares[1]) / SEGMENT_SAMPLES;
+    segmentSquares[0] = 0d;
+    segmentSquares[1] = 0d;
+    segmentFill = 0;
+  }
+
+  /**
+   * Two cascaded direct form I biquads; {@code s} holds x1, x2, y1, y2 of each stage.
+   */
+  private static double kWeight(double[] s, double x) {
+    double shelf = SHELF_B0 * x + SHELF_B1 * s[0] + SHELF_B2 * s[1] - SHELF_A1 * s[2] - SHELF_A2 * s[3];
+    s[1] = s[0];
+    s[0] = x;
+    s[3] = s[2];
+    s[2] = shelf;
+
+    double out = shelf - 2d * s[4] + s[5] - HIGHPASS_A1 * s[6] - HIGHPASS_A2 * s[7];
+    s[5] = s[4];
+    s[4] = shelf;
+    s[7] = s[6];
+    s[6] = out;
+    return out;
+  }
+
+  private static double lufs(double meanSquare) {
+    return -0.691d + 10d * Math.log10(meanSquare);
+  }
+
+  private static double power(double lufs) {
+    return Math.pow(10d, (lufs + 0.691d) / 10d);
+  }
+}
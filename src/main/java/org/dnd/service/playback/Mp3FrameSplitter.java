@@ -0,0 +1,64 @@
+package org.dnd.service.playback;
+
+/**
+ * Re-frames the raw byte stream produced by the encoder into whole MPEG Layer III frames.
+ * Bytes that do not belong to a valid frame (ID3 tags, garbage after a restart) are skipped.
+ */
+final class Mp3FrameSplitter extends EncodedFrameSplitter {
+
+  private static final int HEADER_BYTES = 4;
+
+  private static final int[] MPEG1_L3_BITRATES_KBPS = {
+          0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320
+  };
+  private static final int[] MPEG2_L3_BITRATES_KBPS = {
+          0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160
+  };
+  private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+  private static final int[] MPEG2_SAMPLE_RATES = {22050, 24000, 16000};
+  private static final int[] MPEG25_SAMPLE_RATES = {11025, 12000, 8000};
+
+  Mp3FrameSplitter(FrameSink sink) {
+    super(sink, HEADER_BYTES);
+  }
+
+  @Override
+  protected int frameLength(byte[] buffer, int offset, int available) {
+    return frameLengthAt(buffer, offset);
+  }
+
+  /**
+   * @return length of the frame starting at {@code offset} including its header, or -1 when
+   * the bytes at {@code offset} are not a valid Layer III frame header.
+   */
+  static int frameLengthAt(byte[] buffer, int offset) {
+    int b0 = buffer[offset] & 0xFF;
+    int b1 = buffer[offset + 1] & 0xFF;
+    int b2 = buffer[offset + 2] & 0xFF;
+
+    if (b0 != 0xFF || (b1 & 0xE0) != 0xE0) {
+      return -1;
+    }
+
+    int versionBits = (b1 >> 3) & 0x03;
+    int layerBits = (b1 >> 1) & 0x03;
+    int bitrateIndex = (b2 >> 4) & 0x0F;
+    int sampleRateIndex = (b2 >> 2) & 0x03;
+    int padding = (b2 >> 1) & 0x01;
+
+    if (versionBits == 1 || layerBits != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+      return -1;
+    }
+
+    boolean mpeg1 = versionBits == 3;
+    int bitrateKbps = mpeg1 ? MPEG1_L3_BITRATES_KBPS[bitrateIndex] : MPEG2_L3_BITRATES_KBPS[bitrateIndex];
+    int sampleRate = switch (versionBits) {
+      case 3 -> MPEG1_SAMPLE_RATES[sampleRateIndex];
+      case 2 -> MPEG2_SAMPLE_RATES[sampleRateIndex];
+      default -> MPEG25_SAMPLE_RATES[sampleRateIndex];
+    };
+
+    int coefficient = mpeg1 ? 144_000 : 72_000;
+    return coefficient * bitrateKbps / sampleRate + padding;
+  }
+}
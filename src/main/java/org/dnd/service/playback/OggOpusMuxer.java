@@ -0,0 +1,157 @@
+package org.dnd.service.playback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wraps Opus packets into an Ogg Opus stream (RFC 7845), one packet per page. Each listener
+ * gets its own muxer, so every client sees a stream that starts at page 0 with its own headers
+ * even when it joins a session mid-track.
+ */
+final class OggOpusMuxer {
+
+  static final int SAMPLE_RATE = 48_000;
+
+  private static final int PAGE_HEADER_BYTES = 27;
+  private static final int MAX_SEGMENTS = 255;
+  private static final int MAX_PACKET_BYTES = MAX_SEGMENTS * 255 - 1;
+
+  /**
+   * Samples the decoder drops before output; RFC 7845 recommends at least 80 ms when decoding
+   * starts somewhere other than the beginning of the encoded stream, which a late joiner does.
+   */
+  private static final int LATE_JOIN_PRE_SKIP_SAMPLES = 3840;
+
+  private static final int FLAG_BEGIN_OF_STREAM = 0x02;
+  private static final int FLAG_END_OF_STREAM = 0x04;
+
+  private static final byte[] CAPTURE_PATTERN = "OggS".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] VENDOR = "musicPlayer".getBytes(StandardCharsets.US_ASCII);
+  private static final int[] CRC_TABLE = crcTable();
+
+  private final int serial;
+  private final int channels;
+  private final int preSkipSamples;
+  private int sequence;
+  private long granulePosition;
+
+  OggOpusMuxer(int serial, int channels) {
+    this(serial, channels, LATE_JOIN_PRE_SKIP_SAMPLES);
+  }
+
+  /**
+   * @param preSkipSamples encoder delay to drop, for streams that start with the encoder's first packet
+   */
+  OggOpusMuxer(int serial, int channels, int preSkipSamples) {
+    this.serial = serial;
+    this.channels = channels;
+    this.preSkipSamples = preSkipSamples;
+    this.granulePosition = preSkipSamples;
+  }
+
+  /**
+   * Largest page {@link #writePage} can produce for a packet of {@code packetBytes}.
+   */
+  static int maxPageBytes(int packetBytes) {
+    return PAGE_HEADER_BYTES + MAX_SEGMENTS + packetBytes;
+  }
+
+  /**
+   * The OpusHead and OpusTags pages every Ogg Opus stream starts with.
+   */
+  byte[] headerPages() {
+    byte[] head = new byte[19];
+    System.arraycopy("OpusHead".getBytes(StandardCharsets.US_ASCII), 0, head, 0, 8);
+    head[8] = 1;
+    head[9] = (byte) channels;
+    writeLittleEndian(head, 10, preSkipSamples, 2);
+    writeLittleEndian(head, 12, SAMPLE_RATE, 4);
+    // output gain 0, channel mapping family 0
+
+    byte[] tags = new byte[8 + 4 + VENDOR.length + 4];
+    System.arraycopy("OpusTags".getBytes(StandardCharsets.US_ASCII), 0, tags, 0, 8);
+    writeLittleEndian(tags, 8, VENDOR.length, 4);
+    System.arraycopy(VENDOR, 0, tags, 12, VENDOR.length);
+
+    byte[] pages = new byte[maxPageBytes(head.length) + maxPageBytes(tags.length)];
+    int length = writePage(head, head.length, 0L, FLAG_BEGIN_OF_STREAM, pages, 0);
+    length += writePage(tags, tags.length, 0L, 0, pages, length);
+    return Arrays.copyOf(pages, length);
+  }
+
+  /**
+   * Writes one page carrying {@code packet} into {@code target} and advances the granule
+   * position by the packet's duration.
+   *
+   * @return number of bytes written
+   */
+  int writePage(byte[] packet, int length, byte[] target) {
+    if (length > MAX_PACKET_BYTES) {
+      throw new IllegalArgumentException("Opus packet too large for one page: " + length);
+    }
+
+    granulePosition += OpusPacket.samples(packet, length);
+    return writePage(packet, length, granulePosition, 0, target, 0);
+  }
+
+  /**
+   * An empty page that closes the logical stream.
+   */
+  byte[] endOfStreamPage() {
+    byte[] page = new byte[PAGE_HEADER_BYTES];
+    writePage(new byte[0], 0, granulePosition, FLAG_END_OF_STREAM, page, 0);
+    return page;
+  }
+
+  private int writePage(byte[] packet, int length, long granule, int flags, byte[] target, int offset) {
+    int segments = length == 0 ? 0 : length / 255 + 1;
+
+    System.arraycopy(CAPTURE_PATTERN, 0, target, offset, 4);
+    target[offset + 4] = 0;
+    target[offset + 5] = (byte) flags;
+    writeLittleEndian(target, offset + 6, granule, 8);
+    writeLittleEndian(target, offset + 14, serial, 4);
+    writeLittleEndian(target, offset + 18, sequence++, 4);
+    writeLittleEndian(target, offset + 22, 0, 4);
+    target[offset + 26] = (byte) segments;
+
+    // lacing: runs of 255 and a final segment below 255, which is 0 when the length divides evenly
+    int lacing = offset + PAGE_HEADER_BYTES;
+    for (int i = 0; i < segments; i++) {
+      target[lacing + i] = (byte) (i < segments - 1 ? 255 : length % 255);
+    }
+
+    int body = lacing + segments;
+    System.arraycopy(packet, 0, target, body, length);
+
+    int pageLength = body + length - offset;
+    writeLittleEndian(target, offset + 22, crc(target, offset, pageLength), 4);
+    return pageLength;
+  }
+
+  static int crc(byte[] data, int offset, int length) {
+    int crc = 0;
+    for (int i = offset; i < offset + length; i++) {
+      crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xFF];
+    }
+    return crc;
+  }
+
+  private static int[] crcTable() {
+    int[] table = new int[256];
+    for (int i = 0; i < table.length; i++) {
+      int r = i << 24;
+      for (int bit = 0; bit < 8; bit++) {
+        r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04C11DB7 : r << 1;
+      }
+      table[i] = r;
+    }
+    return table;
+  }
+
+  private static void writeLittleEndian(byte[] target, int offset, long value, int bytes) {
+    for (int i = 0; i < bytes; i++) {
+      target[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+}
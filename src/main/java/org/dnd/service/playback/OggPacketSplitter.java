@@ -0,0 +1,87 @@
+package org.dnd.service.playback;
+
+import java.util.Arrays;
+
+/**
+ * Takes the encoder's Ogg Opus output apart into bare Opus packets. Listeners wrap the packets
+ * into their own Ogg stream with an {@link OggOpusMuxer}, so a late joiner gets headers and
+ * page numbering that start with its own stream; the encoder's OpusHead and OpusTags packets
+ * are therefore dropped here.
+ */
+final class OggPacketSplitter extends EncodedFrameSplitter {
+
+  private static final int PAGE_HEADER_BYTES = 27;
+  private static final int FLAG_CONTINUED_PACKET = 0x01;
+
+  private byte[] packet = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+  private int packetLength;
+
+  OggPacketSplitter(FrameSink sink) {
+    super(sink, PAGE_HEADER_BYTES);
+  }
+
+  @Override
+  protected int frameLength(byte[] buffer, int offset, int available) {
+    if (buffer[offset] != 'O' || buffer[offset + 1] != 'g' || buffer[offset + 2] != 'g'
+            || buffer[offset + 3] != 'S' || buffer[offset + 4] != 0) {
+      return -1;
+    }
+
+    int segments = buffer[offset + 26] & 0xFF;
+    if (available < PAGE_HEADER_BYTES + segments) {
+      return NEED_MORE_BYTES;
+    }
+
+    int length = PAGE_HEADER_BYTES + segments;
+    for (int i = 0; i < segments; i++) {
+      length += buffer[offset + PAGE_HEADER_BYTES + i] & 0xFF;
+    }
+    return length;
+  }
+
+  @Override
+  protected void emit(byte[] page, int offset, int length) throws InterruptedException {
+    if ((page[offset + 5] & FLAG_CONTINUED_PACKET) == 0) {
+      // a packet cut short by a lost page cannot be completed
+      packetLength = 0;
+    }
+
+    int segments = page[offset + 26] & 0xFF;
+    int body = offset + PAGE_HEADER_BYTES + segments;
+
+    for (int i = 0; i < segments; i++) {
+      int lacing = page[offset + PAGE_HEADER_BYTES + i] & 0xFF;
+      append(page, body, lacing);
+      body += lacing;
+
+      if (lacing < 255) {
+        if (!isHeaderPacket()) {
+          sink.onFrame(packet, 0, packetLength);
+        }
+        packetLength = 0;
+      }
+    }
+  }
+
+  private void append(byte[] source, int offset, int length) {
+    if (packetLength + length > packet.length) {
+      packet = Arrays.copyOf(packet, Math.max(packetLength + length, packet.length * 2));
+    }
+    System.arraycopy(source, offset, packet, packetLength, length);
+    packetLength += length;
+  }
+
+  private boolean isHeaderPacket() {
+    return packetLength >= 8 && packet[0] == 'O' && packet[1] == 'p' && packet[2] == 'u' && packet[3] == 's'
+            && (startsWith("Head") || startsWith("Tags"));
+  }
+
+  private boolean startsWith(String suffix) {
+    for (int i = 0; i < 4; i++) {
+      if (packet[4 + i] != suffix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
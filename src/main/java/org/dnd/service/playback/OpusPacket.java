@@ -0,0 +1,47 @@
+package org.dnd.service.playback;
+
+/**
+ * Reads the duration of an Opus packet from its TOC byte (RFC 6716, section 3.1).
+ */
+final class OpusPacket {
+
+  private static final int[] SILK_FRAME_SAMPLES = {480, 960, 1920, 2880};
+  private static final int[] HYBRID_FRAME_SAMPLES = {480, 960};
+  private static final int[] CELT_FRAME_SAMPLES = {120, 240, 480, 960};
+
+  private OpusPacket() {
+  }
+
+  /**
+   * Samples per channel at 48 kHz carried by {@code packet}, or 0 if it is malformed.
+   */
+  static int samples(byte[] packet, int length) {
+    if (length < 1) {
+      return 0;
+    }
+
+    int toc = packet[0] & 0xFF;
+    int config = toc >>> 3;
+
+    int frameSamples;
+    if (config < 12) {
+      frameSamples = SILK_FRAME_SAMPLES[config & 3];
+    } else if (config < 16) {
+      frameSamples = HYBRID_FRAME_SAMPLES[config & 1];
+    } else {
+      frameSamples = CELT_FRAME_SAMPLES[config & 3];
+    }
+
+    int frames = switch (toc & 3) {
+      case 0 -> 1;
+      case 1, 2 -> 2;
+      default -> length < 2 ? 0 : packet[1] & 0x3F;
+    };
+
+    return frameSamples * frames;
+  }
+
+  static long durationNanos(byte[] packet, int length) {
+    return samples(packet, length) * 1_000_000_000L / OggOpusMuxer.SAMPLE_RATE;
+  }
+}
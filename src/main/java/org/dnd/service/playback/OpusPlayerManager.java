@@ -0,0 +1,12 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+
+/**
+ * Player manager whose players hand out Opus packets instead of PCM. lavaplayer passes Opus
+ * sources such as YouTube's WebM streams through without decoding them, so sessions that need
+ * no PCM processing can stream them without decode or re-encode. Kept in its own type so it
+ * does not compete with the PCM {@link AudioPlayerManager} bean for injection.
+ */
+public record OpusPlayerManager(AudioPlayerManager manager) {
+}
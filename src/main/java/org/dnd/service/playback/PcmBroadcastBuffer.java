@@ -1,11 +1,7 @@
 package org.dnd.service.playback;
 
-import lombok.Getter;
-
-import java.util.*;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Arrays;
+import java.util.List;
 
 public class PcmBroadcastBuffer {
 
@@ -16,61 +12,66 @@ public class PcmBroadcastBuffer {
   private static final int ROLLING_BUFFER_MAX_FRAMES = 500;   // ~10s at ~20ms/frame
 
   /**
-   * Bounded live queue per listener.
-   * When full, producer blocks instead of dropping audio.
+   * Slabs in the ring. Everything beyond the history is headroom a listener may lag
+   * behind live before the slow-consumer policy kicks in.
    */
-  private static final int LISTENER_QUEUE_MAX_FRAMES = 500;   // ~10s of PCM backlog
+  private static final int RING_FRAMES = 1024;                // ~20s at ~20ms/frame
 
-  private final Deque<byte[]> history = new ArrayDeque<>();
-  private final Set<BlockingDeque<byte[]>> listeners = ConcurrentHashMap.newKeySet();
+  /**
+   * Largest PCM chunk lavaplayer emits for 48kHz stereo s16 (960 samples per channel).
+   */
+  static final int MAX_FRAME_BYTES = 3840;
 
-  @Getter
-  private volatile boolean complete = false;
+  private final SlabRing ring;
 
-  public void append(byte[] pcm) throws InterruptedException {
-    byte[] copy = pcm.clone();
-    List<BlockingDeque<byte[]>> listenerSnapshot;
+  public PcmBroadcastBuffer() {
+    this(SlowConsumerPolicy.SKIP_TO_LIVE);
+  }
 
-    synchronized (this) {
-      history.addLast(copy);
-      while (history.size() > ROLLING_BUFFER_MAX_FRAMES) {
-        history.removeFirst();
-      }
+  public PcmBroadcastBuffer(SlowConsumerPolicy slowConsumerPolicy) {
+    this.ring = new SlabRing(RING_FRAMES, MAX_FRAME_BYTES, ROLLING_BUFFER_MAX_FRAMES, slowConsumerPolicy);
+  }
 
-      listenerSnapshot = new ArrayList<>(listeners);
-    }
+  /**
+   * Never blocks: listeners that cannot keep up are handled by their cursor's policy.
+   */
+  public void append(byte[] pcm) {
+    append(pcm, 0, pcm.length);
+  }
+
+  public void append(byte[] pcm, int offset, int length) {
+    ring.publish(pcm, offset, length);
+  }
 
-    for (BlockingDeque<byte[]> queue : listenerSnapshot) {
-      queue.putLast(copy);
-    }
+  public List<byte[]> snapshot() {
+    return Arrays.asList(ring.history());
   }
 
-  public synchronized List<byte[]> snapshot() {
-    return new ArrayList<>(history);
+  /**
+   * Registers a listener positioned at the start of the rolling history, so it replays
+   * recent frames first and then continues live.
+   */
+  public SlabRing.Cursor registerListener() {
+    return ring.openCursor();
   }
 
-  public BlockingDeque<byte[]> registerListener() {
-    BlockingDeque<byte[]> queue = new LinkedBlockingDeque<>(LISTENER_QUEUE_MAX_FRAMES);
-    listeners.add(queue);
-    return queue;
+  public void unregisterListener(SlabRing.Cursor cursor) {
+    ring.closeCursor(cursor);
   }
 
-  public void unregisterListener(BlockingDeque<byte[]> queue) {
-    listeners.remove(queue);
-    queue.clear();
+  public int listenerCount() {
+    return ring.cursorCount();
   }
 
-  public synchronized void clear() {
-    history.clear();
-    complete = false;
+  public void clear() {
+    ring.clear();
+  }
 
-    for (BlockingDeque<byte[]> queue : listeners) {
-      queue.clear();
-    }
-    listeners.clear();
+  public boolean isComplete() {
+    return ring.isComplete();
   }
 
   public void markComplete() {
-    complete = true;
+    ring.markComplete();
   }
-}
\ No newline at end of file
+}
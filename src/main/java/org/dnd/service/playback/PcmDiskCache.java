@@ -0,0 +1,324 @@
+package org.dnd.service.playback;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded on-disk cache of fully decoded tracks (48kHz stereo s16be), keyed by
+ * {@link TrackSourceKey}. Entries survive restarts, are read back through memory mapping and
+ * are evicted by Caffeine's W-TinyLFU policy weighted by file size.
+ */
+@Slf4j
+@Service
+public class PcmDiskCache {
+
+  private static final String ENTRY_SUFFIX = ".pcm";
+  private static final String PARTIAL_SUFFIX = ".part";
+  private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+  private static final long WEIGHT_UNIT_BYTES = 1024;
+
+  private final Path directory;
+  private final long maxEntryBytes;
+  private final Cache<String, Entry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesOnDisk = new AtomicLong();
+
+  private volatile boolean enabled;
+
+  @Autowired
+  public PcmDiskCache(PlaybackConfiguration playbackConfiguration) {
+    this(
+            playbackConfiguration.isPcmCacheEnabled(),
+            Path.of(playbackConfiguration.getPcmCacheDir()),
+            playbackConfiguration.getPcmCacheMaxBytes(),
+            playbackConfiguration.getPcmCacheMaxEntryBytes()
+    );
+  }
+
+  PcmDiskCache(boolean enabled, Path directory, long maxBytes, long maxEntryBytes) {
+    this.enabled = enabled;
+    this.directory = directory;
+    // entries are memory mapped, so a single file must stay addressable by an int offset
+    this.maxEntryBytes = Math.min(maxEntryBytes, Integer.MAX_VALUE);
+    this.entries = Caffeine.newBuilder()
+            .maximumWeight(Math.max(1L, maxBytes / WEIGHT_UNIT_BYTES))
+            .weigher((String stem, Entry entry) -> weightOf(entry.bytes()))
+            .executor(Runnable::run)
+            .removalListener((String stem, Entry entry, RemovalCause cause) -> onRemoval(entry))
+            .build();
+  }
+
+  @PostConstruct
+  void init() {
+    if (!enabled) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(directory);
+      restoreEntries();
+      log.info("PCM cache at {}: {} entries, {} bytes", directory, entries.estimatedSize(), bytesOnDisk.get());
+    } catch (IOException e) {
+      log.warn("PCM cache disabled, directory {} is not usable: {}", directory, e.getMessage());
+      enabled = false;
+    }
+  }
+
+  /**
+   * Maps the cached PCM for {@code key}, if present. The returned buffer stays valid even if
+   * the entry is evicted while it is being played.
+   */
+  Optional<ByteBuffer> lookup(TrackSourceKey key) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    String stem = key.fileStem();
+    Entry entry = entries.getIfPresent(stem);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+
+    try (FileChannel channel = FileChannel.open(entry.file(), StandardOpenOption.READ)) {
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, entry.bytes());
+      hits.incrementAndGet();
+      return Optional.of(mapped);
+    } catch (IOException e) {
+      log.warn("PCM cache entry {} unreadable: {}", entry.file(), e.getMessage());
+      entries.asMap().remove(stem, entry);
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Whether {@code key} is cached, without counting as a lookup.
+   */
+  boolean contains(TrackSourceKey key) {
+    return enabled && entries.asMap().containsKey(key.fileStem());
+  }
+
+  /**
+   * Opens a writer that captures a full decode of {@code key}. Returns {@code null} when the
+   * cache is disabled, already holds the track or the temporary file cannot be created.
+   */
+  Writer openWriter(TrackSourceKey key) {
+    if (!enabled) {
+      return null;
+    }
+
+    String stem = key.fileStem();
+    if (entries.asMap().containsKey(stem)) {
+      return null;
+    }
+
+    Path partial = directory.resolve(stem + "." + UUID.randomUUID() + PARTIAL_SUFFIX);
+    try {
+      FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      return new Writer(stem, partial, channel);
+    } catch (IOException e) {
+      log.warn("PCM cache write for {} failed: {}", key.value(), e.getMessage());
+      return null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+
+  public long bytesOnDisk() {
+    return bytesOnDisk.get();
+  }
+
+  public long entryCount() {
+    return entries.estimatedSize();
+  }
+
+  /**
+   * Runs pending eviction work immediately.
+   */
+  void cleanUp() {
+    entries.cleanUp();
+  }
+
+  private void restoreEntries() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+
+        if (name.endsWith(PARTIAL_SUFFIX)) {
+          deleteQuietly(file);
+          continue;
+        }
+
+        if (!name.endsWith(ENTRY_SUFFIX)) {
+          continue;
+        }
+
+        long bytes = Files.size(file);
+        String stem = name.substring(0, name.indexOf('.'));
+        if (bytes <= 0 || bytes > maxEntryBytes || !register(stem, new Entry(file, bytes))) {
+          deleteQuietly(file);
+        }
+      }
+    }
+  }
+
+  private synchronized boolean register(String stem, Entry entry) {
+    if (entries.asMap().putIfAbsent(stem, entry) != null) {
+      return false;
+    }
+
+    bytesOnDisk.addAndGet(entry.bytes());
+    return true;
+  }
+
+  private void onRemoval(Entry entry) {
+    if (entry == null) {
+      return;
+    }
+
+    bytesOnDisk.addAndGet(-entry.bytes());
+    deleteQuietly(entry.file());
+  }
+
+  private static int weightOf(long bytes) {
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, (bytes + WEIGHT_UNIT_BYTES - 1) / WEIGHT_UNIT_BYTES));
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.debug("Could not delete PCM cache file {}: {}", file, e.getMessage());
+    }
+  }
+
+  private record Entry(Path file, long bytes) {
+  }
+
+  /**
+   * Tees the decode loop into a temporary file. Only a decode that ran from position zero to
+   * the natural end of the track is committed; anything else is aborted and deleted.
+   * Appends come from the decode loop, an abort may come from whichever thread stops it.
+   */
+  final class Writer {
+    private final String stem;
+    private final Path partial;
+    private final FileChannel channel;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+    private long written;
+    private boolean finished;
+
+    private Writer(String stem, Path partial, FileChannel channel) {
+      this.stem = stem;
+      this.partial = partial;
+      this.channel = channel;
+    }
+
+    synchronized void append(byte[] pcm, int length) {
+      if (finished) {
+        return;
+      }
+
+      if (written + length > maxEntryBytes) {
+        abort();
+        return;
+      }
+
+      try {
+        if (staging.remaining() < length) {
+          flush();
+        }
+        staging.put(pcm, 0, length);
+        written += length;
+      } catch (IOException e) {
+        log.warn("PCM cache write to {} failed: {}", partial, e.getMessage());
+        abort();
+      }
+    }
+
+    synchronized void commit() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+
+      try {
+        flush();
+        channel.close();
+
+        if (written == 0) {
+          deleteQuietly(partial);
+          return;
+        }
+
+        String name = partial.getFileName().toString();
+        Path file = directory.resolve(name.substring(0, name.length() - PARTIAL_SUFFIX.length()) + ENTRY_SUFFIX);
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+
+        if (!register(stem, new Entry(file, written))) {
+          deleteQuietly(file);
+        }
+      } catch (IOException e) {
+        log.warn("PCM cache commit of {} failed: {}", partial, e.getMessage());
+        closeQuietly();
+        deleteQuietly(partial);
+      }
+    }
+
+    synchronized void abort() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+
+      closeQuietly();
+      deleteQuietly(partial);
+    }
+
+    private void flush() throws IOException {
+      staging.flip();
+      while (staging.hasRemaining()) {
+        channel.write(staging);
+      }
+      staging.clear();
+    }
+
+    private void closeQuietly() {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.dnd.service.playback;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * Applies board volume and per-track loudness normalization to decoded s16be PCM in place,
+ * between the decoder and the broadcast buffer, so a change is heard by every listener within
+ * the buffered lead without touching the encoder. At unity gain frames pass through untouched.
+ */
+final class PcmGainStage {
+
+  static final int FULL_VOLUME = 100;
+
+  private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Short> SHORTS =
+          ShortVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+  private static final int LANE_BYTES = SHORTS.length() * Short.BYTES;
+
+  private static final float MIN_SAMPLE = Short.MIN_VALUE;
+  private static final float MAX_SAMPLE = Short.MAX_VALUE;
+
+  private volatile float volumeGain = 1f;
+  private volatile float trackGain = 1f;
+
+  /**
+   * Board volume on its 0-100 scale; the square law keeps the slider roughly perceptually even.
+   */
+  void setVolume(int volume) {
+    float level = Math.max(0, Math.min(FULL_VOLUME, volume)) / (float) FULL_VOLUME;
+    volumeGain = level * level;
+  }
+
+  void setTrackGainDb(double gainDb) {
+    trackGain = (float) Math.pow(10d, gainDb / 20d);
+  }
+
+  float gain() {
+    return volumeGain * trackGain;
+  }
+
+  /**
+   * Linear normalization gain of the track being played.
+   */
+  float trackGain() {
+    return trackGain;
+  }
+
+  boolean isUnity() {
+    return gain() == 1f;
+  }
+
+  /**
+   * @return true if the frame was scaled, false if it passed through at unity gain
+   */
+  boolean apply(byte[] pcm, int length) {
+    return apply(pcm, length, gain());
+  }
+
+  /**
+   * Scales by the board volume alone, for frames whose track gain was applied upstream.
+   *
+   * @return true if the frame was scaled, false if it passed through at full volume
+   */
+  boolean applyVolume(byte[] pcm, int length) {
+    return apply(pcm, length, volumeGain);
+  }
+
+  /**
+   * Normalization gain that brings {@code analysis} to {@code targetLufs}, boosting by at most
+   * {@code maxBoostDb} and never past {@code peakCeilingDbfs}; 0 dB when loudness is unknown.
+   */
+  static double normalizationGainDb(TrackAnalysis analysis,
+                                    double targetLufs,
+                                    double maxBoostDb,
+                                    double peakCeilingDbfs) {
+    if (analysis == null || analysis.integratedLufs() == null) {
+      return 0d;
+    }
+
+    double gainDb = Math.min(targetLufs - analysis.integratedLufs(), maxBoostDb);
+    if (gainDb > 0d && analysis.samplePeakDbfs() != null) {
+      gainDb = Math.max(0d, Math.min(gainDb, peakCeilingDbfs - analysis.samplePeakDbfs()));
+    }
+    return gainDb;
+  }
+
+  private static boolean apply(byte[] pcm, int length, float gain) {
+    if (gain == 1f) {
+      return false;
+    }
+
+    scale(pcm, length, gain);
+    return true;
+  }
+
+  static void scale(byte[] pcm, int length, float gain) {
+    MemorySegment segment = MemorySegment.ofArray(pcm);
+    int vectorEnd = length - length % LANE_BYTES;
+
+    int offset = 0;
+    for (; offset < vectorEnd; offset += LANE_BYTES) {
+      FloatVector samples = (FloatVector) ShortVector
+              .fromMemorySegment(SHORTS, segment, offset, ByteOrder.BIG_ENDIAN)
+              .convertShape(VectorOperators.S2F, FLOATS, 0);
+
+      ((ShortVector) samples.mul(gain)
+              .max(MIN_SAMPLE)
+              .min(MAX_SAMPLE)
+              .convertShape(VectorOperators.F2S, SHORTS, 0))
+              .intoMemorySegment(segment, offset, ByteOrder.BIG_ENDIAN);
+    }
+
+    scaleScalar(pcm, offset, length, gain);
+  }
+
+  static void scaleScalar(byte[] pcm, int from, int length, float gain) {
+    for (int i = from; i + 1 < length; i += 2) {
+      short sample = (short) (((pcm[i] & 0xFF) << 8) | (pcm[i + 1] & 0xFF));
+      int scaled = (int) Math.max(MIN_SAMPLE, Math.min(MAX_SAMPLE, sample * gain));
+      pcm[i] = (byte) (scaled >> 8);
+      pcm[i + 1] = (byte) scaled;
+    }
+  }
+}
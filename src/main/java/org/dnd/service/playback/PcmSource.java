@@ -0,0 +1,46 @@
+package org.dnd.service.playback;
+
+/**
+ * Pull-based source of decoded 48kHz stereo s16be PCM driven by a decode session loop.
+ */
+interface PcmSource {
+
+  int NO_FRAME = 0;
+  int END_OF_TRACK = -1;
+
+  /**
+   * Copies the next frame into {@code target}, waiting briefly if none is ready.
+   *
+   * @return frame length, {@link #NO_FRAME} if nothing arrived within the poll interval,
+   * or {@link #END_OF_TRACK} once the source is exhausted
+   */
+  int read(byte[] target) throws InterruptedException;
+
+  /**
+   * Track position of the frame most recently returned by {@link #read(byte[])}.
+   */
+  long frameStartMs();
+
+  /**
+   * Current playback position, used for state snapshots.
+   */
+  long positionMs();
+
+  long durationMs();
+
+  /**
+   * Moves playback to {@code positionMs}; takes effect on the next {@link #read(byte[])}.
+   *
+   * @return false if the source cannot seek
+   */
+  boolean seek(long positionMs);
+
+  void setPaused(boolean paused);
+
+  /**
+   * Called periodically while the session is paused and not reading.
+   */
+  void keepAlive();
+
+  void close();
+}
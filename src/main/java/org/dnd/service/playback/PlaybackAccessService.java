@@ -2,6 +2,7 @@ package org.dnd.service.playback;
 
 import lombok.RequiredArgsConstructor;
 import org.dnd.api.model.PlayRequest;
+import org.dnd.configuration.PlaybackConfiguration;
 import org.dnd.model.BoardEntity;
 import org.dnd.model.TrackEntity;
 import org.dnd.model.UserEntity;
@@ -25,6 +26,7 @@ public class PlaybackAccessService {
   private final TrackRepository trackRepository;
   private final TrackWindowRepository trackWindowRepository;
   private final UserRepository userRepository;
+  private final PlaybackConfiguration playbackConfiguration;
 
   public void requireOwnedBoard(long boardId) {
     BoardEntity board = boardRepository.findById(boardId)
@@ -45,18 +47,11 @@ public class PlaybackAccessService {
     }
   }
 
-  public void requireOwnedTrackByUserId(long trackId, long userId) {
-    TrackEntity track = trackRepository.findById(trackId)
-            .orElseThrow(() -> notFound("Track not found"));
-
-    if (!track.getOwner().getId().equals(userId)) {
-      throw forbidden("Track not owned by user");
-    }
-  }
-
   public TrackMetadata getOwnedTrackMetadata(long trackId) {
-    long userId = SecurityUtils.getCurrentUserId();
+    return getOwnedTrackMetadata(trackId, SecurityUtils.getCurrentUserId());
+  }
 
+  public TrackMetadata getOwnedTrackMetadata(long trackId, long userId) {
     TrackEntity track = trackRepository.findById(trackId)
             .orElseThrow(() -> notFound("Track not found"));
 
@@ -91,41 +86,49 @@ public class PlaybackAccessService {
       throw forbidden("Track not accessible");
     }
 
-    TrackWindowRange range = resolveWindow(request != null ? request.getWindowId() : null);
+    PlaybackWindow window = resolveWindow(request != null ? request.getWindowId() : null, board.isRepeat());
 
     return new BoardPlayData(
+            userId,
             boardId,
             track.getId(),
             track.getTrackLink(),
             track.getDuration(),
-            range.startS(),
-            range.endS()
+            window,
+            board.getVolume()
     );
   }
 
   public TrackPlayData getTrackPlayData(long trackId, PlayRequest request) {
     TrackMetadata metadata = getOwnedTrackMetadata(trackId);
-    TrackWindowRange range = resolveWindow(request != null ? request.getWindowId() : null);
+    PlaybackWindow window = resolveWindow(request != null ? request.getWindowId() : null, false);
 
     return new TrackPlayData(
             metadata.userId(),
             metadata.trackId(),
             metadata.trackLink(),
             metadata.trackDuration(),
-            range.startS(),
-            range.endS()
+            window
     );
   }
 
-  private TrackWindowRange resolveWindow(Long windowId) {
+  private PlaybackWindow resolveWindow(Long windowId, boolean loop) {
     if (windowId == null) {
-      return TrackWindowRange.EMPTY;
+      return loop ? new PlaybackWindow(null, null, 0L, 0L, true) : PlaybackWindow.FULL_TRACK;
     }
 
     var window = trackWindowRepository.findById(windowId)
             .orElseThrow(() -> notFound("Track window not found"));
 
-    return new TrackWindowRange(window.getPositionFrom(), window.getPositionTo());
+    long fadeMs = playbackConfiguration.getWindowFadeMs();
+
+    return new PlaybackWindow(
+            window.getPositionFrom(),
+            window.getPositionTo(),
+            window.isFadeIn() ? fadeMs : 0L,
+            window.isFadeOut() ? fadeMs : 0L,
+            loop
+    );
   }
 
   private boolean hasTrackAccess(TrackEntity track, long userId, boolean allowSharedTrack) {
@@ -164,12 +167,13 @@ public class PlaybackAccessService {
   }
 
   public record BoardPlayData(
+          long userId,
           long boardId,
           long trackId,
           String trackLink,
           int trackDuration,
-          Long windowStartS,
-          Long windowEndS
+          PlaybackWindow window,
+          int volume
   ) {
   }
 
@@ -178,12 +182,7 @@ public class PlaybackAccessService {
           long trackId,
           String trackLink,
           int trackDuration,
-          Long windowStartS,
-          Long windowEndS
+          PlaybackWindow window
   ) {
   }
-
-  public record TrackWindowRange(Long startS, Long endS) {
-    static final TrackWindowRange EMPTY = new TrackWindowRange(null, null);
-  }
 }
\ No newline at end of file
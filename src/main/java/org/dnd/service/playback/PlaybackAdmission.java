@@ -0,0 +1,183 @@
+package org.dnd.service.playback;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.dnd.exception.PlaybackCapacityException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+/**
+ * Caps concurrent decode sessions (board, track and waveform) and ffmpeg encoders on this
+ * node. A caller over its own session limit is refused at once with 429; when the node is
+ * full a bounded number of callers wait briefly for a slot and everyone else gets 503, so an
+ * overloaded node sheds new work instead of degrading every playing board.
+ */
+@Slf4j
+@Component
+public class PlaybackAdmission {
+
+  private final Semaphore sessionSlots;
+  private final Semaphore encoderSlots;
+  private final int maxSessionsPerUser;
+  private final int maxQueued;
+  private final long queueTimeoutMs;
+  private final long retryAfterS;
+  private final PlaybackMetrics metrics;
+
+  private final ConcurrentMap<Long, Integer> sessionsByUser = new ConcurrentHashMap<>();
+  private final AtomicInteger queued = new AtomicInteger();
+
+  @Autowired
+  public PlaybackAdmission(PlaybackConfiguration playbackConfiguration, PlaybackMetrics metrics) {
+    this(
+            playbackConfiguration.getMaxSessions(),
+            playbackConfiguration.getMaxSessionsPerUser(),
+            playbackConfiguration.getMaxEncoders(),
+            playbackConfiguration.getMaxQueuedAdmissions(),
+            playbackConfiguration.getAdmissionQueueTimeoutMs(),
+            playbackConfiguration.getAdmissionRetryAfterS(),
+            metrics
+    );
+  }
+
+  PlaybackAdmission(int maxSessions,
+                    int maxSessionsPerUser,
+                    int maxEncoders,
+                    int maxQueued,
+                    long queueTimeoutMs,
+                    long retryAfterS,
+                    PlaybackMetrics metrics) {
+    this.sessionSlots = new Semaphore(maxSessions, true);
+    this.encoderSlots = new Semaphore(maxEncoders);
+    this.maxSessionsPerUser = maxSessionsPerUser;
+    this.maxQueued = maxQueued;
+    this.queueTimeoutMs = queueTimeoutMs;
+    this.retryAfterS = retryAfterS;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Reserves a decode session slot for {@code userId}. The permit must be released when the
+   * session is removed.
+   *
+   * @throws PlaybackCapacityException 429 over the per-user limit, 503 when the node is full
+   */
+  Permit admitSession(long userId) {
+    if (!reserveUserSlot(userId)) {
+      metrics.recordAdmissionRejected("session", TOO_MANY_REQUESTS.value());
+      throw new PlaybackCapacityException(TOO_MANY_REQUESTS, "Too many concurrent playback sessions", retryAfterS);
+    }
+
+    if (!acquireQueued(sessionSlots)) {
+      releaseUserSlot(userId);
+      metrics.recordAdmissionRejected("session", SERVICE_UNAVAILABLE.value());
+      log.warn("Playback session for user {} refused, node is at capacity", userId);
+      throw new PlaybackCapacityException(SERVICE_UNAVAILABLE, "Playback capacity exhausted, try again later", retryAfterS);
+    }
+
+    return new Permit(() -> {
+      sessionSlots.release();
+      releaseUserSlot(userId);
+    });
+  }
+
+  /**
+   * Reserves an encoder process slot. Encoders are only started for a listener that is
+   * already waiting on the response, so this never queues.
+   *
+   * @throws PlaybackCapacityException 503 when the node runs its maximum number of encoders
+   */
+  Permit admitEncoder() {
+    if (!encoderSlots.tryAcquire()) {
+      metrics.recordAdmissionRejected("encoder", SERVICE_UNAVAILABLE.value());
+      throw new PlaybackCapacityException(SERVICE_UNAVAILABLE, "Stream encoder capacity exhausted, try again later", retryAfterS);
+    }
+
+    return new Permit(encoderSlots::release);
+  }
+
+  /**
+   * Refusal for a stream request on a session that already has its maximum number of
+   * listeners; listeners share the session's decode and encoders, so there is nothing to queue for.
+   */
+  PlaybackCapacityException listenerLimitReached() {
+    metrics.recordAdmissionRejected("listener", TOO_MANY_REQUESTS.value());
+    return new PlaybackCapacityException(TOO_MANY_REQUESTS, "Too many listeners on this session", retryAfterS);
+  }
+
+  int availableSessions() {
+    return sessionSlots.availablePermits();
+  }
+
+  int availableEncoders() {
+    return encoderSlots.availablePermits();
+  }
+
+  private boolean acquireQueued(Semaphore slots) {
+    if (slots.tryAcquire()) {
+      return true;
+    }
+
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      return false;
+    }
+
+    try {
+      return slots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  private boolean reserveUserSlot(long userId) {
+    AtomicBoolean reserved = new AtomicBoolean(false);
+
+    sessionsByUser.compute(userId, (id, current) -> {
+      int count = current == null ? 0 : current;
+      if (count >= maxSessionsPerUser) {
+        return current;
+      }
+      reserved.set(true);
+      return count + 1;
+    });
+
+    return reserved.get();
+  }
+
+  private void releaseUserSlot(long userId) {
+    sessionsByUser.computeIfPresent(userId, (id, count) -> count <= 1 ? null : count - 1);
+  }
+
+  /**
+   * A held slot. Releasing is idempotent, so every path that tears a session or encoder
+   * down may release without coordinating with the others.
+   */
+  static final class Permit {
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private Permit(Runnable onRelease) {
+      this.onRelease = onRelease;
+    }
+
+    void release() {
+      if (released.compareAndSet(false, true)) {
+        onRelease.run();
+      }
+    }
+  }
+}
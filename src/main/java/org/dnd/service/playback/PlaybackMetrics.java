@@ -0,0 +1,237 @@
+package org.dnd.service.playback;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for the audio path. Sessions are created by {@link StreamSessionsManager}
+ * rather than Spring, so they receive this component from the manager and record through it;
+ * all meters are registered once up front and nothing is created per session.
+ */
+@Component
+public class PlaybackMetrics {
+
+  static final String CACHE = "cache";
+  static final String DECODER = "decoder";
+
+  private final MeterRegistry registry;
+  private final Counter boardFramesDecoded;
+  private final Counter trackFramesDecoded;
+  private final Counter waveformFramesDecoded;
+  private final DistributionSummary listenerLag;
+  private final Counter droppedFrames;
+  private final Counter listenerOutputBytes;
+  private final AtomicInteger listenerWriters = new AtomicInteger();
+  private final AtomicInteger encoderProcesses = new AtomicInteger();
+  private final Counter encoderPcmBytes;
+  private final Map<EncoderProfile, Counter> encoderOutputBytes = new EnumMap<>(EncoderProfile.class);
+  private final Counter pooledEncoderClaims;
+  private final Counter spawnedEncoderClaims;
+  private final Timer timeToFirstByte;
+  private final Timer gainFrame;
+
+  @Autowired
+  public PlaybackMetrics(MeterRegistry registry, PcmDiskCache pcmCache) {
+    this(registry);
+    bindCache(pcmCache);
+  }
+
+  PlaybackMetrics(MeterRegistry registry) {
+    this.registry = registry;
+
+    this.boardFramesDecoded = framesDecoded("board");
+    this.trackFramesDecoded = framesDecoded("track");
+    this.waveformFramesDecoded = framesDecoded("waveform");
+
+    this.listenerLag = DistributionSummary.builder("playback.listener.lag")
+            .description("Frames a listener trails the producer by when it reads")
+            .baseUnit("frames")
+            .publishPercentiles(0.5, 0.99)
+            .register(registry);
+    this.droppedFrames = Counter.builder("playback.listener.dropped")
+            .description("Frames skipped by listeners that fell behind the producer")
+            .baseUnit("frames")
+            .register(registry);
+    this.listenerOutputBytes = Counter.builder("playback.listener.output")
+            .description("Audio bytes written to listener responses")
+            .baseUnit("bytes")
+            .register(registry);
+    Gauge.builder("playback.listener.writers", listenerWriters, AtomicInteger::get)
+            .description("Threads currently writing a listener response")
+            .register(registry);
+
+    Gauge.builder("playback.encoder.processes", encoderProcesses, AtomicInteger::get)
+            .description("Running ffmpeg encoder processes")
+            .register(registry);
+    this.encoderPcmBytes = Counter.builder("playback.encoder.input")
+            .description("PCM bytes fed into encoders")
+            .baseUnit("bytes")
+            .register(registry);
+    for (EncoderProfile profile : EncoderProfile.values()) {
+      encoderOutputBytes.put(profile, Counter.builder("playback.encoder.output")
+              .description("Encoded bytes produced by encoders")
+              .tag("profile", profile.name().toLowerCase(Locale.ROOT))
+              .baseUnit("bytes")
+              .register(registry));
+    }
+
+    this.pooledEncoderClaims = encoderClaims("pool");
+    this.spawnedEncoderClaims = encoderClaims("spawn");
+
+    this.timeToFirstByte = Timer.builder("playback.stream.first.byte")
+            .description("Time from a stream request to the first audio byte handed to the client")
+            .publishPercentiles(0.5, 0.99)
+            .register(registry);
+
+    this.gainFrame = Timer.builder("playback.gain.frame")
+            .description("CPU time spent applying volume and normalization to one PCM frame")
+            .publishPercentiles(0.5, 0.99)
+            .register(registry);
+  }
+
+  /**
+   * Exposes the number of live sessions in {@code sessions} under {@code type}.
+   */
+  void gaugeSessions(String type, Map<?, ?> sessions) {
+    Gauge.builder("playback.sessions.active", sessions, Map::size)
+            .description("Live playback sessions")
+            .tag("type", type)
+            .register(registry);
+  }
+
+  void recordAdmissionRejected(String resource, int status) {
+    Counter.builder("playback.admission.rejected")
+            .description("Sessions and encoders refused by admission control")
+            .tag("resource", resource)
+            .tag("status", String.valueOf(status))
+            .register(registry)
+            .increment();
+  }
+
+  void recordTrackLoad(String origin, boolean success, long elapsedNanos) {
+    Timer.builder("playback.track.load")
+            .description("Time from starting playback to the first frame being decodable")
+            .tag("origin", origin)
+            .tag("outcome", success ? "success" : "failure")
+            .register(registry)
+            .record(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counter for decoded frames of one session type; the decode loop looks it up once.
+   */
+  Counter framesDecodedCounter(String sessionType) {
+    return switch (sessionType) {
+      case "board" -> boardFramesDecoded;
+      case "track" -> trackFramesDecoded;
+      default -> waveformFramesDecoded;
+    };
+  }
+
+  void recordListenerLag(long frames) {
+    listenerLag.record(frames);
+  }
+
+  void recordDroppedFrames(long frames) {
+    if (frames > 0) {
+      droppedFrames.increment(frames);
+    }
+  }
+
+  void recordListenerOutput(long bytes) {
+    if (bytes > 0) {
+      listenerOutputBytes.increment(bytes);
+    }
+  }
+
+  void listenerWriterStarted() {
+    listenerWriters.incrementAndGet();
+  }
+
+  void listenerWriterStopped() {
+    listenerWriters.decrementAndGet();
+  }
+
+  void encoderStarted() {
+    encoderProcesses.incrementAndGet();
+  }
+
+  void encoderStopped() {
+    encoderProcesses.decrementAndGet();
+  }
+
+  /**
+   * Exposes the number of pre-spawned encoders waiting in {@code idle}.
+   */
+  void gaugeEncoderPool(Collection<?> idle) {
+    Gauge.builder("playback.encoder.pool.idle", idle, Collection::size)
+            .description("Pre-spawned ffmpeg encoders waiting for a stream")
+            .register(registry);
+  }
+
+  void recordEncoderClaim(boolean pooled) {
+    (pooled ? pooledEncoderClaims : spawnedEncoderClaims).increment();
+  }
+
+  void recordEncoderInput(int bytes) {
+    encoderPcmBytes.increment(bytes);
+  }
+
+  void recordEncoderOutput(EncoderProfile profile, int bytes) {
+    encoderOutputBytes.get(profile).increment(bytes);
+  }
+
+  void recordTimeToFirstByte(long elapsedNanos) {
+    timeToFirstByte.record(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void recordGainFrame(long elapsedNanos) {
+    gainFrame.record(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private Counter framesDecoded(String sessionType) {
+    return Counter.builder("playback.frames.decoded")
+            .description("PCM frames pulled through the decode loop")
+            .tag("session", sessionType)
+            .baseUnit("frames")
+            .register(registry);
+  }
+
+  private Counter encoderClaims(String source) {
+    return Counter.builder("playback.encoder.claims")
+            .description("Encoders handed to streams, by whether the pool had one ready")
+            .tag("source", source)
+            .register(registry);
+  }
+
+  private void bindCache(PcmDiskCache pcmCache) {
+    FunctionCounter.builder("playback.pcm.cache.requests", pcmCache, PcmDiskCache::hitCount)
+            .description("PCM cache lookups")
+            .tag("result", "hit")
+            .register(registry);
+    FunctionCounter.builder("playback.pcm.cache.requests", pcmCache, PcmDiskCache::missCount)
+            .description("PCM cache lookups")
+            .tag("result", "miss")
+            .register(registry);
+    Gauge.builder("playback.pcm.cache.size", pcmCache, PcmDiskCache::bytesOnDisk)
+            .description("Bytes of decoded PCM held on disk")
+            .baseUnit("bytes")
+            .register(registry);
+    Gauge.builder("playback.pcm.cache.entries", pcmCache, PcmDiskCache::entryCount)
+            .description("Tracks held in the PCM cache")
+            .register(registry);
+  }
+}
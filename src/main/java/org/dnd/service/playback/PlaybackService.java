@@ -3,23 +3,41 @@ package org.dnd.service.playback;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dnd.api.model.*;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.dnd.service.JwtService;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.Optional;
 
-import static org.springframework.http.HttpStatus.CONFLICT;
-import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PlaybackService {
 
+  private static final int MAX_RANGE_BUCKETS = 4096;
+  private static final double NORMALIZATION_PEAK_CEILING_DBFS = -1d;
+
+  /**
+   * Lets Firefox show the length of an Ogg file without seeking to its last page.
+   */
+  private static final String CONTENT_DURATION_HEADER = "X-Content-Duration";
+
   private final PlaybackAccessService accessService;
   private final StreamSessionsManager sessionsManager;
+  private final WaveformStore waveformStore;
+  private final TrackAnalysisStore analysisStore;
+  private final TrackRenditionStore renditionStore;
+  private final PlaybackConfiguration playbackConfiguration;
+  private final JwtService jwtService;
 
   public PlaybackState getState(long boardId) {
     accessService.requireOwnedBoard(boardId);
@@ -33,12 +51,15 @@ public class PlaybackService {
     PlaybackAccessService.BoardPlayData playData = accessService.getBoardPlayData(boardId, request);
 
     StreamSession session = sessionsManager.startBoardSession(
+            playData.userId(),
             playData.boardId(),
             playData.trackId(),
             playData.trackLink(),
             playData.trackDuration(),
-            playData.windowStartS(),
-            playData.windowEndS()
+            playData.window(),
+            playData.volume(),
+            normalizationGainDb(playData.trackLink()),
+            request != null ? request.getFormat() : null
     );
 
     return session.snapshot();
@@ -50,34 +71,45 @@ public class PlaybackService {
     return stoppedBoardState(boardId);
   }
 
-  @Deprecated
   public PlaybackState pause(long boardId) {
     accessService.requireOwnedBoard(boardId);
 
-    return sessionsManager.getBoardSession(boardId)
-            .map(StreamSession::snapshot)
-            .orElse(stoppedBoardState(boardId));
+    StreamSession session = requireBoardSession(boardId);
+    if (!session.pause()) {
+      throw conflict("Board is not playing");
+    }
+
+    return session.snapshot();
   }
 
-  @Deprecated
   public PlaybackState resume(long boardId) {
     accessService.requireOwnedBoard(boardId);
 
-    return sessionsManager.getBoardSession(boardId)
-            .map(StreamSession::snapshot)
-            .orElse(stoppedBoardState(boardId));
+    StreamSession session = requireBoardSession(boardId);
+    if (!session.resume()) {
+      throw conflict("Board is not paused");
+    }
+
+    return session.snapshot();
   }
 
-  @Deprecated
   public PlaybackState seek(long boardId, SeekRequest request) {
     accessService.requireOwnedBoard(boardId);
 
-    return sessionsManager.getBoardSession(boardId)
-            .map(StreamSession::snapshot)
-            .orElse(stoppedBoardState(boardId));
+    if (request == null || request.getPositionS() == null || request.getPositionS() < 0) {
+      throw new ResponseStatusException(BAD_REQUEST, "positionS must be zero or positive");
+    }
+
+    StreamSession session = requireBoardSession(boardId);
+    if (!session.seek(request.getPositionS())) {
+      throw conflict("Board is not playing a seekable track");
+    }
+
+    return session.snapshot();
   }
 
-  public ResponseEntity<Resource> streamMp3ForUser(long boardId, long userId) {
+  public ResponseEntity<Resource> streamForUser(long boardId, long userId, String format) {
+    StreamFormat streamFormat = parseStreamFormat(format);
     accessService.requireOwnedBoardByUserId(boardId, userId);
 
     StreamSession session = sessionsManager.getBoardSession(boardId)
@@ -85,37 +117,64 @@ public class PlaybackService {
             .orElseThrow(() -> conflict("Board is not playing"));
 
     try {
-      return session.buildStreamResponse();
+      return session.buildStreamResponse(streamFormat);
     } catch (IOException e) {
       log.error("[board={}] Failed to start stream", boardId, e);
       throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Streaming failed");
     }
   }
 
+  /**
+   * Plays the whole track from its pre-rendered file when there is one, without a session or a
+   * decode; otherwise starts a track session and queues a rendition for later plays.
+   */
   public PlaybackState playTrack(long trackId, PlayRequest request) {
     PlaybackAccessService.TrackPlayData playData = accessService.getTrackPlayData(trackId, request);
+    StreamFormat format = request != null ? request.getFormat() : null;
+
+    if (!playData.window().shapesAudio()) {
+      Optional<TrackRenditionStore.Rendition> rendition = findOrRenderRendition(playData.trackLink(), null, format);
+      if (rendition.isPresent()) {
+        sessionsManager.stopTrackSession(playData.userId(), playData.trackId());
+        return renditionState(playData, format);
+      }
+    }
 
     StreamSession session = sessionsManager.startTrackSession(
             playData.userId(),
             playData.trackId(),
             playData.trackLink(),
             playData.trackDuration(),
-            playData.windowStartS(),
-            playData.windowEndS()
+            playData.window(),
+            normalizationGainDb(playData.trackLink()),
+            format
     );
 
     return session.snapshot();
   }
 
-  public ResponseEntity<Resource> streamMp3ForTrack(long trackId, long userId) {
-    accessService.requireOwnedTrackByUserId(trackId, userId);
+  /**
+   * Serves the pre-rendered file of the track when there is one, with Range support and without
+   * a playing session; otherwise attaches to the live session and queues a rendition.
+   */
+  public ResponseEntity<Resource> streamForTrack(long trackId, long userId, String format) {
+    StreamFormat streamFormat = parseStreamFormat(format);
+    PlaybackAccessService.TrackMetadata metadata = accessService.getOwnedTrackMetadata(trackId, userId);
+
+    Optional<StreamSession> trackSession = sessionsManager.getTrackSession(userId, trackId);
+    Optional<TrackRenditionStore.Rendition> rendition =
+            findOrRenderRendition(metadata.trackLink(), trackSession.orElse(null), streamFormat);
+    if (rendition.isPresent()) {
+      trackSession.ifPresent(StreamSession::suspendNowIfIdle);
+      return renditionResponse(rendition.get());
+    }
 
-    StreamSession session = sessionsManager.getTrackSession(userId, trackId)
+    StreamSession session = trackSession
             .filter(StreamSession::canServeStream)
             .orElseThrow(() -> conflict("Track is not playing"));
 
     try {
-      return session.buildStreamResponse();
+      return session.buildStreamResponse(streamFormat);
     } catch (IOException e) {
       log.error("[track={}] Failed to start stream", trackId, e);
       throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Streaming failed");
@@ -128,10 +187,19 @@ public class PlaybackService {
 
     StreamInfoResponse info = new StreamInfoResponse();
     info.setTrackId(trackId);
-    info.setMimeType("audio/mpeg");
-    info.setRangeSupported(true);
+    Optional<TrackRenditionStore.Rendition> rendition = findRendition(metadata.trackLink(), session, null);
+    EncoderProfile profile = EncoderProfile.of(session != null ? session.getStreamFormat() : null);
+    info.setMimeType(profile.mediaType().toString());
+    if (rendition.isPresent() || session == null || !session.isOpusPassthrough()) {
+      info.setBitrateKbps(profile.bitrateKbps());
+    }
+    info.setRangeSupported(rendition.isPresent());
 
-    if (session != null && session.getDurationMs() > 0) {
+    if (rendition.isPresent()) {
+      RenditionIndex index = rendition.get().index();
+      info.setByteLength(index.bytes());
+      info.setDurationS(Math.round(index.durationMs() / 1000d));
+    } else if (session != null && session.getDurationMs() > 0) {
       info.setDurationS(session.getDurationMs() / 1000L);
     } else if (metadata.trackDuration() > 0) {
       info.setDurationS((long) metadata.trackDuration());
@@ -140,17 +208,184 @@ public class PlaybackService {
     return info;
   }
 
-  public WaveformResponse getTrackWaveform(Long trackId) {
+  public WaveformResponse getTrackWaveform(Long trackId, String encoding) {
+    WaveformPeaksEncoding peaksEncoding = parsePeaksEncoding(encoding);
+    PlaybackAccessService.TrackMetadata metadata = accessService.getOwnedTrackMetadata(trackId);
+
+    Optional<WaveformAccumulator> stored = findStoredWaveform(metadata);
+    if (stored.isPresent()) {
+      return stored.get().toResponse(metadata.trackId(), true, peaksEncoding);
+    }
+
+    return analyzeWaveform(metadata).getWaveformResponse(metadata.trackId(), peaksEncoding);
+  }
+
+  public TrackAnalysisResponse getTrackAnalysis(Long trackId) {
+    PlaybackAccessService.TrackMetadata metadata = accessService.getOwnedTrackMetadata(trackId);
+
+    Optional<TrackAnalysis> stored = analysisStore.find(TrackSourceKey.of(metadata.trackLink()));
+    if (stored.isPresent()) {
+      return stored.get().toResponse(metadata.trackId(), true);
+    }
+
+    return analyzeWaveform(metadata).getAnalysisResponse(metadata.trackId());
+  }
+
+  public SseEmitter streamTrackWaveform(Long trackId, String encoding) {
+    WaveformPeaksEncoding peaksEncoding = parsePeaksEncoding(encoding);
     PlaybackAccessService.TrackMetadata metadata = accessService.getOwnedTrackMetadata(trackId);
 
-    WaveformSession session = sessionsManager.getOrCreateWaveformSession(
+    Optional<WaveformAccumulator> stored = findStoredWaveform(metadata);
+    if (stored.isPresent()) {
+      return WaveformSession.streamStored(new SseEmitter(), stored.get(), metadata.trackId(), peaksEncoding);
+    }
+
+    return analyzeWaveform(metadata).streamProgress(metadata.trackId(), peaksEncoding);
+  }
+
+  public WaveformRangeResponse getTrackWaveformRange(Long trackId, long fromMs, long toMs, int buckets) {
+    if (fromMs < 0 || toMs <= fromMs) {
+      throw new ResponseStatusException(BAD_REQUEST, "toMs must be greater than fromMs");
+    }
+    if (buckets < 1 || buckets > MAX_RANGE_BUCKETS) {
+      throw new ResponseStatusException(BAD_REQUEST, "buckets must be between 1 and " + MAX_RANGE_BUCKETS);
+    }
+
+    PlaybackAccessService.TrackMetadata metadata = accessService.getOwnedTrackMetadata(trackId);
+
+    Optional<WaveformAccumulator> stored = findStoredWaveform(metadata);
+    if (stored.isPresent()) {
+      return stored.get().toRangeResponse(metadata.trackId(), fromMs, toMs, buckets, true);
+    }
+
+    return analyzeWaveform(metadata).getWaveformRange(metadata.trackId(), fromMs, toMs, buckets);
+  }
+
+  /**
+   * Gain towards the configured loudness target from the stored analysis of the track; tracks
+   * not analysed yet play at unity.
+   */
+  private double normalizationGainDb(String trackLink) {
+    if (!playbackConfiguration.isNormalizationEnabled()) {
+      return 0d;
+    }
+
+    return PcmGainStage.normalizationGainDb(
+            analysisStore.find(TrackSourceKey.of(trackLink)).orElse(null),
+            playbackConfiguration.getNormalizationTargetLufs(),
+            playbackConfiguration.getNormalizationMaxBoostDb(),
+            NORMALIZATION_PEAK_CEILING_DBFS
+    );
+  }
+
+  /**
+   * Rendition matching what the live stream would play, i.e. the whole track at its
+   * normalization gain in a rendered format.
+   */
+  private Optional<TrackRenditionStore.Rendition> findRendition(String trackLink,
+                                                               StreamSession session,
+                                                               StreamFormat requestedFormat) {
+    if (session != null && session.shapesAudio()) {
+      return Optional.empty();
+    }
+
+    return renditionStore.find(TrackSourceKey.of(trackLink), renditionProfile(session, requestedFormat),
+            normalizationGainDb(trackLink));
+  }
+
+  /**
+   * Same as {@link #findRendition}, but a miss queues a render, so only requests that play the
+   * track put encode work on the node.
+   */
+  private Optional<TrackRenditionStore.Rendition> findOrRenderRendition(String trackLink,
+                                                                       StreamSession session,
+                                                                       StreamFormat requestedFormat) {
+    Optional<TrackRenditionStore.Rendition> rendition = findRendition(trackLink, session, requestedFormat);
+    if (rendition.isEmpty() && (session == null || !session.shapesAudio())) {
+      renditionStore.requestRender(TrackSourceKey.of(trackLink), renditionProfile(session, requestedFormat),
+              normalizationGainDb(trackLink));
+    }
+    return rendition;
+  }
+
+  private static EncoderProfile renditionProfile(StreamSession session, StreamFormat requestedFormat) {
+    StreamFormat format = requestedFormat != null || session == null ? requestedFormat : session.getStreamFormat();
+    return EncoderProfile.of(format);
+  }
+
+  /**
+   * State of a track played from its rendition. There is no session behind it, so the stream
+   * URL carries the format to pick the file by.
+   */
+  private PlaybackState renditionState(PlaybackAccessService.TrackPlayData playData, StreamFormat format) {
+    StreamFormat streamFormat = format != null ? format : StreamFormat.MP3;
+    String streamToken = jwtService.generateTrackStreamToken(playData.userId(), playData.trackId());
+
+    PlaybackState state = new PlaybackState();
+    state.setStatus(PlaybackStatus.PLAYING);
+    state.setTrackId(playData.trackId());
+    state.setWindowStartS(playData.window().startS());
+    state.setWindowEndS(playData.window().endS());
+    state.setPositionS(playData.window().startMs() / 1000L);
+    state.setStreamFormat(streamFormat);
+    state.setStreamUrl("/tracks/" + playData.trackId() + "/stream?streamToken=" + streamToken
+            + "&format=" + streamFormat.getValue());
+    return state;
+  }
+
+  private static ResponseEntity<Resource> renditionResponse(TrackRenditionStore.Rendition rendition) {
+    String fileName = rendition.file().getFileName().toString();
+
+    // Spring answers Range and If-None-Match requests for file resources itself
+    return ResponseEntity.ok()
+            .contentType(rendition.profile().mediaType())
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .eTag(fileName.substring(0, fileName.lastIndexOf('.')))
+            .header(CONTENT_DURATION_HEADER, String.valueOf(rendition.index().durationMs() / 1000d))
+            .header("X-Content-Type-Options", "nosniff")
+            .body(new FileSystemResource(rendition.file()));
+  }
+
+  private static StreamFormat parseStreamFormat(String format) {
+    if (format == null) {
+      return null;
+    }
+
+    try {
+      return StreamFormat.fromValue(format);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(BAD_REQUEST, "Unknown stream format: " + format);
+    }
+  }
+
+  private static WaveformPeaksEncoding parsePeaksEncoding(String encoding) {
+    if (encoding == null) {
+      return WaveformPeaksEncoding.DECIMAL;
+    }
+
+    try {
+      return WaveformPeaksEncoding.fromValue(encoding);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(BAD_REQUEST, "Unknown waveform encoding: " + encoding);
+    }
+  }
+
+  private Optional<WaveformAccumulator> findStoredWaveform(PlaybackAccessService.TrackMetadata metadata) {
+    return waveformStore.find(TrackSourceKey.of(metadata.trackLink()), WaveformSession.WAVEFORM_BUCKETS);
+  }
+
+  private WaveformSession analyzeWaveform(PlaybackAccessService.TrackMetadata metadata) {
+    return sessionsManager.getOrCreateWaveformSession(
             metadata.userId(),
             metadata.trackId(),
             metadata.trackLink(),
             metadata.trackDuration()
     );
+  }
 
-    return session.getWaveformResponse();
+  private StreamSession requireBoardSession(long boardId) {
+    return sessionsManager.getBoardSession(boardId)
+            .orElseThrow(() -> conflict("Board is not playing"));
   }
 
   private static PlaybackState stoppedBoardState(long boardId) {
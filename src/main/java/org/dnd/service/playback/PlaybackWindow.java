@@ -0,0 +1,37 @@
+package org.dnd.service.playback;
+
+/**
+ * Part of a track a stream session plays, and how its edges sound.
+ *
+ * @param startS    window start in seconds, or {@code null} for the track start
+ * @param endS      window end in seconds, or {@code null} for the track end
+ * @param fadeInMs  length of the gain ramp after the start, 0 for none
+ * @param fadeOutMs length of the gain ramp before the end, 0 for none
+ * @param loop      restart at the window start instead of stopping at its end
+ */
+public record PlaybackWindow(Long startS, Long endS, long fadeInMs, long fadeOutMs, boolean loop) {
+
+  public static final PlaybackWindow FULL_TRACK = new PlaybackWindow(null, null, 0L, 0L, false);
+
+  public static PlaybackWindow of(Long startS, Long endS) {
+    return new PlaybackWindow(startS, endS, 0L, 0L, false);
+  }
+
+  long startMs() {
+    return startS != null && startS > 0 ? startS * 1000L : 0L;
+  }
+
+  /**
+   * Window end in milliseconds, or 0 when it ends with the track.
+   */
+  long endMs() {
+    return endS != null && endS > 0 ? endS * 1000L : 0L;
+  }
+
+  /**
+   * Whether the PCM has to pass through a {@link WindowedPcmSource}.
+   */
+  boolean shapesAudio() {
+    return endMs() > 0 || fadeInMs > 0 || fadeOutMs > 0 || loop;
+  }
+}
@@ -0,0 +1,58 @@
+package org.dnd.service.playback;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Releases decoded PCM at wall-clock speed. The broadcast ring never pushes back on the
+ * decoder, so without pacing a session would decode a whole track as fast as lavaplayer can
+ * and lap every listener.
+ */
+final class RealtimePacer {
+
+  private static final long PCM_BYTES_PER_SECOND = 48_000L * 2 * 2;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * How far the producer may run ahead of the wall clock; also the burst a fresh
+   * playback gets to prime listener buffers.
+   */
+  private static final long MAX_LEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+  /**
+   * When decoding falls further behind than this (slow source, long GC), the schedule is
+   * rebased instead of bursting the whole deficit at once.
+   */
+  private static final long MAX_CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+
+  private volatile long startNanos = -1L;
+  private volatile long emittedNanos;
+
+  void reset() {
+    startNanos = -1L;
+    emittedNanos = 0L;
+  }
+
+  void awaitFrameSlot(int frameBytes) throws InterruptedException {
+    awaitFrameDuration(frameBytes * NANOS_PER_SECOND / PCM_BYTES_PER_SECOND);
+  }
+
+  /**
+   * Same as {@link #awaitFrameSlot(int)} for frames whose length says nothing about their
+   * duration, such as Opus packets.
+   */
+  void awaitFrameDuration(long frameNanos) throws InterruptedException {
+    long now = System.nanoTime();
+    if (startNanos < 0) {
+      startNanos = now;
+    }
+
+    long waitNanos = startNanos + emittedNanos - MAX_LEAD_NANOS - now;
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    } else if (-waitNanos > MAX_CATCH_UP_NANOS) {
+      startNanos = now - emittedNanos + MAX_LEAD_NANOS;
+    }
+
+    emittedNanos += frameNanos;
+  }
+}
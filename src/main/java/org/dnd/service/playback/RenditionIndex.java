@@ -0,0 +1,111 @@
+package org.dnd.service.playback;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Frame index of a pre-rendered track: for every whole second, the byte offset of the first
+ * frame (or Ogg page) that starts at or after it. Stored next to the rendition together with
+ * the gain the track was rendered at.
+ */
+final class RenditionIndex {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final long durationMs;
+  private final long bytes;
+  private final double gainDb;
+  private final int[] secondOffsets;
+
+  RenditionIndex(long durationMs, long bytes, double gainDb, int[] secondOffsets) {
+    this.durationMs = durationMs;
+    this.bytes = bytes;
+    this.gainDb = gainDb;
+    this.secondOffsets = secondOffsets;
+  }
+
+  long durationMs() {
+    return durationMs;
+  }
+
+  /**
+   * Size of the rendition file the index describes.
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  double gainDb() {
+    return gainDb;
+  }
+
+  /**
+   * Offset of the frame playing at {@code positionMs}, at one second resolution.
+   */
+  long byteOffsetAt(long positionMs) {
+    if (secondOffsets.length == 0) {
+      return 0L;
+    }
+
+    int second = (int) Math.min(secondOffsets.length - 1, Math.max(0L, positionMs / 1000L));
+    return secondOffsets[second];
+  }
+
+  void writeTo(Path file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(durationMs);
+      out.writeLong(bytes);
+      out.writeDouble(gainDb);
+      out.writeInt(secondOffsets.length);
+      for (int offset : secondOffsets) {
+        out.writeInt(offset);
+      }
+    }
+  }
+
+  static RenditionIndex readFrom(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unsupported rendition index version");
+      }
+
+      long durationMs = in.readLong();
+      long bytes = in.readLong();
+      double gainDb = in.readDouble();
+      int[] offsets = new int[in.readInt()];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = in.readInt();
+      }
+      return new RenditionIndex(durationMs, bytes, gainDb, offsets);
+    }
+  }
+
+  /**
+   * Collects the index while frames are written in order.
+   */
+  static final class Builder {
+    private final double gainDb;
+    private int[] secondOffsets = new int[256];
+    private int seconds;
+
+    Builder(double gainDb) {
+      this.gainDb = gainDb;
+    }
+
+    void frame(long byteOffset, long startMs) {
+      while ((long) seconds * 1000L <= startMs) {
+        if (seconds == secondOffsets.length) {
+          secondOffsets = Arrays.copyOf(secondOffsets, seconds * 2);
+        }
+        secondOffsets[seconds++] = (int) byteOffset;
+      }
+    }
+
+    RenditionIndex build(long durationMs, long bytes) {
+      return new RenditionIndex(durationMs, bytes, gainDb, Arrays.copyOf(secondOffsets, seconds));
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package org.dnd.service.playback;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the encoder output of one track render into a seekable file and indexes it as it
+ * goes. Opus packets are wrapped into a fresh Ogg stream; MP3 frames are written behind a slot
+ * that becomes a Xing "Info" frame, frame count and seek table included, once the whole track
+ * is known, so players get an exact duration and seek without scanning the file.
+ */
+final class RenditionWriter implements EncodedFrameSplitter.FrameSink {
+
+  /**
+   * Samples per MPEG-1 Layer III frame, which is what every MP3 profile encodes at 48 kHz.
+   */
+  static final int MP3_FRAME_SAMPLES = 1152;
+
+  /**
+   * libopus lookahead at 48 kHz; a rendition starts with the encoder's first packet, so this is
+   * all the decoder has to drop.
+   */
+  static final int OPUS_ENCODER_PRE_SKIP_SAMPLES = 312;
+
+  private static final int MP3_HEADER_BYTES = 4;
+  private static final int INFO_FLAGS_FRAMES_BYTES_TOC = 0x07;
+  private static final int INFO_TOC_ENTRIES = 100;
+  private static final int INFO_MAX_SIDE_INFO_BYTES = 32;
+  private static final int INFO_FRAME_MIN_BYTES = MP3_HEADER_BYTES + INFO_MAX_SIDE_INFO_BYTES + 16 + INFO_TOC_ENTRIES;
+
+  private final FileChannel channel;
+  private final OggOpusMuxer muxer;
+  private final byte[] page;
+  private final RenditionIndex.Builder index;
+
+  private long position;
+  private long samples;
+  private long frames;
+  private byte[] infoHeader;
+  private int infoFrameLength;
+
+  RenditionWriter(EncoderProfile profile, FileChannel channel, double gainDb, int serial) throws IOException {
+    this.channel = channel;
+    this.index = new RenditionIndex.Builder(gainDb);
+
+    if (profile.muxesOgg()) {
+      this.muxer = new OggOpusMuxer(serial, profile.channels(), OPUS_ENCODER_PRE_SKIP_SAMPLES);
+      this.page = new byte[OggOpusMuxer.maxPageBytes(profile.maxFrameBytes())];
+      byte[] headers = muxer.headerPages();
+      write(headers, 0, headers.length);
+    } else {
+      this.muxer = null;
+      this.page = null;
+    }
+  }
+
+  @Override
+  public void onFrame(byte[] buffer, int offset, int length) {
+    try {
+      if (muxer != null) {
+        writePacket(buffer, offset, length);
+      } else {
+        writeMp3Frame(buffer, offset, length);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Completes the file once the encoder has exited.
+   *
+   * @return the index of the finished file
+   */
+  RenditionIndex finish() throws IOException {
+    if (frames == 0) {
+      throw new IOException("Encoder produced no audio");
+    }
+
+    long durationSamples = samples;
+    if (muxer != null) {
+      byte[] end = muxer.endOfStreamPage();
+      write(end, 0, end.length);
+      durationSamples = Math.max(0L, samples - OPUS_ENCODER_PRE_SKIP_SAMPLES);
+    }
+
+    RenditionIndex finished = index.build(durationSamples * 1000L / OggOpusMuxer.SAMPLE_RATE, position);
+    if (muxer == null) {
+      writeInfoFrame(finished);
+    }
+    return finished;
+  }
+
+  private void writePacket(byte[] packet, int offset, int length) throws IOException {
+    byte[] data = packet;
+    if (offset != 0) {
+      data = new byte[length];
+      System.arraycopy(packet, offset, data, 0, length);
+    }
+
+    index.frame(position, samplesToMs(samples));
+    write(page, 0, muxer.writePage(data, length, page));
+    samples += OpusPacket.samples(data, length);
+    frames++;
+  }
+
+  private void writeMp3Frame(byte[] frame, int offset, int length) throws IOException {
+    if (frames == 0) {
+      if (length < INFO_FRAME_MIN_BYTES) {
+        throw new IOException("First MP3 frame too short to carry the Info frame: " + length);
+      }
+
+      // the Info frame takes a slot of the same size in front of the audio
+      infoHeader = new byte[MP3_HEADER_BYTES];
+      System.arraycopy(frame, offset, infoHeader, 0, MP3_HEADER_BYTES);
+      infoFrameLength = length;
+      position = length;
+      channel.position(position);
+    }
+
+    index.frame(position, samplesToMs(samples));
+    write(frame, offset, length);
+    samples += MP3_FRAME_SAMPLES;
+    frames++;
+  }
+
+  private void writeInfoFrame(RenditionIndex finished) throws IOException {
+    byte[] info = new byte[infoFrameLength];
+    System.arraycopy(infoHeader, 0, info, 0, MP3_HEADER_BYTES);
+    // no CRC, so the side information directly follows the header
+    info[1] |= 0x01;
+
+    boolean mpeg1 = ((info[1] >> 3) & 0x03) == 3;
+    boolean mono = ((info[3] >> 6) & 0x03) == 3;
+    int sideInfoBytes = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+
+    int tag = MP3_HEADER_BYTES + sideInfoBytes;
+    info[tag] = 'I';
+    info[tag + 1] = 'n';
+    info[tag + 2] = 'f';
+    info[tag + 3] = 'o';
+    writeBigEndian(info, tag + 4, INFO_FLAGS_FRAMES_BYTES_TOC);
+    writeBigEndian(info, tag + 8, (int) frames);
+    writeBigEndian(info, tag + 12, (int) finished.bytes());
+
+    // entry i: position in the file, in 1/256ths, where i percent of the duration is reached
+    int toc = tag + 16;
+    for (int i = 0; i < INFO_TOC_ENTRIES; i++) {
+      long offset = finished.byteOffsetAt(finished.durationMs() * i / INFO_TOC_ENTRIES);
+      info[toc + i] = (byte) Math.min(255L, offset * 256L / finished.bytes());
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(info);
+    long at = 0;
+    while (buffer.hasRemaining()) {
+      at += channel.write(buffer, at);
+    }
+  }
+
+  private void write(byte[] data, int offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    position += length;
+  }
+
+  private static long samplesToMs(long samples) {
+    return samples * 1000L / OggOpusMuxer.SAMPLE_RATE;
+  }
+
+  private static void writeBigEndian(byte[] target, int offset, int value) {
+    target[offset] = (byte) (value >>> 24);
+    target[offset + 1] = (byte) (value >>> 16);
+    target[offset + 2] = (byte) (value >>> 8);
+    target[offset + 3] = (byte) value;
+  }
+}
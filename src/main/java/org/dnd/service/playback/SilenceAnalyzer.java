@@ -0,0 +1,67 @@
+package org.dnd.service.playback;
+
+/**
+ * Finds where audible content starts and ends, so leading and trailing silence can be trimmed
+ * or skipped. A sample is audible when either channel is above {@link #THRESHOLD_DBFS}.
+ */
+final class SilenceAnalyzer implements TrackAnalyzer {
+
+  static final double THRESHOLD_DBFS = -60d;
+
+  private static final int SAMPLES_PER_MS = 96;            // 48kHz, two interleaved channels
+  private static final int THRESHOLD = (int) Math.round(32768d * Math.pow(10d, THRESHOLD_DBFS / 20d));
+
+  private long firstAudibleSample = -1L;
+  private long lastAudibleSample = -1L;
+
+  @Override
+  public void setDurationMs(long durationMs) {
+  }
+
+  @Override
+  public void accept(byte[] pcmFrame, int length, long trackPositionMs) {
+    if (pcmFrame == null || length < 2) {
+      return;
+    }
+
+    int first = -1;
+    int last = -1;
+    for (int i = 0; i + 1 < length; i += 2) {
+      int sample = (short) (((pcmFrame[i] & 0xFF) << 8) | (pcmFrame[i + 1] & 0xFF));
+      if (sample > THRESHOLD || sample < -THRESHOLD) {
+        if (first < 0) {
+          first = i / 2;
+        }
+        last = i / 2;
+      }
+    }
+
+    if (first < 0) {
+      return;
+    }
+
+    long frameStart = Math.max(0L, trackPositionMs) * SAMPLES_PER_MS;
+    synchronized (this) {
+      if (firstAudibleSample < 0 || frameStart + first < firstAudibleSample) {
+        firstAudibleSample = frameStart + first;
+      }
+      if (frameStart + last > lastAudibleSample) {
+        lastAudibleSample = frameStart + last;
+      }
+    }
+  }
+
+  /**
+   * Position of the first audible sample, or {@code null} if nothing audible was seen.
+   */
+  synchronized Long audioStartMs() {
+    return firstAudibleSample < 0 ? null : firstAudibleSample / SAMPLES_PER_MS;
+  }
+
+  /**
+   * Position just after the last audible sample, or {@code null} if nothing audible was seen.
+   */
+  synchronized Long audioEndMs() {
+    return lastAudibleSample < 0 ? null : (lastAudibleSample + SAMPLES_PER_MS) / SAMPLES_PER_MS;
+  }
+}
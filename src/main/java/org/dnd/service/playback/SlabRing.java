@@ -0,0 +1,295 @@
+package org.dnd.service.playback;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer / multi-consumer ring of preallocated frame slabs.
+ * <p>
+ * The producer copies each frame into the next slab and publishes it by advancing a sequence
+ * counter; it never blocks and never allocates. Every listener owns a {@link Cursor} with its
+ * own read sequence and copies frames out into its own buffer. A listener that falls a full ring
+ * behind is handled by the configured {@link SlowConsumerPolicy} instead of stalling the producer.
+ */
+final class SlabRing {
+
+  static final int NO_FRAME = 0;
+  static final int END_OF_STREAM = -1;
+
+  private static final Cursor[] NO_CURSORS = new Cursor[0];
+
+  private final int capacity;
+  private final int mask;
+  private final int slabBytes;
+  private final int historyFrames;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final byte[][] slabs;
+  private final int[] lengths;
+
+  /**
+   * Number of frames published so far; the next frame gets this sequence.
+   * Deliberately a plain volatile (not release-only) write: consumers publish their parked
+   * thread and re-read this field, and the producer publishes and then reads the waiters.
+   */
+  private volatile long published;
+
+  /**
+   * Sequences below this value belong to a cleared playback and are never replayed.
+   */
+  private volatile long floor;
+
+  private volatile boolean complete;
+  private volatile Cursor[] cursors = NO_CURSORS;
+
+  SlabRing(int capacity, int slabBytes, int historyFrames, SlowConsumerPolicy slowConsumerPolicy) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+    }
+    if (historyFrames >= capacity) {
+      throw new IllegalArgumentException("History must be smaller than the ring capacity");
+    }
+
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.slabBytes = slabBytes;
+    this.historyFrames = historyFrames;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.slabs = new byte[capacity][slabBytes];
+    this.lengths = new int[capacity];
+  }
+
+  int slabBytes() {
+    return slabBytes;
+  }
+
+  boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Producer only. Copies the frame into the next slab and wakes parked listeners.
+   */
+  void publish(byte[] data, int offset, int length) {
+    if (length <= 0) {
+      return;
+    }
+    if (length > slabBytes) {
+      throw new IllegalArgumentException("Frame of " + length + " bytes exceeds slab size " + slabBytes);
+    }
+
+    long sequence = published;
+    int slot = (int) (sequence & mask);
+
+    System.arraycopy(data, offset, slabs[slot], 0, length);
+    lengths[slot] = length;
+
+    published = sequence + 1;
+    wakeListeners();
+  }
+
+  void markComplete() {
+    complete = true;
+    wakeListeners();
+  }
+
+  /**
+   * Opens a cursor positioned at the start of the retained history, so the listener first
+   * replays up to {@code historyFrames} recent frames and then continues live without a gap.
+   */
+  synchronized Cursor openCursor() {
+    long head = published;
+    Cursor cursor = new Cursor(Math.max(floor, head - historyFrames));
+
+    Cursor[] current = cursors;
+    Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = cursor;
+    cursors = updated;
+    return cursor;
+  }
+
+  synchronized void closeCursor(Cursor cursor) {
+    cursor.closed = true;
+
+    Cursor[] current = cursors;
+    int index = -1;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == cursor) {
+        index = i;
+        break;
+      }
+    }
+
+    if (index >= 0) {
+      Cursor[] updated = new Cursor[current.length - 1];
+      System.arraycopy(current, 0, updated, 0, index);
+      System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+      cursors = updated;
+    }
+
+    LockSupport.unpark(cursor.waiter);
+  }
+
+  int cursorCount() {
+    return cursors.length;
+  }
+
+  /**
+   * Copies of the retained history, oldest first. Intended for diagnostics and one-off readers;
+   * streaming listeners should use a {@link Cursor}.
+   */
+  byte[][] history() {
+    Cursor reader = new Cursor(Math.max(floor, published - historyFrames));
+    byte[] scratch = new byte[slabBytes];
+    byte[][] frames = new byte[historyFrames][];
+    int count = 0;
+
+    while (count < frames.length) {
+      int length = reader.tryRead(scratch);
+      if (length <= 0) {
+        break;
+      }
+      frames[count++] = Arrays.copyOf(scratch, length);
+    }
+
+    return Arrays.copyOf(frames, count);
+  }
+
+  /**
+   * Closes all cursors and hides the retained frames from new listeners.
+   * The sequence keeps increasing, so a late append from a previous producer cannot be
+   * mistaken for history of the next one by cursors opened before it.
+   */
+  synchronized void clear() {
+    for (Cursor cursor : cursors) {
+      cursor.closed = true;
+      LockSupport.unpark(cursor.waiter);
+    }
+
+    cursors = NO_CURSORS;
+    floor = published;
+    complete = false;
+  }
+
+  private void wakeListeners() {
+    for (Cursor cursor : cursors) {
+      Thread waiter = cursor.waiter;
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+      }
+    }
+  }
+
+  final class Cursor {
+    private long next;
+    private long droppedFrames;
+    private volatile Thread waiter;
+    private volatile boolean closed;
+
+    private Cursor(long next) {
+      this.next = next;
+    }
+
+    /**
+     * Copies the next frame into {@code target}, which must hold at least {@link #slabBytes()}.
+     * Waits up to the given timeout for a new frame.
+     *
+     * @return frame length, {@link #NO_FRAME} on timeout, or {@link #END_OF_STREAM} once the
+     * ring is complete and drained, the cursor was closed, or it was disconnected as too slow.
+     */
+    int poll(byte[] target, long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+      while (true) {
+        int length = tryRead(target);
+        if (length != NO_FRAME) {
+          return length;
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return NO_FRAME;
+        }
+
+        waiter = Thread.currentThread();
+        if (published == next && !complete && !closed) {
+          LockSupport.parkNanos(this, remaining);
+        }
+        waiter = null;
+
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+    }
+
+    /**
+     * Non-blocking variant of {@link #poll(byte[], long, TimeUnit)}.
+     */
+    int tryRead(byte[] target) {
+      while (true) {
+        if (closed) {
+          return END_OF_STREAM;
+        }
+
+        long head = published;
+        if (next >= head) {
+          return complete && published == next ? END_OF_STREAM : NO_FRAME;
+        }
+
+        if (head - next >= capacity) {
+          if (!onOverrun(head)) {
+            return END_OF_STREAM;
+          }
+          continue;
+        }
+
+        int slot = (int) (next & mask);
+        int length = lengths[slot];
+        System.arraycopy(slabs[slot], 0, target, 0, length);
+
+        // the copy must be complete before the producer position is re-checked
+        VarHandle.acquireFence();
+        if (published - next >= capacity) {
+          continue;
+        }
+
+        next++;
+        return length;
+      }
+    }
+
+    /**
+     * Number of published frames this cursor has not read yet.
+     */
+    long lag() {
+      return Math.max(0L, published - next);
+    }
+
+    long droppedFrames() {
+      return droppedFrames;
+    }
+
+    boolean isClosed() {
+      return closed;
+    }
+
+    private boolean onOverrun(long head) {
+      long resumeAt = switch (slowConsumerPolicy) {
+        case SKIP_TO_LIVE -> head;
+        case DROP -> head - capacity + 1;
+        case DISCONNECT -> -1L;
+      };
+
+      if (resumeAt < 0) {
+        closed = true;
+        return false;
+      }
+
+      droppedFrames += resumeAt - next;
+      next = resumeAt;
+      return true;
+    }
+  }
+}
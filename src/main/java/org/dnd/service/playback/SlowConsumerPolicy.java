@@ -0,0 +1,20 @@
+package org.dnd.service.playback;
+
+/**
+ * What a listener cursor does once the producer has lapped it and the frames it was about
+ * to read have been overwritten. The producer itself never waits for listeners.
+ */
+public enum SlowConsumerPolicy {
+  /**
+   * Discard the whole backlog and continue with the next frame the producer publishes.
+   */
+  SKIP_TO_LIVE,
+  /**
+   * Drop only the overwritten frames and continue with the oldest frame still retained.
+   */
+  DROP,
+  /**
+   * Close the listener; its stream ends and the client has to reconnect.
+   */
+  DISCONNECT
+}
@@ -0,0 +1,178 @@
+package org.dnd.service.playback;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One ffmpeg encoder owned by a {@link StreamSession}, for one {@link EncoderProfile}. It
+ * consumes the session PCM once and publishes whole frames, or bare Opus packets for Ogg
+ * profiles, into an {@link EncodedFrameBuffer} shared by all listeners of that profile.
+ */
+@Slf4j
+final class StreamEncoder {
+
+  private static final int STREAM_IO_BUFFER_BYTES = 64 * 1024;
+  private static final int ENCODER_READ_BUFFER_BYTES = 16 * 1024;
+  private static final long LISTENER_POLL_TIMEOUT_MS = 100;
+
+  private final long sessionId;
+  private final String label;
+  private final EncoderProfile profile;
+  private final PcmBroadcastBuffer pcmBuffer;
+  private final ExecutorService ioWorkers;
+  private final FfmpegEncoderPool encoderPool;
+  private final PlaybackMetrics metrics;
+  private final PlaybackAdmission.Permit permit;
+  private final BooleanSupplier sourceActive;
+  private final EncodedFrameBuffer frames;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  private volatile Process process;
+
+  StreamEncoder(long sessionId,
+                String label,
+                EncoderProfile profile,
+                PcmBroadcastBuffer pcmBuffer,
+                ExecutorService ioWorkers,
+                FfmpegEncoderPool encoderPool,
+                PlaybackMetrics metrics,
+                PlaybackAdmission.Permit permit,
+                BooleanSupplier sourceActive,
+                SlowConsumerPolicy slowConsumerPolicy) {
+    this.sessionId = sessionId;
+    this.label = label;
+    this.profile = profile;
+    this.pcmBuffer = pcmBuffer;
+    this.ioWorkers = ioWorkers;
+    this.encoderPool = encoderPool;
+    this.metrics = metrics;
+    this.permit = permit;
+    this.sourceActive = sourceActive;
+    this.frames = new EncodedFrameBuffer(slowConsumerPolicy, profile.maxFrameBytes());
+  }
+
+  void start() throws IOException {
+    Process ffmpeg = encoderPool.claim(profile);
+    this.process = ffmpeg;
+    metrics.encoderStarted();
+
+    SlabRing.Cursor listener = pcmBuffer.registerListener();
+
+    ioWorkers.submit(() -> pumpEncodedFrames(ffmpeg));
+    ioWorkers.submit(() -> feedPcm(ffmpeg, listener));
+  }
+
+  EncoderProfile profile() {
+    return profile;
+  }
+
+  EncodedFrameBuffer frames() {
+    return frames;
+  }
+
+  /**
+   * An encoder stays usable after its input completed, so late listeners can still
+   * drain the encoded tail; it becomes unusable once closed or when ffmpeg died early.
+   */
+  boolean isUsable() {
+    if (closed.get()) {
+      return false;
+    }
+
+    Process current = process;
+    return frames.isComplete() || (current != null && current.isAlive());
+  }
+
+  void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+
+    Process current = process;
+    if (current != null) {
+      destroyQuietly(current);
+      metrics.encoderStopped();
+    }
+
+    frames.markComplete();
+    frames.clear();
+    permit.release();
+  }
+
+  private void feedPcm(Process ffmpeg, SlabRing.Cursor listener) {
+    boolean normalExit = false;
+    byte[] pcm = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+    try (OutputStream in = new BufferedOutputStream(ffmpeg.getOutputStream(), STREAM_IO_BUFFER_BYTES)) {
+      while (!Thread.currentThread().isInterrupted() && !closed.get()) {
+        int length = listener.poll(pcm, LISTENER_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        if (length > 0) {
+          in.write(pcm, 0, length);
+          metrics.recordEncoderInput(length);
+          if (listener.lag() == 0) {
+            in.flush();
+          }
+          continue;
+        }
+
+        if (length == SlabRing.END_OF_STREAM) {
+          normalExit = pcmBuffer.isComplete();
+          break;
+        }
+
+        if (!sourceActive.getAsBoolean()) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.debug("[{}={}] encoder input closed: {}", label, sessionId, e.getMessage());
+    } finally {
+      metrics.recordDroppedFrames(listener.droppedFrames());
+      pcmBuffer.unregisterListener(listener);
+
+      if (!normalExit) {
+        close();
+      }
+    }
+  }
+
+  private void pumpEncodedFrames(Process ffmpeg) {
+    EncodedFrameSplitter splitter = profile.newSplitter(frames::append);
+    byte[] chunk = new byte[ENCODER_READ_BUFFER_BYTES];
+
+    try (InputStream ffOut = ffmpeg.getInputStream()) {
+      int read;
+      while ((read = ffOut.read(chunk)) >= 0) {
+        if (read > 0) {
+          splitter.feed(chunk, 0, read);
+          metrics.recordEncoderOutput(profile, read);
+        }
+      }
+      frames.markComplete();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+    } catch (Exception e) {
+      log.debug("[{}={}] encoder output closed: {}", label, sessionId, e.getMessage());
+      close();
+    }
+  }
+
+  private static void destroyQuietly(Process process) {
+    try {
+      process.destroyForcibly();
+    } catch (Exception ignored) {
+    }
+  }
+}
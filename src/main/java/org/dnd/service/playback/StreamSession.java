@@ -1,10 +1,10 @@
 package org.dnd.service.playback;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import lombok.extern.slf4j.Slf4j;
 import org.dnd.api.model.PlaybackState;
 import org.dnd.api.model.PlaybackStatus;
+import org.dnd.api.model.StreamFormat;
 import org.dnd.service.JwtService;
 import org.dnd.utils.SecurityUtils;
 import org.springframework.core.io.InputStreamResource;
@@ -12,65 +12,128 @@ import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.*;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+/**
+ * One playing board or track. Decoded PCM goes through the gain stage and one shared ffmpeg
+ * encoder per requested {@link EncoderProfile} to the listeners of that profile. When the
+ * client asked for Opus and nothing has to touch the audio, the session instead takes Opus
+ * packets straight from lavaplayer and each listener wraps them into its own Ogg stream, with
+ * no PCM decode and no encoder at all.
+ */
+@Slf4j
 public final class StreamSession extends AbstractAudioDecodeSession {
 
-  private static final int PCM_SAMPLE_RATE = 48000;
-  private static final int PCM_CHANNELS = 2;
-  private static final int PIPE_BUFFER_BYTES = 256 * 1024;
-  private static final int STREAM_IO_BUFFER_BYTES = 64 * 1024;
   private static final long COMPLETED_SESSION_TTL_S = 10;
-  private static final long LISTENER_POLL_TIMEOUT_MS = 100;
+  private static final long ENCODER_IDLE_LINGER_S = 15;
+  private static final long NOT_SUSPENDED = -1L;
+  private static final MediaType OGG_MEDIA_TYPE = MediaType.parseMediaType("audio/ogg");
 
   private final boolean trackMode;
+  private final AudioPlayerManager opusPlayerManager;
   private final JwtService jwtService;
+  private final PlaybackAdmission admission;
   private final ExecutorService streamIoWorkers;
+  private final FfmpegEncoderPool encoderPool;
   private final Consumer<StreamSession> removalCallback;
-  private final PcmBroadcastBuffer pcmBuffer = new PcmBroadcastBuffer();
-  private final AtomicReference<ActiveStream> activeStreamRef = new AtomicReference<>();
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final long idleSuspendGraceMs;
+  private final long idleExpireMs;
+  private final int maxListeners;
+  private final long crossfadeMs;
+  private final PcmBroadcastBuffer pcmBuffer;
+  private final EncodedFrameBuffer opusFrames;
+  private final RealtimePacer pacer = new RealtimePacer();
+  private final PcmGainStage gain = new PcmGainStage();
+  private final Set<ActiveStream> listeners = ConcurrentHashMap.newKeySet();
+
+  private final Map<EncoderProfile, StreamEncoder> encoders = new EnumMap<>(EncoderProfile.class);
+  private final Map<EncoderProfile, ScheduledFuture<?>> encoderShutdownFutures = new EnumMap<>(EncoderProfile.class);
+  private ScheduledFuture<?> idleSuspendFuture;
 
   volatile PlaybackStatus status = PlaybackStatus.STOPPED;
   private volatile Long currentTrackId;
-  private volatile Long windowStartS;
-  private volatile Long windowEndS;
+  private volatile PlaybackWindow window = PlaybackWindow.FULL_TRACK;
+  private volatile String currentTrackLink;
+  private volatile int currentTrackDurationS;
+  private volatile long suspendedAtMs = NOT_SUSPENDED;
   private volatile String cachedStreamToken;
   private volatile long cachedTokenUserId = -1;
+  private volatile StreamFormat streamFormat = StreamFormat.MP3;
+  private volatile boolean opusRequested;
+  private volatile boolean opusPassthrough;
+  private volatile boolean awaitingNextTrack;
+  private volatile boolean removed;
+  private PcmSource fadingOut;
+  private float fadingOutGain = 1f;
+  private volatile CrossfadePcmSource crossfade;
 
   StreamSession(long sessionId,
                 boolean trackMode,
                 AudioPlayerManager playerManager,
+                AudioPlayerManager opusPlayerManager,
+                PcmDiskCache pcmCache,
+                PlaybackMetrics metrics,
+                PlaybackAdmission admission,
                 JwtService jwtService,
                 ExecutorService decodeWorkers,
                 ExecutorService streamIoWorkers,
+                FfmpegEncoderPool encoderPool,
                 ScheduledExecutorService scheduler,
+                SlowConsumerPolicy slowConsumerPolicy,
+                long idleSuspendGraceMs,
+                long idleExpireMs,
+                int maxListeners,
+                long crossfadeMs,
                 Consumer<StreamSession> removalCallback) {
-    super(sessionId, playerManager, decodeWorkers, scheduler);
+    super(sessionId, playerManager, pcmCache, metrics, decodeWorkers, scheduler);
     this.trackMode = trackMode;
+    this.opusPlayerManager = opusPlayerManager;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.idleSuspendGraceMs = idleSuspendGraceMs;
+    this.idleExpireMs = idleExpireMs;
+    this.maxListeners = maxListeners;
+    this.crossfadeMs = crossfadeMs;
+    this.pcmBuffer = new PcmBroadcastBuffer(slowConsumerPolicy);
+    this.opusFrames = new EncodedFrameBuffer(slowConsumerPolicy, PcmBroadcastBuffer.MAX_FRAME_BYTES);
     this.jwtService = jwtService;
+    this.admission = admission;
     this.streamIoWorkers = streamIoWorkers;
+    this.encoderPool = encoderPool;
     this.removalCallback = removalCallback;
   }
 
+  /**
+   * Listeners may attach while the track is still loading; they receive audio as soon as
+   * the first frames are decoded.
+   */
   boolean canServeStream() {
-    return status == PlaybackStatus.PLAYING;
+    return status == PlaybackStatus.PLAYING
+            || status == PlaybackStatus.PAUSED
+            || status == PlaybackStatus.BUFFERING;
   }
 
   PlaybackState snapshot() {
     PlaybackState state = new PlaybackState();
     state.setStatus(status);
     state.setTrackId(currentTrackId);
-    state.setWindowStartS(windowStartS);
-    state.setWindowEndS(windowEndS);
+    state.setWindowStartS(window.startS());
+    state.setWindowEndS(window.endS());
 
     if (trackMode) {
       state.setBoardId(null);
@@ -78,11 +141,17 @@ public final class StreamSession extends AbstractAudioDecodeSession {
       state.setBoardId(sessionId);
     }
 
-    AudioPlayer currentPlayer = player;
-    AudioTrack track = currentPlayer != null ? currentPlayer.getPlayingTrack() : null;
-    state.setPositionS(track != null ? Math.max(0L, track.getPosition() / 1000L) : null);
+    PcmSource currentSource = source;
+    long suspendedAt = suspendedAtMs;
+    if (suspendedAt != NOT_SUSPENDED) {
+      state.setPositionS(suspendedAt / 1000L);
+    } else {
+      state.setPositionS(currentSource != null ? Math.max(0L, currentSource.positionMs() / 1000L) : null);
+    }
 
     if (canServeStream()) {
+      state.setStreamFormat(streamFormat);
+
       long userId = SecurityUtils.getCurrentUserId();
 
       if (cachedStreamToken == null || cachedTokenUserId != userId) {
@@ -102,32 +171,268 @@ public final class StreamSession extends AbstractAudioDecodeSession {
     return state;
   }
 
-  void loadAndPlay(long trackId, String trackLink, int trackDuration, Long windowStartS, Long windowEndS) {
+  /**
+   * Starts loading the track and returns immediately with the session in
+   * {@link PlaybackStatus#BUFFERING}; it moves to PLAYING once the track is resolved and its
+   * decode loop is submitted, or to ERROR (and is removed shortly after) if the track cannot be
+   * loaded.
+   */
+  CompletableFuture<Void> loadAndPlay(long trackId, String trackLink, int trackDuration, PlaybackWindow window) {
     stopInternal();
 
-    this.windowStartS = windowStartS;
-    this.windowEndS = windowEndS;
-    this.status = PlaybackStatus.PLAYING;
+    this.window = window;
+    this.status = PlaybackStatus.BUFFERING;
     this.currentTrackId = trackId;
+    this.currentTrackLink = trackLink;
+    this.currentTrackDurationS = trackDuration;
     this.cachedStreamToken = null;
     this.cachedTokenUserId = -1;
+    this.pacer.reset();
+    this.opusPassthrough = opusRequested && opusPlayerManager != null
+            && gain.isUnity() && !window.shapesAudio();
+
+    return beginPlayback(trackLink, trackDuration, window.startMs())
+            .thenRun(this::markPlaying);
+  }
+
+  /**
+   * Moves a board to another track without ending its stream. Listeners, encoders, frame
+   * buffers and the stream token stay as they are, and the new track's audio follows the old
+   * one through the same encoders; when the old track was audible it keeps playing while the
+   * new one loads and is crossfaded into its first frame. {@code volume} and
+   * {@code trackGainDb} take effect at the handover: the old track's tail keeps its own gain.
+   * A passthrough session keeps passing Opus through unless the new track needs PCM, in which
+   * case its Opus listeners reconnect to an encoder as on any passthrough exit.
+   *
+   * @return false if the session cannot take another track (a track session, a failed or
+   * removed session); the caller then starts a new session instead
+   */
+  synchronized boolean switchTrack(long trackId,
+                                   String trackLink,
+                                   int trackDuration,
+                                   PlaybackWindow window,
+                                   int volume,
+                                   double trackGainDb) {
+    if (trackMode || removed || status == PlaybackStatus.ERROR) {
+      return false;
+    }
+    if (status == PlaybackStatus.STOPPED && !(awaitingNextTrack && cancelCleanup())) {
+      return false;
+    }
+
+    boolean crossfade = crossfadeMs > 0 && !opusPassthrough && !isSuspended() && status == PlaybackStatus.PLAYING;
+    PcmSource outgoing = crossfade ? detachSource() : null;
+    if (outgoing == null) {
+      suspendPlayback();
+    }
+
+    // the new decode loop takes the old track over; what it still plays is mixed at its own gain
+    float outgoingGain = gain.trackGain();
+    gain.setVolume(volume);
+    gain.setTrackGainDb(trackGainDb);
+
+    if (opusPassthrough && (!gain.isUnity() || window.shapesAudio())) {
+      opusPassthrough = false;
+      opusFrames.markComplete();
+    }
+
+    this.window = window;
+    this.status = PlaybackStatus.BUFFERING;
+    this.currentTrackId = trackId;
+    this.currentTrackLink = trackLink;
+    this.currentTrackDurationS = trackDuration;
+    this.suspendedAtMs = NOT_SUSPENDED;
+    this.awaitingNextTrack = false;
+    this.fadingOut = outgoing;
+    this.fadingOutGain = outgoingGain;
+
+    log.debug("[{}={}] switching to track {}{}", sessionLogLabel(), sessionId, trackId, outgoing != null ? " with crossfade" : "");
+    try {
+      beginPlayback(trackLink, trackDuration, window.startMs())
+              .thenRun(this::markPlaying);
+    } finally {
+      // only a PCM playback takes the outgoing track over in decorate()
+      if (fadingOut != null) {
+        fadingOut.close();
+        fadingOut = null;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Format served to listeners that do not ask for one.
+   */
+  void setStreamFormat(StreamFormat format) {
+    this.streamFormat = format != null ? format : StreamFormat.MP3;
+  }
+
+  StreamFormat getStreamFormat() {
+    return streamFormat;
+  }
+
+  /**
+   * Asks for Opus passthrough on the next {@link #loadAndPlay}. It is only used while the
+   * audio needs no processing; otherwise Opus listeners get an encoded stream.
+   */
+  void requestOpus(boolean requested) {
+    this.opusRequested = requested;
+  }
+
+  /**
+   * Board volume (0-100), applied to frames decoded from now on. A passthrough session has no
+   * PCM to scale, so it switches to decoding first.
+   */
+  void setVolume(int volume) {
+    gain.setVolume(volume);
+
+    if (opusPassthrough && !gain.isUnity()) {
+      leaveOpusPassthrough();
+    }
+  }
+
+  /**
+   * Loudness normalization gain of the track being played.
+   */
+  void setTrackGainDb(double gainDb) {
+    gain.setTrackGainDb(gainDb);
+  }
+
+  boolean isOpusPassthrough() {
+    return opusPassthrough;
+  }
 
-    beginPlayback(trackLink, trackDuration, this.windowStartS);
+  boolean isSuspended() {
+    return suspendedAtMs != NOT_SUSPENDED;
+  }
+
+  /**
+   * Whether listeners hear a cut or faded part of the track rather than the whole of it.
+   */
+  boolean shapesAudio() {
+    return window.shapesAudio();
+  }
+
+  /**
+   * Stops decoding right away when nobody listens live, e.g. because the client plays a
+   * pre-rendered file of the track instead; a live listener wakes the session as usual.
+   */
+  synchronized void suspendNowIfIdle() {
+    cancelIdleSuspend();
+    suspendIfIdle();
   }
 
   void stop() {
     removeThisSession();
   }
 
-  ResponseEntity<Resource> buildStreamResponse() throws IOException {
-    Process ffmpeg = startFfmpeg();
+  /**
+   * Holds decoding at the current position. Attached listeners and the encoder stay open and
+   * simply receive no audio until {@link #resume()}.
+   *
+   * @return false if nothing is playing
+   */
+  synchronized boolean pause() {
+    if (status == PlaybackStatus.PAUSED) {
+      return true;
+    }
+
+    if (status == PlaybackStatus.PLAYING && isSuspended()) {
+      status = PlaybackStatus.PAUSED;
+      return true;
+    }
+
+    if (status != PlaybackStatus.PLAYING || !pausePlayback()) {
+      return false;
+    }
+
+    status = PlaybackStatus.PAUSED;
+    return true;
+  }
+
+  synchronized boolean resume() {
+    if (status == PlaybackStatus.PLAYING) {
+      return true;
+    }
+
+    if (status != PlaybackStatus.PAUSED) {
+      return false;
+    }
+
+    if (isSuspended()) {
+      status = PlaybackStatus.PLAYING;
+      if (hasListener()) {
+        wakeFromSuspension();
+      }
+      return true;
+    }
+
+    // listeners drained their buffers while paused; let the first second through at once
+    pacer.reset();
+    if (!resumePlayback()) {
+      return false;
+    }
+
+    status = PlaybackStatus.PLAYING;
+    return true;
+  }
+
+  /**
+   * Moves the running playback to {@code positionS} in place, keeping listeners attached.
+   *
+   * @return false if nothing is playing or the source cannot seek
+   */
+  synchronized boolean seek(long positionS) {
+    if (status != PlaybackStatus.PLAYING && status != PlaybackStatus.PAUSED) {
+      return false;
+    }
+
+    if (isSuspended()) {
+      long target = Math.max(0L, positionS * 1000L);
+      long duration = getDurationMs();
+      suspendedAtMs = duration > 0 ? Math.min(target, duration) : target;
+      return true;
+    }
+
+    if (!seekPlayback(positionS * 1000L)) {
+      return false;
+    }
+
+    pacer.reset();
+    return true;
+  }
+
+  /**
+   * Attaches a listener in {@code requestedFormat}, or the session's format when null. Opus is
+   * passed through when the session does so; any other format needs PCM, so a passthrough
+   * session switches to decoding first.
+   *
+   * <p>A board takes up to {@code maxListeners} listeners, all fed by the same decode and one
+   * encoder per format. A track session plays for a single client, so a new listener replaces
+   * the previous one.
+   *
+   * @throws org.dnd.exception.PlaybackCapacityException 429 when the board already has the maximum number of listeners
+   */
+  ResponseEntity<Resource> buildStreamResponse(StreamFormat requestedFormat) throws IOException {
+    long requestedAt = System.nanoTime();
+    if (!trackMode && listeners.size() >= maxListeners) {
+      throw admission.listenerLimitReached();
+    }
+
+    StreamFormat format = requestedFormat != null ? requestedFormat : streamFormat;
+    boolean passthrough = format == StreamFormat.OPUS && opusPassthrough;
+    if (!passthrough && opusPassthrough) {
+      leaveOpusPassthrough();
+    }
 
-    PipedOutputStream pos = new PipedOutputStream();
-    PipedInputStream pis = new PipedInputStream(pos, PIPE_BUFFER_BYTES);
+    EncoderProfile profile = passthrough ? null : EncoderProfile.of(format);
+    StreamEncoder encoder = passthrough ? null : acquireEncoder(profile);
+    EncodedFrameBuffer frames = passthrough ? opusFrames : encoder.frames();
+    OggOpusMuxer muxer = passthrough || profile.muxesOgg()
+            ? new OggOpusMuxer(ThreadLocalRandom.current().nextInt(), passthrough ? 2 : profile.channels())
+            : null;
 
-    BlockingDeque<byte[]> listener = pcmBuffer.registerListener();
-    List<byte[]> snapshot = pcmBuffer.snapshot();
-    boolean completeAtStart = pcmBuffer.isComplete();
+    SlabRing.Cursor subscription = frames.subscribe();
 
     AtomicBoolean cleaned = new AtomicBoolean(false);
     ActiveStream[] selfHolder = new ActiveStream[1];
@@ -137,97 +442,44 @@ public final class StreamSession extends AbstractAudioDecodeSession {
         return;
       }
 
-      pcmBuffer.unregisterListener(listener);
-      destroyQuietly(ffmpeg);
-      closeQuietly(pos);
+      metrics.recordDroppedFrames(subscription.droppedFrames());
+      frames.unsubscribe(subscription);
 
       ActiveStream self = selfHolder[0];
       if (self != null) {
-        activeStreamRef.compareAndSet(self, null);
+        listeners.remove(self);
+      }
+
+      if (encoder != null && frames.listenerCount() == 0) {
+        scheduleEncoderShutdown(encoder);
+      }
+
+      if (!hasListener()) {
+        scheduleIdleSuspend();
       }
     };
 
     ActiveStream activeStream = new ActiveStream(cleanup);
     selfHolder[0] = activeStream;
 
-    ActiveStream previousActive = activeStreamRef.getAndSet(activeStream);
-    if (previousActive != null) {
-      previousActive.close();
-    }
-
-    startAsync(() -> {
-      try (InputStream ffOut = ffmpeg.getInputStream();
-           OutputStream out = new BufferedOutputStream(pos, STREAM_IO_BUFFER_BYTES)) {
-        ffOut.transferTo(out);
-        out.flush();
-      } catch (Exception ignored) {
-      } finally {
-        activeStream.close();
-      }
-    });
-
-    startAsync(() -> {
-      boolean normalExit = false;
-
-      try (OutputStream in = new BufferedOutputStream(ffmpeg.getOutputStream(), STREAM_IO_BUFFER_BYTES)) {
-        for (byte[] pcm : snapshot) {
-          in.write(pcm);
-        }
-        in.flush();
-
-        if (completeAtStart) {
-          normalExit = true;
-          return;
-        }
-
-        while (!Thread.currentThread().isInterrupted()) {
-          byte[] live = listener.pollFirst(LISTENER_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-
-          if (live != null) {
-            in.write(live);
-            continue;
-          }
-
-          if (pcmBuffer.isComplete()) {
-            byte[] tail;
-            while ((tail = listener.pollFirst()) != null) {
-              in.write(tail);
-            }
-            in.flush();
-            normalExit = true;
-            break;
-          }
-
-          if (status == PlaybackStatus.ERROR || status == PlaybackStatus.STOPPED) {
-            break;
-          }
-        }
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      } catch (Exception ignored) {
-      } finally {
-        if (!normalExit) {
-          activeStream.close();
-        }
-      }
-    });
-
-    InputStream closable = new FilterInputStream(pis) {
-      @Override
-      public void close() throws IOException {
-        try {
-          super.close();
-        } finally {
-          activeStream.close();
-        }
-      }
-    };
+    attachListener(activeStream);
+
+    // the response thread reads the cursor itself; closing the stream detaches the listener
+    ListenerStream body = new ListenerStream(
+            subscription,
+            frames.maxFrameBytes(),
+            muxer,
+            metrics,
+            () -> status == PlaybackStatus.ERROR,
+            activeStream::close,
+            requestedAt
+    );
 
     return ResponseEntity.ok()
-            .contentType(MediaType.parseMediaType("audio/mpeg"))
+            .contentType(passthrough ? OGG_MEDIA_TYPE : profile.mediaType())
             .header(HttpHeaders.CACHE_CONTROL, "no-store")
             .header("X-Content-Type-Options", "nosniff")
-            .body(new InputStreamResource(closable));
+            .body(new InputStreamResource(body));
   }
 
   @Override
@@ -236,15 +488,82 @@ public final class StreamSession extends AbstractAudioDecodeSession {
   }
 
   @Override
-  protected void onPcmFrame(byte[] pcm, Long positionMs) throws InterruptedException {
-    pcmBuffer.append(pcm);
+  protected boolean decodesToPcm() {
+    return !opusPassthrough;
   }
 
   @Override
-  protected void onPlaybackCompleted(AudioPlayer playbackPlayer, long playbackVersion) {
-    pcmBuffer.markComplete();
+  protected AudioPlayerManager playerManagerForPlayback() {
+    return opusPassthrough ? opusPlayerManager : playerManager;
+  }
+
+  @Override
+  protected synchronized PcmSource decorate(PcmSource rawSource) {
+    PlaybackWindow current = window;
+    PcmSource shaped = current.shapesAudio() ? new WindowedPcmSource(rawSource, current) : rawSource;
+
+    PcmSource outgoing = fadingOut;
+    if (outgoing == null) {
+      crossfade = null;
+      return shaped;
+    }
+
+    fadingOut = null;
+    crossfade = new CrossfadePcmSource(outgoing, fadingOutGain, shaped, gain.trackGain(), crossfadeMs);
+    return crossfade;
+  }
+
+  @Override
+  protected boolean playsWhileLoading(PcmSource active) {
+    return active instanceof CrossfadePcmSource;
+  }
+
+  @Override
+  protected void onPcmFrame(byte[] pcm, int length, long positionMs) throws InterruptedException {
+    if (opusPassthrough) {
+      pacer.awaitFrameDuration(OpusPacket.durationNanos(pcm, length));
+      opusFrames.append(pcm, 0, length);
+      return;
+    }
+
+    long gainStart = System.nanoTime();
+    CrossfadePcmSource mixing = crossfade;
+    boolean scaled = mixing != null && mixing.lastFrameMixed()
+            ? gain.applyVolume(pcm, length)
+            : gain.apply(pcm, length);
+    if (scaled) {
+      metrics.recordGainFrame(System.nanoTime() - gainStart);
+    }
+
+    pacer.awaitFrameSlot(length);
+    pcmBuffer.append(pcm, 0, length);
+  }
+
+  @Override
+  protected synchronized void onPlaybackCompleted(PcmSource playbackSource, long playbackVersion) {
+    if (!isCurrentPlayback(playbackSource, playbackVersion)) {
+      // the board switched to another track while this one was finishing
+      return;
+    }
+
+    if (trackMode) {
+      pcmBuffer.markComplete();
+      opusFrames.markComplete();
+    } else {
+      // listeners stay connected until the cleanup, so a track started before then continues their stream
+      awaitingNextTrack = true;
+    }
     status = PlaybackStatus.STOPPED;
-    destroyPlayerOnly(playbackPlayer, playbackVersion);
+    releaseSource(playbackSource, playbackVersion);
+    scheduleCleanup(COMPLETED_SESSION_TTL_S);
+  }
+
+  @Override
+  protected synchronized void onLoadFailure(ResponseStatusException failure) {
+    // keep the session around briefly so state polling can report the error
+    status = PlaybackStatus.ERROR;
+    pcmBuffer.markComplete();
+    opusFrames.markComplete();
     scheduleCleanup(COMPLETED_SESSION_TTL_S);
   }
 
@@ -258,51 +577,262 @@ public final class StreamSession extends AbstractAudioDecodeSession {
   protected void clearSubclassState() {
     status = PlaybackStatus.STOPPED;
     currentTrackId = null;
-    windowStartS = null;
-    windowEndS = null;
+    window = PlaybackWindow.FULL_TRACK;
+    currentTrackLink = null;
+    currentTrackDurationS = 0;
+    suspendedAtMs = NOT_SUSPENDED;
     cachedStreamToken = null;
     cachedTokenUserId = -1;
+    awaitingNextTrack = false;
+    crossfade = null;
 
-    ActiveStream active = activeStreamRef.getAndSet(null);
-    if (active != null) {
-      active.close();
+    for (ActiveStream listener : List.copyOf(listeners)) {
+      listener.close();
     }
+    listeners.clear();
 
+    cancelIdleSuspend();
+
+    closeEncoders();
     pcmBuffer.clear();
+    opusFrames.clear();
+    opusPassthrough = false;
   }
 
   @Override
   protected void removeFromManager() {
+    removed = true;
     removalCallback.accept(this);
   }
 
-  private Process startFfmpeg() throws IOException {
-    ProcessBuilder processBuilder = new ProcessBuilder(
-            "ffmpeg", "-hide_banner", "-loglevel", "error",
-            "-f", "s16be", "-ar", String.valueOf(PCM_SAMPLE_RATE), "-ac", String.valueOf(PCM_CHANNELS),
-            "-i", "pipe:0",
-            "-vn", "-map_metadata", "-1", "-codec:a", "libmp3lame",
-            "-b:a", "192k", "-write_xing", "0", "-f", "mp3", "pipe:1"
-    );
-    processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
-    return processBuilder.start();
+  private synchronized void markPlaying() {
+    if (status == PlaybackStatus.BUFFERING) {
+      status = PlaybackStatus.PLAYING;
+    }
+
+    if (!hasListener()) {
+      scheduleIdleSuspend();
+    }
   }
 
-  private void startAsync(Runnable task) {
-    streamIoWorkers.submit(task);
+  int listenerCount() {
+    return listeners.size();
   }
 
-  private static void destroyQuietly(Process process) {
-    try {
-      process.destroyForcibly();
-    } catch (Exception ignored) {
+  private boolean hasListener() {
+    return !listeners.isEmpty();
+  }
+
+  /**
+   * Registers {@code listener}, checking the board's cap again under the session lock; a
+   * refused listener is closed, which undoes its subscription.
+   */
+  private synchronized void attachListener(ActiveStream listener) {
+    if (trackMode) {
+      for (ActiveStream previous : List.copyOf(listeners)) {
+        previous.close();
+      }
+    } else if (listeners.size() >= maxListeners) {
+      listener.close();
+      throw admission.listenerLimitReached();
+    }
+
+    listeners.add(listener);
+    cancelIdleSuspend();
+
+    if (isSuspended()) {
+      // a paused session stays suspended, but is kept for the listener
+      cancelCleanup();
+      if (status == PlaybackStatus.PLAYING) {
+        wakeFromSuspension();
+      }
+    }
+  }
+
+  /**
+   * Starts the suspend countdown; a listener attaching before it fires cancels it. A session
+   * that is already suspended starts its expiry instead.
+   */
+  private synchronized void scheduleIdleSuspend() {
+    if (isSuspended()) {
+      scheduleIdleExpiry();
+      return;
+    }
+    if (idleSuspendGraceMs <= 0) {
+      return;
     }
+
+    cancelIdleSuspend();
+    idleSuspendFuture = scheduler.schedule(this::suspendIfIdle, idleSuspendGraceMs, TimeUnit.MILLISECONDS);
   }
 
-  private static void closeQuietly(Closeable closeable) {
+  private synchronized void cancelIdleSuspend() {
+    if (idleSuspendFuture != null) {
+      idleSuspendFuture.cancel(false);
+      idleSuspendFuture = null;
+    }
+  }
+
+  /**
+   * Removes the suspended session, giving back its admission slot, unless a listener attaches
+   * within {@code idleExpireMs}.
+   */
+  private void scheduleIdleExpiry() {
+    if (idleExpireMs > 0) {
+      scheduleCleanup(idleExpireMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Nobody listens: stop decoding and give the lavaplayer player back, remembering where to
+   * continue once a listener returns before the session expires.
+   */
+  private synchronized void suspendIfIdle() {
+    idleSuspendFuture = null;
+
+    if (hasListener() || isSuspended()
+            || (status != PlaybackStatus.PLAYING && status != PlaybackStatus.PAUSED)) {
+      return;
+    }
+
+    long positionMs = suspendPlayback();
+    if (positionMs == UNKNOWN_POSITION) {
+      return;
+    }
+
+    suspendedAtMs = positionMs;
+    scheduleIdleExpiry();
+    log.debug("[{}={}] no listeners, decoding suspended at {}ms", sessionLogLabel(), sessionId, positionMs);
+  }
+
+  /**
+   * Reopens the track where it was suspended. The session reports BUFFERING until frames
+   * flow again; a failed reload ends in ERROR like any other load.
+   */
+  private void wakeFromSuspension() {
+    long resumeAtMs = suspendedAtMs;
+    suspendedAtMs = NOT_SUSPENDED;
+
+    status = PlaybackStatus.BUFFERING;
+    pacer.reset();
+
+    log.debug("[{}={}] listener attached, resuming decode at {}ms", sessionLogLabel(), sessionId, resumeAtMs);
+    beginPlayback(currentTrackLink, currentTrackDurationS, resumeAtMs)
+            .thenRun(this::markPlaying);
+  }
+
+  /**
+   * Continues the track as decoded PCM from where the passthrough got to. Passthrough listeners
+   * reach the end of their stream and reconnect to an encoder; a paused session stays suspended
+   * at the position until it is resumed.
+   */
+  private synchronized void leaveOpusPassthrough() {
+    if (!opusPassthrough) {
+      return;
+    }
+
+    opusPassthrough = false;
+    opusFrames.markComplete();
+
+    if (isSuspended()) {
+      return;
+    }
+
+    PlaybackStatus current = status;
+    long positionMs = suspendPlayback();
+    if (positionMs == UNKNOWN_POSITION) {
+      return;
+    }
+
+    if (current == PlaybackStatus.PAUSED) {
+      suspendedAtMs = positionMs;
+      return;
+    }
+
+    long resumeAtMs = current == PlaybackStatus.BUFFERING ? window.startMs() : positionMs;
+    status = PlaybackStatus.BUFFERING;
+    pacer.reset();
+
+    log.debug("[{}={}] leaving opus passthrough at {}ms", sessionLogLabel(), sessionId, resumeAtMs);
+    beginPlayback(currentTrackLink, currentTrackDurationS, resumeAtMs)
+            .thenRun(this::markPlaying);
+  }
+
+  /**
+   * Returns the session encoder for {@code profile}, starting it on first use. All listeners of
+   * a profile share it, so a reconnecting client re-attaches to the running encoder instead of
+   * forking a new ffmpeg.
+   */
+  private synchronized StreamEncoder acquireEncoder(EncoderProfile profile) throws IOException {
+    cancelEncoderShutdown(profile);
+
+    StreamEncoder existing = encoders.get(profile);
+    if (existing != null && existing.isUsable()) {
+      return existing;
+    }
+
+    if (existing != null) {
+      existing.close();
+      encoders.remove(profile);
+    }
+
+    PlaybackAdmission.Permit permit = admission.admitEncoder();
+    StreamEncoder created = new StreamEncoder(
+            sessionId,
+            sessionLogLabel(),
+            profile,
+            pcmBuffer,
+            streamIoWorkers,
+            encoderPool,
+            metrics,
+            permit,
+            () -> status != PlaybackStatus.ERROR && (status != PlaybackStatus.STOPPED || awaitingNextTrack),
+            slowConsumerPolicy
+    );
     try {
-      closeable.close();
-    } catch (Exception ignored) {
+      created.start();
+    } catch (IOException | RuntimeException e) {
+      created.close();
+      throw e;
+    }
+    encoders.put(profile, created);
+    return created;
+  }
+
+  private synchronized void scheduleEncoderShutdown(StreamEncoder idle) {
+    EncoderProfile profile = idle.profile();
+    if (encoders.get(profile) != idle) {
+      return;
+    }
+
+    cancelEncoderShutdown(profile);
+    encoderShutdownFutures.put(profile,
+            scheduler.schedule(() -> shutdownIdleEncoder(idle), ENCODER_IDLE_LINGER_S, TimeUnit.SECONDS));
+  }
+
+  private synchronized void shutdownIdleEncoder(StreamEncoder idle) {
+    EncoderProfile profile = idle.profile();
+    if (encoders.get(profile) != idle || idle.frames().listenerCount() > 0) {
+      return;
+    }
+
+    idle.close();
+    encoders.remove(profile);
+    encoderShutdownFutures.remove(profile);
+  }
+
+  private synchronized void closeEncoders() {
+    encoderShutdownFutures.values().forEach(future -> future.cancel(false));
+    encoderShutdownFutures.clear();
+
+    encoders.values().forEach(StreamEncoder::close);
+    encoders.clear();
+  }
+
+  private void cancelEncoderShutdown(EncoderProfile profile) {
+    ScheduledFuture<?> future = encoderShutdownFutures.remove(profile);
+    if (future != null) {
+      future.cancel(false);
     }
   }
 
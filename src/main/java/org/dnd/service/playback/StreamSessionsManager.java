@@ -2,10 +2,13 @@ package org.dnd.service.playback;
 
 import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.dnd.api.model.StreamFormat;
+import org.dnd.configuration.PlaybackConfiguration;
 import org.dnd.service.JwtService;
 import org.springframework.stereotype.Service;
 
@@ -17,8 +20,27 @@ import java.util.concurrent.*;
 @RequiredArgsConstructor
 public class StreamSessionsManager {
 
+  /**
+   * A track session plays for the one client that started it.
+   */
+  private static final int TRACK_SESSION_LISTENERS = 1;
+
+  /**
+   * A track session nobody listens to was most likely closed with its tab, so once suspended
+   * it only stays around long enough for the client to reconnect.
+   */
+  private static final long TRACK_SESSION_IDLE_EXPIRE_MS = 10_000;
+
   private final AudioPlayerManager playerManager;
+  private final OpusPlayerManager opusPlayerManager;
+  private final PcmDiskCache pcmCache;
+  private final PlaybackMetrics metrics;
+  private final PlaybackAdmission admission;
+  private final FfmpegEncoderPool encoderPool;
+  private final WaveformStore waveformStore;
+  private final TrackAnalysisStore analysisStore;
   private final JwtService jwtService;
+  private final PlaybackConfiguration playbackConfiguration;
 
   private final ConcurrentMap<Long, StreamSession> boardSessions = new ConcurrentHashMap<>();
   private final ConcurrentMap<String, StreamSession> trackSessions = new ConcurrentHashMap<>();
@@ -31,6 +53,9 @@ public class StreamSessionsManager {
   @PostConstruct
   void init() {
     playerManager.getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_PCM_S16_BE);
+    playerManager.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+    opusPlayerManager.manager().getConfiguration().setOutputFormat(StandardAudioDataFormats.DISCORD_OPUS);
+    opusPlayerManager.manager().getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
 
     ThreadFactory decodeFactory = Thread.ofVirtual()
             .name("playback-decode-", 0)
@@ -48,6 +73,10 @@ public class StreamSessionsManager {
     decodeWorkers = Executors.newThreadPerTaskExecutor(decodeFactory);
     streamIoWorkers = Executors.newThreadPerTaskExecutor(streamIoFactory);
     scheduler = Executors.newSingleThreadScheduledExecutor(cleanupFactory);
+
+    metrics.gaugeSessions("board", boardSessions);
+    metrics.gaugeSessions("track", trackSessions);
+    metrics.gaugeSessions("waveform", waveformSessions);
   }
 
   @PreDestroy
@@ -74,13 +103,40 @@ public class StreamSessionsManager {
     return Optional.ofNullable(trackSessions.get(trackSessionKey(userId, trackId)));
   }
 
-  public StreamSession startBoardSession(long boardId,
+  /**
+   * Plays a track on a board. A board that is already streaming moves to the new track in
+   * place, so its listeners keep their connection; otherwise a new session is started.
+   */
+  public StreamSession startBoardSession(long userId,
+                                         long boardId,
                                          long trackId,
                                          String trackLink,
                                          int duration,
-                                         Long windowStartS,
-                                         Long windowEndS) {
+                                         PlaybackWindow window,
+                                         int volume,
+                                         double trackGainDb,
+                                         StreamFormat format) {
+    StreamSession running = boardSessions.get(boardId);
+    if (running != null) {
+      running.setStreamFormat(format);
+      running.requestOpus(wantsOpusPassthrough(format));
+
+      // volume and normalization change with the track, not under the tail of the old one
+      if (running.switchTrack(trackId, trackLink, duration, window, volume, trackGainDb)) {
+        return running;
+      }
+    }
+
+    // the replaced session gives its slot back before the new one asks for one
+    stopBoardSession(boardId);
+
+    PlaybackAdmission.Permit permit = admission.admitSession(userId);
     StreamSession session = newBoardSession(boardId);
+    session.holdPermit(permit);
+    session.setVolume(volume);
+    session.setTrackGainDb(trackGainDb);
+    session.setStreamFormat(format);
+    session.requestOpus(wantsOpusPassthrough(format));
 
     StreamSession previous = boardSessions.put(boardId, session);
     if (previous != null) {
@@ -88,7 +144,7 @@ public class StreamSessionsManager {
     }
 
     try {
-      session.loadAndPlay(trackId, trackLink, duration, windowStartS, windowEndS);
+      session.loadAndPlay(trackId, trackLink, duration, window);
       return session;
     } catch (RuntimeException ex) {
       boardSessions.remove(boardId, session);
@@ -97,6 +153,16 @@ public class StreamSessionsManager {
     }
   }
 
+  /**
+   * Applies a board volume change to its running session, if any, without restarting it.
+   */
+  public void setBoardVolume(long boardId, int volume) {
+    StreamSession session = boardSessions.get(boardId);
+    if (session != null) {
+      session.setVolume(volume);
+    }
+  }
+
   public void stopBoardSession(long boardId) {
     StreamSession session = boardSessions.remove(boardId);
     if (session != null) {
@@ -108,10 +174,22 @@ public class StreamSessionsManager {
                                          long trackId,
                                          String trackLink,
                                          int duration,
-                                         Long windowStartS,
-                                         Long windowEndS) {
+                                         PlaybackWindow window,
+                                         double trackGainDb,
+                                         StreamFormat format) {
     String key = trackSessionKey(userId, trackId);
+
+    StreamSession replaced = trackSessions.remove(key);
+    if (replaced != null) {
+      replaced.stop();
+    }
+
+    PlaybackAdmission.Permit permit = admission.admitSession(userId);
     StreamSession session = newTrackSession(trackId, key);
+    session.holdPermit(permit);
+    session.setTrackGainDb(trackGainDb);
+    session.setStreamFormat(format);
+    session.requestOpus(wantsOpusPassthrough(format));
 
     StreamSession previous = trackSessions.put(key, session);
     if (previous != null) {
@@ -119,7 +197,7 @@ public class StreamSessionsManager {
     }
 
     try {
-      session.loadAndPlay(trackId, trackLink, duration, windowStartS, windowEndS);
+      session.loadAndPlay(trackId, trackLink, duration, window);
       return session;
     } catch (RuntimeException ex) {
       trackSessions.remove(key, session);
@@ -128,20 +206,32 @@ public class StreamSessionsManager {
     }
   }
 
+  public void stopTrackSession(long userId, long trackId) {
+    StreamSession session = trackSessions.remove(trackSessionKey(userId, trackId));
+    if (session != null) {
+      session.stop();
+    }
+  }
+
   public WaveformSession getOrCreateWaveformSession(long userId,
                                                     long trackId,
                                                     String trackLink,
                                                     int duration) {
-    String key = waveformSessionKey(userId, trackId);
+    TrackSourceKey sourceKey = TrackSourceKey.of(trackLink);
+    String key = sourceKey.value();
 
     WaveformSession existing = waveformSessions.get(key);
     if (existing != null) {
       return existing;
     }
 
-    WaveformSession created = newWaveformSession(trackId, key);
+    PlaybackAdmission.Permit permit = admission.admitSession(userId);
+    WaveformSession created = newWaveformSession(trackId, sourceKey);
+    created.holdPermit(permit);
+
     WaveformSession raced = waveformSessions.putIfAbsent(key, created);
     if (raced != null) {
+      permit.release();
       return raced;
     }
 
@@ -160,10 +250,20 @@ public class StreamSessionsManager {
             boardId,
             false,
             playerManager,
+            opusPlayerManager.manager(),
+            pcmCache,
+            metrics,
+            admission,
             jwtService,
             decodeWorkers,
             streamIoWorkers,
+            encoderPool,
             scheduler,
+            playbackConfiguration.getSlowConsumerPolicy(),
+            playbackConfiguration.getIdleSuspendGraceMs(),
+            playbackConfiguration.getIdleSuspendExpireMs(),
+            playbackConfiguration.getMaxListenersPerBoard(),
+            playbackConfiguration.getTrackSwitchCrossfadeMs(),
             session -> boardSessions.remove(boardId, session)
     );
   }
@@ -173,29 +273,45 @@ public class StreamSessionsManager {
             trackId,
             true,
             playerManager,
+            opusPlayerManager.manager(),
+            pcmCache,
+            metrics,
+            admission,
             jwtService,
             decodeWorkers,
             streamIoWorkers,
+            encoderPool,
             scheduler,
+            playbackConfiguration.getSlowConsumerPolicy(),
+            playbackConfiguration.getIdleSuspendGraceMs(),
+            TRACK_SESSION_IDLE_EXPIRE_MS,
+            TRACK_SESSION_LISTENERS,
+            0L,
             session -> trackSessions.remove(key, session)
     );
   }
 
-  WaveformSession newWaveformSession(long trackId, String key) {
+  WaveformSession newWaveformSession(long trackId, TrackSourceKey sourceKey) {
     return new WaveformSession(
             trackId,
+            sourceKey,
             playerManager,
+            pcmCache,
+            metrics,
+            waveformStore,
+            analysisStore,
             decodeWorkers,
+            streamIoWorkers,
             scheduler,
-            session -> waveformSessions.remove(key, session)
+            session -> waveformSessions.remove(sourceKey.value(), session)
     );
   }
 
-  private static String trackSessionKey(long userId, long trackId) {
-    return userId + ":" + trackId;
+  private boolean wantsOpusPassthrough(StreamFormat format) {
+    return format == StreamFormat.OPUS && playbackConfiguration.isOpusPassthroughEnabled();
   }
 
-  private static String waveformSessionKey(long userId, long trackId) {
+  private static String trackSessionKey(long userId, long trackId) {
     return userId + ":" + trackId;
   }
 
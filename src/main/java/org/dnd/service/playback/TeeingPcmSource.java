@@ -0,0 +1,89 @@
+package org.dnd.service.playback;
+
+/**
+ * Passes raw frames through while copying them into a {@link PcmDiskCache} entry. The entry
+ * is committed when the wrapped source reaches its natural end without having been moved,
+ * and abandoned on any seek or early close.
+ */
+final class TeeingPcmSource implements PcmSource {
+
+  private final PcmSource inner;
+
+  private volatile PcmDiskCache.Writer writer;
+
+  TeeingPcmSource(PcmSource inner) {
+    this.inner = inner;
+  }
+
+  /**
+   * Starts capturing; {@code null} leaves the source a plain pass-through.
+   */
+  void attach(PcmDiskCache.Writer cacheWriter) {
+    this.writer = cacheWriter;
+  }
+
+  @Override
+  public int read(byte[] target) throws InterruptedException {
+    int length = inner.read(target);
+
+    PcmDiskCache.Writer current = writer;
+    if (current != null) {
+      if (length > 0) {
+        current.append(target, length);
+      } else if (length == END_OF_TRACK) {
+        writer = null;
+        current.commit();
+      }
+    }
+
+    return length;
+  }
+
+  @Override
+  public long frameStartMs() {
+    return inner.frameStartMs();
+  }
+
+  @Override
+  public long positionMs() {
+    return inner.positionMs();
+  }
+
+  @Override
+  public long durationMs() {
+    return inner.durationMs();
+  }
+
+  @Override
+  public boolean seek(long positionMs) {
+    boolean moved = inner.seek(positionMs);
+    if (moved) {
+      abandon();
+    }
+    return moved;
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    inner.setPaused(paused);
+  }
+
+  @Override
+  public void keepAlive() {
+    inner.keepAlive();
+  }
+
+  @Override
+  public void close() {
+    abandon();
+    inner.close();
+  }
+
+  private void abandon() {
+    PcmDiskCache.Writer current = writer;
+    writer = null;
+    if (current != null) {
+      current.abort();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package org.dnd.service.playback;
+
+import org.dnd.api.model.TrackAnalysisResponse;
+
+/**
+ * Results of the analysis chain besides the waveform. Values are {@code null} when the track
+ * has no audible content to measure them from.
+ *
+ * @param integratedLufs  EBU R128 integrated loudness
+ * @param samplePeakDbfs  highest sample, relative to full scale
+ * @param clippedSamples  samples at full scale
+ * @param audioStartMs    end of the leading silence
+ * @param audioEndMs      start of the trailing silence
+ */
+record TrackAnalysis(Double integratedLufs,
+                     Double samplePeakDbfs,
+                     long clippedSamples,
+                     Long audioStartMs,
+                     Long audioEndMs) {
+
+  static TrackAnalysis of(LoudnessAnalyzer loudness, SilenceAnalyzer silence) {
+    return new TrackAnalysis(
+            loudness.integratedLufs(),
+            loudness.samplePeakDbfs(),
+            loudness.clippedSamples(),
+            silence.audioStartMs(),
+            silence.audioEndMs()
+    );
+  }
+
+  TrackAnalysisResponse toResponse(long trackId, boolean complete) {
+    TrackAnalysisResponse response = new TrackAnalysisResponse();
+    response.setTrackId(trackId);
+    response.setIntegratedLufs(integratedLufs);
+    response.setSamplePeakDbfs(samplePeakDbfs);
+    response.setClippedSamples(clippedSamples);
+    response.setAudioStartMs(audioStartMs);
+    response.setAudioEndMs(audioEndMs);
+    response.setComplete(complete);
+    return response;
+  }
+}
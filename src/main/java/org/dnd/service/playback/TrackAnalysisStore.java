@@ -0,0 +1,54 @@
+package org.dnd.service.playback;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.model.TrackAnalysisEntity;
+import org.dnd.repository.TrackAnalysisRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Finished {@link TrackAnalysis} results keyed by {@link TrackSourceKey}, alongside the
+ * waveforms in {@link WaveformStore}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrackAnalysisStore {
+
+  private final TrackAnalysisRepository analysisRepository;
+
+  Optional<TrackAnalysis> find(TrackSourceKey sourceKey) {
+    return analysisRepository.findById(sourceKey.value())
+            .map(stored -> new TrackAnalysis(
+                    stored.getIntegratedLufs(),
+                    stored.getSamplePeakDbfs(),
+                    stored.getClippedSamples(),
+                    stored.getAudioStartMs(),
+                    stored.getAudioEndMs()
+            ));
+  }
+
+  /**
+   * Persists a completed analysis. Failures are logged and dropped, as for waveforms.
+   */
+  void save(TrackSourceKey sourceKey, TrackAnalysis analysis) {
+    try {
+      if (analysisRepository.existsById(sourceKey.value())) {
+        return;
+      }
+      analysisRepository.save(new TrackAnalysisEntity(
+              sourceKey.value(),
+              analysis.integratedLufs(),
+              analysis.samplePeakDbfs(),
+              analysis.clippedSamples(),
+              analysis.audioStartMs(),
+              analysis.audioEndMs()
+      ));
+    } catch (DataAccessException e) {
+      log.warn("Could not store analysis for {}: {}", sourceKey.value(), e.getMessage());
+    }
+  }
+}
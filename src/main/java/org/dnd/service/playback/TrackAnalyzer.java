@@ -0,0 +1,16 @@
+package org.dnd.service.playback;
+
+/**
+ * One stage of the analysis chain run by {@link WaveformSession}. Every analyzer sees the same
+ * decoded 48 kHz stereo s16be frames in a single pass, so adding a feature never adds a decode.
+ * Frames arrive on the decode thread; results may be read concurrently while it runs.
+ */
+interface TrackAnalyzer {
+
+  /**
+   * Called before the first frame, and again if the decoder reports a more exact duration.
+   */
+  void setDurationMs(long durationMs);
+
+  void accept(byte[] pcmFrame, int length, long trackPositionMs);
+}
@@ -0,0 +1,385 @@
+package org.dnd.service.playback;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size-bounded on-disk store of whole tracks encoded once into a seekable file, so solo track
+ * playback can be served as a plain file with HTTP Range support instead of a live decode and
+ * encoder per play. Renditions are made in the background from {@link PcmDiskCache} entries,
+ * one at a time, at the normalization gain they will be played at; a rendition made at another
+ * gain does not count as a hit. Eviction works like the PCM cache, except that a replaced or
+ * evicted file is only deleted after a grace period: a response may already have handed its
+ * path to the container for sendfile.
+ */
+@Slf4j
+@Service
+public class TrackRenditionStore {
+
+  private static final Set<EncoderProfile> RENDERED_PROFILES = EnumSet.of(EncoderProfile.MP3, EncoderProfile.OPUS_96);
+  private static final String INDEX_SUFFIX = ".idx";
+  private static final String PARTIAL_SUFFIX = ".part";
+  private static final int FEED_BUFFER_BYTES = 64 * 1024;
+  private static final int ENCODER_READ_BUFFER_BYTES = 16 * 1024;
+  private static final long WEIGHT_UNIT_BYTES = 1024;
+  private static final double GAIN_TOLERANCE_DB = 0.05d;
+  private static final long RETIRED_FILE_GRACE_MS = 5 * 60 * 1000L;
+
+  private final Path directory;
+  private final PcmDiskCache pcmCache;
+  private final FfmpegEncoderPool.Launcher launcher;
+  private final long retiredFileGraceMs;
+  private final Cache<String, Entry> entries;
+  private final Set<String> rendering = ConcurrentHashMap.newKeySet();
+
+  private ScheduledExecutorService renderer;
+  private volatile boolean enabled;
+
+  @Autowired
+  public TrackRenditionStore(PlaybackConfiguration playbackConfiguration,
+                             PcmDiskCache pcmCache,
+                             FfmpegEncoderPool encoderPool) {
+    this(
+            playbackConfiguration.isRenditionsEnabled(),
+            Path.of(playbackConfiguration.getRenditionsDir()),
+            playbackConfiguration.getRenditionsMaxBytes(),
+            pcmCache,
+            encoderPool::spawn,
+            RETIRED_FILE_GRACE_MS
+    );
+  }
+
+  TrackRenditionStore(boolean enabled,
+                      Path directory,
+                      long maxBytes,
+                      PcmDiskCache pcmCache,
+                      FfmpegEncoderPool.Launcher launcher,
+                      long retiredFileGraceMs) {
+    this.enabled = enabled;
+    this.directory = directory;
+    this.pcmCache = pcmCache;
+    this.launcher = launcher;
+    this.retiredFileGraceMs = retiredFileGraceMs;
+    this.entries = Caffeine.newBuilder()
+            .maximumWeight(Math.max(1L, maxBytes / WEIGHT_UNIT_BYTES))
+            .weigher((String name, Entry entry) -> weightOf(entry.index().bytes()))
+            .executor(Runnable::run)
+            .removalListener((String name, Entry entry, RemovalCause cause) -> onRemoval(entry))
+            .build();
+  }
+
+  @PostConstruct
+  void init() {
+    if (!enabled) {
+      return;
+    }
+
+    try {
+      Files.createDirectories(directory);
+      restoreEntries();
+      log.info("Track renditions at {}: {} files", directory, entries.estimatedSize());
+    } catch (IOException e) {
+      log.warn("Track renditions disabled, directory {} is not usable: {}", directory, e.getMessage());
+      enabled = false;
+      return;
+    }
+
+    renderer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+            .name("playback-rendition")
+            .daemon(true)
+            .factory());
+  }
+
+  @PreDestroy
+  void shutdown() {
+    if (renderer != null) {
+      renderer.shutdownNow();
+    }
+  }
+
+  /**
+   * The rendition of {@code key} in {@code profile}, if one was made at {@code gainDb}.
+   */
+  Optional<Rendition> find(TrackSourceKey key, EncoderProfile profile, double gainDb) {
+    if (!enabled || !RENDERED_PROFILES.contains(profile)) {
+      return Optional.empty();
+    }
+
+    Entry entry = entries.getIfPresent(entryName(key, profile));
+    if (entry == null || Math.abs(entry.index().gainDb() - gainDb) > GAIN_TOLERANCE_DB) {
+      return Optional.empty();
+    }
+
+    return Optional.of(new Rendition(entry.file(), profile, entry.index()));
+  }
+
+  /**
+   * Queues a render of {@code key} unless one is present or running. Only tracks whose full
+   * decode is in the PCM cache can be rendered; others are picked up on a later request.
+   *
+   * @return whether a render was queued
+   */
+  boolean requestRender(TrackSourceKey key, EncoderProfile profile, double gainDb) {
+    if (!enabled || renderer == null || !RENDERED_PROFILES.contains(profile)
+            || find(key, profile, gainDb).isPresent() || !pcmCache.contains(key)) {
+      return false;
+    }
+
+    String name = entryName(key, profile);
+    if (!rendering.add(name)) {
+      return false;
+    }
+
+    try {
+      renderer.execute(() -> {
+        try {
+          render(key, profile, gainDb);
+        } finally {
+          rendering.remove(name);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      rendering.remove(name);
+      return false;
+    }
+  }
+
+  /**
+   * Encodes the cached PCM of {@code key} on the calling thread and registers the result.
+   *
+   * @return whether a rendition was stored
+   */
+  boolean render(TrackSourceKey key, EncoderProfile profile, double gainDb) {
+    Optional<ByteBuffer> pcm = pcmCache.lookup(key);
+    if (pcm.isEmpty()) {
+      return false;
+    }
+
+    String name = entryName(key, profile);
+    String fileName = name + "." + UUID.randomUUID();
+    Path partial = directory.resolve(fileName + PARTIAL_SUFFIX);
+    Path file = directory.resolve(fileName + "." + extensionOf(profile));
+    Path indexFile = directory.resolve(fileName + INDEX_SUFFIX);
+    Path indexPartial = directory.resolve(fileName + INDEX_SUFFIX + PARTIAL_SUFFIX);
+    Process ffmpeg = null;
+
+    try {
+      ffmpeg = launcher.start(profile);
+      RenditionIndex index = encode(ffmpeg, pcm.get(), profile, gainDb, partial);
+
+      Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+      index.writeTo(indexPartial);
+      Files.move(indexPartial, indexFile, StandardCopyOption.ATOMIC_MOVE);
+
+      entries.put(name, new Entry(file, indexFile, index));
+      log.debug("Rendered {} as {} ({} bytes)", key.value(), profile, index.bytes());
+      return true;
+    } catch (IOException | UncheckedIOException e) {
+      log.warn("Rendition of {} as {} failed: {}", key.value(), profile, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (ffmpeg != null) {
+        ffmpeg.destroyForcibly();
+      }
+      deleteQuietly(partial);
+      deleteQuietly(indexPartial);
+    }
+
+    deleteQuietly(file);
+    deleteQuietly(indexFile);
+    return false;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long entryCount() {
+    return entries.estimatedSize();
+  }
+
+  private RenditionIndex encode(Process ffmpeg,
+                                ByteBuffer pcm,
+                                EncoderProfile profile,
+                                double gainDb,
+                                Path partial) throws IOException, InterruptedException {
+    Thread feeder = Thread.ofVirtual()
+            .name("playback-rendition-feed")
+            .start(() -> feedPcm(ffmpeg, pcm, (float) Math.pow(10d, gainDb / 20d)));
+
+    try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+         InputStream encoded = ffmpeg.getInputStream()) {
+      RenditionWriter writer = new RenditionWriter(profile, channel, gainDb, ThreadLocalRandom.current().nextInt());
+      EncodedFrameSplitter splitter = profile.newSplitter(writer);
+      byte[] chunk = new byte[ENCODER_READ_BUFFER_BYTES];
+
+      int read;
+      while ((read = encoded.read(chunk)) >= 0) {
+        splitter.feed(chunk, 0, read);
+      }
+
+      feeder.join();
+      if (ffmpeg.waitFor() != 0) {
+        throw new IOException("Encoder exited with " + ffmpeg.exitValue());
+      }
+      return writer.finish();
+    } finally {
+      feeder.interrupt();
+    }
+  }
+
+  private static void feedPcm(Process ffmpeg, ByteBuffer pcm, float gain) {
+    ByteBuffer source = pcm.duplicate();
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+    try (OutputStream in = new BufferedOutputStream(ffmpeg.getOutputStream(), FEED_BUFFER_BYTES)) {
+      while (source.hasRemaining() && !Thread.currentThread().isInterrupted()) {
+        int length = Math.min(frame.length, source.remaining());
+        source.get(frame, 0, length);
+        if (gain != 1f) {
+          PcmGainStage.scale(frame, length, gain);
+        }
+        in.write(frame, 0, length);
+      }
+    } catch (IOException e) {
+      log.debug("Rendition encoder input closed: {}", e.getMessage());
+    }
+  }
+
+  private void restoreEntries() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+
+        if (fileName.endsWith(PARTIAL_SUFFIX)) {
+          deleteQuietly(file);
+          continue;
+        }
+
+        if (fileName.endsWith(INDEX_SUFFIX)) {
+          restoreEntry(file);
+        }
+      }
+    }
+  }
+
+  private void restoreEntry(Path indexFile) {
+    String fileName = indexFile.getFileName().toString();
+    String stem = fileName.substring(0, fileName.length() - INDEX_SUFFIX.length());
+    String name = stem.substring(0, stem.lastIndexOf('.'));
+    EncoderProfile profile = profileOf(name);
+
+    Path file = profile != null ? directory.resolve(stem + "." + extensionOf(profile)) : null;
+    try {
+      RenditionIndex index = RenditionIndex.readFrom(indexFile);
+      if (file != null && Files.size(file) == index.bytes()
+              && entries.asMap().putIfAbsent(name, new Entry(file, indexFile, index)) == null) {
+        return;
+      }
+    } catch (IOException e) {
+      log.debug("Dropping unreadable rendition {}: {}", indexFile, e.getMessage());
+    }
+
+    deleteQuietly(indexFile);
+    if (file != null) {
+      deleteQuietly(file);
+    }
+  }
+
+  /**
+   * Deletes the files of a replaced or evicted entry once {@link #retiredFileGraceMs} has
+   * passed. Files still on disk at shutdown are restored or dropped on the next start.
+   */
+  private void onRemoval(Entry entry) {
+    if (entry == null) {
+      return;
+    }
+
+    ScheduledExecutorService scheduler = renderer;
+    if (scheduler != null) {
+      try {
+        scheduler.schedule(() -> deleteFiles(entry), retiredFileGraceMs, TimeUnit.MILLISECONDS);
+        return;
+      } catch (RejectedExecutionException e) {
+        log.debug("Deleting rendition {} right away, store is shutting down", entry.file());
+      }
+    }
+
+    deleteFiles(entry);
+  }
+
+  private static void deleteFiles(Entry entry) {
+    deleteQuietly(entry.file());
+    deleteQuietly(entry.indexFile());
+  }
+
+  private static String entryName(TrackSourceKey key, EncoderProfile profile) {
+    return key.fileStem() + "." + profile.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static EncoderProfile profileOf(String entryName) {
+    String profile = entryName.substring(entryName.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+    return RENDERED_PROFILES.stream()
+            .filter(candidate -> candidate.name().equals(profile))
+            .findFirst()
+            .orElse(null);
+  }
+
+  private static String extensionOf(EncoderProfile profile) {
+    return profile.muxesOgg() ? "opus" : "mp3";
+  }
+
+  private static int weightOf(long bytes) {
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, (bytes + WEIGHT_UNIT_BYTES - 1) / WEIGHT_UNIT_BYTES));
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.debug("Could not delete rendition file {}: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * A finished rendition. The file is never rewritten; a newer rendition gets a new file.
+   */
+  record Rendition(Path file, EncoderProfile profile, RenditionIndex index) {
+  }
+
+  private record Entry(Path file, Path indexFile, RenditionIndex index) {
+  }
+}
@@ -0,0 +1,43 @@
+package org.dnd.service.playback;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical identity of the audio behind a track link. Different spellings of the same
+ * YouTube video (watch, youtu.be, shorts, music, extra query parameters) map to one key,
+ * so anything derived from the decoded audio can be shared between tracks and users.
+ */
+public record TrackSourceKey(String value) {
+
+  private static final Pattern YOUTUBE_ID = Pattern.compile(
+          "(?:youtube\\.com/(?:watch\\?(?:.*&)?v=|shorts/|embed/|live/|v/)|youtu\\.be/)([A-Za-z0-9_-]{11})"
+  );
+
+  public static TrackSourceKey of(String trackLink) {
+    String link = trackLink == null ? "" : trackLink.trim();
+
+    Matcher youtube = YOUTUBE_ID.matcher(link);
+    if (youtube.find()) {
+      return new TrackSourceKey("youtube:" + youtube.group(1));
+    }
+
+    return new TrackSourceKey("link:" + link);
+  }
+
+  /**
+   * File-system safe, fixed-length name derived from the key.
+   */
+  public String fileStem() {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest, 0, 20);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -1,96 +1,448 @@
 package org.dnd.service.playback;
 
+import org.dnd.api.model.WaveformPeaksEncoding;
+import org.dnd.api.model.WaveformProgressEvent;
+import org.dnd.api.model.WaveformRangeResponse;
 import org.dnd.api.model.WaveformResponse;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class WaveformAccumulator {
+/**
+ * Min/max/RMS envelope of a track, built as a mipmap pyramid in a single pass over the
+ * decoded PCM. The base level has at least {@link #MIN_BUCKET_MS} per bucket and at most
+ * {@link #MAX_BASE_BUCKETS} buckets; every level above halves the resolution. Any range can
+ * then be summarised at any bucket count from the coarsest level that is still fine enough.
+ */
+public class WaveformAccumulator implements TrackAnalyzer {
+
+  static final long MIN_BUCKET_MS = 10;
+  static final int MAX_BASE_BUCKETS = 1 << 16;
+
+  private static final int SAMPLES_PER_MS = 96;            // 48kHz, two interleaved channels
+  private static final int MIN_LEVEL_BUCKETS = 16;
 
   private final int buckets;
-  private final float[] peakByBucket;
-  private final boolean[] touchedBuckets;
 
-  private volatile long durationMs;
+  private long durationMs = 1L;
+  private long bucketMs;
+  private Level[] levels;
+  private boolean accepted;
 
+  /**
+   * @param buckets resolution of the whole-track {@link #toResponse overview}
+   */
   public WaveformAccumulator(int buckets) {
     this.buckets = buckets;
-    this.peakByBucket = new float[buckets];
-    this.touchedBuckets = new boolean[buckets];
+    allocate(baseBucketMs(durationMs));
+  }
+
+  /**
+   * Rebuilds a finished envelope from a stored base level.
+   */
+  static WaveformAccumulator restore(int buckets, long durationMs, long bucketMs, Envelope base) {
+    WaveformAccumulator restored = new WaveformAccumulator(buckets);
+    restored.durationMs = Math.max(1L, durationMs);
+    restored.allocate(bucketMs);
+
+    Level level = restored.levels[0];
+    int size = Math.min(level.size(), base.min().length);
+    for (int i = 0; i < size; i++) {
+      level.min[i] = base.min()[i];
+      level.max[i] = base.max()[i];
+      level.sumSquares[i] = base.rms()[i] * base.rms()[i];
+      level.samples[i] = 1;
+    }
+    restored.propagate(0, level.size() - 1);
+    restored.accepted = true;
+    return restored;
   }
 
-  public void setDurationMs(long durationMs) {
+  /**
+   * Sizes the pyramid for the track. Once audio has been accepted the layout is kept and
+   * later positions past the old end land in the last bucket.
+   */
+  public synchronized void setDurationMs(long durationMs) {
     this.durationMs = Math.max(1L, durationMs);
+    if (!accepted) {
+      allocate(baseBucketMs(this.durationMs));
+    }
+  }
+
+  public void accept(byte[] pcmFrame, long trackPositionMs) {
+    if (pcmFrame == null) {
+      return;
+    }
+    accept(pcmFrame, pcmFrame.length, trackPositionMs);
   }
 
-  public synchronized void accept(byte[] pcmFrame, long trackPositionMs) {
-    if (pcmFrame == null || pcmFrame.length < 2 || durationMs <= 0) {
+  public synchronized void accept(byte[] pcmFrame, int length, long trackPositionMs) {
+    if (pcmFrame == null || length < 2) {
       return;
     }
+    accepted = true;
+
+    Level base = levels[0];
+    long samplesPerBucket = bucketMs * SAMPLES_PER_MS;
+    long sampleIndex = Math.max(0L, trackPositionMs) * SAMPLES_PER_MS;
 
-    float max = 0f;
+    int bucket = bucketOf(sampleIndex, samplesPerBucket, base.size());
+    int firstBucket = bucket;
+    long boundary = (bucket + 1L) * samplesPerBucket;
 
-    for (int i = 0; i + 1 < pcmFrame.length; i += 2) {
-      int hi = pcmFrame[i] & 0xFF;
-      int lo = pcmFrame[i + 1] & 0xFF;
-      short sample = (short) ((hi << 8) | lo);
+    float min = Float.MAX_VALUE;
+    float max = -Float.MAX_VALUE;
+    float sumSquares = 0f;
+    int samples = 0;
 
-      float normalized = Math.abs(sample) / 32768f;
-      if (normalized > max) {
-        max = normalized;
+    for (int i = 0; i + 1 < length; i += 2) {
+      if (sampleIndex >= boundary && bucket < base.size() - 1) {
+        base.add(bucket, min, max, sumSquares, samples);
+        bucket++;
+        boundary += samplesPerBucket;
+        min = Float.MAX_VALUE;
+        max = -Float.MAX_VALUE;
+        sumSquares = 0f;
+        samples = 0;
       }
+
+      float value = (short) (((pcmFrame[i] & 0xFF) << 8) | (pcmFrame[i + 1] & 0xFF)) / 32768f;
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+      sumSquares += value * value;
+      samples++;
+      sampleIndex++;
     }
 
-    int bucket = (int) Math.min(
-            buckets - 1,
-            Math.max(0L, (trackPositionMs * buckets) / durationMs)
-    );
+    base.add(bucket, min, max, sumSquares, samples);
+    propagate(firstBucket, bucket);
+  }
 
-    touchedBuckets[bucket] = true;
+  /**
+   * Summarises {@code [fromMs, toMs)} into {@code count} buckets.
+   */
+  synchronized Envelope envelope(long fromMs, long toMs, int count) {
+    float[] min = new float[count];
+    float[] max = new float[count];
+    float[] rms = new float[count];
+    int filled = 0;
 
-    if (max > peakByBucket[bucket]) {
-      peakByBucket[bucket] = max;
+    if (toMs <= fromMs) {
+      return new Envelope(min, max, rms, filled);
     }
+
+    double spanMs = (toMs - fromMs) / (double) count;
+    Level level = levelFor(spanMs);
+
+    for (int i = 0; i < count; i++) {
+      double startMs = fromMs + i * spanMs;
+      double endMs = startMs + spanMs;
+
+      // level buckets straddling an edge go to the output bucket holding most of them
+      int first = (int) Math.min(level.size() - 1, Math.round(startMs / level.bucketMs));
+      int last = (int) Math.min(level.size(), Math.max(first + 1, Math.round(endMs / level.bucketMs)));
+
+      float bucketMin = Float.MAX_VALUE;
+      float bucketMax = -Float.MAX_VALUE;
+      double sumSquares = 0d;
+      long samples = 0;
+
+      for (int b = first; b < last; b++) {
+        if (level.samples[b] == 0) {
+          continue;
+        }
+        bucketMin = Math.min(bucketMin, level.min[b]);
+        bucketMax = Math.max(bucketMax, level.max[b]);
+        sumSquares += level.sumSquares[b];
+        samples += level.samples[b];
+      }
+
+      if (samples > 0) {
+        min[i] = bucketMin;
+        max[i] = bucketMax;
+        rms[i] = (float) Math.sqrt(sumSquares / samples);
+        filled++;
+      }
+    }
+
+    return new Envelope(min, max, rms, filled);
+  }
+
+  /**
+   * The finest level as stored by {@link WaveformStore}.
+   */
+  synchronized Envelope baseLevel() {
+    return envelope(0L, levels[0].size() * bucketMs, levels[0].size());
+  }
+
+  synchronized long getBucketMs() {
+    return bucketMs;
   }
 
-  public synchronized WaveformResponse toResponse(long trackId, boolean complete) {
+  public synchronized long getDurationMs() {
+    return durationMs;
+  }
+
+  public WaveformResponse toResponse(long trackId, boolean complete) {
+    return toResponse(trackId, complete, WaveformPeaksEncoding.DECIMAL);
+  }
+
+  /**
+   * Whole-track overview. With a compact {@code encoding} the peaks are quantized into
+   * {@code peaksData} and the decimal array is left empty.
+   */
+  public WaveformResponse toResponse(long trackId, boolean complete, WaveformPeaksEncoding encoding) {
+    Envelope overview;
+    long duration;
+    synchronized (this) {
+      duration = durationMs;
+      overview = envelope(0L, duration, buckets);
+    }
+
+    EncodedPeaks peaks = encodePeaks(overviewPeaks(overview, 0, buckets), encoding);
+
     WaveformResponse response = new WaveformResponse();
     response.setTrackId(trackId);
-    response.setDurationS(durationMs / 1000L);
+    response.setDurationS(duration / 1000L);
     response.setBuckets(buckets);
+    response.setPeaksEncoding(encoding);
+    response.setPeaks(peaks.decimals());
+    response.setPeaksData(peaks.data());
+    response.setComplete(complete);
+    response.setProcessedBuckets(overview.filledBuckets());
+    return response;
+  }
+
+  /**
+   * Overview buckets {@code [fromBucket, toBucket)} as one message of a waveform event stream.
+   */
+  public WaveformProgressEvent toProgressEvent(long trackId,
+                                               int fromBucket,
+                                               int toBucket,
+                                               WaveformPeaksEncoding encoding,
+                                               boolean complete) {
+    fromBucket = Math.max(0, Math.min(fromBucket, buckets));
+    toBucket = Math.max(fromBucket, Math.min(toBucket, buckets));
 
-    List<BigDecimal> peaks = new ArrayList<>(buckets);
-    for (float value : peakByBucket) {
-      peaks.add(BigDecimal.valueOf(value));
+    Envelope overview;
+    synchronized (this) {
+      overview = envelope(0L, durationMs, buckets);
     }
 
-    response.setPeaks(peaks);
+    EncodedPeaks peaks = encodePeaks(overviewPeaks(overview, fromBucket, toBucket), encoding);
+
+    WaveformProgressEvent event = new WaveformProgressEvent();
+    event.setTrackId(trackId);
+    event.setBuckets(buckets);
+    event.setFromBucket(fromBucket);
+    event.setToBucket(toBucket);
+    event.setPeaksEncoding(encoding);
+    event.setPeaks(peaks.decimals());
+    event.setPeaksData(peaks.data());
+    event.setComplete(complete);
+    return event;
+  }
+
+  /**
+   * Envelope of {@code [fromMs, toMs)} at {@code count} buckets; the range is cut at the end of
+   * the track.
+   */
+  public WaveformRangeResponse toRangeResponse(long trackId, long fromMs, long toMs, int count, boolean complete) {
+    Envelope range;
+    synchronized (this) {
+      toMs = Math.min(toMs, durationMs);
+      range = envelope(fromMs, toMs, count);
+    }
+
+    WaveformRangeResponse response = new WaveformRangeResponse();
+    response.setTrackId(trackId);
+    response.setFromMs(fromMs);
+    response.setToMs(toMs);
+    response.setBuckets(count);
+    response.setMin(toList(range.min()));
+    response.setMax(toList(range.max()));
+    response.setRms(toList(range.rms()));
     response.setComplete(complete);
-    response.setProcessedBuckets(getProcessedBucketsInternal());
     return response;
   }
 
   public synchronized boolean hasAnyData() {
-    for (float value : peakByBucket) {
-      if (value > 0f) {
+    Level top = levels[levels.length - 1];
+    for (int i = 0; i < top.size(); i++) {
+      if (top.samples[i] > 0 && (top.max[i] > 0f || top.min[i] < 0f)) {
         return true;
       }
     }
     return false;
   }
 
-  public synchronized int getProcessedBuckets() {
-    return getProcessedBucketsInternal();
+  public int getProcessedBuckets() {
+    return envelope(0L, getDurationMs(), buckets).filledBuckets();
   }
 
-  private int getProcessedBucketsInternal() {
-    int count = 0;
-    for (boolean touched : touchedBuckets) {
-      if (touched) {
-        count++;
+  private void allocate(long baseBucketMs) {
+    bucketMs = baseBucketMs;
+
+    List<Level> built = new ArrayList<>();
+    long levelBucketMs = baseBucketMs;
+    int size = (int) Math.max(1L, Math.min(MAX_BASE_BUCKETS, (durationMs + baseBucketMs - 1) / baseBucketMs));
+
+    built.add(new Level(levelBucketMs, size));
+    while (size > MIN_LEVEL_BUCKETS) {
+      size = (size + 1) / 2;
+      levelBucketMs *= 2;
+      built.add(new Level(levelBucketMs, size));
+    }
+
+    levels = built.toArray(Level[]::new);
+  }
+
+  /**
+   * Folds changed base buckets {@code [first, last]} into every coarser level.
+   */
+  private void propagate(int first, int last) {
+    for (int k = 1; k < levels.length; k++) {
+      Level child = levels[k - 1];
+      Level parent = levels[k];
+      first >>= 1;
+      last >>= 1;
+
+      for (int p = first; p <= last; p++) {
+        parent.reset(p);
+        int left = p * 2;
+        parent.add(p, child.min[left], child.max[left], child.sumSquares[left], child.samples[left]);
+        if (left + 1 < child.size()) {
+          parent.add(p, child.min[left + 1], child.max[left + 1], child.sumSquares[left + 1], child.samples[left + 1]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Coarsest level whose buckets are no wider than {@code spanMs}.
+   */
+  private Level levelFor(double spanMs) {
+    Level chosen = levels[0];
+    for (Level level : levels) {
+      if (level.bucketMs <= spanMs) {
+        chosen = level;
+      }
+    }
+    return chosen;
+  }
+
+  private static long baseBucketMs(long durationMs) {
+    return Math.max(MIN_BUCKET_MS, (durationMs + MAX_BASE_BUCKETS - 1) / MAX_BASE_BUCKETS);
+  }
+
+  private static int bucketOf(long sampleIndex, long samplesPerBucket, int size) {
+    return (int) Math.min(size - 1, sampleIndex / samplesPerBucket);
+  }
+
+  private static float[] overviewPeaks(Envelope overview, int fromBucket, int toBucket) {
+    float[] peaks = new float[toBucket - fromBucket];
+    for (int i = 0; i < peaks.length; i++) {
+      int bucket = fromBucket + i;
+      peaks[i] = Math.max(Math.abs(overview.min()[bucket]), Math.abs(overview.max()[bucket]));
+    }
+    return peaks;
+  }
+
+  private static EncodedPeaks encodePeaks(float[] peaks, WaveformPeaksEncoding encoding) {
+    return switch (encoding) {
+      case U8 -> new EncodedPeaks(List.of(), quantizeU8(peaks));
+      case U16 -> new EncodedPeaks(List.of(), quantizeU16(peaks));
+      default -> {
+        List<BigDecimal> decimals = new ArrayList<>(peaks.length);
+        for (float peak : peaks) {
+          decimals.add(BigDecimal.valueOf(peak));
+        }
+        yield new EncodedPeaks(decimals, null);
       }
+    };
+  }
+
+  static byte[] quantizeU8(float[] peaks) {
+    byte[] quantized = new byte[peaks.length];
+    for (int i = 0; i < peaks.length; i++) {
+      quantized[i] = (byte) Math.round(Math.min(1f, peaks[i]) * 255f);
+    }
+    return quantized;
+  }
+
+  static byte[] quantizeU16(float[] peaks) {
+    byte[] quantized = new byte[peaks.length * 2];
+    for (int i = 0; i < peaks.length; i++) {
+      int value = Math.round(Math.min(1f, peaks[i]) * 65535f);
+      quantized[i * 2] = (byte) (value >> 8);
+      quantized[i * 2 + 1] = (byte) value;
+    }
+    return quantized;
+  }
+
+  private static List<Float> toList(float[] values) {
+    List<Float> list = new ArrayList<>(values.length);
+    for (float value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  /**
+   * Per-bucket minimum, maximum and RMS of normalised samples; buckets without audio are zero.
+   */
+  record Envelope(float[] min, float[] max, float[] rms, int filledBuckets) {
+  }
+
+  private record EncodedPeaks(List<BigDecimal> decimals, byte[] data) {
+  }
+
+  private static final class Level {
+    final long bucketMs;
+    final float[] min;
+    final float[] max;
+    final float[] sumSquares;
+    final int[] samples;
+
+    Level(long bucketMs, int size) {
+      this.bucketMs = bucketMs;
+      this.min = new float[size];
+      this.max = new float[size];
+      this.sumSquares = new float[size];
+      this.samples = new int[size];
+      Arrays.fill(min, Float.MAX_VALUE);
+      Arrays.fill(max, -Float.MAX_VALUE);
+    }
+
+    int size() {
+      return samples.length;
+    }
+
+    void add(int bucket, float bucketMin, float bucketMax, float bucketSumSquares, int bucketSamples) {
+      if (bucketSamples == 0) {
+        return;
+      }
+      if (bucketMin < min[bucket]) {
+        min[bucket] = bucketMin;
+      }
+      if (bucketMax > max[bucket]) {
+        max[bucket] = bucketMax;
+      }
+      sumSquares[bucket] += bucketSumSquares;
+      samples[bucket] += bucketSamples;
+    }
+
+    void reset(int bucket) {
+      min[bucket] = Float.MAX_VALUE;
+      max[bucket] = -Float.MAX_VALUE;
+      sumSquares[bucket] = 0f;
+      samples[bucket] = 0;
     }
-    return count;
   }
-}
\ No newline at end of file
+}
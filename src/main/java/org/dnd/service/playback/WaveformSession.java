@@ -1,53 +1,173 @@
 package org.dnd.service.playback;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import lombok.extern.slf4j.Slf4j;
+import org.dnd.api.model.TrackAnalysisResponse;
+import org.dnd.api.model.WaveformPeaksEncoding;
+import org.dnd.api.model.WaveformRangeResponse;
 import org.dnd.api.model.WaveformResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+/**
+ * Decodes a track once and feeds every frame through the analyzer chain: the waveform pyramid,
+ * loudness and silence boundaries. Results are readable while the pass runs and are persisted
+ * per audio source when it completes.
+ */
 @Slf4j
 public final class WaveformSession extends AbstractAudioDecodeSession {
 
+  static final int WAVEFORM_BUCKETS = 512;
+
   private static final int PCM_SAMPLE_RATE = 48000;
   private static final int PCM_CHANNELS = 2;
   private static final int PCM_BYTES_PER_SAMPLE = 2;
   private static final long WAVEFORM_CACHE_TTL_S = 60;
-  private static final int WAVEFORM_BUCKETS = 512;
+  private static final long FAILED_LOAD_TTL_S = 10;
+  private static final long PROGRESS_INTERVAL_MS = 100;
+  private static final long PROGRESS_STREAM_TIMEOUT_MS = 10 * 60 * 1000L;
 
+  private final TrackSourceKey sourceKey;
+  private final WaveformStore waveformStore;
+  private final TrackAnalysisStore analysisStore;
+  private final ExecutorService streamIoWorkers;
   private final Consumer<WaveformSession> removalCallback;
+  private final Object progressSignal = new Object();
 
   private volatile WaveformAccumulator waveform = new WaveformAccumulator(WAVEFORM_BUCKETS);
+  private volatile LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+  private volatile SilenceAnalyzer silence = new SilenceAnalyzer();
+  private volatile List<TrackAnalyzer> analyzers = List.of(waveform, loudness, silence);
   private volatile boolean complete;
   private volatile long lastWaveformPositionMs;
+  private volatile int completedBuckets;
+  private volatile ResponseStatusException loadFailure;
+  private volatile boolean removed;
 
   WaveformSession(long trackId,
+                  TrackSourceKey sourceKey,
                   AudioPlayerManager playerManager,
+                  PcmDiskCache pcmCache,
+                  PlaybackMetrics metrics,
+                  WaveformStore waveformStore,
+                  TrackAnalysisStore analysisStore,
                   ExecutorService decodeWorkers,
+                  ExecutorService streamIoWorkers,
                   ScheduledExecutorService scheduler,
                   Consumer<WaveformSession> removalCallback) {
-    super(trackId, playerManager, decodeWorkers, scheduler);
+    super(trackId, playerManager, pcmCache, metrics, decodeWorkers, scheduler);
+    this.sourceKey = sourceKey;
+    this.waveformStore = waveformStore;
+    this.analysisStore = analysisStore;
+    this.streamIoWorkers = streamIoWorkers;
     this.removalCallback = removalCallback;
   }
 
-  WaveformResponse getWaveformResponse() {
-    return waveform.toResponse(sessionId, complete);
+  /**
+   * Returns the waveform accumulated so far for {@code trackId}, one of the tracks sharing
+   * this source; while the track is still loading this is an empty, incomplete response.
+   *
+   * @throws ResponseStatusException if the track could not be loaded
+   */
+  WaveformResponse getWaveformResponse(long trackId, WaveformPeaksEncoding encoding) {
+    ResponseStatusException failure = loadFailure;
+    if (failure != null) {
+      throw failure;
+    }
+
+    return waveform.toResponse(trackId, complete, encoding);
+  }
+
+  /**
+   * Loudness and silence boundaries measured so far for {@code trackId}.
+   *
+   * @throws ResponseStatusException if the track could not be loaded
+   */
+  TrackAnalysisResponse getAnalysisResponse(long trackId) {
+    ResponseStatusException failure = loadFailure;
+    if (failure != null) {
+      throw failure;
+    }
+
+    return TrackAnalysis.of(loudness, silence).toResponse(trackId, complete);
+  }
+
+  /**
+   * Envelope of {@code [fromMs, toMs)} at {@code buckets} resolution from what has been
+   * analysed so far.
+   *
+   * @throws ResponseStatusException if the track could not be loaded
+   */
+  WaveformRangeResponse getWaveformRange(long trackId, long fromMs, long toMs, int buckets) {
+    ResponseStatusException failure = loadFailure;
+    if (failure != null) {
+      throw failure;
+    }
+
+    return waveform.toRangeResponse(trackId, fromMs, toMs, buckets, complete);
   }
 
-  void loadAndAnalyze(long requestedTrackId, String trackLink, int trackDuration) {
+  /**
+   * Event stream of the overview for {@code trackId}: a {@code progress} event with the buckets
+   * completed since the previous one at most every {@link #PROGRESS_INTERVAL_MS}, then a
+   * {@code complete} event with the rest. A failed load ends the stream with an {@code error}
+   * event instead.
+   */
+  SseEmitter streamProgress(long trackId, WaveformPeaksEncoding encoding) {
+    return streamProgress(new SseEmitter(PROGRESS_STREAM_TIMEOUT_MS), trackId, encoding);
+  }
+
+  SseEmitter streamProgress(SseEmitter emitter, long trackId, WaveformPeaksEncoding encoding) {
+    AtomicBoolean open = new AtomicBoolean(true);
+    Runnable close = () -> {
+      open.set(false);
+      signalProgress();
+    };
+    emitter.onCompletion(close);
+    emitter.onTimeout(close);
+    emitter.onError(error -> close.run());
+
+    streamIoWorkers.submit(() -> pushProgress(emitter, open, trackId, encoding));
+    return emitter;
+  }
+
+  /**
+   * Event stream of a stored waveform: a single {@code complete} event with every bucket.
+   */
+  static SseEmitter streamStored(SseEmitter emitter, WaveformAccumulator stored, long trackId, WaveformPeaksEncoding encoding) {
+    try {
+      emitter.send(SseEmitter.event()
+              .name("complete")
+              .data(stored.toProgressEvent(trackId, 0, WAVEFORM_BUCKETS, encoding, true)));
+      emitter.complete();
+    } catch (IOException e) {
+      emitter.completeWithError(e);
+    }
+    return emitter;
+  }
+
+  CompletableFuture<Void> loadAndAnalyze(long requestedTrackId, String trackLink, int trackDuration) {
     stopInternal();
 
     this.waveform = new WaveformAccumulator(WAVEFORM_BUCKETS);
+    this.loudness = new LoudnessAnalyzer();
+    this.silence = new SilenceAnalyzer();
+    this.analyzers = List.of(waveform, loudness, silence);
     this.complete = false;
     this.lastWaveformPositionMs = 0L;
+    this.completedBuckets = 0;
     this.durationMs = Math.max(1L, trackDuration * 1000L);
-    this.waveform.setDurationMs(durationMs);
+    analyzers.forEach(analyzer -> analyzer.setDurationMs(durationMs));
 
-    beginPlayback(trackLink, trackDuration, null);
+    return beginPlayback(trackLink, trackDuration, 0L);
   }
 
   void stop() {
@@ -60,49 +180,127 @@ public final class WaveformSession extends AbstractAudioDecodeSession {
   }
 
   @Override
-  protected void onTrackPrepared(AudioTrack track) {
-    waveform.setDurationMs(durationMs);
-  }
-
-  @Override
-  protected void onTrackStarted(AudioTrack track) {
-    waveform.setDurationMs(durationMs);
+  protected void onSourcePrepared() {
+    analyzers.forEach(analyzer -> analyzer.setDurationMs(durationMs));
   }
 
   @Override
-  protected void onPcmFrame(byte[] pcm, Long positionMs) {
-    long effectivePosition = positionMs != null ? positionMs : lastWaveformPositionMs;
-    waveform.accept(pcm, effectivePosition);
+  protected void onPcmFrame(byte[] pcm, int length, long positionMs) {
+    long effectivePosition = positionMs != UNKNOWN_POSITION ? positionMs : lastWaveformPositionMs;
+    for (TrackAnalyzer analyzer : analyzers) {
+      analyzer.accept(pcm, length, effectivePosition);
+    }
 
-    long nextPosition = effectivePosition + estimateFrameDurationMs(pcm);
+    long nextPosition = effectivePosition + estimateFrameDurationMs(length);
     if (nextPosition > lastWaveformPositionMs) {
       lastWaveformPositionMs = nextPosition;
     }
+
+    // the bucket under the decode position may still take samples, and so may its neighbour
+    // when the overview edge falls inside a pyramid bucket
+    long reached = nextPosition * WAVEFORM_BUCKETS / Math.max(1L, durationMs);
+    int completed = (int) Math.max(0L, Math.min(WAVEFORM_BUCKETS, reached) - 1L);
+    if (completed > completedBuckets) {
+      completedBuckets = completed;
+    }
   }
 
   @Override
-  protected void onPlaybackCompleted(AudioPlayer playbackPlayer, long playbackVersion) {
+  protected void onPlaybackCompleted(PcmSource playbackSource, long playbackVersion) {
     complete = true;
-    destroyPlayerOnly(playbackPlayer, playbackVersion);
+    releaseSource(playbackSource, playbackVersion);
+
+    if (waveform.getProcessedBuckets() > 0) {
+      waveformStore.save(sourceKey, waveform);
+      analysisStore.save(sourceKey, TrackAnalysis.of(loudness, silence));
+    }
+    signalProgress();
+
+    // kept briefly for clients still polling this session; later requests hit the store
     scheduleCleanup(WAVEFORM_CACHE_TTL_S);
   }
 
+  @Override
+  protected void onLoadFailure(ResponseStatusException failure) {
+    // remembered for a short while so polling clients do not retrigger the load
+    loadFailure = failure;
+    signalProgress();
+    scheduleCleanup(FAILED_LOAD_TTL_S);
+  }
+
   @Override
   protected void clearSubclassState() {
     complete = false;
     lastWaveformPositionMs = 0L;
+    completedBuckets = 0;
+    loadFailure = null;
   }
 
   @Override
   protected void removeFromManager() {
+    removed = true;
+    signalProgress();
     removalCallback.accept(this);
   }
 
-  private static long estimateFrameDurationMs(byte[] pcm) {
+  private void pushProgress(SseEmitter emitter, AtomicBoolean open, long trackId, WaveformPeaksEncoding encoding) {
+    int sent = 0;
+
+    try {
+      while (open.get()) {
+        ResponseStatusException failure = loadFailure;
+        if (failure != null) {
+          emitter.send(SseEmitter.event().name("error").data(String.valueOf(failure.getReason())));
+          emitter.complete();
+          return;
+        }
+
+        if (complete) {
+          emitter.send(SseEmitter.event()
+                  .name("complete")
+                  .data(waveform.toProgressEvent(trackId, sent, WAVEFORM_BUCKETS, encoding, true)));
+          emitter.complete();
+          return;
+        }
+
+        if (removed) {
+          emitter.complete();
+          return;
+        }
+
+        int ready = completedBuckets;
+        if (ready > sent) {
+          emitter.send(SseEmitter.event()
+                  .name("progress")
+                  .data(waveform.toProgressEvent(trackId, sent, ready, encoding, false)));
+          sent = ready;
+        }
+
+        synchronized (progressSignal) {
+          if (open.get() && !complete && loadFailure == null && !removed) {
+            progressSignal.wait(PROGRESS_INTERVAL_MS);
+          }
+        }
+      }
+    } catch (IOException | IllegalStateException e) {
+      log.debug("Waveform event stream for track {} closed: {}", trackId, e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      emitter.complete();
+    }
+  }
+
+  private void signalProgress() {
+    synchronized (progressSignal) {
+      progressSignal.notifyAll();
+    }
+  }
+
+  private static long estimateFrameDurationMs(int length) {
     long bytesPerMs = (long) PCM_SAMPLE_RATE * PCM_CHANNELS * PCM_BYTES_PER_SAMPLE / 1000L;
     if (bytesPerMs <= 0) {
       return 1L;
     }
-    return Math.max(1L, pcm.length / bytesPerMs);
+    return Math.max(1L, length / bytesPerMs);
   }
 }
\ No newline at end of file
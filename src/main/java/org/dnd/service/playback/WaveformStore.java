@@ -0,0 +1,84 @@
+package org.dnd.service.playback;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dnd.model.TrackWaveformEntity;
+import org.dnd.repository.TrackWaveformRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Finished waveforms keyed by {@link TrackSourceKey}, so a track is analysed once no matter
+ * how many users own or subscribe to it. Only the finest pyramid level is stored, as three
+ * planes of one byte per bucket: signed min, signed max and unsigned RMS.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WaveformStore {
+
+  private static final float SIGNED_SCALE = 127f;
+  private static final float UNSIGNED_SCALE = 255f;
+
+  private final TrackWaveformRepository waveformRepository;
+
+  Optional<WaveformAccumulator> find(TrackSourceKey sourceKey, int buckets) {
+    return waveformRepository.findById(sourceKey.value())
+            .map(stored -> WaveformAccumulator.restore(
+                    buckets,
+                    stored.getDurationMs(),
+                    stored.getBucketMs(),
+                    decodeEnvelope(stored.getEnvelope())
+            ));
+  }
+
+  /**
+   * Persists a completed analysis. Failures are logged and dropped; the next request for the
+   * track simply analyses it again.
+   */
+  void save(TrackSourceKey sourceKey, WaveformAccumulator waveform) {
+    try {
+      if (waveformRepository.existsById(sourceKey.value())) {
+        return;
+      }
+      waveformRepository.save(new TrackWaveformEntity(
+              sourceKey.value(),
+              waveform.getDurationMs(),
+              waveform.getBucketMs(),
+              encodeEnvelope(waveform.baseLevel())
+      ));
+    } catch (DataAccessException e) {
+      log.warn("Could not store waveform for {}: {}", sourceKey.value(), e.getMessage());
+    }
+  }
+
+  static byte[] encodeEnvelope(WaveformAccumulator.Envelope envelope) {
+    int size = envelope.min().length;
+    byte[] encoded = new byte[size * 3];
+    for (int i = 0; i < size; i++) {
+      encoded[i] = (byte) Math.round(clamp(envelope.min()[i], -1f) * SIGNED_SCALE);
+      encoded[size + i] = (byte) Math.round(clamp(envelope.max()[i], -1f) * SIGNED_SCALE);
+      encoded[2 * size + i] = (byte) Math.round(clamp(envelope.rms()[i], 0f) * UNSIGNED_SCALE);
+    }
+    return encoded;
+  }
+
+  static WaveformAccumulator.Envelope decodeEnvelope(byte[] encoded) {
+    int size = encoded.length / 3;
+    float[] min = new float[size];
+    float[] max = new float[size];
+    float[] rms = new float[size];
+    for (int i = 0; i < size; i++) {
+      min[i] = encoded[i] / SIGNED_SCALE;
+      max[i] = encoded[size + i] / SIGNED_SCALE;
+      rms[i] = (encoded[2 * size + i] & 0xFF) / UNSIGNED_SCALE;
+    }
+    return new WaveformAccumulator.Envelope(min, max, rms, size);
+  }
+
+  private static float clamp(float value, float lowest) {
+    return Math.min(1f, Math.max(lowest, value));
+  }
+}
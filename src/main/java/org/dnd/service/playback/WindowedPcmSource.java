@@ -0,0 +1,154 @@
+package org.dnd.service.playback;
+
+/**
+ * Applies a {@link PlaybackWindow} to the wrapped source: frames are cut at the window end
+ * to the sample, playback stops or loops there, and fade ramps are applied to the s16be
+ * PCM in place. Stopping at the end means nothing past the window is decoded or encoded.
+ */
+final class WindowedPcmSource implements PcmSource {
+
+  private static final int SAMPLES_PER_MS = 48;
+  private static final int BYTES_PER_SAMPLE_FRAME = 4;
+
+  private final PcmSource inner;
+  private final long startMs;
+  private final long endMs;
+  private final long fadeInSamples;
+  private final long fadeOutSamples;
+  private final boolean loop;
+
+  private volatile boolean endPending;
+  private volatile boolean restarting;
+
+  WindowedPcmSource(PcmSource inner, PlaybackWindow window) {
+    this.inner = inner;
+    this.startMs = window.startMs();
+    this.endMs = window.endMs();
+    this.fadeInSamples = window.fadeInMs() * SAMPLES_PER_MS;
+    this.fadeOutSamples = window.fadeOutMs() * SAMPLES_PER_MS;
+    this.loop = window.loop();
+  }
+
+  @Override
+  public int read(byte[] target) throws InterruptedException {
+    if (endPending) {
+      endPending = false;
+      return reachEnd();
+    }
+
+    int length = inner.read(target);
+    if (length == END_OF_TRACK) {
+      return reachEnd();
+    }
+    if (length <= 0) {
+      return length;
+    }
+
+    long frameStartSample = inner.frameStartMs() * SAMPLES_PER_MS;
+    long endSample = effectiveEndMs() * SAMPLES_PER_MS;
+
+    if (endMs > 0 && frameStartSample >= endSample) {
+      // a source that seeks asynchronously may still hand out frames from before the restart
+      return restarting ? NO_FRAME : reachEnd();
+    }
+    restarting = false;
+
+    if (endMs > 0) {
+      long bytesToEnd = (endSample - frameStartSample) * BYTES_PER_SAMPLE_FRAME;
+      if (bytesToEnd <= length) {
+        length = (int) bytesToEnd;
+        endPending = true;
+      }
+    }
+
+    applyFades(target, length, frameStartSample, endSample);
+    return length;
+  }
+
+  @Override
+  public long frameStartMs() {
+    return inner.frameStartMs();
+  }
+
+  @Override
+  public long positionMs() {
+    return inner.positionMs();
+  }
+
+  @Override
+  public long durationMs() {
+    return inner.durationMs();
+  }
+
+  @Override
+  public boolean seek(long positionMs) {
+    endPending = false;
+    restarting = false;
+    return inner.seek(positionMs);
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    inner.setPaused(paused);
+  }
+
+  @Override
+  public void keepAlive() {
+    inner.keepAlive();
+  }
+
+  @Override
+  public void close() {
+    inner.close();
+  }
+
+  private int reachEnd() {
+    if (loop && inner.seek(startMs)) {
+      restarting = true;
+      return NO_FRAME;
+    }
+    return END_OF_TRACK;
+  }
+
+  private long effectiveEndMs() {
+    return endMs > 0 ? endMs : inner.durationMs();
+  }
+
+  private void applyFades(byte[] pcm, int length, long frameStartSample, long endSample) {
+    long startSample = startMs * SAMPLES_PER_MS;
+    int samples = length / BYTES_PER_SAMPLE_FRAME;
+
+    boolean fadingIn = fadeInSamples > 0 && frameStartSample < startSample + fadeInSamples;
+    boolean fadingOut = fadeOutSamples > 0 && endSample > 0
+            && frameStartSample + samples > endSample - fadeOutSamples;
+
+    if (!fadingIn && !fadingOut) {
+      return;
+    }
+
+    for (int i = 0; i < samples; i++) {
+      long position = frameStartSample + i;
+      float gain = 1f;
+
+      if (fadingIn && position >= startSample) {
+        gain = Math.min(gain, (float) (position - startSample) / fadeInSamples);
+      }
+      if (fadingOut) {
+        gain = Math.min(gain, (float) (endSample - position) / fadeOutSamples);
+      }
+
+      if (gain < 1f) {
+        int offset = i * BYTES_PER_SAMPLE_FRAME;
+        scaleSample(pcm, offset, gain);
+        scaleSample(pcm, offset + 2, gain);
+      }
+    }
+  }
+
+  private static void scaleSample(byte[] pcm, int offset, float gain) {
+    short sample = (short) ((pcm[offset] << 8) | (pcm[offset + 1] & 0xFF));
+    int scaled = (int) (sample * Math.max(0f, gain));
+    pcm[offset] = (byte) (scaled >> 8);
+    pcm[offset + 1] = (byte) scaled;
+  }
+}
@@ -0,0 +1,76 @@
+package org.dnd.service.playback.source;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Resolves {@code synthetic:} links to generated tones, noise or silence. Used instead of the
+ * YouTube source under the {@code loadtest} profile, so playback can be load tested
+ * offline and reproducibly.
+ */
+public class SyntheticAudioSourceManager implements AudioSourceManager {
+
+  @Override
+  public String getSourceName() {
+    return "synthetic";
+  }
+
+  @Override
+  public AudioItem loadItem(AudioPlayerManager manager, AudioReference reference) {
+    SyntheticAudioSpec spec;
+    try {
+      spec = SyntheticAudioSpec.parse(reference.identifier);
+    } catch (IllegalArgumentException e) {
+      throw new FriendlyException(e.getMessage(), FriendlyException.Severity.COMMON, e);
+    }
+
+    if (spec == null) {
+      return null;
+    }
+
+    String link = spec.toLink();
+    AudioTrackInfo info = new AudioTrackInfo(
+            "Synthetic " + spec.kind().name().toLowerCase(Locale.ROOT),
+            "musicPlayer",
+            spec.seconds() * 1000L,
+            link,
+            false,
+            link
+    );
+    return new SyntheticAudioTrack(info, spec, this);
+  }
+
+  @Override
+  public boolean isTrackEncodable(AudioTrack track) {
+    return true;
+  }
+
+  @Override
+  public void encodeTrack(AudioTrack track, DataOutput output) {
+    // everything needed to rebuild the track is in its identifier
+  }
+
+  @Override
+  public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
+    SyntheticAudioSpec spec = SyntheticAudioSpec.parse(trackInfo.identifier);
+    if (spec == null) {
+      throw new IOException("Not a synthetic track: " + trackInfo.identifier);
+    }
+    return new SyntheticAudioTrack(trackInfo, spec, this);
+  }
+
+  @Override
+  public void shutdown() {
+    // nothing to release
+  }
+}
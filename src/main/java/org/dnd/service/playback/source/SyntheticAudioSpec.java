@@ -0,0 +1,104 @@
+package org.dnd.service.playback.source;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed {@code synthetic:} link, e.g. {@code synthetic:tone?hz=440&seconds=180},
+ * {@code synthetic:noise?seconds=60&seed=7} or {@code synthetic:silence?seconds=30}.
+ *
+ * @param kind    waveform to generate
+ * @param seconds track length
+ * @param hz      tone frequency, ignored for the other kinds
+ * @param seed    noise seed, ignored for the other kinds
+ * @param level   peak amplitude between 0 and 1
+ */
+public record SyntheticAudioSpec(Kind kind, long seconds, double hz, long seed, double level) {
+
+  public static final String SCHEME = "synthetic:";
+
+  private static final long DEFAULT_SECONDS = 180;
+  private static final long MAX_SECONDS = 6 * 60 * 60;
+  private static final double DEFAULT_HZ = 440.0;
+  private static final double DEFAULT_LEVEL = 0.5;
+
+  public enum Kind {
+    TONE,
+    NOISE,
+    SILENCE
+  }
+
+  /**
+   * @return the spec, or {@code null} if {@code link} is not a synthetic link
+   * @throws IllegalArgumentException if the link is synthetic but malformed
+   */
+  public static SyntheticAudioSpec parse(String link) {
+    if (link == null || !link.regionMatches(true, 0, SCHEME, 0, SCHEME.length())) {
+      return null;
+    }
+
+    String rest = link.substring(SCHEME.length());
+    int query = rest.indexOf('?');
+    String kindName = query >= 0 ? rest.substring(0, query) : rest;
+    Map<String, String> params = parseQuery(query >= 0 ? rest.substring(query + 1) : "");
+
+    Kind kind;
+    try {
+      kind = Kind.valueOf(kindName.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown synthetic audio kind: " + kindName);
+    }
+
+    long seconds = Long.parseLong(params.getOrDefault("seconds", String.valueOf(DEFAULT_SECONDS)));
+    if (seconds <= 0 || seconds > MAX_SECONDS) {
+      throw new IllegalArgumentException("Synthetic audio length must be between 1 and " + MAX_SECONDS + " seconds");
+    }
+
+    double hz = Double.parseDouble(params.getOrDefault("hz", String.valueOf(DEFAULT_HZ)));
+    long seed = Long.parseLong(params.getOrDefault("seed", "0"));
+    double level = Math.clamp(Double.parseDouble(params.getOrDefault("level", String.valueOf(DEFAULT_LEVEL))), 0.0, 1.0);
+
+    return new SyntheticAudioSpec(kind, seconds, hz, seed, level);
+  }
+
+  public String toLink() {
+    return SCHEME + kind.name().toLowerCase(Locale.ROOT)
+            + "?seconds=" + seconds + "&hz=" + hz + "&seed=" + seed + "&level=" + level;
+  }
+
+  /**
+   * Sample value for one channel at an absolute sample index. The value depends only on the
+   * index, so playback after a seek is identical to playback straight through.
+   */
+  short sampleAt(long index, int sampleRate) {
+    double value = switch (kind) {
+      case TONE -> Math.sin(2.0 * Math.PI * hz * index / sampleRate);
+      case NOISE -> (mix(seed ^ index) >>> 11) * 0x1.0p-53 * 2.0 - 1.0;
+      case SILENCE -> 0.0;
+    };
+    return (short) Math.round(value * level * Short.MAX_VALUE);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> params = new HashMap<>();
+    for (String pair : query.split("&")) {
+      if (pair.isBlank()) {
+        continue;
+      }
+      int eq = pair.indexOf('=');
+      String key = eq >= 0 ? pair.substring(0, eq) : pair;
+      String value = eq >= 0 ? pair.substring(eq + 1) : "";
+      params.put(key.trim().toLowerCase(Locale.ROOT), URLDecoder.decode(value.trim(), StandardCharsets.UTF_8));
+    }
+    return params;
+  }
+}
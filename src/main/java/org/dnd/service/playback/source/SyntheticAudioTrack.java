@@ -0,0 +1,88 @@
+package org.dnd.service.playback.source;
+
+import com.sedmelluq.discord.lavaplayer.filter.AudioPipeline;
+import com.sedmelluq.discord.lavaplayer.filter.AudioPipelineFactory;
+import com.sedmelluq.discord.lavaplayer.filter.PcmFormat;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * Generated PCM track. It runs through lavaplayer's regular processing pipeline, so decoding,
+ * seeking and frame buffering behave like a real source without any network or codec work.
+ */
+final class SyntheticAudioTrack extends BaseAudioTrack {
+
+  static final int SAMPLE_RATE = 48_000;
+  private static final int CHANNELS = 2;
+  private static final int CHUNK_SAMPLES = 960;
+
+  private final SyntheticAudioSpec spec;
+  private final SyntheticAudioSourceManager sourceManager;
+
+  SyntheticAudioTrack(AudioTrackInfo trackInfo, SyntheticAudioSpec spec, SyntheticAudioSourceManager sourceManager) {
+    super(trackInfo);
+    this.spec = spec;
+    this.sourceManager = sourceManager;
+  }
+
+  SyntheticAudioSpec spec() {
+    return spec;
+  }
+
+  @Override
+  public void process(LocalAudioTrackExecutor executor) throws Exception {
+    AudioPipeline downstream = AudioPipelineFactory.create(executor.getProcessingContext(), new PcmFormat(CHANNELS, SAMPLE_RATE));
+    Generator generator = new Generator(downstream);
+
+    try {
+      executor.executeProcessingLoop(generator::provideFrames, generator::seekToTimecode);
+    } finally {
+      downstream.close();
+    }
+  }
+
+  @Override
+  public AudioSourceManager getSourceManager() {
+    return sourceManager;
+  }
+
+  @Override
+  protected AudioTrack makeShallowClone() {
+    return new SyntheticAudioTrack(trackInfo, spec, sourceManager);
+  }
+
+  private final class Generator {
+    private final AudioPipeline downstream;
+    private final short[] chunk = new short[CHUNK_SAMPLES * CHANNELS];
+    private final long totalSamples = spec.seconds() * SAMPLE_RATE;
+
+    private long nextSample;
+
+    private Generator(AudioPipeline downstream) {
+      this.downstream = downstream;
+    }
+
+    void provideFrames() throws InterruptedException {
+      while (nextSample < totalSamples) {
+        int samples = (int) Math.min(CHUNK_SAMPLES, totalSamples - nextSample);
+
+        for (int i = 0; i < samples; i++) {
+          short value = spec.sampleAt(nextSample + i, SAMPLE_RATE);
+          chunk[i * CHANNELS] = value;
+          chunk[i * CHANNELS + 1] = value;
+        }
+
+        downstream.process(chunk, 0, samples * CHANNELS);
+        nextSample += samples;
+      }
+    }
+
+    void seekToTimecode(long timecodeMs) {
+      nextSample = Math.clamp(timecodeMs * SAMPLE_RATE / 1000L, 0L, totalSamples);
+      downstream.seekPerformed(timecodeMs, nextSample * 1000L / SAMPLE_RATE);
+    }
+  }
+}
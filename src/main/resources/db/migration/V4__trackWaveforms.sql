@@ -0,0 +1,5 @@
+CREATE TABLE track_waveforms (
+    source_key VARCHAR(2048) PRIMARY KEY,
+    duration_ms BIGINT NOT NULL,
+    peaks BYTEA NOT NULL
+);
@@ -0,0 +1,8 @@
+-- peaks-only rows cannot serve range queries; they are re-analysed on the next request
+DELETE FROM track_waveforms;
+
+ALTER TABLE track_waveforms
+    RENAME COLUMN peaks TO envelope;
+
+ALTER TABLE track_waveforms
+    ADD COLUMN bucket_ms BIGINT NOT NULL;
@@ -0,0 +1,8 @@
+CREATE TABLE track_analyses (
+    source_key VARCHAR(2048) PRIMARY KEY,
+    integrated_lufs DOUBLE PRECISION,
+    sample_peak_dbfs DOUBLE PRECISION,
+    clipped_samples BIGINT NOT NULL,
+    audio_start_ms BIGINT,
+    audio_end_ms BIGINT
+);
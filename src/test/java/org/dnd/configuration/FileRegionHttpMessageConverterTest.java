@@ -0,0 +1,115 @@
+package org.dnd.configuration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileRegionHttpMessageConverterTest {
+
+  private static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
+  private final FileRegionHttpMessageConverter converter = new FileRegionHttpMessageConverter();
+
+  @TempDir
+  Path directory;
+
+  private Path file;
+  private byte[] content;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    content = new byte[64 * 1024];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) i;
+    }
+    file = Files.write(directory.resolve("track.mp3"), content);
+  }
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void regionIsLeftToTomcatSendfileWhenTheConnectorSupportsIt() throws IOException {
+    MockHttpServletRequest request = request("GET", true);
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(new ResourceRegion(new FileSystemResource(file), 1_000, 5_000), AUDIO_MPEG, output);
+
+    assertEquals(file.toFile().getCanonicalPath(), request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_FILENAME));
+    assertEquals(1_000L, request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_START));
+    assertEquals(6_000L, request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_END));
+    assertEquals(5_000, output.getHeaders().getContentLength());
+    assertEquals(0, output.getBodyAsBytes().length);
+  }
+
+  @Test
+  void wholeFileIsLeftToTomcatSendfile() throws IOException {
+    MockHttpServletRequest request = request("GET", true);
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(new FileSystemResource(file), AUDIO_MPEG, output);
+
+    assertEquals(0L, request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_START));
+    assertEquals((long) content.length, request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_END));
+    assertEquals(content.length, output.getHeaders().getContentLength());
+  }
+
+  @Test
+  void headRequestIsNotHandedToSendfile() throws IOException {
+    MockHttpServletRequest request = request("HEAD", true);
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(new ResourceRegion(new FileSystemResource(file), 1_000, 5_000), AUDIO_MPEG, output);
+
+    assertNull(request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_FILENAME));
+    assertEquals(5_000, output.getHeaders().getContentLength());
+    assertArrayEquals(Arrays.copyOfRange(content, 1_000, 6_000), output.getBodyAsBytes());
+  }
+
+  @Test
+  void regionIsTransferredIntoTheResponseWithoutSendfile() throws IOException {
+    MockHttpServletRequest request = request("GET", false);
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+    converter.write(new ResourceRegion(new FileSystemResource(file), 40_000, 20_000), AUDIO_MPEG, output);
+
+    assertNull(request.getAttribute(FileRegionHttpMessageConverter.SENDFILE_FILENAME));
+    assertEquals(20_000, output.getHeaders().getContentLength());
+    assertArrayEquals(Arrays.copyOfRange(content, 40_000, 60_000), output.getBodyAsBytes());
+  }
+
+  @Test
+  void regionOutsideTheFileFails() {
+    request("GET", false);
+
+    assertThrows(IOException.class, () -> converter.write(
+            new ResourceRegion(new FileSystemResource(file), content.length - 100, 200), AUDIO_MPEG,
+            new MockHttpOutputMessage()));
+  }
+
+  private static MockHttpServletRequest request(String method, boolean sendfileSupported) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, "/api/v1/tracks/1/stream");
+    if (sendfileSupported) {
+      request.setAttribute(FileRegionHttpMessageConverter.SENDFILE_SUPPORT, Boolean.TRUE);
+    }
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    return request;
+  }
+}
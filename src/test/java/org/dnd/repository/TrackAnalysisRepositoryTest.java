@@ -0,0 +1,34 @@
+package org.dnd.repository;
+
+import jakarta.transaction.Transactional;
+import org.dnd.model.TrackAnalysisEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@DirtiesContext
+class TrackAnalysisRepositoryTest extends DatabaseBase {
+  @Autowired
+  private TrackAnalysisRepository trackAnalysisRepository;
+
+  @Test
+  @Transactional
+  void storesAnalysisBySourceKey() {
+    trackAnalysisRepository.save(new TrackAnalysisEntity("youtube:dQw4w9WgXcQ", -14.2, -0.3, 12L, 420L, 211_580L));
+    trackAnalysisRepository.save(new TrackAnalysisEntity("link:silent", null, null, 0L, null, null));
+
+    TrackAnalysisEntity loaded = trackAnalysisRepository.findById("youtube:dQw4w9WgXcQ").orElseThrow();
+    assertThat(loaded.getIntegratedLufs()).isEqualTo(-14.2);
+    assertThat(loaded.getClippedSamples()).isEqualTo(12L);
+    assertThat(loaded.getAudioStartMs()).isEqualTo(420L);
+    assertThat(loaded.getAudioEndMs()).isEqualTo(211_580L);
+
+    TrackAnalysisEntity silent = trackAnalysisRepository.findById("link:silent").orElseThrow();
+    assertThat(silent.getIntegratedLufs()).isNull();
+    assertThat(silent.getAudioStartMs()).isNull();
+  }
+}
@@ -0,0 +1,30 @@
+package org.dnd.repository;
+
+import jakarta.transaction.Transactional;
+import org.dnd.model.TrackWaveformEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@DirtiesContext
+class TrackWaveformRepositoryTest extends DatabaseBase {
+  @Autowired
+  private TrackWaveformRepository trackWaveformRepository;
+
+  @Test
+  @Transactional
+  void storesEnvelopeBySourceKey() {
+    byte[] envelope = {-20, -3, 17, 25, 9, 14};
+    trackWaveformRepository.save(new TrackWaveformEntity("youtube:dQw4w9WgXcQ", 212_000L, 10L, envelope));
+
+    TrackWaveformEntity loaded = trackWaveformRepository.findById("youtube:dQw4w9WgXcQ").orElseThrow();
+    assertThat(loaded.getDurationMs()).isEqualTo(212_000L);
+    assertThat(loaded.getBucketMs()).isEqualTo(10L);
+    assertThat(loaded.getEnvelope()).containsExactly(envelope);
+    assertThat(trackWaveformRepository.existsById("youtube:other")).isFalse();
+  }
+}
@@ -0,0 +1,96 @@
+package org.dnd.service;
+
+import org.dnd.api.model.BoardUpdateRequest;
+import org.dnd.api.model.UserAuthDTO;
+import org.dnd.model.BoardEntity;
+import org.dnd.model.UserEntity;
+import org.dnd.repository.BoardRepository;
+import org.dnd.repository.DatabaseBase;
+import org.dnd.repository.TrackRepository;
+import org.dnd.repository.UserRepository;
+import org.dnd.service.playback.StreamSessionsManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+class BoardServiceTest extends DatabaseBase {
+  @Autowired
+  private BoardService boardService;
+  @Autowired
+  private BoardRepository boardRepository;
+  @Autowired
+  private TrackRepository trackRepository;
+  @Autowired
+  private UserRepository userRepository;
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @MockitoBean
+  private StreamSessionsManager sessionsManager;
+
+  private BoardEntity board;
+
+  @BeforeEach
+  void setUp() {
+    boardRepository.deleteAll();
+    trackRepository.deleteAll();
+    userRepository.deleteAll();
+
+    UserEntity user = new UserEntity();
+    user.setName("testUser");
+    user.setPassword("password");
+    user = userRepository.save(user);
+
+    board = new BoardEntity();
+    board.setOwner(user);
+    board.setName("Test Board");
+    board.setVolume(50);
+    board.setRepeat(false);
+    board.setOverplay(false);
+    board = boardRepository.save(board);
+
+    UserAuthDTO userAuth = new UserAuthDTO();
+    userAuth.setId(user.getId());
+    userAuth.setName(user.getName());
+    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(userAuth, null, null);
+    SecurityContextHolder.getContext().setAuthentication(auth);
+  }
+
+  @Test
+  void volumeReachesTheRunningSessionAfterCommit() {
+    BoardUpdateRequest request = new BoardUpdateRequest();
+    request.setVolume(30);
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      boardService.updateUserBoard(board.getId(), request);
+      verify(sessionsManager, never()).setBoardVolume(anyLong(), anyInt());
+    });
+
+    verify(sessionsManager).setBoardVolume(board.getId(), 30);
+  }
+
+  @Test
+  void rolledBackVolumeNeverReachesTheRunningSession() {
+    BoardUpdateRequest request = new BoardUpdateRequest();
+    request.setVolume(30);
+
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      boardService.updateUserBoard(board.getId(), request);
+      status.setRollbackOnly();
+    });
+
+    verify(sessionsManager, never()).setBoardVolume(anyLong(), anyInt());
+  }
+}
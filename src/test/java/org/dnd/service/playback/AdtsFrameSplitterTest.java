@@ -0,0 +1,67 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdtsFrameSplitterTest {
+
+  @Test
+  void frameLengthIsReadFromTheHeader() {
+    assertEquals(300, AdtsFrameSplitter.frameLengthAt(frame(300, 0), 0));
+  }
+
+  @Test
+  void rejectsBytesThatAreNotAnAdtsHeader() {
+    byte[] mp3 = {(byte) 0xFF, (byte) 0xFB, (byte) 0xB4, 0x44, 0, 0, 0};
+    byte[] tooShort = frame(5, 0);
+
+    assertEquals(-1, AdtsFrameSplitter.frameLengthAt(mp3, 0));
+    assertEquals(-1, AdtsFrameSplitter.frameLengthAt(tooShort, 0));
+  }
+
+  @Test
+  void emitsWholeFramesAcrossChunkBoundariesAndSkipsGarbage() throws InterruptedException {
+    List<byte[]> emitted = new ArrayList<>();
+    AdtsFrameSplitter splitter = new AdtsFrameSplitter(
+            (buffer, offset, length) -> emitted.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+
+    byte[] stream = concat(new byte[]{1, 2, 3}, frame(200, 1), frame(371, 2), frame(90, 3));
+    for (int offset = 0; offset < stream.length; offset += 64) {
+      splitter.feed(stream, offset, Math.min(64, stream.length - offset));
+    }
+
+    assertEquals(3, emitted.size());
+    assertArrayEquals(frame(200, 1), emitted.get(0));
+    assertArrayEquals(frame(371, 2), emitted.get(1));
+    assertArrayEquals(frame(90, 3), emitted.get(2));
+  }
+
+  private static byte[] frame(int length, int marker) {
+    byte[] frame = new byte[Math.max(length, 7)];
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xF1;                               // MPEG-4, no CRC
+    frame[2] = (byte) 0x4C;                               // AAC LC, 48 kHz
+    frame[3] = (byte) (0x80 | ((length >> 11) & 0x03));   // stereo
+    frame[4] = (byte) (length >> 3);
+    frame[5] = (byte) (((length & 0x07) << 5) | 0x1F);
+    frame[6] = (byte) 0xFC;
+    Arrays.fill(frame, 7, frame.length, (byte) marker);
+    return frame;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = Arrays.stream(parts).mapToInt(part -> part.length).sum();
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+}
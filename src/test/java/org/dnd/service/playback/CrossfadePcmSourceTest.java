@@ -0,0 +1,184 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrossfadePcmSourceTest {
+
+  private static final int FRAME = PcmBroadcastBuffer.MAX_FRAME_BYTES;
+  private static final short OUTGOING_LEVEL = 8_000;
+  private static final short INCOMING_LEVEL = 16_000;
+
+  @Test
+  void outgoingTrackFadesOutWhileTheIncomingOneFadesIn() throws InterruptedException {
+    CachedPcmSource outgoing = track(1000, OUTGOING_LEVEL);
+    PcmSource source = new CrossfadePcmSource(outgoing, 1f, track(1000, INCOMING_LEVEL), 1f, 40);
+    byte[] frame = new byte[FRAME];
+
+    assertEquals(FRAME, source.read(frame));
+    assertEquals(OUTGOING_LEVEL, sampleAt(frame, 0));
+    assertTrue(sampleAt(frame, 900) > OUTGOING_LEVEL);
+
+    source.read(frame);
+    assertEquals((OUTGOING_LEVEL + INCOMING_LEVEL) / 2, sampleAt(frame, 0));
+
+    source.read(frame);
+    assertEquals(INCOMING_LEVEL, sampleAt(frame, 0));
+    assertEquals(40, outgoing.positionMs());
+    assertEquals(60, source.positionMs());
+  }
+
+  @Test
+  void incomingTrackKeepsFadingInWhenTheOutgoingOneEndsEarly() throws InterruptedException {
+    PcmSource source = new CrossfadePcmSource(track(10, OUTGOING_LEVEL), 1f, track(1000, INCOMING_LEVEL), 1f, 40);
+    byte[] frame = new byte[FRAME];
+
+    source.read(frame);
+    assertTrue(sampleAt(frame, 479) > OUTGOING_LEVEL / 2);
+    assertEquals(INCOMING_LEVEL * 600 / 1920, sampleAt(frame, 600));
+
+    source.read(frame);
+    assertEquals(INCOMING_LEVEL / 2, sampleAt(frame, 0));
+  }
+
+  @Test
+  void eachTrackIsMixedAtItsOwnGain() throws InterruptedException {
+    CrossfadePcmSource source = new CrossfadePcmSource(track(1000, OUTGOING_LEVEL), 0.5f, track(1000, INCOMING_LEVEL), 1.5f, 30);
+    byte[] frame = new byte[FRAME];
+
+    source.read(frame);
+    assertTrue(source.lastFrameMixed());
+    assertEquals(OUTGOING_LEVEL / 2, sampleAt(frame, 0));
+
+    // the fade ends halfway through the second frame; the rest of it is the incoming track at its gain
+    source.read(frame);
+    assertTrue(source.lastFrameMixed());
+    assertEquals(INCOMING_LEVEL * 3 / 2, sampleAt(frame, 480));
+
+    source.read(frame);
+    assertFalse(source.lastFrameMixed());
+    assertEquals(INCOMING_LEVEL, sampleAt(frame, 0));
+  }
+
+  @Test
+  void seekingTheIncomingTrackDropsTheOutgoingOne() throws InterruptedException {
+    CachedPcmSource outgoing = track(1000, OUTGOING_LEVEL);
+    PcmSource source = new CrossfadePcmSource(outgoing, 1f, track(1000, INCOMING_LEVEL), 1f, 40);
+    byte[] frame = new byte[FRAME];
+
+    source.read(frame);
+    assertTrue(source.seek(500));
+    source.read(frame);
+
+    assertEquals(500, source.frameStartMs());
+    assertEquals(INCOMING_LEVEL / 2, sampleAt(frame, 0));
+    assertEquals(20, outgoing.positionMs());
+  }
+
+  @Test
+  void outgoingTrackPlaysOnAloneUntilTheIncomingOneHasAFrame() throws InterruptedException {
+    CachedPcmSource outgoing = track(1000, OUTGOING_LEVEL);
+    CrossfadePcmSource source = new CrossfadePcmSource(outgoing, 0.5f, new LoadingTrack(track(1000, INCOMING_LEVEL), 2), 1f, 40);
+    byte[] frame = new byte[FRAME];
+
+    for (int i = 0; i < 2; i++) {
+      assertEquals(FRAME, source.read(frame));
+      assertTrue(source.lastFrameMixed());
+      assertEquals(OUTGOING_LEVEL / 2, sampleAt(frame, 0));
+      assertEquals(OUTGOING_LEVEL / 2, sampleAt(frame, 959));
+    }
+
+    // the fade starts with the first incoming frame, not with the switch
+    source.read(frame);
+    assertEquals(OUTGOING_LEVEL / 2, sampleAt(frame, 0));
+    source.read(frame);
+    assertEquals((OUTGOING_LEVEL / 2 + INCOMING_LEVEL) / 2, sampleAt(frame, 0));
+    assertEquals(80, outgoing.positionMs());
+  }
+
+  @Test
+  void incomingTrackStillLoadingAfterTheOutgoingOneEndedGivesNoFrame() throws InterruptedException {
+    PcmSource source = new CrossfadePcmSource(track(20, OUTGOING_LEVEL), 1f, new LoadingTrack(track(1000, INCOMING_LEVEL), 3), 1f, 40);
+    byte[] frame = new byte[FRAME];
+
+    assertEquals(FRAME, source.read(frame));
+    assertEquals(PcmSource.NO_FRAME, source.read(frame));
+    assertEquals(PcmSource.NO_FRAME, source.read(frame));
+
+    assertEquals(FRAME, source.read(frame));
+    assertEquals(0, sampleAt(frame, 0));
+  }
+
+  private static CachedPcmSource track(int durationMs, short level) {
+    ByteBuffer pcm = ByteBuffer.allocate(durationMs * CachedPcmSource.BYTES_PER_MS);
+    while (pcm.hasRemaining()) {
+      pcm.putShort(level);
+    }
+    return new CachedPcmSource(pcm.flip());
+  }
+
+  /**
+   * Incoming track whose first reads come back empty, as while it is still loading.
+   */
+  private static final class LoadingTrack implements PcmSource {
+
+    private final PcmSource track;
+    private int emptyReads;
+
+    LoadingTrack(PcmSource track, int emptyReads) {
+      this.track = track;
+      this.emptyReads = emptyReads;
+    }
+
+    @Override
+    public int read(byte[] target) throws InterruptedException {
+      if (emptyReads > 0) {
+        emptyReads--;
+        return NO_FRAME;
+      }
+      return track.read(target);
+    }
+
+    @Override
+    public long frameStartMs() {
+      return track.frameStartMs();
+    }
+
+    @Override
+    public long positionMs() {
+      return track.positionMs();
+    }
+
+    @Override
+    public long durationMs() {
+      return track.durationMs();
+    }
+
+    @Override
+    public boolean seek(long positionMs) {
+      return track.seek(positionMs);
+    }
+
+    @Override
+    public void setPaused(boolean paused) {
+      track.setPaused(paused);
+    }
+
+    @Override
+    public void keepAlive() {
+      track.keepAlive();
+    }
+
+    @Override
+    public void close() {
+      track.close();
+    }
+  }
+
+  private static short sampleAt(byte[] frame, int sample) {
+    return (short) ((frame[sample * 4] << 8) | (frame[sample * 4 + 1] & 0xFF));
+  }
+}
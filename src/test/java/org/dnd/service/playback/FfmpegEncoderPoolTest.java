@@ -0,0 +1,108 @@
+package org.dnd.service.playback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FfmpegEncoderPoolTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final PlaybackMetrics metrics = new PlaybackMetrics(registry);
+  private final List<Process> processes = new CopyOnWriteArrayList<>();
+  private FfmpegEncoderPool pool;
+
+  @AfterEach
+  void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void claimsComeFromThePoolAndAreReplaced() throws Exception {
+    pool = new FfmpegEncoderPool(2, this::launchIdleProcess, metrics);
+    pool.init();
+    awaitIdle(2);
+
+    Process claimed = pool.claim(EncoderProfile.MP3);
+    try {
+      assertTrue(claimed.isAlive());
+      awaitIdle(2);
+      assertEquals(3, processes.size());
+      assertEquals(1.0, registry.get("playback.encoder.claims").tag("source", "pool").counter().count());
+    } finally {
+      claimed.destroyForcibly();
+    }
+  }
+
+  @Test
+  void exitedEncodersAreSkipped() throws Exception {
+    pool = new FfmpegEncoderPool(1, this::launchIdleProcess, metrics);
+    pool.init();
+    awaitIdle(1);
+
+    Process stale = processes.getFirst();
+    stale.destroyForcibly().waitFor();
+
+    Process claimed = pool.claim(EncoderProfile.MP3);
+    try {
+      assertNotSame(stale, claimed);
+      assertTrue(claimed.isAlive());
+      assertEquals(1.0, registry.get("playback.encoder.claims").tag("source", "spawn").counter().count());
+    } finally {
+      claimed.destroyForcibly();
+    }
+  }
+
+  @Test
+  void disabledPoolSpawnsOnDemand() throws Exception {
+    pool = new FfmpegEncoderPool(0, this::launchIdleProcess, metrics);
+    pool.init();
+
+    Process claimed = pool.claim(EncoderProfile.MP3);
+    try {
+      assertEquals(0, pool.idleCount());
+      assertEquals(1, processes.size());
+      assertEquals(1.0, registry.get("playback.encoder.claims").tag("source", "spawn").counter().count());
+    } finally {
+      claimed.destroyForcibly();
+    }
+  }
+
+  @Test
+  void otherProfilesBypassThePool() throws Exception {
+    pool = new FfmpegEncoderPool(1, this::launchIdleProcess, metrics);
+    pool.init();
+    awaitIdle(1);
+
+    Process claimed = pool.claim(EncoderProfile.OPUS_64);
+    try {
+      assertEquals(1, pool.idleCount());
+      assertEquals(2, processes.size());
+      assertEquals(1.0, registry.get("playback.encoder.claims").tag("source", "spawn").counter().count());
+    } finally {
+      claimed.destroyForcibly();
+    }
+  }
+
+  private Process launchIdleProcess(EncoderProfile profile) throws IOException {
+    // like an idle encoder, cat blocks on its empty stdin until the stream feeds it
+    Process process = new ProcessBuilder("cat").start();
+    processes.add(process);
+    return process;
+  }
+
+  private void awaitIdle(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 2_000;
+    while (pool.idleCount() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, pool.idleCount());
+  }
+}
@@ -0,0 +1,103 @@
+package org.dnd.service.playback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListenerStreamTest {
+
+  private static final int CELT_20MS_TOC = 31 << 3;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final PlaybackMetrics metrics = new PlaybackMetrics(registry);
+
+  @Test
+  void transferWritesEveryFrameStraightToTheOutput() throws IOException {
+    EncodedFrameBuffer frames = new EncodedFrameBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    ListenerStream stream = listener(frames, null, new AtomicInteger());
+    frames.append(new byte[]{1, 2, 3}, 0, 3);
+    frames.append(new byte[]{4, 5}, 0, 2);
+    frames.markComplete();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long transferred = stream.transferTo(out);
+
+    assertEquals(5, transferred);
+    assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, out.toByteArray());
+    assertEquals(5.0, registry.get("playback.listener.output").counter().count());
+    assertEquals(0.0, registry.get("playback.listener.writers").gauge().value());
+  }
+
+  @Test
+  void oggListenerGetsHeadersPagesAndAnEndOfStreamPage() throws IOException {
+    EncodedFrameBuffer frames = new EncodedFrameBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    ListenerStream stream = listener(frames, new OggOpusMuxer(9, 2), new AtomicInteger());
+    byte[] packet = new byte[]{(byte) CELT_20MS_TOC, 1, 2, 3};
+    frames.append(packet, 0, packet.length);
+    frames.markComplete();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.transferTo(out);
+
+    OggOpusMuxer expected = new OggOpusMuxer(9, 2);
+    byte[] headers = expected.headerPages();
+    byte[] page = new byte[OggOpusMuxer.maxPageBytes(packet.length)];
+    int pageLength = expected.writePage(packet, packet.length, page);
+    byte[] end = expected.endOfStreamPage();
+    assertEquals(headers.length + pageLength + end.length, out.size());
+  }
+
+  @Test
+  void readHandsOutFramesInPiecesAndCloseDetachesOnce() throws IOException {
+    EncodedFrameBuffer frames = new EncodedFrameBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    AtomicInteger closes = new AtomicInteger();
+    ListenerStream stream = listener(frames, null, closes);
+    frames.append(new byte[]{1, 2, 3, 4}, 0, 4);
+    frames.markComplete();
+
+    byte[] target = new byte[3];
+    assertEquals(3, stream.read(target, 0, 3));
+    assertEquals(1, stream.available());
+    assertEquals(4, stream.read());
+    assertEquals(-1, stream.read());
+
+    stream.close();
+    stream.close();
+    assertEquals(1, closes.get());
+  }
+
+  @Test
+  void detachedCursorEndsTheTransfer() throws Exception {
+    EncodedFrameBuffer frames = new EncodedFrameBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    SlabRing.Cursor cursor = frames.subscribe();
+    ListenerStream stream = new ListenerStream(cursor, frames.maxFrameBytes(), null, metrics,
+            () -> false, () -> { }, System.nanoTime());
+
+    Thread detach = new Thread(() -> {
+      sleep(150);
+      frames.unsubscribe(cursor);
+    });
+    detach.start();
+
+    assertEquals(0, stream.transferTo(new ByteArrayOutputStream()));
+    detach.join();
+  }
+
+  private ListenerStream listener(EncodedFrameBuffer frames, OggOpusMuxer muxer, AtomicInteger closes) {
+    return new ListenerStream(frames.subscribe(), frames.maxFrameBytes(), muxer, metrics,
+            () -> false, closes::incrementAndGet, System.nanoTime());
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp3FrameSplitterTest {
+
+  private static final int FRAME_192K_48K_BYTES = 576;
+
+  @Test
+  void frameLengthIsDerivedFromHeader() {
+    byte[] frame = frame(0, false);
+
+    assertEquals(FRAME_192K_48K_BYTES, Mp3FrameSplitter.frameLengthAt(frame, 0));
+    assertEquals(FRAME_192K_48K_BYTES + 1, Mp3FrameSplitter.frameLengthAt(frame(0, true), 0));
+  }
+
+  @Test
+  void rejectsNonLayer3Headers() {
+    byte[] frame = frame(0, false);
+    frame[1] = (byte) 0xFD; // layer II
+
+    assertEquals(-1, Mp3FrameSplitter.frameLengthAt(frame, 0));
+    assertEquals(-1, Mp3FrameSplitter.frameLengthAt(new byte[]{'I', 'D', '3', 4}, 0));
+  }
+
+  @Test
+  void emitsWholeFramesAcrossChunkBoundariesAndSkipsGarbage() throws InterruptedException {
+    List<byte[]> emitted = new ArrayList<>();
+    Mp3FrameSplitter splitter = new Mp3FrameSplitter(
+            (buffer, offset, length) -> emitted.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+
+    byte[] garbage = {'I', 'D', '3', 0, 1, 2};
+    byte[] stream = concat(garbage, frame(1, false), frame(2, true), frame(3, false));
+
+    for (int offset = 0; offset < stream.length; offset += 100) {
+      splitter.feed(stream, offset, Math.min(100, stream.length - offset));
+    }
+
+    assertEquals(3, emitted.size());
+    assertArrayEquals(frame(1, false), emitted.get(0));
+    assertArrayEquals(frame(2, true), emitted.get(1));
+    assertArrayEquals(frame(3, false), emitted.get(2));
+  }
+
+  private static byte[] frame(int marker, boolean padding) {
+    byte[] frame = new byte[FRAME_192K_48K_BYTES + (padding ? 1 : 0)];
+    frame[0] = (byte) 0xFF;
+    frame[1] = (byte) 0xFB;                              // MPEG1, layer III, no CRC
+    frame[2] = (byte) (0xB4 | (padding ? 0x02 : 0x00));   // 192 kbps, 48 kHz
+    frame[3] = (byte) 0x44;
+    Arrays.fill(frame, 4, frame.length, (byte) marker);
+    return frame;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = Arrays.stream(parts).mapToInt(part -> part.length).sum();
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,136 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OggOpusMuxerTest {
+
+  private static final int CELT_20MS_TOC = 31 << 3;
+  private static final int PRE_SKIP = 3840;
+
+  @Test
+  void crcUsesTheOggPolynomialWithoutReflection() {
+    byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+    assertEquals(0x89A1897FL, OggOpusMuxer.crc(check, 0, check.length) & 0xFFFFFFFFL);
+  }
+
+  @Test
+  void streamStartsWithOpusHeadAndOpusTagsPages() {
+    byte[] headers = new OggOpusMuxer(42, 2).headerPages();
+
+    ByteBuffer head = ByteBuffer.wrap(headers).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals("OggS", ascii(headers, 0, 4));
+    assertEquals(0x02, headers[5]);
+    assertEquals(42, head.getInt(14));
+    assertEquals(0, head.getInt(18));
+    assertTrue(checksumMatches(headers, 0));
+
+    int headBody = 27 + headers[26];
+    assertEquals("OpusHead", ascii(headers, headBody, 8));
+    assertEquals(2, headers[headBody + 9]);
+    assertEquals(PRE_SKIP, head.getShort(headBody + 10));
+    assertEquals(48_000, head.getInt(headBody + 12));
+
+    int tagsPage = headBody + (headers[27] & 0xFF);
+    assertEquals("OggS", ascii(headers, tagsPage, 4));
+    assertEquals(1, head.getInt(tagsPage + 18));
+    assertEquals("OpusTags", ascii(headers, tagsPage + 27 + headers[tagsPage + 26], 8));
+    assertTrue(checksumMatches(headers, tagsPage));
+  }
+
+  @Test
+  void eachPacketGetsItsOwnPageAndAdvancesTheGranule() {
+    OggOpusMuxer muxer = new OggOpusMuxer(7, 2);
+    muxer.headerPages();
+    byte[] packet = packet(CELT_20MS_TOC, 300);
+    byte[] page = new byte[OggOpusMuxer.maxPageBytes(packet.length)];
+
+    int length = muxer.writePage(packet, packet.length, page);
+
+    ByteBuffer header = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(27 + 2 + 300, length);
+    assertEquals(PRE_SKIP + 960L, header.getLong(6));
+    assertEquals(2, header.getInt(18));
+    assertEquals(2, page[26]);
+    assertEquals(255, page[27] & 0xFF);
+    assertEquals(45, page[28]);
+    assertArrayEquals(packet, Arrays.copyOfRange(page, 29, length));
+    assertTrue(checksumMatches(page, 0));
+
+    muxer.writePage(packet, packet.length, page);
+    assertEquals(PRE_SKIP + 1920L, header.getLong(6));
+  }
+
+  @Test
+  void packetOfWholeSegmentsEndsWithAnEmptyLacingValue() {
+    OggOpusMuxer muxer = new OggOpusMuxer(1, 2);
+    byte[] packet = packet(CELT_20MS_TOC, 510);
+    byte[] page = new byte[OggOpusMuxer.maxPageBytes(packet.length)];
+
+    int length = muxer.writePage(packet, packet.length, page);
+
+    assertEquals(3, page[26]);
+    assertEquals(0, page[29]);
+    assertEquals(27 + 3 + 510, length);
+  }
+
+  @Test
+  void endOfStreamPageIsEmptyAndFlagged() {
+    byte[] page = new OggOpusMuxer(1, 2).endOfStreamPage();
+
+    assertEquals(27, page.length);
+    assertEquals(0x04, page[5]);
+    assertEquals(0, page[26]);
+    assertTrue(checksumMatches(page, 0));
+  }
+
+  @Test
+  void packetDurationFollowsTheTocByte() {
+    assertEquals(960, OpusPacket.samples(packet(CELT_20MS_TOC, 10), 10));
+    assertEquals(120, OpusPacket.samples(packet(16 << 3, 10), 10));
+    assertEquals(1920, OpusPacket.samples(packet(CELT_20MS_TOC | 1, 10), 10));
+    assertEquals(2880, OpusPacket.samples(packet(3 << 3, 10), 10));
+    assertEquals(480, OpusPacket.samples(packet(12 << 3, 10), 10));
+
+    byte[] threeFrames = packet(CELT_20MS_TOC | 3, 10);
+    threeFrames[1] = 3;
+    assertEquals(2880, OpusPacket.samples(threeFrames, 10));
+
+    assertEquals(0, OpusPacket.samples(new byte[0], 0));
+    assertEquals(20_000_000L, OpusPacket.durationNanos(packet(CELT_20MS_TOC, 10), 10));
+  }
+
+  private static byte[] packet(int toc, int length) {
+    byte[] packet = new byte[length];
+    for (int i = 0; i < length; i++) {
+      packet[i] = (byte) (i * 31 + 7);
+    }
+    packet[0] = (byte) toc;
+    return packet;
+  }
+
+  private static boolean checksumMatches(byte[] data, int pageOffset) {
+    int segments = data[pageOffset + 26] & 0xFF;
+    int bodyLength = 0;
+    for (int i = 0; i < segments; i++) {
+      bodyLength += data[pageOffset + 27 + i] & 0xFF;
+    }
+    int pageLength = 27 + segments + bodyLength;
+
+    byte[] page = Arrays.copyOfRange(data, pageOffset, pageOffset + pageLength);
+    int stored = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN).getInt(22);
+    Arrays.fill(page, 22, 26, (byte) 0);
+    return OggOpusMuxer.crc(page, 0, page.length) == stored;
+  }
+
+  private static String ascii(byte[] data, int offset, int length) {
+    return new String(data, offset, length, StandardCharsets.US_ASCII);
+  }
+}
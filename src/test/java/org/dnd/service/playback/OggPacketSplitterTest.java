@@ -0,0 +1,50 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OggPacketSplitterTest {
+
+  @Test
+  void emitsAudioPacketsAndDropsTheStreamHeaders() throws InterruptedException {
+    OggOpusMuxer muxer = new OggOpusMuxer(3, 2);
+    byte[] first = packet(120, 1);
+    byte[] second = packet(510, 2);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.writeBytes(new byte[]{'x', 'y'});
+    stream.writeBytes(muxer.headerPages());
+    stream.writeBytes(page(muxer, first));
+    stream.writeBytes(page(muxer, second));
+    byte[] encoded = stream.toByteArray();
+
+    List<byte[]> emitted = new ArrayList<>();
+    OggPacketSplitter splitter = new OggPacketSplitter(
+            (buffer, offset, length) -> emitted.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+    for (int offset = 0; offset < encoded.length; offset += 50) {
+      splitter.feed(encoded, offset, Math.min(50, encoded.length - offset));
+    }
+
+    assertEquals(2, emitted.size());
+    assertArrayEquals(first, emitted.get(0));
+    assertArrayEquals(second, emitted.get(1));
+  }
+
+  private static byte[] page(OggOpusMuxer muxer, byte[] packet) {
+    byte[] page = new byte[OggOpusMuxer.maxPageBytes(packet.length)];
+    return Arrays.copyOf(page, muxer.writePage(packet, packet.length, page));
+  }
+
+  private static byte[] packet(int length, int marker) {
+    byte[] packet = new byte[length];
+    Arrays.fill(packet, (byte) marker);
+    packet[0] = (byte) (31 << 3);
+    return packet;
+  }
+}
@@ -0,0 +1,131 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmBroadcastBufferTest {
+
+  private static final int FRAMES = 20_000;
+  private static final int RING_FRAMES = 1024;
+  private static final int HISTORY_FRAMES = 500;
+  private static final int BURST_FRAMES = 50;                 // 1s of audio, far faster than real time
+
+  @Test
+  void stalledListenerNeverStallsProducer() throws Exception {
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer(SlowConsumerPolicy.SKIP_TO_LIVE);
+    SlabRing.Cursor stalled = buffer.registerListener();
+    SlabRing.Cursor healthy = buffer.registerListener();
+
+    AtomicLong lastSeen = new AtomicLong(-1);
+    AtomicLong outOfOrder = new AtomicLong();
+    Thread consumer = Thread.ofPlatform().start(() -> {
+      byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+      try {
+        int length;
+        while ((length = healthy.poll(target, 1, TimeUnit.SECONDS)) != SlabRing.END_OF_STREAM) {
+          if (length > 0) {
+            long index = ByteBuffer.wrap(target).getInt();
+            if (index <= lastSeen.get()) {
+              outOfOrder.incrementAndGet();
+            }
+            lastSeen.set(index);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    long maxAppendNanos = 0;
+    for (int i = 0; i < FRAMES; i++) {
+      ByteBuffer.wrap(frame).putInt(i);
+      long started = System.nanoTime();
+      buffer.append(frame);
+      maxAppendNanos = Math.max(maxAppendNanos, System.nanoTime() - started);
+
+      if (i % BURST_FRAMES == 0) {
+        Thread.sleep(1);
+      }
+    }
+    buffer.markComplete();
+    consumer.join(TimeUnit.SECONDS.toMillis(10));
+
+    assertTrue(maxAppendNanos < TimeUnit.MILLISECONDS.toNanos(50),
+            "producer stalled for " + TimeUnit.NANOSECONDS.toMillis(maxAppendNanos) + "ms");
+    assertEquals(0, outOfOrder.get());
+    assertEquals(FRAMES - 1, lastSeen.get());
+
+    byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    assertEquals(SlabRing.END_OF_STREAM, stalled.tryRead(target));
+    assertEquals(FRAMES, stalled.droppedFrames());
+  }
+
+  @Test
+  void dropPolicyResumesAtOldestRetainedFrame() {
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer(SlowConsumerPolicy.DROP);
+    SlabRing.Cursor stalled = buffer.registerListener();
+
+    appendFrames(buffer, 0, 3 * RING_FRAMES);
+
+    byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    assertTrue(stalled.tryRead(target) > 0);
+    assertEquals(2 * RING_FRAMES + 1, ByteBuffer.wrap(target).getInt());
+  }
+
+  @Test
+  void disconnectPolicyClosesLappedListener() {
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer(SlowConsumerPolicy.DISCONNECT);
+    SlabRing.Cursor stalled = buffer.registerListener();
+
+    appendFrames(buffer, 0, RING_FRAMES + 1);
+
+    assertEquals(SlabRing.END_OF_STREAM, stalled.tryRead(new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES]));
+    assertTrue(stalled.isClosed());
+  }
+
+  @Test
+  void lateListenerReplaysHistoryThenContinuesLive() throws InterruptedException {
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer();
+    appendFrames(buffer, 0, 600);
+
+    SlabRing.Cursor late = buffer.registerListener();
+    assertEquals(HISTORY_FRAMES, buffer.snapshot().size());
+    assertEquals(100, ByteBuffer.wrap(buffer.snapshot().getFirst()).getInt());
+
+    appendFrames(buffer, 600, 1);
+
+    byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    for (int expected = 100; expected <= 600; expected++) {
+      assertTrue(late.poll(target, 1, TimeUnit.SECONDS) > 0);
+      assertEquals(expected, ByteBuffer.wrap(target).getInt());
+    }
+    assertEquals(SlabRing.NO_FRAME, late.tryRead(target));
+  }
+
+  @Test
+  void clearEndsListenersAndHidesHistory() {
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer();
+    appendFrames(buffer, 0, 10);
+    SlabRing.Cursor listener = buffer.registerListener();
+
+    buffer.clear();
+
+    assertEquals(SlabRing.END_OF_STREAM, listener.tryRead(new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES]));
+    assertEquals(0, buffer.listenerCount());
+    assertTrue(buffer.snapshot().isEmpty());
+  }
+
+  private static void appendFrames(PcmBroadcastBuffer buffer, int firstIndex, int count) {
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    for (int i = firstIndex; i < firstIndex + count; i++) {
+      ByteBuffer.wrap(frame).putInt(i);
+      buffer.append(frame);
+    }
+  }
+}
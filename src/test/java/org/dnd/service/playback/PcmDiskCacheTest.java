@@ -0,0 +1,188 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmDiskCacheTest {
+
+  private static final TrackSourceKey TRACK = TrackSourceKey.of("https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+  private static final TrackSourceKey OTHER = TrackSourceKey.of("https://youtu.be/9bZkp7q19f0");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void committedDecodeIsServedFromDisk() {
+    PcmDiskCache cache = newCache(1024 * 1024);
+
+    assertTrue(cache.lookup(TRACK).isEmpty());
+
+    writeEntry(cache, TRACK, 3, (byte) 7);
+
+    Optional<ByteBuffer> hit = cache.lookup(TRACK);
+    assertTrue(hit.isPresent());
+    assertEquals(3 * PcmBroadcastBuffer.MAX_FRAME_BYTES, hit.get().limit());
+    assertEquals(7, hit.get().get(PcmBroadcastBuffer.MAX_FRAME_BYTES + 5));
+
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(3L * PcmBroadcastBuffer.MAX_FRAME_BYTES, cache.bytesOnDisk());
+  }
+
+  @Test
+  void abortedDecodeLeavesNothingBehind() throws IOException {
+    PcmDiskCache cache = newCache(1024 * 1024);
+
+    PcmDiskCache.Writer writer = cache.openWriter(TRACK);
+    writer.append(new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES], PcmBroadcastBuffer.MAX_FRAME_BYTES);
+    writer.abort();
+
+    assertTrue(cache.lookup(TRACK).isEmpty());
+    assertEquals(0, cache.bytesOnDisk());
+    assertEquals(0, fileCount());
+  }
+
+  @Test
+  void entriesOverTheEntryLimitAreNotKept() throws IOException {
+    PcmDiskCache cache = new PcmDiskCache(true, directory, 1024 * 1024, PcmBroadcastBuffer.MAX_FRAME_BYTES);
+    cache.init();
+
+    writeEntry(cache, TRACK, 2, (byte) 1);
+
+    assertTrue(cache.lookup(TRACK).isEmpty());
+    assertEquals(0, fileCount());
+  }
+
+  @Test
+  void evictionDeletesFilesAndKeepsSizeBounded() throws IOException {
+    int frames = 100;
+    long entryBytes = (long) frames * PcmBroadcastBuffer.MAX_FRAME_BYTES;
+    PcmDiskCache cache = newCache(entryBytes + entryBytes / 2);
+
+    writeEntry(cache, TRACK, frames, (byte) 1);
+    writeEntry(cache, OTHER, frames, (byte) 2);
+    cache.cleanUp();
+
+    assertEquals(1, cache.entryCount());
+    assertEquals(entryBytes, cache.bytesOnDisk());
+    assertEquals(1, fileCount());
+  }
+
+  @Test
+  void entriesSurviveRestart() {
+    writeEntry(newCache(1024 * 1024), TRACK, 2, (byte) 9);
+
+    PcmDiskCache restarted = newCache(1024 * 1024);
+
+    assertTrue(restarted.lookup(TRACK).isPresent());
+    assertEquals(2L * PcmBroadcastBuffer.MAX_FRAME_BYTES, restarted.bytesOnDisk());
+  }
+
+  @Test
+  void secondWriterIsRefusedOnceCached() {
+    PcmDiskCache cache = newCache(1024 * 1024);
+
+    writeEntry(cache, TRACK, 1, (byte) 1);
+
+    assertNull(cache.openWriter(TRACK));
+    assertNull(new PcmDiskCache(false, directory, 1024, 1024).openWriter(OTHER));
+  }
+
+  @Test
+  void cachedSourceReplaysFramesFromWindowStart() {
+    PcmDiskCache cache = newCache(1024 * 1024);
+    writeEntry(cache, TRACK, 50, (byte) 3);          // 1000 ms
+
+    CachedPcmSource source = new CachedPcmSource(cache.lookup(TRACK).orElseThrow());
+    source.seek(500);
+
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    int frames = 0;
+    int length;
+    while ((length = source.read(frame)) > 0) {
+      if (frames == 0) {
+        assertEquals(500, source.frameStartMs());
+      }
+      assertEquals(PcmBroadcastBuffer.MAX_FRAME_BYTES, length);
+      frames++;
+    }
+
+    assertEquals(PcmSource.END_OF_TRACK, length);
+    assertEquals(25, frames);
+    assertEquals(1000, source.durationMs());
+  }
+
+  @Test
+  void cachedSourceSeeksBetweenReads() {
+    CachedPcmSource source = new CachedPcmSource(ByteBuffer.allocate(100 * PcmBroadcastBuffer.MAX_FRAME_BYTES));
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+    source.read(frame);
+    source.read(frame);
+    assertEquals(20, source.frameStartMs());
+
+    assertTrue(source.seek(1500));
+    assertEquals(1500, source.positionMs());
+
+    source.read(frame);
+    assertEquals(1500, source.frameStartMs());
+    source.read(frame);
+    assertEquals(1520, source.frameStartMs());
+
+    source.seek(10_000);
+    assertEquals(PcmSource.END_OF_TRACK, source.read(frame));
+  }
+
+  @Test
+  void teeCommitsOnlyAnUninterruptedDecode() throws InterruptedException {
+    PcmDiskCache cache = newCache(1024 * 1024);
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+    TeeingPcmSource moved = new TeeingPcmSource(new CachedPcmSource(ByteBuffer.allocate(10 * frame.length)));
+    moved.attach(cache.openWriter(OTHER));
+    moved.read(frame);
+    moved.seek(100);
+    while (moved.read(frame) > 0) {
+    }
+    assertTrue(cache.lookup(OTHER).isEmpty());
+
+    TeeingPcmSource full = new TeeingPcmSource(new CachedPcmSource(ByteBuffer.allocate(10 * frame.length)));
+    full.attach(cache.openWriter(TRACK));
+    while (full.read(frame) > 0) {
+    }
+    assertEquals(10 * frame.length, cache.lookup(TRACK).orElseThrow().limit());
+  }
+
+  private PcmDiskCache newCache(long maxBytes) {
+    PcmDiskCache cache = new PcmDiskCache(true, directory, maxBytes, Integer.MAX_VALUE);
+    cache.init();
+    return cache;
+  }
+
+  private static void writeEntry(PcmDiskCache cache, TrackSourceKey key, int frames, byte value) {
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    Arrays.fill(frame, value);
+
+    PcmDiskCache.Writer writer = cache.openWriter(key);
+    for (int i = 0; i < frames; i++) {
+      writer.append(frame, frame.length);
+    }
+    writer.commit();
+  }
+
+  private long fileCount() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.service.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Guards the steady-state frame path against per-frame allocations: source read, gain,
+ * ring publish and cursor read in a session, and waveform accumulation.
+ */
+class PcmFramePathAllocationTest {
+
+  private static final int WARMUP_FRAMES = 50_000;
+  private static final int MEASURED_FRAMES = 50_000;          // ~17 minutes of audio
+  private static final long ALLOCATION_TOLERANCE_BYTES = 4 * 1024;
+  private static final int TRACK_S = 10;
+
+  /**
+   * Frames pushed between two pacer resets, well inside the lead it lets through at once.
+   */
+  private static final int PACER_RESET_FRAMES = 25;
+
+  @Mock
+  private AudioPlayerManager playerManager;
+
+  @Mock
+  private PcmDiskCache pcmCache;
+
+  @Mock
+  private JwtService jwtService;
+
+  private final PlaybackMetrics metrics = new PlaybackMetrics(new SimpleMeterRegistry());
+
+  private ExecutorService workers;
+  private ScheduledExecutorService scheduler;
+  private AutoCloseable mocks;
+
+  @BeforeEach
+  void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    workers = Executors.newVirtualThreadPerTaskExecutor();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+    mocks.close();
+  }
+
+  @Test
+  void steadyStateFramePathDoesNotAllocate() {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    PcmBroadcastBuffer buffer = new PcmBroadcastBuffer();
+    SlabRing.Cursor listener = buffer.registerListener();
+    WaveformAccumulator waveform = new WaveformAccumulator(512);
+    waveform.setDurationMs(MEASURED_FRAMES * 20L);
+
+    byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    byte[] target = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+    for (int i = 0; i < frame.length; i++) {
+      frame[i] = (byte) (i * 31);
+    }
+
+    runFrames(buffer, listener, waveform, frame, target, WARMUP_FRAMES);
+
+    long before = threads.getCurrentThreadAllocatedBytes();
+    runFrames(buffer, listener, waveform, frame, target, MEASURED_FRAMES);
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+    assertTrue(allocated < ALLOCATION_TOLERANCE_BYTES,
+            "frame path allocated " + allocated + " bytes for " + MEASURED_FRAMES + " frames");
+  }
+
+  @Test
+  void sessionFramePathDoesNotAllocate() throws Exception {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    ByteBuffer track = ByteBuffer.allocate(TRACK_S * 1000 * CachedPcmSource.BYTES_PER_MS);
+    for (int i = 0; i < track.limit(); i++) {
+      track.put(i, (byte) (i * 31));
+    }
+    when(pcmCache.lookup(any())).thenReturn(Optional.of(track));
+
+    // faded at both ends and looping, so every frame goes through the window and a scaling gain
+    PlaybackWindow window = new PlaybackWindow(null, (long) TRACK_S, 500L, 500L, true);
+    StreamSession session = new StreamSession(1L, false, playerManager, null, pcmCache, metrics,
+            new PlaybackAdmission(16, 8, 16, 0, 0L, 5L, metrics), jwtService, workers, workers,
+            new FfmpegEncoderPool(0, profile -> new ProcessBuilder("cat").start(), metrics), scheduler,
+            SlowConsumerPolicy.SKIP_TO_LIVE, 0L, 0L, 1, 0L, ignored -> {
+    });
+    session.setVolume(50);
+    session.setTrackGainDb(-3d);
+
+    try {
+      session.loadAndPlay(2L, "link", TRACK_S, window).get(1, TimeUnit.SECONDS);
+      // the session's own decode loop parks; this thread feeds the frames instead
+      assertTrue(session.pause());
+
+      PcmSource source = new WindowedPcmSource(new CachedPcmSource(track), window);
+      byte[] frame = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES];
+
+      runFrames(session, source, frame, WARMUP_FRAMES);
+
+      long before = threads.getCurrentThreadAllocatedBytes();
+      runFrames(session, source, frame, MEASURED_FRAMES);
+      long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+      assertTrue(allocated < ALLOCATION_TOLERANCE_BYTES,
+              "session frame path allocated " + allocated + " bytes for " + MEASURED_FRAMES + " frames");
+    } finally {
+      session.stop();
+    }
+  }
+
+  private static void runFrames(PcmBroadcastBuffer buffer,
+                                SlabRing.Cursor listener,
+                                WaveformAccumulator waveform,
+                                byte[] frame,
+                                byte[] target,
+                                int frames) {
+    for (int i = 0; i < frames; i++) {
+      buffer.append(frame, 0, frame.length);
+      int length = listener.tryRead(target);
+      waveform.accept(target, length, i * 20L % (MEASURED_FRAMES * 20L));
+    }
+  }
+
+  private static void runFrames(StreamSession session,
+                                PcmSource source,
+                                byte[] frame,
+                                int frames) throws InterruptedException {
+    for (int i = 0; i < frames; i++) {
+      if (i % PACER_RESET_FRAMES == 0) {
+        // a seek restarts the pacer, which would otherwise hold the frames to wall-clock speed
+        session.seek(0);
+      }
+
+      int length = source.read(frame);
+      if (length > 0) {
+        session.onPcmFrame(frame, length, source.frameStartMs());
+      }
+    }
+  }
+}
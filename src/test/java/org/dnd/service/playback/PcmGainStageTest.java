@@ -0,0 +1,99 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmGainStageTest {
+
+  @Test
+  void vectorPathMatchesScalarPath() {
+    byte[] pcm = new byte[PcmBroadcastBuffer.MAX_FRAME_BYTES - 6];
+    new Random(7).nextBytes(pcm);
+    byte[] expected = pcm.clone();
+
+    PcmGainStage.scale(pcm, pcm.length, 0.37f);
+    PcmGainStage.scaleScalar(expected, 0, expected.length, 0.37f);
+
+    assertArrayEquals(expected, pcm);
+  }
+
+  @Test
+  void boostedSamplesClipAtFullScale() {
+    byte[] pcm = samples(20_000, -20_000, 100, 0);
+
+    PcmGainStage.scale(pcm, pcm.length, 4f);
+
+    assertArrayEquals(new short[]{32767, -32768, 400, 0}, toShorts(pcm));
+  }
+
+  @Test
+  void unityGainLeavesFramesUntouched() {
+    PcmGainStage stage = new PcmGainStage();
+    stage.setVolume(PcmGainStage.FULL_VOLUME);
+    byte[] pcm = samples(1234, -5678);
+
+    assertFalse(stage.apply(pcm, pcm.length));
+    assertArrayEquals(new short[]{1234, -5678}, toShorts(pcm));
+  }
+
+  @Test
+  void volumeAndTrackGainCombine() {
+    PcmGainStage stage = new PcmGainStage();
+    stage.setVolume(50);
+    stage.setTrackGainDb(20d * Math.log10(2d));
+    byte[] pcm = samples(1000, -1000);
+
+    assertTrue(stage.apply(pcm, pcm.length));
+    assertArrayEquals(new short[]{500, -500}, toShorts(pcm));
+
+    stage.setVolume(0);
+    assertEquals(0f, stage.gain());
+  }
+
+  @Test
+  void mixedFramesTakeTheVolumeAlone() {
+    PcmGainStage stage = new PcmGainStage();
+    stage.setVolume(50);
+    stage.setTrackGainDb(20d * Math.log10(2d));
+    byte[] pcm = samples(1000, -1000);
+
+    assertTrue(stage.applyVolume(pcm, pcm.length));
+    assertArrayEquals(new short[]{250, -250}, toShorts(pcm));
+
+    stage.setVolume(PcmGainStage.FULL_VOLUME);
+    assertFalse(stage.applyVolume(pcm, pcm.length));
+    assertEquals(2f, stage.trackGain(), 1e-4);
+  }
+
+  @Test
+  void normalizationIsLimitedByBoostAndPeakHeadroom() {
+    TrackAnalysis loud = new TrackAnalysis(-8d, -0.1d, 0L, 0L, 1000L);
+    TrackAnalysis quiet = new TrackAnalysis(-30d, -20d, 0L, 0L, 1000L);
+    TrackAnalysis peaky = new TrackAnalysis(-20d, -2d, 0L, 0L, 1000L);
+
+    assertEquals(-6d, PcmGainStage.normalizationGainDb(loud, -14d, 6d, -1d), 1e-9);
+    assertEquals(6d, PcmGainStage.normalizationGainDb(quiet, -14d, 6d, -1d), 1e-9);
+    assertEquals(1d, PcmGainStage.normalizationGainDb(peaky, -14d, 6d, -1d), 1e-9);
+    assertEquals(0d, PcmGainStage.normalizationGainDb(null, -14d, 6d, -1d));
+  }
+
+  private static byte[] samples(int... values) {
+    byte[] pcm = new byte[values.length * 2];
+    for (int i = 0; i < values.length; i++) {
+      pcm[i * 2] = (byte) (values[i] >> 8);
+      pcm[i * 2 + 1] = (byte) values[i];
+    }
+    return pcm;
+  }
+
+  private static short[] toShorts(byte[] pcm) {
+    short[] values = new short[pcm.length / 2];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (short) (((pcm[i * 2] & 0xFF) << 8) | (pcm[i * 2 + 1] & 0xFF));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,54 @@
+package org.dnd.service.playback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.exception.PlaybackCapacityException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackAdmissionTest {
+
+  private final PlaybackMetrics metrics = new PlaybackMetrics(new SimpleMeterRegistry());
+
+  @Test
+  void fullNodeRefusesWithServiceUnavailable() {
+    PlaybackAdmission admission = new PlaybackAdmission(1, 4, 1, 0, 0L, 3L, metrics);
+
+    admission.admitSession(1L);
+    PlaybackCapacityException ex = assertThrows(PlaybackCapacityException.class, () -> admission.admitSession(2L));
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+    assertEquals(3L, ex.getRetryAfterSeconds());
+  }
+
+  @Test
+  void queuedCallerGetsTheNextFreeSlot() throws Exception {
+    PlaybackAdmission admission = new PlaybackAdmission(1, 4, 1, 1, 2_000L, 3L, metrics);
+
+    PlaybackAdmission.Permit first = admission.admitSession(1L);
+    CompletableFuture<PlaybackAdmission.Permit> waiting = CompletableFuture.supplyAsync(() -> admission.admitSession(2L));
+
+    Thread.sleep(100);
+    assertFalse(waiting.isDone());
+
+    first.release();
+    assertNotNull(waiting.get());
+    assertEquals(0, admission.availableSessions());
+  }
+
+  @Test
+  void releasingTwiceFreesOneSlot() {
+    PlaybackAdmission admission = new PlaybackAdmission(2, 4, 2, 0, 0L, 3L, metrics);
+
+    PlaybackAdmission.Permit encoder = admission.admitEncoder();
+    admission.admitEncoder();
+    assertThrows(PlaybackCapacityException.class, admission::admitEncoder);
+
+    encoder.release();
+    encoder.release();
+    assertEquals(1, admission.availableEncoders());
+  }
+}
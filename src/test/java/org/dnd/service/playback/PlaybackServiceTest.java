@@ -3,6 +3,7 @@ package org.dnd.service.playback;
 import org.dnd.api.model.PlayRequest;
 import org.dnd.api.model.PlaybackState;
 import org.dnd.api.model.PlaybackStatus;
+import org.dnd.api.model.SeekRequest;
 import org.dnd.api.model.UserAuthDTO;
 import org.dnd.model.BoardEntity;
 import org.dnd.model.TrackEntity;
@@ -12,13 +13,24 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.file.Path;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest
 @Transactional
@@ -33,6 +45,11 @@ class PlaybackServiceTest extends DatabaseBase {
   private UserRepository userRepository;
   @Autowired
   private TrackWindowRepository trackWindowRepository;
+  @Autowired
+  private StreamSessionsManager sessionsManager;
+
+  @MockitoBean
+  private TrackRenditionStore renditionStore;
 
   private BoardEntity board;
   private TrackEntity track;
@@ -96,7 +113,7 @@ class PlaybackServiceTest extends DatabaseBase {
     boardRepository.save(board);
     PlayRequest request = new PlayRequest();
     ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> playbackService.playBoard(board.getId(), request));
-    assertEquals(org.springframework.http.HttpStatus.CONFLICT, ex.getStatusCode());
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
   }
 
   @Test
@@ -104,4 +121,54 @@ class PlaybackServiceTest extends DatabaseBase {
     PlaybackState result = playbackService.stop(board.getId());
     assertEquals(PlaybackStatus.STOPPED, result.getStatus());
   }
+
+  @Test
+  void pauseWithoutSessionConflicts() {
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> playbackService.pause(board.getId()));
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+  }
+
+  @Test
+  void resumeWithoutSessionConflicts() {
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> playbackService.resume(board.getId()));
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+  }
+
+  @Test
+  void seekWithoutSessionConflicts() {
+    SeekRequest request = new SeekRequest();
+    request.setPositionS(10L);
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> playbackService.seek(board.getId(), request));
+    assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+  }
+
+  @Test
+  void seekRejectsNegativePosition() {
+    SeekRequest request = new SeekRequest();
+    request.setPositionS(-1L);
+    ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> playbackService.seek(board.getId(), request));
+    assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+  }
+
+  @Test
+  void playTrackWithARenditionStartsNoSession() {
+    TrackRenditionStore.Rendition rendition = new TrackRenditionStore.Rendition(
+            Path.of("rendition.mp3"), EncoderProfile.MP3, new RenditionIndex(100_000L, 2_400_000L, 0d, new int[100]));
+    when(renditionStore.find(any(), any(), anyDouble())).thenReturn(Optional.of(rendition));
+
+    PlaybackState state = playbackService.playTrack(track.getId(), null);
+
+    assertEquals(PlaybackStatus.PLAYING, state.getStatus());
+    assertTrue(state.getStreamUrl().endsWith("&format=mp3"));
+    assertTrue(sessionsManager.getTrackSession(user.getId(), track.getId()).isEmpty());
+  }
+
+  @Test
+  void streamInfoDoesNotQueueARender() {
+    when(renditionStore.find(any(), any(), anyDouble())).thenReturn(Optional.empty());
+
+    playbackService.getTrackStreamInfo(track.getId());
+
+    verify(renditionStore, never()).requestRender(any(), any(), anyDouble());
+  }
 }
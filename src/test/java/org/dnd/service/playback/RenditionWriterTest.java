@@ -0,0 +1,81 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenditionWriterTest {
+
+  private static final int CELT_20MS_TOC = 31 << 3;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void opusPacketsBecomeACompleteOggFile() throws IOException {
+    Path file = directory.resolve("track.opus");
+    byte[] packet = new byte[200];
+    packet[0] = (byte) CELT_20MS_TOC;
+
+    RenditionIndex index;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      RenditionWriter writer = new RenditionWriter(EncoderProfile.OPUS_96, channel, -2.5d, 11);
+      for (int i = 0; i < 100; i++) {
+        writer.onFrame(packet, 0, packet.length);
+      }
+      index = writer.finish();
+    }
+
+    byte[] bytes = Files.readAllBytes(file);
+    assertEquals(bytes.length, index.bytes());
+    assertEquals((100 * 960 - RenditionWriter.OPUS_ENCODER_PRE_SKIP_SAMPLES) / 48, index.durationMs());
+    assertEquals(-2.5d, index.gainDb());
+
+    ByteBuffer head = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int headBody = 27 + bytes[26];
+    assertEquals("OpusHead", new String(bytes, headBody, 8, StandardCharsets.US_ASCII));
+    assertEquals(RenditionWriter.OPUS_ENCODER_PRE_SKIP_SAMPLES, head.getShort(headBody + 10));
+
+    // the page of the packet starting at one second is the 51st page after the two header pages
+    long second = index.byteOffsetAt(1000);
+    assertEquals("OggS", new String(bytes, (int) second, 4, StandardCharsets.US_ASCII));
+    assertEquals(2 + 50, head.getInt((int) second + 18));
+
+    int endOfStream = bytes.length - 27;
+    assertEquals(0x04, bytes[endOfStream + 5]);
+  }
+
+  @Test
+  void indexRoundTripsThroughItsFile() throws IOException {
+    RenditionIndex.Builder builder = new RenditionIndex.Builder(1.5d);
+    for (int frame = 0; frame < 300; frame++) {
+      builder.frame(100L + frame * 576L, frame * 24L);
+    }
+    RenditionIndex index = builder.build(7200, 100 + 300 * 576);
+
+    Path file = directory.resolve("track.idx");
+    index.writeTo(file);
+    RenditionIndex read = RenditionIndex.readFrom(file);
+
+    assertEquals(7200, read.durationMs());
+    assertEquals(index.bytes(), read.bytes());
+    assertEquals(1.5d, read.gainDb());
+    for (long ms : Arrays.asList(0L, 999L, 1000L, 3500L, 7199L, 60_000L)) {
+      assertEquals(index.byteOffsetAt(ms), read.byteOffsetAt(ms));
+    }
+    assertEquals(100, read.byteOffsetAt(0));
+    assertEquals(100 + 42 * 576, read.byteOffsetAt(1000));
+    assertEquals(100 + 292 * 576, read.byteOffsetAt(60_000));
+  }
+}
@@ -0,0 +1,491 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.api.model.PlaybackStatus;
+import org.dnd.api.model.StreamFormat;
+import org.dnd.exception.PlaybackCapacityException;
+import org.dnd.service.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamSessionTest {
+
+  private static final int TRACK_MS = 10_000;
+  private static final int FRAME_MS = 20;
+  private static final int TAG_MS = 2;
+  private static final int TAG_BYTES = TAG_MS * CachedPcmSource.BYTES_PER_MS;
+  private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x94, 0x00};
+  private static final ByteBuffer TRACK = taggedTrack();
+  private static final long USER_ID = 7L;
+  private static final int MAX_SESSIONS_PER_USER = 8;
+
+  @Mock
+  private AudioPlayerManager playerManager;
+
+  @Mock
+  private AudioPlayerManager opusPlayerManager;
+
+  @Mock
+  private PcmDiskCache pcmCache;
+
+  @Mock
+  private JwtService jwtService;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final PlaybackMetrics metrics = new PlaybackMetrics(registry);
+  private final PlaybackAdmission admission = new PlaybackAdmission(16, MAX_SESSIONS_PER_USER, 16, 0, 0L, 5L, metrics);
+  private final FfmpegEncoderPool encoderPool = new FfmpegEncoderPool(0, profile -> new ProcessBuilder("cat").start(), metrics);
+  private final List<StreamSession> sessions = new ArrayList<>();
+
+  private ExecutorService workers;
+  private ScheduledExecutorService scheduler;
+  private AutoCloseable mocks;
+
+  @BeforeEach
+  void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    when(pcmCache.lookup(any())).thenReturn(Optional.of(TRACK));
+
+    workers = Executors.newVirtualThreadPerTaskExecutor();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    sessions.forEach(StreamSession::stop);
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+    mocks.close();
+  }
+
+  @Test
+  void sessionWithoutListenersSuspendsDecodingAndKeepsItsPosition() throws Exception {
+    StreamSession session = session(false, 200L, 1, 0L);
+
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    assertEquals(PlaybackStatus.PLAYING, session.status);
+
+    long deadline = System.currentTimeMillis() + 2_000;
+    while (!session.isSuspended() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+
+    assertTrue(session.isSuspended());
+    assertNull(session.source);
+    assertEquals(PlaybackStatus.PLAYING, session.status);
+
+    assertTrue(session.pause());
+    assertTrue(session.seek(4));
+    assertTrue(session.resume());
+    assertTrue(session.isSuspended());
+    verify(playerManager, never()).createPlayer();
+  }
+
+  @Test
+  void suspendedTrackSessionExpiresAndGivesBackItsAdmissionSlot() throws Exception {
+    CountDownLatch removed = new CountDownLatch(1);
+    StreamSession session = session(true, 100L, 200L, 1, 0L, ignored -> removed.countDown());
+    session.holdPermit(admission.admitSession(USER_ID));
+    for (int i = 1; i < MAX_SESSIONS_PER_USER; i++) {
+      admission.admitSession(USER_ID);
+    }
+    assertThrows(PlaybackCapacityException.class, () -> admission.admitSession(USER_ID));
+
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+
+    assertTrue(removed.await(2, TimeUnit.SECONDS));
+    assertNull(session.source);
+    assertNotNull(admission.admitSession(USER_ID));
+  }
+
+  @Test
+  void listenerAttachingToASuspendedSessionKeepsItFromExpiring() throws Exception {
+    CountDownLatch removed = new CountDownLatch(1);
+    StreamSession session = session(false, 100L, 300L, 1, 0L, ignored -> removed.countDown());
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    long deadline = System.currentTimeMillis() + 2_000;
+    while (!session.isSuspended() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(session.isSuspended());
+
+    BlockingQueue<Integer> heard = listen(session);
+
+    assertFalse(removed.await(600, TimeUnit.MILLISECONDS));
+    assertFalse(session.isSuspended());
+    nextPosition(heard);
+  }
+
+  @Test
+  void boardListenersShareOneEncoderUpToTheCap() throws Exception {
+    StreamSession session = session(false, 60_000L, 2, 0L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+
+    ResponseEntity<Resource> laptop = session.buildStreamResponse(StreamFormat.MP3);
+    session.buildStreamResponse(StreamFormat.MP3);
+    PlaybackCapacityException ex = assertThrows(PlaybackCapacityException.class, () -> session.buildStreamResponse(StreamFormat.MP3));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+    assertEquals(2, session.listenerCount());
+    assertEquals(1.0, registry.get("playback.encoder.processes").gauge().value());
+
+    laptop.getBody().getInputStream().close();
+    assertEquals(1, session.listenerCount());
+    assertNotNull(session.buildStreamResponse(StreamFormat.MP3));
+    assertEquals(2, session.listenerCount());
+  }
+
+  @Test
+  void trackSessionListenerReplacesThePreviousOne() throws Exception {
+    StreamSession session = session(true, 60_000L, 1, 0L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+
+    InputStream first = session.buildStreamResponse(StreamFormat.MP3).getBody().getInputStream();
+    session.buildStreamResponse(StreamFormat.MP3);
+
+    assertEquals(1, session.listenerCount());
+    assertEquals(-1, first.read());
+  }
+
+  @Test
+  void pauseSeekAndResumeKeepTheListenerAndItsEncoder() throws Exception {
+    StreamSession session = session(false, 60_000L, 1, 0L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    BlockingQueue<Integer> heard = listen(session);
+    nextPosition(heard);
+    double encoders = encoderProcesses();
+
+    assertTrue(session.seek(6));
+    assertEquals(6_000, firstPositionFrom(heard, 6_000));
+
+    assertTrue(session.pause());
+    Thread.sleep(200);
+    List<Integer> beforePause = new ArrayList<>();
+    heard.drainTo(beforePause);
+    assertNull(heard.poll(300, TimeUnit.MILLISECONDS));
+
+    int pausedAt = beforePause.isEmpty() ? 6_000 : beforePause.getLast();
+    assertTrue(session.resume());
+    assertEquals(pausedAt + TAG_MS, nextPosition(heard));
+
+    assertEquals(1, session.listenerCount());
+    assertEquals(encoders, encoderProcesses());
+    verify(playerManager, never()).createPlayer();
+  }
+
+  @Test
+  void decodeFailureEndsTheSessionAndItsListeners() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.empty());
+    AudioTrack track = lavaplayerTrack();
+    AudioPlayer player = idlePlayer(track);
+    AtomicBoolean crashed = new AtomicBoolean();
+    when(player.provide(any(), anyLong(), any())).thenAnswer(invocation -> {
+      if (crashed.get()) {
+        throw new IllegalStateException("decoder crashed");
+      }
+      Thread.sleep(FRAME_MS);
+      return false;
+    });
+    when(playerManager.createPlayer()).thenReturn(player);
+    resolveEveryLink(playerManager, track);
+
+    StreamSession session = session(false, 60_000L, 1, 0L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    InputStream listener = session.buildStreamResponse(StreamFormat.MP3).getBody().getInputStream();
+    crashed.set(true);
+
+    verify(player, timeout(1_000)).destroy();
+    assertEquals(-1, listener.read());
+    assertNull(session.source);
+  }
+
+  @Test
+  void switchTrackCrossfadesIntoTheNextTrackOnTheSameListenerAndEncoder() throws Exception {
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    BlockingQueue<Integer> heard = listen(session);
+    firstPositionFrom(heard, 1_500);
+    double encoders = encoderProcesses();
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.of(8L, null), PcmGainStage.FULL_VOLUME, 0d));
+    assertTrue(session.source instanceof CrossfadePcmSource);
+
+    // frames mixed during the 40 ms fade carry blended tags below 8040; the next track follows on
+    assertEquals(8_100, firstPositionFrom(heard, 8_100));
+    assertEquals(8_100 + TAG_MS, nextPosition(heard));
+    assertEquals(PlaybackStatus.PLAYING, session.status);
+    assertEquals(1, session.listenerCount());
+    assertEquals(encoders, encoderProcesses());
+  }
+
+  @Test
+  void outgoingTrackPlaysOnWhileTheNextTrackIsSlowToLoad() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.of(TRACK), Optional.empty());
+    AudioTrack track = lavaplayerTrack();
+    AudioPlayer incoming = idlePlayer(track);
+    when(playerManager.createPlayer()).thenReturn(incoming);
+
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    BlockingQueue<Integer> heard = listen(session);
+    int position = firstPositionFrom(heard, 1_500);
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.FULL_TRACK, PcmGainStage.FULL_VOLUME, 0d));
+    ArgumentCaptor<AudioLoadResultHandler> load = ArgumentCaptor.forClass(AudioLoadResultHandler.class);
+    verify(playerManager, timeout(1_000)).loadItem(eq("link2"), load.capture());
+
+    // well past the pacer's lead, the old track goes on without a gap or a jump
+    for (int tag = 0; tag < 2_000 / TAG_MS; tag++) {
+      position = expectNext(heard, position);
+    }
+    assertEquals(PlaybackStatus.BUFFERING, session.status);
+
+    load.getValue().trackLoaded(track);
+    verify(incoming).playTrack(track);
+    long deadline = System.currentTimeMillis() + 1_000;
+    while (session.status != PlaybackStatus.PLAYING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(PlaybackStatus.PLAYING, session.status);
+
+    // the loaded track has no frame yet, so the fade has not started either
+    expectNext(heard, expectNext(heard, position));
+  }
+
+  @Test
+  void pausedSessionSwitchesTrackWithAHardCut() throws Exception {
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    BlockingQueue<Integer> heard = listen(session);
+    nextPosition(heard);
+    assertTrue(session.pause());
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.of(8L, null), PcmGainStage.FULL_VOLUME, 0d));
+
+    assertFalse(session.source instanceof CrossfadePcmSource);
+    assertEquals(8_000, firstPositionFrom(heard, 4_000));
+    assertEquals(1, session.listenerCount());
+  }
+
+  @Test
+  void suspendedSessionSwitchesTrackWithAHardCut() throws Exception {
+    StreamSession session = session(false, 200L, 1, 40L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    long deadline = System.currentTimeMillis() + 2_000;
+    while (!session.isSuspended() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(session.isSuspended());
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.FULL_TRACK, PcmGainStage.FULL_VOLUME, 0d));
+
+    assertFalse(session.isSuspended());
+    assertFalse(session.source instanceof CrossfadePcmSource);
+  }
+
+  @Test
+  void failedSwitchClosesTheTrackItWasFadingOut() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.empty());
+    AudioTrack track = lavaplayerTrack();
+    AudioPlayer outgoing = idlePlayer(track);
+    when(playerManager.createPlayer()).thenReturn(outgoing).thenThrow(new IllegalStateException("no player"));
+    resolveEveryLink(playerManager, track);
+
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    assertEquals(PlaybackStatus.PLAYING, session.status);
+
+    assertThrows(IllegalStateException.class,
+            () -> session.switchTrack(3L, "link2", 10, PlaybackWindow.FULL_TRACK, PcmGainStage.FULL_VOLUME, 0d));
+
+    verify(outgoing).destroy();
+  }
+
+  @Test
+  void passthroughSessionSwitchesTrackWithAHardCut() throws Exception {
+    AudioTrack track = lavaplayerTrack();
+    AudioPlayer first = idlePlayer(track);
+    AudioPlayer second = idlePlayer(track);
+    when(opusPlayerManager.createPlayer()).thenReturn(first, second);
+    resolveEveryLink(opusPlayerManager, track);
+
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.requestOpus(true);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+    assertTrue(session.isOpusPassthrough());
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.FULL_TRACK, PcmGainStage.FULL_VOLUME, 0d));
+
+    assertTrue(session.isOpusPassthrough());
+    assertFalse(session.source instanceof CrossfadePcmSource);
+    verify(first).destroy();
+    verify(second, never()).destroy();
+    verify(playerManager, never()).createPlayer();
+  }
+
+  @Test
+  void passthroughSessionTakesTheNewVolumeAtTheSwitchWithoutReloadingTheOldTrack() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.empty());
+    AudioTrack track = lavaplayerTrack();
+    AudioPlayer opusPlayer = idlePlayer(track);
+    AudioPlayer pcmPlayer = idlePlayer(track);
+    when(opusPlayerManager.createPlayer()).thenReturn(opusPlayer);
+    when(playerManager.createPlayer()).thenReturn(pcmPlayer);
+    resolveEveryLink(opusPlayerManager, track);
+    resolveEveryLink(playerManager, track);
+
+    StreamSession session = session(false, 60_000L, 1, 40L);
+    session.requestOpus(true);
+    session.loadAndPlay(2L, "link", 10, PlaybackWindow.FULL_TRACK).get(1, TimeUnit.SECONDS);
+
+    assertTrue(session.switchTrack(3L, "link2", 10, PlaybackWindow.FULL_TRACK, 40, 0d));
+
+    assertFalse(session.isOpusPassthrough());
+    verify(opusPlayerManager, times(1)).createPlayer();
+    verify(playerManager, times(1)).loadItem(eq("link2"), any());
+    verify(opusPlayer).destroy();
+  }
+
+  /**
+   * A session playing from the PCM cache on the test executors; it is stopped after the test.
+   */
+  private StreamSession session(boolean trackMode, long idleSuspendGraceMs, int maxListeners, long crossfadeMs) {
+    return session(trackMode, idleSuspendGraceMs, 0L, maxListeners, crossfadeMs, ignored -> {
+    });
+  }
+
+  private StreamSession session(boolean trackMode,
+                                long idleSuspendGraceMs,
+                                long idleExpireMs,
+                                int maxListeners,
+                                long crossfadeMs,
+                                Consumer<StreamSession> removalCallback) {
+    StreamSession session = new StreamSession(1L, trackMode, playerManager, opusPlayerManager, pcmCache, metrics, admission,
+            jwtService, workers, workers, encoderPool, scheduler, SlowConsumerPolicy.SKIP_TO_LIVE, idleSuspendGraceMs,
+            idleExpireMs, maxListeners, crossfadeMs, removalCallback);
+    sessions.add(session);
+    return session;
+  }
+
+  /**
+   * Attaches an MP3 listener to the pass-through encoder and queues the track position of
+   * every frame it receives.
+   */
+  private BlockingQueue<Integer> listen(StreamSession session) throws IOException {
+    InputStream listener = session.buildStreamResponse(StreamFormat.MP3).getBody().getInputStream();
+    BlockingQueue<Integer> positions = new LinkedBlockingQueue<>();
+
+    workers.submit(() -> {
+      byte[] frame = new byte[TAG_BYTES];
+      while (listener.readNBytes(frame, 0, frame.length) == frame.length) {
+        positions.add((int) (short) ((frame[4] << 8) | (frame[5] & 0xFF)));
+      }
+      return null;
+    });
+    return positions;
+  }
+
+  /**
+   * Makes {@code manager} resolve every link to {@code track} right away.
+   */
+  private static void resolveEveryLink(AudioPlayerManager manager, AudioTrack track) {
+    doAnswer(invocation -> {
+      invocation.<AudioLoadResultHandler>getArgument(1).trackLoaded(track);
+      return null;
+    }).when(manager).loadItem(anyString(), any());
+  }
+
+  /**
+   * A lavaplayer player that is always playing {@code track} but never has audio ready.
+   */
+  private static AudioPlayer idlePlayer(AudioTrack track) throws Exception {
+    AudioPlayer player = mock(AudioPlayer.class);
+    when(player.getPlayingTrack()).thenReturn(track);
+    when(player.provide(any(), anyLong(), any())).thenAnswer(invocation -> {
+      Thread.sleep(FRAME_MS);
+      return false;
+    });
+    return player;
+  }
+
+  private static AudioTrack lavaplayerTrack() {
+    AudioTrack track = mock(AudioTrack.class);
+    when(track.getDuration()).thenReturn((long) TRACK_MS);
+    when(track.getInfo()).thenReturn(mock(AudioTrackInfo.class));
+    return track;
+  }
+
+  private double encoderProcesses() {
+    return registry.get("playback.encoder.processes").gauge().value();
+  }
+
+  private static int nextPosition(BlockingQueue<Integer> heard) throws InterruptedException {
+    Integer position = heard.poll(2, TimeUnit.SECONDS);
+    assertNotNull(position, "no audio reached the listener");
+    return position;
+  }
+
+  private static int expectNext(BlockingQueue<Integer> heard, int position) throws InterruptedException {
+    int next = nextPosition(heard);
+    assertEquals(position + TAG_MS, next, "the listener skipped from " + position);
+    return next;
+  }
+
+  /**
+   * Skips the frames that were already on their way when the position changed.
+   */
+  private static int firstPositionFrom(BlockingQueue<Integer> heard, int targetMs) throws InterruptedException {
+    for (int skipped = 0; skipped < TRACK_MS / TAG_MS; skipped++) {
+      int position = nextPosition(heard);
+      if (position >= targetMs) {
+        return position;
+      }
+    }
+    return fail("the listener never heard position " + targetMs);
+  }
+
+  /**
+   * Cached PCM that reads as a run of 2 ms MP3 frames, each starting with the track position it
+   * was cut from, so the frames a listener receives through the {@code cat} encoder tell where
+   * in the track the session is.
+   */
+  private static ByteBuffer taggedTrack() {
+    ByteBuffer pcm = ByteBuffer.allocate(TRACK_MS * CachedPcmSource.BYTES_PER_MS);
+    for (int ms = 0; ms < TRACK_MS; ms += TAG_MS) {
+      pcm.position(ms * CachedPcmSource.BYTES_PER_MS);
+      pcm.put(MP3_HEADER).putShort((short) ms);
+    }
+    return pcm.clear();
+  }
+}
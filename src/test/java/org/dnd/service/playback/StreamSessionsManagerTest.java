@@ -1,30 +1,61 @@
 package org.dnd.service.playback;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.api.model.PlaybackStatus;
+import org.dnd.api.model.StreamFormat;
+import org.dnd.configuration.PlaybackConfiguration;
+import org.dnd.exception.PlaybackCapacityException;
 import org.dnd.service.JwtService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
 
+import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class StreamSessionsManagerTest {
 
+  private static final long USER_ID = 7L;
+
   @Mock
   private AudioPlayerManager playerManager;
 
+  @Mock
+  private AudioPlayerManager opusPlayerManager;
+
+  @Mock
+  private PcmDiskCache pcmCache;
+
+  @Mock
+  private WaveformStore waveformStore;
+
+  @Mock
+  private TrackAnalysisStore analysisStore;
+
   @Mock
   private JwtService jwtService;
 
   @Mock
   private AudioConfiguration audioConfiguration;
 
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final PlaybackMetrics metrics = new PlaybackMetrics(registry);
+  private final PlaybackAdmission admission = new PlaybackAdmission(16, 8, 16, 0, 0L, 5L, metrics);
+  private final FfmpegEncoderPool encoderPool = new FfmpegEncoderPool(0, profile -> {
+    throw new IOException("no encoders in unit tests");
+  }, metrics);
   private StreamSessionsManager manager;
   private AutoCloseable mocks;
 
@@ -33,9 +64,11 @@ class StreamSessionsManagerTest {
     mocks = MockitoAnnotations.openMocks(this);
 
     when(playerManager.getConfiguration()).thenReturn(audioConfiguration);
+    when(opusPlayerManager.getConfiguration()).thenReturn(audioConfiguration);
     doNothing().when(audioConfiguration).setOutputFormat(any());
 
-    manager = new StreamSessionsManager(playerManager, jwtService);
+    manager = new StreamSessionsManager(playerManager, new OpusPlayerManager(opusPlayerManager), pcmCache, metrics, admission, encoderPool, waveformStore,
+            analysisStore, jwtService, new PlaybackConfiguration());
     manager.init();
   }
 
@@ -55,10 +88,10 @@ class StreamSessionsManagerTest {
 
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newBoardSession(1L);
-    doNothing().when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(session).stop();
 
-    StreamSession created = spyManager.startBoardSession(1L, 2L, "link", 100, null, null);
+    StreamSession created = spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
 
     assertSame(session, created);
 
@@ -69,7 +102,7 @@ class StreamSessionsManagerTest {
     spyManager.stopBoardSession(1L);
 
     assertTrue(spyManager.getBoardSession(1L).isEmpty());
-    verify(session).loadAndPlay(2L, "link", 100, null, null);
+    verify(session).loadAndPlay(2L, "link", 100, PlaybackWindow.FULL_TRACK);
     verify(session).stop();
   }
 
@@ -79,10 +112,10 @@ class StreamSessionsManagerTest {
 
     StreamSessionsManager spyManager = spy(manager);
     doReturn(trackSession).when(spyManager).newTrackSession(anyLong(), anyString());
-    doNothing().when(trackSession).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(trackSession).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(trackSession).stop();
 
-    StreamSession created = spyManager.startTrackSession(1L, 2L, "link", 100, null, null);
+    StreamSession created = spyManager.startTrackSession(1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 0d, StreamFormat.MP3);
 
     assertSame(trackSession, created);
 
@@ -94,7 +127,7 @@ class StreamSessionsManagerTest {
 
     assertTrue(spyManager.getTrackSession(1L, 2L).isPresent());
     assertSame(trackSession, spyManager.getTrackSession(1L, 2L).orElseThrow());
-    verify(trackSession).loadAndPlay(2L, "link", 100, null, null);
+    verify(trackSession).loadAndPlay(2L, "link", 100, PlaybackWindow.FULL_TRACK);
   }
 
   @Test
@@ -102,8 +135,8 @@ class StreamSessionsManagerTest {
     WaveformSession waveformSession = mock(WaveformSession.class);
 
     StreamSessionsManager spyManager = spy(manager);
-    doReturn(waveformSession).when(spyManager).newWaveformSession(anyLong(), anyString());
-    doNothing().when(waveformSession).loadAndAnalyze(anyLong(), anyString(), anyInt());
+    doReturn(waveformSession).when(spyManager).newWaveformSession(anyLong(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(waveformSession).loadAndAnalyze(anyLong(), anyString(), anyInt());
 
     WaveformSession created = spyManager.getOrCreateWaveformSession(1L, 2L, "link", 100);
     WaveformSession reused = spyManager.getOrCreateWaveformSession(1L, 2L, "link", 100);
@@ -113,6 +146,22 @@ class StreamSessionsManagerTest {
     verify(waveformSession, times(1)).loadAndAnalyze(anyLong(), anyString(), anyInt());
   }
 
+  @Test
+  void waveformSessionsAreSharedByTracksWithTheSameSource() {
+    WaveformSession waveformSession = mock(WaveformSession.class);
+
+    StreamSessionsManager spyManager = spy(manager);
+    doReturn(waveformSession).when(spyManager).newWaveformSession(anyLong(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(waveformSession).loadAndAnalyze(anyLong(), anyString(), anyInt());
+
+    WaveformSession first = spyManager.getOrCreateWaveformSession(1L, 2L, "https://youtu.be/dQw4w9WgXcQ", 100);
+    WaveformSession second = spyManager.getOrCreateWaveformSession(3L, 4L,
+            "https://www.youtube.com/watch?v=dQw4w9WgXcQ&t=10", 100);
+
+    assertSame(first, second);
+    verify(spyManager, times(1)).newWaveformSession(2L, TrackSourceKey.of("https://youtu.be/dQw4w9WgXcQ"));
+  }
+
   @Test
   void startBoardSessionReplacesPreviousSession() {
     StreamSession first = mock(StreamSession.class);
@@ -121,23 +170,47 @@ class StreamSessionsManagerTest {
     StreamSessionsManager spyManager = spy(manager);
     doReturn(first).doReturn(second).when(spyManager).newBoardSession(1L);
 
-    doNothing().when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(first).stop();
 
-    doNothing().when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(second).stop();
 
-    StreamSession created1 = spyManager.startBoardSession(1L, 2L, "link", 100, null, null);
-    StreamSession created2 = spyManager.startBoardSession(1L, 3L, "link2", 120, 5L, 10L);
+    StreamSession created1 = spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+    StreamSession created2 = spyManager.startBoardSession(USER_ID, 1L, 3L, "link2", 120, PlaybackWindow.of(5L, 10L), 50, 0d, StreamFormat.MP3);
 
     assertSame(first, created1);
     assertSame(second, created2);
 
-    verify(first).loadAndPlay(2L, "link", 100, null, null);
-    verify(second).loadAndPlay(3L, "link2", 120, 5L, 10L);
+    verify(first).loadAndPlay(2L, "link", 100, PlaybackWindow.FULL_TRACK);
+    verify(second).loadAndPlay(3L, "link2", 120, PlaybackWindow.of(5L, 10L));
     verify(first).stop();
   }
 
+  @Test
+  void startBoardSessionSwitchesTheTrackOfTheRunningSessionInPlace() {
+    StreamSession session = mock(StreamSession.class);
+
+    StreamSessionsManager spyManager = spy(manager);
+    doReturn(session).when(spyManager).newBoardSession(1L);
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+    doReturn(true).when(session).switchTrack(anyLong(), anyString(), anyInt(), any(), anyInt(), anyDouble());
+
+    StreamSession created1 = spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+    StreamSession created2 = spyManager.startBoardSession(USER_ID, 1L, 3L, "link2", 120, PlaybackWindow.of(5L, 10L), 40, -2d, StreamFormat.MP3);
+
+    assertSame(session, created1);
+    assertSame(session, created2);
+    assertEquals(Optional.of(session), spyManager.getBoardSession(1L));
+
+    verify(spyManager, times(1)).newBoardSession(1L);
+    verify(session).switchTrack(3L, "link2", 120, PlaybackWindow.of(5L, 10L), 40, -2d);
+    // the running session hears the new volume and gain at the handover, not before it
+    verify(session, never()).setVolume(40);
+    verify(session, never()).setTrackGainDb(-2d);
+    verify(session, never()).stop();
+  }
+
   @Test
   void startTrackSessionReplacesPreviousSession() {
     StreamSession first = mock(StreamSession.class);
@@ -146,20 +219,20 @@ class StreamSessionsManagerTest {
     StreamSessionsManager spyManager = spy(manager);
     doReturn(first).doReturn(second).when(spyManager).newTrackSession(anyLong(), anyString());
 
-    doNothing().when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(first).stop();
 
-    doNothing().when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(second).stop();
 
-    StreamSession created1 = spyManager.startTrackSession(1L, 2L, "link", 100, null, null);
-    StreamSession created2 = spyManager.startTrackSession(1L, 2L, "link2", 120, 7L, 20L);
+    StreamSession created1 = spyManager.startTrackSession(1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 0d, StreamFormat.MP3);
+    StreamSession created2 = spyManager.startTrackSession(1L, 2L, "link2", 120, PlaybackWindow.of(7L, 20L), 0d, StreamFormat.MP3);
 
     assertSame(first, created1);
     assertSame(second, created2);
 
-    verify(first).loadAndPlay(2L, "link", 100, null, null);
-    verify(second).loadAndPlay(2L, "link2", 120, 7L, 20L);
+    verify(first).loadAndPlay(2L, "link", 100, PlaybackWindow.FULL_TRACK);
+    verify(second).loadAndPlay(2L, "link2", 120, PlaybackWindow.of(7L, 20L));
     verify(first).stop();
   }
 
@@ -170,12 +243,12 @@ class StreamSessionsManagerTest {
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newBoardSession(1L);
     doThrow(new RuntimeException("fail"))
-            .when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+            .when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(session).stop();
 
     RuntimeException ex = assertThrows(
             RuntimeException.class,
-            () -> spyManager.startBoardSession(1L, 2L, "link", 100, null, null)
+            () -> spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3)
     );
 
     assertEquals("fail", ex.getMessage());
@@ -190,12 +263,12 @@ class StreamSessionsManagerTest {
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newTrackSession(anyLong(), anyString());
     doThrow(new RuntimeException("fail"))
-            .when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+            .when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(session).stop();
 
     RuntimeException ex = assertThrows(
             RuntimeException.class,
-            () -> spyManager.startTrackSession(1L, 2L, "link", 100, null, null)
+            () -> spyManager.startTrackSession(1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 0d, StreamFormat.MP3)
     );
 
     assertEquals("fail", ex.getMessage());
@@ -208,7 +281,7 @@ class StreamSessionsManagerTest {
     WaveformSession waveformSession = mock(WaveformSession.class);
 
     StreamSessionsManager spyManager = spy(manager);
-    doReturn(waveformSession).when(spyManager).newWaveformSession(anyLong(), anyString());
+    doReturn(waveformSession).when(spyManager).newWaveformSession(anyLong(), any());
     doThrow(new RuntimeException("fail")).when(waveformSession).loadAndAnalyze(anyLong(), anyString(), anyInt());
     doNothing().when(waveformSession).stop();
 
@@ -227,19 +300,37 @@ class StreamSessionsManagerTest {
 
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newBoardSession(1L);
-    doNothing().when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
 
     doAnswer(invocation -> {
       spyManager.stopBoardSession(1L);
       return null;
     }).when(session).stop();
 
-    spyManager.startBoardSession(1L, 2L, "link", 100, null, null);
+    spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
     session.stop();
 
     assertTrue(spyManager.getBoardSession(1L).isEmpty());
   }
 
+  @Test
+  void boardVolumeReachesTheRunningSessionWithoutRestartingIt() {
+    StreamSession session = mock(StreamSession.class);
+
+    StreamSessionsManager spyManager = spy(manager);
+    doReturn(session).when(spyManager).newBoardSession(1L);
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+
+    spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, -3d, StreamFormat.MP3);
+    spyManager.setBoardVolume(1L, 80);
+    spyManager.setBoardVolume(2L, 10);
+
+    verify(session).setVolume(50);
+    verify(session).setTrackGainDb(-3d);
+    verify(session).setVolume(80);
+    verify(session, times(1)).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+  }
+
   @Test
   void stopBoardSessionShouldNotAffectDifferentBoardSession() {
     StreamSession first = mock(StreamSession.class);
@@ -249,14 +340,14 @@ class StreamSessionsManagerTest {
     doReturn(first).when(spyManager).newBoardSession(1L);
     doReturn(second).when(spyManager).newBoardSession(2L);
 
-    doNothing().when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(first).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(first).stop();
 
-    doNothing().when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(second).loadAndPlay(anyLong(), anyString(), anyInt(), any());
     doNothing().when(second).stop();
 
-    spyManager.startBoardSession(1L, 11L, "link1", 100, null, null);
-    spyManager.startBoardSession(2L, 22L, "link2", 120, null, null);
+    spyManager.startBoardSession(USER_ID, 1L, 11L, "link1", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+    spyManager.startBoardSession(USER_ID, 2L, 22L, "link2", 120, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
 
     spyManager.stopBoardSession(1L);
 
@@ -272,11 +363,11 @@ class StreamSessionsManagerTest {
 
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newBoardSession(1L);
-    doNothing().when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
 
-    spyManager.startBoardSession(1L, 99L, "link", 180, 15L, 45L);
+    spyManager.startBoardSession(USER_ID, 1L, 99L, "link", 180, PlaybackWindow.of(15L, 45L), 50, 0d, StreamFormat.MP3);
 
-    verify(session).loadAndPlay(99L, "link", 180, 15L, 45L);
+    verify(session).loadAndPlay(99L, "link", 180, PlaybackWindow.of(15L, 45L));
   }
 
   @Test
@@ -284,10 +375,83 @@ class StreamSessionsManagerTest {
     StreamSession session = mock(StreamSession.class);
     StreamSessionsManager spyManager = spy(manager);
     doReturn(session).when(spyManager).newTrackSession(anyLong(), anyString());
-    doNothing().when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any(), any());
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+
+    spyManager.startTrackSession(5L, 9L, "track-link", 240, PlaybackWindow.of(30L, 90L), 0d, StreamFormat.MP3);
+
+    verify(session).loadAndPlay(9L, "track-link", 240, PlaybackWindow.of(30L, 90L));
+  }
+
+  @Test
+  void activeSessionsAreExposedAsGauges() {
+    StreamSession session = mock(StreamSession.class);
+
+    StreamSessionsManager spyManager = spy(manager);
+    doReturn(session).when(spyManager).newBoardSession(1L);
+    doReturn(CompletableFuture.completedFuture(null)).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+
+    spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+
+    assertEquals(1.0, registry.get("playback.sessions.active").tag("type", "board").gauge().value());
+    assertEquals(0.0, registry.get("playback.sessions.active").tag("type", "track").gauge().value());
+  }
 
-    spyManager.startTrackSession(5L, 9L, "track-link", 240, 30L, 90L);
+  @Test
+  void startBoardSessionReturnsWhileTrackIsStillLoading() {
+    StreamSession session = mock(StreamSession.class);
 
-    verify(session).loadAndPlay(9L, "track-link", 240, 30L, 90L);
+    StreamSessionsManager spyManager = spy(manager);
+    doReturn(session).when(spyManager).newBoardSession(1L);
+    doReturn(new CompletableFuture<Void>()).when(session).loadAndPlay(anyLong(), anyString(), anyInt(), any());
+
+    StreamSession created = spyManager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+
+    assertSame(session, created);
+    assertTrue(spyManager.getBoardSession(1L).isPresent());
+    verify(session, never()).stop();
+  }
+
+  @Test
+  void boardSessionBuffersWhileLoadingAndReportsLoadFailure() {
+    when(playerManager.createPlayer()).thenReturn(mock(AudioPlayer.class));
+
+    StreamSession session = manager.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+
+    assertEquals(PlaybackStatus.BUFFERING, session.status);
+
+    ArgumentCaptor<AudioLoadResultHandler> handler = ArgumentCaptor.forClass(AudioLoadResultHandler.class);
+    verify(playerManager).loadItem(eq("link"), handler.capture());
+    handler.getValue().noMatches();
+
+    assertEquals(PlaybackStatus.ERROR, session.status);
+    assertSame(session, manager.getBoardSession(1L).orElseThrow());
+  }
+
+  @Test
+  void sessionsOverTheUserLimitAreRefusedUntilOneStops() {
+    when(playerManager.createPlayer()).thenReturn(mock(AudioPlayer.class));
+
+    StreamSessionsManager limited = new StreamSessionsManager(playerManager, new OpusPlayerManager(opusPlayerManager), pcmCache, metrics,
+            new PlaybackAdmission(16, 1, 16, 0, 0L, 5L, metrics), encoderPool, waveformStore, analysisStore,
+            jwtService, new PlaybackConfiguration());
+    limited.init();
+    try {
+      limited.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+
+      PlaybackCapacityException ex = assertThrows(
+              PlaybackCapacityException.class,
+              () -> limited.startBoardSession(USER_ID, 2L, 3L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3)
+      );
+      assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatus());
+      assertTrue(limited.getBoardSession(2L).isEmpty());
+
+      limited.startBoardSession(USER_ID, 1L, 2L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3);
+
+      limited.stopBoardSession(1L);
+      assertNotNull(limited.startBoardSession(USER_ID, 2L, 3L, "link", 100, PlaybackWindow.FULL_TRACK, 50, 0d, StreamFormat.MP3));
+      assertEquals(1.0, registry.get("playback.admission.rejected").tag("status", "429").counter().count());
+    } finally {
+      limited.shutdown();
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackAnalyzersTest {
+
+  private static final int FRAME_MS = 20;
+  private static final int SAMPLES_PER_FRAME = FRAME_MS * 48;
+
+  @Test
+  void stereoSineAtMinus20DbfsMeasuresMinus20Lufs() {
+    LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+    feed(List.of(loudness), 0, 5_000, 0.1);
+
+    assertEquals(-20d, loudness.integratedLufs(), 0.1);
+    assertEquals(-20d, loudness.samplePeakDbfs(), 0.01);
+    assertEquals(0L, loudness.clippedSamples());
+  }
+
+  @Test
+  void quietPassagesAreGatedOutOfTheIntegratedLoudness() {
+    LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+    feed(List.of(loudness), 0, 5_000, 0.1);
+    feed(List.of(loudness), 5_000, 10_000, 0.001);
+
+    // the -60 dBFS half is under the relative gate, so it does not pull the result down
+    assertEquals(-20d, loudness.integratedLufs(), 0.2);
+  }
+
+  @Test
+  void silenceHasNoLoudness() {
+    LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+    feed(List.of(loudness), 0, 2_000, 0d);
+
+    assertNull(loudness.integratedLufs());
+    assertNull(loudness.samplePeakDbfs());
+  }
+
+  @Test
+  void fullScaleSamplesCountAsClipped() {
+    LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+    feed(List.of(loudness), 0, 1_000, 1.5);
+
+    assertTrue(loudness.clippedSamples() > 0);
+    assertEquals(0d, loudness.samplePeakDbfs(), 0.01);
+  }
+
+  @Test
+  void silenceBoundariesAreFoundInTheSamePass() {
+    WaveformAccumulator waveform = new WaveformAccumulator(64);
+    LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+    SilenceAnalyzer silence = new SilenceAnalyzer();
+    List<TrackAnalyzer> chain = List.of(waveform, loudness, silence);
+    chain.forEach(analyzer -> analyzer.setDurationMs(4_000));
+
+    feed(chain, 0, 1_000, 0d);
+    feed(chain, 1_000, 3_000, 0.5);
+    feed(chain, 3_000, 4_000, 0d);
+
+    assertEquals(1_000L, silence.audioStartMs(), 1);
+    assertEquals(3_000L, silence.audioEndMs(), 1);
+    assertNotNull(loudness.integratedLufs());
+    assertEquals(64, waveform.getProcessedBuckets());
+  }
+
+  @Test
+  void silentTrackHasNoBoundaries() {
+    SilenceAnalyzer silence = new SilenceAnalyzer();
+    feed(List.of(silence), 0, 1_000, 0.0005);
+
+    assertNull(silence.audioStartMs());
+    assertNull(silence.audioEndMs());
+  }
+
+  /**
+   * A 997 Hz sine of {@code amplitude} on both channels over {@code [fromMs, toMs)}.
+   */
+  private static void feed(List<TrackAnalyzer> chain, long fromMs, long toMs, double amplitude) {
+    for (long ms = fromMs; ms < toMs; ms += FRAME_MS) {
+      byte[] frame = new byte[SAMPLES_PER_FRAME * 4];
+      for (int i = 0; i < SAMPLES_PER_FRAME; i++) {
+        double t = (ms * 48 + i) / 48_000d;
+        int value = (int) Math.max(-32768, Math.min(32767, Math.round(Math.sin(2 * Math.PI * 997 * t) * amplitude * 32768)));
+        for (int channel = 0; channel < 2; channel++) {
+          frame[i * 4 + channel * 2] = (byte) (value >> 8);
+          frame[i * 4 + channel * 2 + 1] = (byte) value;
+        }
+      }
+      for (TrackAnalyzer analyzer : chain) {
+        analyzer.accept(frame, frame.length, ms);
+      }
+    }
+  }
+}
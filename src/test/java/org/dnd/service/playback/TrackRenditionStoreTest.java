@@ -0,0 +1,154 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackRenditionStoreTest {
+
+  private static final TrackSourceKey TRACK = TrackSourceKey.of("https://www.youtube.com/watch?v=dQw4w9WgXcQ");
+  private static final TrackSourceKey OTHER = TrackSourceKey.of("https://youtu.be/9bZkp7q19f0");
+
+  /**
+   * MPEG-1 Layer III, 192 kbps, 48 kHz, stereo: 576 bytes and 24 ms per frame.
+   */
+  private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0xB4, 0x00};
+  private static final int MP3_FRAME_BYTES = 576;
+  private static final long RETIRED_FILE_GRACE_MS = 200;
+
+  @TempDir
+  Path pcmDirectory;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void cachedTrackIsRenderedBehindAnInfoFrame() throws IOException {
+    TrackRenditionStore store = newStore(newPcmCache(50));
+
+    assertTrue(store.render(TRACK, EncoderProfile.MP3, 0d));
+
+    TrackRenditionStore.Rendition rendition = store.find(TRACK, EncoderProfile.MP3, 0d).orElseThrow();
+    byte[] file = Files.readAllBytes(rendition.file());
+    assertEquals(51 * MP3_FRAME_BYTES, file.length);
+    assertEquals(file.length, rendition.index().bytes());
+    assertEquals(50 * 24, rendition.index().durationMs());
+
+    assertEquals(MP3_FRAME_BYTES, Mp3FrameSplitter.frameLengthAt(file, 0));
+    assertEquals("Info", new String(file, 4 + 32, 4, StandardCharsets.US_ASCII));
+    ByteBuffer info = ByteBuffer.wrap(file, 4 + 32 + 4, 12);
+    assertEquals(0x07, info.getInt());
+    assertEquals(50, info.getInt());
+    assertEquals(file.length, info.getInt());
+
+    // the first frame starting at or after one second is frame 42, at 1008 ms
+    assertEquals(43L * MP3_FRAME_BYTES, rendition.index().byteOffsetAt(1000));
+    assertEquals(MP3_FRAME_BYTES, Mp3FrameSplitter.frameLengthAt(file, 43 * MP3_FRAME_BYTES));
+  }
+
+  @Test
+  void renditionAtAnotherGainIsAMiss() {
+    TrackRenditionStore store = newStore(newPcmCache(10));
+    store.render(TRACK, EncoderProfile.MP3, 0d);
+
+    assertTrue(store.find(TRACK, EncoderProfile.MP3, 0d).isPresent());
+    assertTrue(store.find(TRACK, EncoderProfile.MP3, -3d).isEmpty());
+    assertTrue(store.find(TRACK, EncoderProfile.AAC, 0d).isEmpty());
+  }
+
+  @Test
+  void rerenderReplacesTheOlderFileAfterAGracePeriod() throws Exception {
+    TrackRenditionStore store = newStore(newPcmCache(10));
+    store.render(TRACK, EncoderProfile.MP3, 0d);
+    Path first = store.find(TRACK, EncoderProfile.MP3, 0d).orElseThrow().file();
+
+    store.render(TRACK, EncoderProfile.MP3, 0d);
+
+    assertNotEquals(first, store.find(TRACK, EncoderProfile.MP3, 0d).orElseThrow().file());
+    // a response that already resolved the old path can still open it
+    assertTrue(Files.exists(first));
+    assertEquals(4, fileCount());
+
+    long deadline = System.currentTimeMillis() + 2_000;
+    while (Files.exists(first) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertFalse(Files.exists(first));
+    assertEquals(2, fileCount());
+  }
+
+  @Test
+  void renditionsSurviveRestart() {
+    PcmDiskCache pcmCache = newPcmCache(10);
+    newStore(pcmCache).render(TRACK, EncoderProfile.MP3, 0d);
+
+    TrackRenditionStore restarted = newStore(pcmCache);
+
+    TrackRenditionStore.Rendition rendition = restarted.find(TRACK, EncoderProfile.MP3, 0d).orElseThrow();
+    assertEquals(11L * MP3_FRAME_BYTES, rendition.index().bytes());
+    assertEquals(1, restarted.entryCount());
+  }
+
+  @Test
+  void tracksWithoutCachedPcmAreNotRendered() throws IOException {
+    TrackRenditionStore store = newStore(newPcmCache(10));
+
+    assertFalse(store.render(OTHER, EncoderProfile.MP3, 0d));
+    assertFalse(store.requestRender(OTHER, EncoderProfile.MP3, 0d));
+    assertTrue(store.find(OTHER, EncoderProfile.MP3, 0d).isEmpty());
+    assertEquals(0, fileCount());
+  }
+
+  @Test
+  void failedEncodeLeavesNothingBehind() throws IOException {
+    TrackRenditionStore store = new TrackRenditionStore(true, directory, 1024 * 1024, newPcmCache(10),
+            profile -> new ProcessBuilder("false").start(), RETIRED_FILE_GRACE_MS);
+    store.init();
+
+    assertFalse(store.render(TRACK, EncoderProfile.MP3, 0d));
+    assertTrue(store.find(TRACK, EncoderProfile.MP3, 0d).isEmpty());
+    assertEquals(0, fileCount());
+  }
+
+  /**
+   * A store whose "encoder" echoes its input, so PCM cache entries made of MP3 frames come out
+   * as the encoded stream.
+   */
+  private TrackRenditionStore newStore(PcmDiskCache pcmCache) {
+    TrackRenditionStore store = new TrackRenditionStore(true, directory, 1024 * 1024, pcmCache,
+            profile -> new ProcessBuilder("cat").start(), RETIRED_FILE_GRACE_MS);
+    store.init();
+    return store;
+  }
+
+  private PcmDiskCache newPcmCache(int mp3Frames) {
+    PcmDiskCache cache = new PcmDiskCache(true, pcmDirectory, 1024 * 1024, Integer.MAX_VALUE);
+    cache.init();
+
+    if (cache.lookup(TRACK).isEmpty()) {
+      byte[] frame = new byte[MP3_FRAME_BYTES];
+      System.arraycopy(MP3_HEADER, 0, frame, 0, MP3_HEADER.length);
+
+      PcmDiskCache.Writer writer = cache.openWriter(TRACK);
+      for (int i = 0; i < mp3Frames; i++) {
+        writer.append(frame, frame.length);
+      }
+      writer.commit();
+    }
+    return cache;
+  }
+
+  private long fileCount() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TrackSourceKeyTest {
+
+  @Test
+  void youtubeLinkVariantsShareOneKey() {
+    TrackSourceKey expected = new TrackSourceKey("youtube:dQw4w9WgXcQ");
+
+    assertEquals(expected, TrackSourceKey.of("https://www.youtube.com/watch?v=dQw4w9WgXcQ"));
+    assertEquals(expected, TrackSourceKey.of("https://youtube.com/watch?feature=share&v=dQw4w9WgXcQ&t=42"));
+    assertEquals(expected, TrackSourceKey.of("https://youtu.be/dQw4w9WgXcQ?si=abc"));
+    assertEquals(expected, TrackSourceKey.of("https://music.youtube.com/watch?v=dQw4w9WgXcQ&list=RD"));
+    assertEquals(expected, TrackSourceKey.of(" https://www.youtube.com/shorts/dQw4w9WgXcQ "));
+  }
+
+  @Test
+  void otherLinksAreKeyedVerbatim() {
+    assertEquals(new TrackSourceKey("link:https://example.com/a.mp3"),
+            TrackSourceKey.of("https://example.com/a.mp3 "));
+  }
+
+  @Test
+  void fileStemIsStableAndDistinct() {
+    TrackSourceKey key = TrackSourceKey.of("https://youtu.be/dQw4w9WgXcQ");
+
+    assertEquals(40, key.fileStem().length());
+    assertEquals(key.fileStem(), TrackSourceKey.of("https://www.youtube.com/watch?v=dQw4w9WgXcQ").fileStem());
+    assertNotEquals(key.fileStem(), TrackSourceKey.of("https://youtu.be/9bZkp7q19f0").fileStem());
+  }
+}
@@ -0,0 +1,129 @@
+package org.dnd.service.playback;
+
+import org.dnd.api.model.WaveformPeaksEncoding;
+import org.dnd.api.model.WaveformProgressEvent;
+import org.dnd.api.model.WaveformResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WaveformAccumulatorTest {
+
+  private static final int FRAME_MS = 20;
+  private static final int FRAME_BYTES = FRAME_MS * 192;
+  private static final long STEP_MS = 10_240;
+
+  @Test
+  void rangeIsServedAtAnyResolutionFromOnePass() {
+    WaveformAccumulator waveform = filled(6 * STEP_MS);
+
+    WaveformAccumulator.Envelope overview = waveform.envelope(0, 6 * STEP_MS, 6);
+    WaveformAccumulator.Envelope zoomed = waveform.envelope(STEP_MS, STEP_MS + 100, 10);
+
+    assertEquals(6, overview.filledBuckets());
+    assertEquals(10, zoomed.filledBuckets());
+    assertEquals(levelAt(STEP_MS), overview.max()[1], 1e-3);
+    assertEquals(-levelAt(STEP_MS), overview.min()[1], 1e-3);
+    assertEquals(levelAt(STEP_MS), overview.rms()[1], 1e-3);
+    assertEquals(levelAt(5 * STEP_MS), overview.max()[5], 1e-3);
+    assertEquals(levelAt(STEP_MS), zoomed.max()[9], 1e-3);
+  }
+
+  @Test
+  void unanalysedPartOfARangeIsEmpty() {
+    WaveformAccumulator waveform = new WaveformAccumulator(512);
+    waveform.setDurationMs(10_000);
+    byte[] frame = frame(0.5f);
+    for (long ms = 0; ms < 5_000; ms += FRAME_MS) {
+      waveform.accept(frame, ms);
+    }
+
+    WaveformAccumulator.Envelope halves = waveform.envelope(0, 10_000, 2);
+    assertEquals(1, halves.filledBuckets());
+    assertEquals(0.5f, halves.max()[0], 1e-3);
+    assertEquals(0f, halves.max()[1]);
+    assertEquals(256, waveform.getProcessedBuckets());
+  }
+
+  @Test
+  void storedBaseLevelRestoresTheSameEnvelope() {
+    WaveformAccumulator waveform = filled(3 * STEP_MS);
+
+    WaveformAccumulator restored = WaveformAccumulator.restore(
+            512,
+            waveform.getDurationMs(),
+            waveform.getBucketMs(),
+            WaveformStore.decodeEnvelope(WaveformStore.encodeEnvelope(waveform.baseLevel()))
+    );
+
+    WaveformAccumulator.Envelope original = waveform.envelope(5_000, 25_000, 40);
+    WaveformAccumulator.Envelope copy = restored.envelope(5_000, 25_000, 40);
+    for (int i = 0; i < 40; i++) {
+      assertEquals(original.max()[i], copy.max()[i], 1f / 127);
+      assertEquals(original.min()[i], copy.min()[i], 1f / 127);
+      assertEquals(original.rms()[i], copy.rms()[i], 1f / 255);
+    }
+  }
+
+  @Test
+  void compactEncodingsQuantizeThePeaks() {
+    WaveformAccumulator waveform = filled(2 * STEP_MS);
+
+    WaveformResponse decimal = waveform.toResponse(1L, true);
+    WaveformResponse u8 = waveform.toResponse(1L, true, WaveformPeaksEncoding.U8);
+    WaveformResponse u16 = waveform.toResponse(1L, true, WaveformPeaksEncoding.U16);
+
+    assertEquals(512, decimal.getPeaks().size());
+    assertTrue(u8.getPeaks().isEmpty());
+    assertEquals(512, u8.getPeaksData().length);
+    assertEquals(1024, u16.getPeaksData().length);
+
+    float first = decimal.getPeaks().getFirst().floatValue();
+    assertEquals(first, (u8.getPeaksData()[0] & 0xFF) / 255f, 1f / 255);
+    int firstU16 = ((u16.getPeaksData()[0] & 0xFF) << 8) | (u16.getPeaksData()[1] & 0xFF);
+    assertEquals(first, firstU16 / 65535f, 1f / 65535);
+  }
+
+  @Test
+  void progressEventsCarryOnlyTheirSliceOfTheOverview() {
+    WaveformAccumulator waveform = filled(2 * STEP_MS);
+    WaveformResponse overview = waveform.toResponse(1L, true);
+
+    WaveformProgressEvent event = waveform.toProgressEvent(1L, 100, 164, WaveformPeaksEncoding.DECIMAL, false);
+    assertEquals(100, event.getFromBucket());
+    assertEquals(164, event.getToBucket());
+    assertEquals(overview.getPeaks().subList(100, 164), event.getPeaks());
+
+    WaveformProgressEvent compact = waveform.toProgressEvent(1L, 500, 600, WaveformPeaksEncoding.U8, true);
+    assertEquals(512, compact.getToBucket());
+    assertEquals(12, compact.getPeaksData().length);
+    assertTrue(compact.getPeaks().isEmpty());
+  }
+
+  /**
+   * A square wave whose level steps up every {@link #STEP_MS}, on pyramid bucket edges, so
+   * every bucket's expected min, max and RMS are known.
+   */
+  private static WaveformAccumulator filled(long durationMs) {
+    WaveformAccumulator waveform = new WaveformAccumulator(512);
+    waveform.setDurationMs(durationMs);
+    for (long ms = 0; ms < durationMs; ms += FRAME_MS) {
+      waveform.accept(frame(levelAt(ms)), ms);
+    }
+    return waveform;
+  }
+
+  private static float levelAt(long ms) {
+    return 0.1f + (ms / STEP_MS) * 0.1f;
+  }
+
+  private static byte[] frame(float level) {
+    byte[] frame = new byte[FRAME_BYTES];
+    for (int i = 0; i + 1 < frame.length; i += 2) {
+      short sample = (short) Math.round(((i / 2) % 2 == 0 ? level : -level) * 32768f);
+      frame[i] = (byte) (sample >> 8);
+      frame[i + 1] = (byte) sample;
+    }
+    return frame;
+  }
+}
@@ -0,0 +1,157 @@
+package org.dnd.service.playback;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dnd.api.model.WaveformPeaksEncoding;
+import org.dnd.api.model.WaveformProgressEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WaveformSessionTest {
+
+  private static final int TRACK_S = 30;
+
+  @Mock
+  private AudioPlayerManager playerManager;
+
+  @Mock
+  private PcmDiskCache pcmCache;
+
+  @Mock
+  private WaveformStore waveformStore;
+
+  @Mock
+  private TrackAnalysisStore analysisStore;
+
+  private final PlaybackMetrics metrics = new PlaybackMetrics(new SimpleMeterRegistry());
+
+  private ExecutorService workers;
+  private ScheduledExecutorService scheduler;
+  private AutoCloseable mocks;
+  private WaveformSession session;
+
+  @BeforeEach
+  void setUp() {
+    mocks = MockitoAnnotations.openMocks(this);
+    // platform threads, so the progress stream gets a turn while the decode loop is busy
+    workers = Executors.newCachedThreadPool();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    session = new WaveformSession(1L, TrackSourceKey.of("link"), playerManager, pcmCache, metrics, waveformStore,
+            analysisStore, workers, workers, scheduler, ignored -> {
+    });
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    session.stop();
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+    mocks.close();
+  }
+
+  @Test
+  void storedWaveformIsSentAsOneCompleteEvent() throws Exception {
+    WaveformAccumulator stored = new WaveformAccumulator(WaveformSession.WAVEFORM_BUCKETS);
+    stored.setDurationMs(1_000);
+    RecordingEmitter emitter = new RecordingEmitter();
+
+    WaveformSession.streamStored(emitter, stored, 1L, WaveformPeaksEncoding.DECIMAL);
+
+    assertTrue(emitter.completed.await(0, TimeUnit.SECONDS));
+    assertEquals(List.of("complete"), emitter.names);
+    assertEquals(0, emitter.events.getFirst().getFromBucket());
+    assertEquals(WaveformSession.WAVEFORM_BUCKETS, emitter.events.getFirst().getToBucket());
+  }
+
+  @Test
+  void failedLoadEndsTheStreamWithAnErrorEvent() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.empty());
+    when(playerManager.createPlayer()).thenReturn(mock(AudioPlayer.class));
+    RecordingEmitter emitter = new RecordingEmitter();
+
+    CompletableFuture<Void> loaded = session.loadAndAnalyze(1L, "link", TRACK_S);
+    session.streamProgress(emitter, 1L, WaveformPeaksEncoding.DECIMAL);
+    ArgumentCaptor<AudioLoadResultHandler> handler = ArgumentCaptor.forClass(AudioLoadResultHandler.class);
+    verify(playerManager).loadItem(eq("link"), handler.capture());
+    handler.getValue().noMatches();
+
+    assertThrows(Exception.class, () -> loaded.get(1, TimeUnit.SECONDS));
+    assertTrue(emitter.completed.await(1, TimeUnit.SECONDS));
+    assertEquals(List.of("error"), emitter.names);
+  }
+
+  @Test
+  void progressEventsCoverTheOverviewWithoutGapsOrOverlaps() throws Exception {
+    when(pcmCache.lookup(any())).thenReturn(Optional.of(silentTrack()));
+    RecordingEmitter emitter = new RecordingEmitter();
+
+    session.streamProgress(emitter, 1L, WaveformPeaksEncoding.DECIMAL);
+    session.loadAndAnalyze(1L, "link", TRACK_S).get(1, TimeUnit.SECONDS);
+
+    assertTrue(emitter.completed.await(10, TimeUnit.SECONDS));
+    assertEquals("complete", emitter.names.getLast());
+    assertEquals(1, emitter.names.stream().filter("complete"::equals).count());
+
+    int sent = 0;
+    for (WaveformProgressEvent event : emitter.events) {
+      assertEquals(sent, event.getFromBucket());
+      assertTrue(event.getToBucket() > event.getFromBucket());
+      sent = event.getToBucket();
+    }
+    assertEquals(WaveformSession.WAVEFORM_BUCKETS, sent);
+  }
+
+  private static ByteBuffer silentTrack() {
+    return ByteBuffer.allocate(TRACK_S * 1000 * CachedPcmSource.BYTES_PER_MS);
+  }
+
+  /**
+   * Keeps the events sent to it instead of writing them to a response.
+   */
+  private static final class RecordingEmitter extends SseEmitter {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<WaveformProgressEvent> events = new ArrayList<>();
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    @Override
+    public synchronized void send(SseEventBuilder builder) {
+      Set<ResponseBodyEmitter.DataWithMediaType> parts = builder.build();
+      for (ResponseBodyEmitter.DataWithMediaType part : parts) {
+        if (part.getData() instanceof WaveformProgressEvent event) {
+          events.add(event);
+        } else if (part.getData() instanceof String text && text.startsWith("event:")) {
+          names.add(text.substring("event:".length(), text.indexOf('\n')));
+        }
+      }
+    }
+
+    @Override
+    public synchronized void complete() {
+      completed.countDown();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.dnd.service.playback;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedPcmSourceTest {
+
+  private static final int FRAME = PcmBroadcastBuffer.MAX_FRAME_BYTES;
+  private static final short LEVEL = 10_000;
+
+  @Test
+  void stopsAtTheWindowEndToTheSample() throws InterruptedException {
+    PcmSource source = new WindowedPcmSource(track(2000), PlaybackWindow.of(null, 1L));
+    source.seek(5);
+
+    byte[] frame = new byte[FRAME];
+    long bytes = 0;
+    int length;
+    while ((length = source.read(frame)) != PcmSource.END_OF_TRACK) {
+      bytes += length;
+    }
+
+    assertEquals(995L * CachedPcmSource.BYTES_PER_MS, bytes);
+  }
+
+  @Test
+  void loopingWindowRestartsAtItsStart() throws InterruptedException {
+    PcmSource source = new WindowedPcmSource(track(3000), new PlaybackWindow(1L, 2L, 0L, 0L, true));
+    source.seek(1000);
+
+    byte[] frame = new byte[FRAME];
+    int frames = 0;
+    while (frames < 50) {
+      assertTrue(source.read(frame) > 0);
+      frames++;
+    }
+
+    assertEquals(PcmSource.NO_FRAME, source.read(frame));
+    assertEquals(FRAME, source.read(frame));
+    assertEquals(1000, source.frameStartMs());
+  }
+
+  @Test
+  void fadesRampFromSilenceAndBackToSilence() throws InterruptedException {
+    PcmSource source = new WindowedPcmSource(track(1000), new PlaybackWindow(null, 1L, 100L, 100L, false));
+
+    byte[] frame = new byte[FRAME];
+    source.read(frame);
+
+    assertEquals(0, sampleAt(frame, 0));
+    assertTrue(sampleAt(frame, 1) > 0);
+    assertTrue(sampleAt(frame, 100) > sampleAt(frame, 50));
+    assertTrue(sampleAt(frame, 100) < LEVEL);
+
+    int length;
+    byte[] last = new byte[FRAME];
+    int lastLength = 0;
+    while ((length = source.read(frame)) != PcmSource.END_OF_TRACK) {
+      if (source.frameStartMs() == 400) {
+        assertEquals(LEVEL, sampleAt(frame, 0));
+      }
+      System.arraycopy(frame, 0, last, 0, length);
+      lastLength = length;
+    }
+
+    int lastSample = lastLength / 4 - 1;
+    assertTrue(sampleAt(last, lastSample) < LEVEL / 100);
+    assertTrue(sampleAt(last, lastSample) < sampleAt(last, 0));
+  }
+
+  private static CachedPcmSource track(int durationMs) {
+    ByteBuffer pcm = ByteBuffer.allocate(durationMs * CachedPcmSource.BYTES_PER_MS);
+    while (pcm.hasRemaining()) {
+      pcm.putShort(LEVEL);
+    }
+    return new CachedPcmSource(pcm.flip());
+  }
+
+  private static short sampleAt(byte[] frame, int sample) {
+    return (short) ((frame[sample * 4] << 8) | (frame[sample * 4 + 1] & 0xFF));
+  }
+}
@@ -0,0 +1,44 @@
+package org.dnd.service.playback.source;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticAudioSpecTest {
+
+  @Test
+  void parsesKindAndParameters() {
+    SyntheticAudioSpec spec = SyntheticAudioSpec.parse("synthetic:tone?hz=1000&seconds=30&level=0.25");
+
+    assertEquals(SyntheticAudioSpec.Kind.TONE, spec.kind());
+    assertEquals(30, spec.seconds());
+    assertEquals(1000.0, spec.hz());
+    assertEquals(0.25, spec.level());
+    assertEquals(spec, SyntheticAudioSpec.parse(spec.toLink()));
+  }
+
+  @Test
+  void otherLinksAreNotSynthetic() {
+    assertNull(SyntheticAudioSpec.parse("https://youtu.be/dQw4w9WgXcQ"));
+    assertNull(SyntheticAudioSpec.parse(null));
+  }
+
+  @Test
+  void malformedLinksAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> SyntheticAudioSpec.parse("synthetic:square"));
+    assertThrows(IllegalArgumentException.class, () -> SyntheticAudioSpec.parse("synthetic:tone?seconds=0"));
+  }
+
+  @Test
+  void samplesDependOnlyOnTheirIndex() {
+    SyntheticAudioSpec noise = SyntheticAudioSpec.parse("synthetic:noise?seed=7");
+    SyntheticAudioSpec otherSeed = SyntheticAudioSpec.parse("synthetic:noise?seed=8");
+
+    assertEquals(noise.sampleAt(123_456, 48_000), noise.sampleAt(123_456, 48_000));
+    assertNotEquals(noise.sampleAt(123_456, 48_000), otherSeed.sampleAt(123_456, 48_000));
+    assertEquals(0, SyntheticAudioSpec.parse("synthetic:silence").sampleAt(99, 48_000));
+
+    SyntheticAudioSpec tone = SyntheticAudioSpec.parse("synthetic:tone?hz=12000&level=1");
+    assertEquals(Short.MAX_VALUE, tone.sampleAt(1, 48_000));
+  }
+}